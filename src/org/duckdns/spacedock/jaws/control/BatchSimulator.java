@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.io.FileNotFoundException;
+import java.net.URISyntaxException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import org.duckdns.spacedock.commonutils.files.GeneralFileHandler;
+import org.duckdns.spacedock.jaws.control.GameManager.Player;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.Ship;
+
+/**
+ * moteur de simulation sans interface : joue un grand nombre de parties
+ * indépendantes d'un même scénario, en parallèle sur un ForkJoinPool, pour
+ * l'équilibrage des scénarios. Les parties n'écrivent pas dans la base :
+ * leur stockage est en mémoire ou sans effet. Chaque partie a son propre
+ * générateur aléatoire, dérivé de la graine et de son numéro : le résultat
+ * ne dépend donc pas du nombre de threads.
+ *
+ * @author ykonoclast
+ */
+public class BatchSimulator
+{
+
+    /**
+     * nombre de parties en dessous duquel une tâche joue ses parties
+     * elle-même au lieu de se diviser
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 4;
+
+    /**
+     * multiplicateur dispersant les graines des parties successives
+     */
+    private static final long SEED_SPREAD = 0x9E3779B97F4A7C15L;
+
+    /**
+     * pool sur lequel les parties sont jouées
+     */
+    private final ForkJoinPool m_pool;
+
+    /**
+     * stockage des parties simulées
+     */
+    private final Persistence m_persistence;
+
+    /**
+     *
+     * @param p_pool
+     * @param p_persistence
+     */
+    public BatchSimulator(ForkJoinPool p_pool, Persistence p_persistence)
+    {
+	m_pool = p_pool;
+	m_persistence = p_persistence;
+    }
+
+    /**
+     * joue un lot de parties et en cumule les statistiques
+     *
+     * @param p_scenario scénario joué par toutes les parties
+     * @param p_games nombre de parties
+     * @param p_turns nombre de tours joués par partie
+     * @param p_policy stratégie donnant les ordres des deux joueurs
+     * @param p_seed graine du lot
+     * @return les statistiques cumulées de toutes les parties
+     * @throws FileNotFoundException
+     * @throws URISyntaxException
+     * @throws ClassNotFoundException
+     * @throws SQLException
+     */
+    public SimulationStats run(String p_scenario, int p_games, int p_turns, OrderPolicy p_policy, long p_seed) throws FileNotFoundException, URISyntaxException, ClassNotFoundException, SQLException
+    {
+	if (p_games < 0 || p_turns < 1)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("BadSimulationParam", "games=" + p_games + " turns=" + p_turns, Locale.getDefault());
+	}
+	//lecture des références une fois pour toutes, sur le thread appelant : un scénario introuvable est signalé ici
+	SessionDao.getInstance().loadScenario(p_scenario, new ArrayList<>(), new ArrayList<>());
+	return m_pool.invoke(new GamesTask(p_scenario, p_turns, p_policy, p_seed, 0, p_games));
+    }
+
+    /**
+     * joue une partie complète
+     *
+     * @param p_scenario
+     * @param p_turns
+     * @param p_policy
+     * @param p_seed
+     * @param p_index numéro de la partie dans le lot
+     * @param p_stats statistiques auxquelles ajouter le résultat
+     */
+    private void playGame(String p_scenario, int p_turns, OrderPolicy p_policy, long p_seed, int p_index, SimulationStats p_stats) throws FileNotFoundException, URISyntaxException, ClassNotFoundException, SQLException
+    {
+	MemoryGameStore memory = m_persistence == Persistence.MEMORY ? new MemoryGameStore() : null;
+	GameManager game = memory != null ? new GameManager("sim-" + p_index, p_scenario, memory) : new GameManager(null, p_scenario, NullGameStore.getInstance());
+	Random random = new Random(p_seed + p_index * SEED_SPREAD);
+
+	Map<Player, List<Ship>> ships = game.getAllShips();
+	Map<Ship, MapObject.HexCoordinates> start = new IdentityHashMap<>();
+	for (List<Ship> fleet : ships.values())
+	{
+	    for (Ship ship : fleet)
+	    {
+		start.put(ship, ship.getCoordinates());
+	    }
+	}
+
+	long impulses = 0;
+	long moves = 0;
+	long turns = 0;
+	long rejected = 0;
+	GameManager.ImpulseReport report = game.startGame();
+	while (report.currentTurn <= p_turns)
+	{
+	    if (!report.mustMoveShips.isEmpty())
+	    {
+		List<Order> orders = p_policy.decide(report, ships, random);
+		try
+		{
+		    game.applyOrders(orders);
+		    for (Order order : orders)
+		    {
+			if (order.type == Order.Type.TURN)
+			{
+			    ++turns;
+			}
+			else
+			{
+			    ++moves;
+			}
+		    }
+		}
+		catch (IllegalArgumentException e)
+		{//lot illégal : ignoré, comme le ferait le serveur
+		    ++rejected;
+		}
+	    }
+	    report = game.advanceImpulse();
+	    ++impulses;
+	}
+
+	Map<Player, Integer> displacement = new EnumMap<>(Player.class);
+	for (Map.Entry<Player, List<Ship>> fleet : ships.entrySet())
+	{
+	    int distance = 0;
+	    for (Ship ship : fleet.getValue())
+	    {
+		distance += MapObject.getDistancePROVISOIRE(start.get(ship), ship.getCoordinates());
+	    }
+	    displacement.put(fleet.getKey(), distance);
+	}
+	p_stats.recordGame(impulses, moves, turns, rejected, memory != null ? memory.getEvents().size() : 0, displacement);
+    }
+
+    /**
+     * stockages possibles des parties simulées
+     */
+    public enum Persistence
+    {
+	/**
+	 * journal et mouvements conservés en mémoire le temps de la partie
+	 */
+	MEMORY,
+	/**
+	 * rien n'est conservé ni journalisé
+	 */
+	NONE
+    }
+
+    /**
+     * tâche jouant les parties d'une tranche du lot : au-delà du seuil elle se
+     * divise en deux, chaque moitié remplissant ses propres statistiques
+     * fusionnées au retour
+     */
+    private class GamesTask extends RecursiveTask<SimulationStats>
+    {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String m_scenario;
+	private final int m_turns;
+	private final OrderPolicy m_policy;
+	private final long m_seed;
+	private final int m_from;
+	private final int m_to;
+
+	/**
+	 *
+	 * @param p_scenario
+	 * @param p_turns
+	 * @param p_policy
+	 * @param p_seed
+	 * @param p_from première partie de la tranche
+	 * @param p_to partie suivant la dernière de la tranche
+	 */
+	GamesTask(String p_scenario, int p_turns, OrderPolicy p_policy, long p_seed, int p_from, int p_to)
+	{
+	    m_scenario = p_scenario;
+	    m_turns = p_turns;
+	    m_policy = p_policy;
+	    m_seed = p_seed;
+	    m_from = p_from;
+	    m_to = p_to;
+	}
+
+	@Override
+	protected SimulationStats compute()
+	{
+	    SimulationStats result;
+	    if (m_to - m_from <= SEQUENTIAL_THRESHOLD)
+	    {
+		result = new SimulationStats();
+		try
+		{
+		    for (int i = m_from; i < m_to; ++i)
+		    {
+			playGame(m_scenario, m_turns, m_policy, m_seed, i, result);
+		    }
+		}
+		catch (FileNotFoundException | URISyntaxException | ClassNotFoundException | SQLException e)
+		{//références déjà chargées par run() et stockage sans base : ne devrait pas arriver
+		    throw new IllegalStateException(e);
+		}
+	    }
+	    else
+	    {
+		int middle = (m_from + m_to) >>> 1;
+		GamesTask left = new GamesTask(m_scenario, m_turns, m_policy, m_seed, m_from, middle);
+		left.fork();
+		result = new GamesTask(m_scenario, m_turns, m_policy, m_seed, middle, m_to).compute();
+		result.merge(left.join());
+	    }
+	    return result;
+	}
+    }
+}
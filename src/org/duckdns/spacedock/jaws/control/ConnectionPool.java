@@ -0,0 +1,445 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.duckdns.spacedock.commonutils.files.GeneralFileHandler;
+
+/**
+ * pool de connexions JDBC de taille fixe : les connexions sont ouvertes à la
+ * demande puis gardées ouvertes et réutilisées, de sorte qu'un ordre SQL ne
+ * paie plus l'ouverture du fichier ni la lecture du schéma.
+ *
+ * Chaque connexion est réglée à son ouverture selon un StorageProfile et
+ * garde ses ordres préparés (voir Lease.prepare) : un ordre fréquent n'est
+ * analysé et planifié par la base qu'une fois par connexion.
+ *
+ * Une connexion est vérifiée avant d'être prêtée (remplacée si elle ne répond
+ * plus) et remise en mode auto-commit à son retour, une transaction laissée
+ * ouverte étant annulée. Une connexion qui échoue à ces contrôles est fermée
+ * et sa place libérée.
+ *
+ * @author ykonoclast
+ */
+final class ConnectionPool implements AutoCloseable
+{
+
+    /**
+     * délai accordé à la vérification d'une connexion, en secondes
+     */
+    private static final int VALIDATION_TIMEOUT = 1;
+
+    /**
+     * attente d'une connexion rendue entre deux vérifications qu'une place
+     * s'est libérée, en ns : une connexion écartée libère une place sans
+     * réveiller personne
+     */
+    private static final long WAIT_SLICE = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * URL JDBC de la base
+     */
+    private final String m_url;
+
+    /**
+     * nombre maximal de connexions ouvertes
+     */
+    private final int m_size;
+
+    /**
+     * attente maximale d'une connexion libre, en ms
+     */
+    private final long m_acquireTimeout;
+
+    /**
+     * réglages appliqués à chaque connexion ouverte
+     */
+    private final StorageProfile m_profile;
+
+    /**
+     * connexions ouvertes et disponibles, la dernière rendue en tête : la
+     * plus récemment utilisée est prêtée d'abord, avec ses ordres préparés
+     */
+    private final BlockingDeque<Pooled> m_idle;
+
+    /**
+     * nombre de connexions ouvertes, prêtées ou non
+     */
+    private final AtomicInteger m_open = new AtomicInteger(0);
+
+    /**
+     * vrai une fois le pool fermé : les connexions rendues sont alors fermées
+     */
+    private volatile boolean m_closed = false;
+
+    /**
+     *
+     * @param p_url URL JDBC de la base
+     * @param p_size nombre maximal de connexions ouvertes
+     * @param p_acquireTimeout attente maximale d'une connexion libre, en ms
+     * @param p_profile réglages appliqués à chaque connexion ouverte
+     */
+    ConnectionPool(String p_url, int p_size, long p_acquireTimeout, StorageProfile p_profile)
+    {
+	if (p_size < 1 || p_acquireTimeout < 0 || p_profile == null)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("BadPoolParam", "size=" + p_size + " timeout=" + p_acquireTimeout + " profile=" + p_profile, Locale.getDefault());
+	}
+	m_url = p_url;
+	m_size = p_size;
+	m_acquireTimeout = p_acquireTimeout;
+	m_profile = p_profile;
+	m_idle = new LinkedBlockingDeque<>(p_size);
+    }
+
+    /**
+     * emprunte une connexion : une connexion libre si possible, une nouvelle
+     * si le pool n'est pas plein, sinon on attend qu'une soit rendue
+     *
+     * @return la connexion empruntée, à rendre en fermant le bail
+     * @throws SQLException si la base est inaccessible ou qu'aucune connexion
+     * ne se libère à temps
+     */
+    Lease acquire() throws SQLException
+    {
+	if (m_closed)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").mauvaiseMethode("PoolFerme", m_url, Locale.getDefault());
+	}
+	Pooled result = m_idle.pollFirst();
+	while (result != null && !isHealthy(result))
+	{//connexion morte : on la remplace
+	    discard(result);
+	    result = m_idle.pollFirst();
+	}
+	if (result == null)
+	{
+	    result = openOrWait();
+	}
+	return new Lease(result);
+    }
+
+    /**
+     * ouvre une connexion si le pool n'est pas plein, attend sinon qu'une
+     * connexion soit rendue ou qu'une place se libère, par tranches de
+     * WAIT_SLICE
+     *
+     * @return une connexion utilisable
+     * @throws SQLException
+     */
+    private Pooled openOrWait() throws SQLException
+    {
+	Pooled result = tryOpen();
+	long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_acquireTimeout);
+	boolean expired = false;
+	while (result == null && !expired)
+	{//pool plein : on attend un retour
+	    long remaining = deadline - System.nanoTime();
+	    try
+	    {
+		result = m_idle.pollFirst(Math.max(0, Math.min(remaining, WAIT_SLICE)), TimeUnit.NANOSECONDS);
+	    }
+	    catch (InterruptedException e)
+	    {
+		Thread.currentThread().interrupt();
+		remaining = 0;
+	    }
+	    if (result != null && !isHealthy(result))
+	    {
+		discard(result);
+		result = null;
+	    }
+	    if (result == null)
+	    {
+		result = tryOpen();
+	    }
+	    expired = remaining <= 0;
+	}
+	if (result == null)
+	{
+	    throw new SQLTransientConnectionException("aucune connexion libre après " + m_acquireTimeout + "ms: " + m_url);
+	}
+	return result;
+    }
+
+    /**
+     *
+     * @return une nouvelle connexion si le pool n'est pas plein, null sinon
+     * @throws SQLException
+     */
+    private Pooled tryOpen() throws SQLException
+    {
+	Pooled result = null;
+	int open = m_open.get();
+	while (result == null && open < m_size)
+	{
+	    if (m_open.compareAndSet(open, open + 1))
+	    {
+		try
+		{
+		    result = new Pooled(openConnection());
+		}
+		catch (SQLException | RuntimeException e)
+		{
+		    m_open.decrementAndGet();
+		    throw e;
+		}
+	    }
+	    else
+	    {
+		open = m_open.get();
+	    }
+	}
+	return result;
+    }
+
+    /**
+     *
+     * @return une nouvelle connexion à la base, réglée selon le profil
+     * @throws SQLException
+     */
+    private Connection openConnection() throws SQLException
+    {
+	Connection result = DriverManager.getConnection(m_url);
+	try
+	{
+	    m_profile.apply(result);
+	}
+	catch (SQLException | RuntimeException e)
+	{
+	    result.close();
+	    throw e;
+	}
+	return result;
+    }
+
+    /**
+     * reprend une connexion prêtée
+     *
+     * @param p_conn
+     */
+    private void release(Pooled p_conn)
+    {
+	boolean reusable = !m_closed;
+	if (reusable)
+	{
+	    try
+	    {
+		if (!p_conn.m_conn.getAutoCommit())
+		{//transaction laissée ouverte par l'emprunteur : annulée
+		    p_conn.m_conn.rollback();
+		    p_conn.m_conn.setAutoCommit(true);
+		}
+	    }
+	    catch (SQLException e)
+	    {
+		reusable = false;
+	    }
+	}
+	if (!reusable || !m_idle.offerFirst(p_conn))
+	{
+	    discard(p_conn);
+	}
+	else if (m_closed)
+	{//fermeture survenue pendant le retour : la connexion ne doit pas rester ouverte
+	    closeIdle();
+	}
+    }
+
+    /**
+     *
+     * @param p_conn
+     * @return vrai si la connexion est ouverte et répond
+     */
+    private static boolean isHealthy(Pooled p_conn)
+    {
+	boolean result;
+	try
+	{
+	    result = p_conn.m_conn.isValid(VALIDATION_TIMEOUT);
+	}
+	catch (SQLException e)
+	{
+	    result = false;
+	}
+	return result;
+    }
+
+    /**
+     * ferme une connexion et ses ordres préparés, et libère sa place dans le
+     * pool
+     *
+     * @param p_conn
+     */
+    private void discard(Pooled p_conn)
+    {
+	m_open.decrementAndGet();
+	try
+	{
+	    for (PreparedStatement stmt : p_conn.m_statements.values())
+	    {
+		stmt.close();
+	    }
+	    p_conn.m_conn.close();
+	}
+	catch (SQLException e)
+	{
+	    //connexion déjà inutilisable : rien de plus à faire
+	}
+    }
+
+    /**
+     * ferme toutes les connexions libres
+     */
+    private void closeIdle()
+    {
+	Pooled conn = m_idle.pollFirst();
+	while (conn != null)
+	{
+	    discard(conn);
+	    conn = m_idle.pollFirst();
+	}
+    }
+
+    /**
+     *
+     * @return le nombre de connexions ouvertes, prêtées ou non
+     */
+    int getOpenCount()
+    {
+	return m_open.get();
+    }
+
+    /**
+     * ferme le pool : les connexions libres sont fermées tout de suite, celles
+     * encore prêtées le seront à leur retour
+     */
+    @Override
+    public void close()
+    {
+	m_closed = true;
+	closeIdle();
+    }
+
+    /**
+     * emprunt d'une connexion, à utiliser dans un try-with-resources : la
+     * fermeture du bail rend la connexion au pool sans la fermer
+     */
+    final class Lease implements AutoCloseable
+    {
+
+	/**
+	 * connexion empruntée, null une fois rendue
+	 */
+	private Pooled m_conn;
+
+	/**
+	 *
+	 * @param p_conn
+	 */
+	private Lease(Pooled p_conn)
+	{
+	    m_conn = p_conn;
+	}
+
+	/**
+	 *
+	 * @return la connexion empruntée, à ne pas fermer ni conserver
+	 */
+	Connection get()
+	{
+	    return m_conn.m_conn;
+	}
+
+	/**
+	 * ordre préparé gardé par la connexion : préparé au premier appel pour
+	 * ce texte SQL, réutilisé ensuite (paramétres et lot remis à zéro)
+	 *
+	 * @param p_sql
+	 * @return l'ordre préparé, à ne pas fermer ni conserver au delà du
+	 * bail
+	 * @throws SQLException
+	 */
+	PreparedStatement prepare(String p_sql) throws SQLException
+	{
+	    PreparedStatement result = m_conn.m_statements.get(p_sql);
+	    if (result == null)
+	    {
+		result = m_conn.m_conn.prepareStatement(p_sql);
+		m_conn.m_statements.put(p_sql, result);
+	    }
+	    else
+	    {
+		result.clearParameters();
+		result.clearBatch();
+	    }
+	    return result;
+	}
+
+	/**
+	 * rend la connexion au pool, une seule fois
+	 */
+	@Override
+	public void close()
+	{
+	    if (m_conn != null)
+	    {
+		Pooled conn = m_conn;
+		m_conn = null;
+		release(conn);
+	    }
+	}
+    }
+
+    /**
+     * connexion ouverte et ses ordres préparés, utilisés par un seul
+     * emprunteur à la fois
+     */
+    private static final class Pooled
+    {
+
+	/**
+	 * connexion JDBC
+	 */
+	private final Connection m_conn;
+
+	/**
+	 * ordres préparés par texte SQL
+	 */
+	private final Map<String, PreparedStatement> m_statements = new HashMap<>();
+
+	/**
+	 *
+	 * @param p_conn
+	 */
+	private Pooled(Connection p_conn)
+	{
+	    m_conn = p_conn;
+	}
+    }
+}
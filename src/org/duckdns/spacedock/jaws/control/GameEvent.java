@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import org.duckdns.spacedock.jaws.model.MapObject;
+
+/**
+ * entrée du journal d'une partie : une commande ayant modifié son état, dans
+ * l'ordre où elle a été exécutée. Le démarrage ne dépendant que du scénario,
+ * rejouer les événements dans l'ordre depuis le début (ou depuis un
+ * instantané) reconstruit la partie à l'identique.
+ *
+ * @author ykonoclast
+ */
+final class GameEvent
+{
+
+    /**
+     * numéro d'ordre de l'événement dans la partie, à partir de 1
+     */
+    final long seq;
+
+    /**
+     * tour de jeu au moment de l'événement
+     */
+    final int turn;
+
+    /**
+     * impulsion au moment de l'événement
+     */
+    final GameManager.Impulse impulse;
+
+    /**
+     * nature de la commande
+     */
+    final Type type;
+
+    /**
+     * rang du vaisseau concerné dans le scénario (stable d'une exécution à
+     * l'autre, contrairement à son identifiant), -1 si aucun
+     */
+    final int ship;
+
+    /**
+     * nouvelle orientation pour un virage, null sinon
+     */
+    final MapObject.Orientation orientation;
+
+    /**
+     *
+     * @param p_seq
+     * @param p_turn
+     * @param p_impulse
+     * @param p_type
+     * @param p_ship
+     * @param p_orientation
+     */
+    GameEvent(long p_seq, int p_turn, GameManager.Impulse p_impulse, Type p_type, int p_ship, MapObject.Orientation p_orientation)
+    {
+	seq = p_seq;
+	turn = p_turn;
+	impulse = p_impulse;
+	type = p_type;
+	ship = p_ship;
+	orientation = p_orientation;
+    }
+
+    /**
+     * types de commandes journalisées
+     */
+    enum Type
+    {
+	MOVE, TURN, ADVANCE
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import org.duckdns.spacedock.jaws.model.MapObject;
+
+/**
+ * observateur des changements d'une partie, appelé de façon synchrone par le
+ * GameManager : les implémentations ne doivent donc jamais bloquer. Une
+ * exception levée par un observateur est journalisée puis ignorée.
+ *
+ * @author ykonoclast
+ */
+public interface GameListener
+{
+
+    /**
+     * appelé à chaque nouveau rapport d'impulsion : changement d'impulsion ou
+     * de joueur, ou mouvement modifiant la liste des vaisseaux devant bouger
+     *
+     * @param p_report
+     */
+    void impulseChanged(GameManager.ImpulseReport p_report);
+
+    /**
+     * appelé à chaque fois qu'un vaisseau change de position
+     *
+     * @param p_shipId
+     * @param p_coordinates nouvelle position du vaisseau
+     */
+    void shipMoved(int p_shipId, MapObject.HexCoordinates p_coordinates);
+}
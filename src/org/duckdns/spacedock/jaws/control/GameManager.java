@@ -17,12 +17,28 @@
 package org.duckdns.spacedock.jaws.control;
 
 import java.io.FileNotFoundException;
+import java.io.StringReader;
 import java.net.URISyntaxException;
 import java.sql.SQLException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import org.duckdns.spacedock.commonutils.files.GeneralFileHandler;
+import org.duckdns.spacedock.jaws.model.HexSpatialIndex;
 import org.duckdns.spacedock.jaws.model.MapObject;
 import org.duckdns.spacedock.jaws.model.Ship;
 import org.duckdns.spacedock.jaws.model.Ship.PowerCurve;
@@ -38,22 +54,70 @@ import org.duckdns.spacedock.jaws.model.Ship.PowerCurve;
 public class GameManager
 {
 
+    private static final Logger LOG = Logger.getLogger(GameManager.class.getName());
+
     /**
      * ensemble des vaisseaux en jeu, classés par joueur
      */
     private final Map<Player, List<Ship>> m_listShips = new EnumMap<>(Player.class);
 
     /**
-     * liste des identifiants des vaisseaux pouvant agir durant le tour
-     * d'impulsion en cours
+     * index des vaisseaux de la partie : le vaisseau d'identifiant id est à la
+     * case id - m_firstId. Les identifiants d'une même partie sont attribués à
+     * la suite lors du chargement du scénario, le tableau est donc dense (une
+     * case vide n'apparaît que si une autre partie chargeait en même temps)
+     */
+    private final Ship[] m_shipsByIndex;
+
+    /**
+     * plus petit identifiant de vaisseau de la partie
+     */
+    private final int m_firstId;
+
+    /**
+     * index spatial des vaisseaux de la partie, tenu à jour par les vaisseaux
+     * eux-mêmes à chaque mouvement
+     */
+    private final HexSpatialIndex m_spatialIndex = new HexSpatialIndex();
+
+    /**
+     * Power Curves de chaque flotte mises à plat en tableaux primitifs, pour
+     * classer toute une flotte en début d'impulsion sans déréférencement
+     */
+    private final Map<Player, FleetCurves> m_fleetCurves = new EnumMap<>(Player.class);
+
+    /**
+     * vaisseaux pouvant agir durant le tour d'impulsion en cours, indexés comme
+     * m_shipsByIndex
+     */
+    private final BitSet m_canActShips = new BitSet();
+
+    /**
+     * vaisseaux devant bouger durant le tour d'impulsion en cours, indexés
+     * comme m_shipsByIndex
+     */
+    private final BitSet m_mustMoveShips = new BitSet();
+
+    /**
+     * dernier rapport publié, instantané immuable : volatile afin que
+     * n'importe quel thread puisse le lire sans verrou
+     */
+    private volatile ImpulseReport m_lastReport;
+
+    /**
+     * observateurs de la partie (clients WebSocket notamment), la liste est
+     * copiée à chaque modification : parcours sans verrou et sans risque de
+     * modification concurrente
      */
-    private final ArrayList<Integer> m_canActShips = new ArrayList<>();
+    private final List<GameListener> m_listeners = new CopyOnWriteArrayList<>();
 
     /**
-     * liste des identifiants des vaisseaux devant bouger durant le tour
-     * d'impulsion en cours
+     * version de l'état de la partie, strictement croissante : incrémentée à
+     * chaque changement visible (démarrage, mouvement, virage, changement
+     * d'impulsion). Permet à la partie web de savoir sans rien recalculer si
+     * un client a déjà la dernière version du plateau.
      */
-    private final ArrayList<Integer> m_mustMoveShips = new ArrayList<>();
+    private final AtomicLong m_stateVersion = new AtomicLong();
 
     /**
      * DAO d'accès aux éléments de "partie" : scénarios, sauvegarde du jeu en
@@ -61,6 +125,49 @@ public class GameManager
      */
     private final SessionDao m_sessionDao;
 
+    /**
+     * destination des mouvements et du journal : la base SQLite pour les
+     * parties servies, la mémoire ou rien du tout pour les simulations
+     */
+    private final GameStore m_store;
+
+    /**
+     * déposant des mouvements et des événements de cette partie, recevant les
+     * erreurs de leur écriture différée
+     */
+    private final MoveJournal.Owner m_moveOwner = new MoveJournal.Owner();
+
+    /**
+     * identifiant sous lequel la partie est journalisée, null si elle ne l'est
+     * pas
+     */
+    private final String m_gameId;
+
+    /**
+     * vaisseaux classés par rang dans le scénario : flotte Talon puis flotte
+     * Terrienne, dans l'ordre du fichier. Contrairement à l'identifiant, le
+     * rang ne change pas d'une exécution à l'autre : c'est lui qui est
+     * journalisé
+     */
+    private final Ship[] m_shipsByRank;
+
+    /**
+     * rang de chaque vaisseau, indexé comme m_shipsByIndex
+     */
+    private final int[] m_rankByIndex;
+
+    /**
+     * numéro du dernier événement journalisé (ou rejoué)
+     */
+    private long m_eventSeq = 0;
+
+    /**
+     * vrai pendant la reconstruction de la partie depuis son journal : les
+     * commandes rejouées ne sont alors ni journalisées ni sauvegardées une
+     * seconde fois
+     */
+    private boolean m_replaying = false;
+
     /**
      * impulse actuelle
      */
@@ -101,6 +208,59 @@ public class GameManager
      */
     public GameManager(String p_Scenario) throws FileNotFoundException, URISyntaxException, ClassNotFoundException, SQLException
     {
+	this(null, p_Scenario, SessionDao.getInstance(), false);
+    }
+
+    /**
+     * constructeur d'une partie journalisée : chaque commande modifiant son
+     * état est ajoutée au journal, de sorte que la partie puisse être
+     * reconstruite par restore(). Un éventuel journal laissé par une ancienne
+     * partie de même identifiant est effacé.
+     *
+     * @param p_gameId identifiant de la partie
+     * @param p_scenario le scénario a charger depuis les fichiers JSON de
+     * référence
+     * @throws FileNotFoundException
+     * @throws URISyntaxException
+     * @throws ClassNotFoundException
+     * @throws SQLException
+     */
+    public GameManager(String p_gameId, String p_scenario) throws FileNotFoundException, URISyntaxException, ClassNotFoundException, SQLException
+    {
+	this(p_gameId, p_scenario, SessionDao.getInstance(), true);
+    }
+
+    /**
+     * constructeur d'une partie écrivant dans un stockage choisi, le
+     * scénario et la table des impulsions étant toujours lus via SessionDao
+     *
+     * @param p_gameId identifiant de journalisation, null pour une partie non
+     * journalisée
+     * @param p_scenario
+     * @param p_store
+     * @throws FileNotFoundException
+     * @throws URISyntaxException
+     * @throws ClassNotFoundException
+     * @throws SQLException
+     */
+    GameManager(String p_gameId, String p_scenario, GameStore p_store) throws FileNotFoundException, URISyntaxException, ClassNotFoundException, SQLException
+    {
+	this(p_gameId, p_scenario, p_store, true);
+    }
+
+    /**
+     *
+     * @param p_gameId identifiant de journalisation, null pour une partie non
+     * journalisée
+     * @param p_Scenario
+     * @param p_store
+     * @param p_register faux lors d'une reconstruction : le journal existant
+     * est conservé
+     */
+    private GameManager(String p_gameId, String p_Scenario, GameStore p_store, boolean p_register) throws FileNotFoundException, URISyntaxException, ClassNotFoundException, SQLException
+    {
+	m_gameId = p_gameId;
+	m_store = p_store;
 	m_sessionDao = SessionDao.getInstance();//on rebalance pas mal d'exceptions depuis ici, voir si on les traite à ce niveau (avec log simple du coup) où dams la partie web (avec un message d'erreur à afficher?)
 	List<Ship> listTalonShips = new ArrayList<>();
 	List<Ship> listTerranShips = new ArrayList<>();
@@ -110,6 +270,47 @@ public class GameManager
 	m_listShips.put(Player.TALON, listTalonShips);
 	m_listShips.put(Player.TERRAN, listTerranShips);
 
+	//construction de l'index des vaisseaux par identifiant
+	int firstId = Integer.MAX_VALUE;
+	int lastId = Integer.MIN_VALUE;
+	for (List<Ship> ships : m_listShips.values())
+	{
+	    for (Ship ship : ships)
+	    {
+		firstId = Math.min(firstId, ship.getId());
+		lastId = Math.max(lastId, ship.getId());
+	    }
+	}
+	m_firstId = firstId <= lastId ? firstId : 0;
+	m_shipsByIndex = new Ship[firstId <= lastId ? lastId - firstId + 1 : 0];
+	for (List<Ship> ships : m_listShips.values())
+	{
+	    for (Ship ship : ships)
+	    {
+		m_shipsByIndex[ship.getId() - m_firstId] = ship;
+		m_spatialIndex.add(ship);
+	    }
+	}
+	for (Map.Entry<Player, List<Ship>> fleet : m_listShips.entrySet())
+	{
+	    m_fleetCurves.put(fleet.getKey(), new FleetCurves(fleet.getValue(), m_firstId));
+	}
+
+	//rangs des vaisseaux, seule référence stable pour le journal
+	List<Ship> ranked = new ArrayList<>(listTalonShips);
+	ranked.addAll(listTerranShips);
+	m_shipsByRank = ranked.toArray(new Ship[ranked.size()]);
+	m_rankByIndex = new int[m_shipsByIndex.length];
+	for (int i = 0; i < m_shipsByRank.length; ++i)
+	{
+	    m_rankByIndex[m_shipsByRank[i].getId() - m_firstId] = i;
+	}
+
+	if (p_gameId != null && p_register)
+	{
+	    m_store.registerGame(p_gameId, p_Scenario);
+	}
+
 	m_initHolder = Player.TALON;//par défaut au début de la plupart des scénarii
     }
 
@@ -121,36 +322,59 @@ public class GameManager
 	    m_firstPlayerTurn = true;
 	    m_currentPlayer = m_initHolder;//défini dans le constructeur par le scénario
 	    m_gameStarted = true;
+	    m_stateVersion.incrementAndGet();
 	}
 	return makeImpulseReport();
     }
 
-    public ImpulseReport advanceImpulse()
+    public ImpulseReport advanceImpulse() throws SQLException
     {
 	//TODO vérifier que tous les mouvements ont été exécutés
 	//TODO tracker où l'on en est du phasage interne au tour : actions, mouvements, tirs sauf pour la power phase
 	//TODO pour tous les ordres vérfiier que le phasing est conforme
 	//TODO tester le passage des tours : pas fait pour l'instant
+	long start = System.nanoTime();
 	ImpulseReport result;
-
-	if (m_gameStarted)
+	try
 	{
-	    if (!m_firstPlayerTurn)
-	    {//on était au tour du second joueur, il faut donc changer l'impulsion en plus de changer de joueur
-		m_currentImpulse = m_currentImpulse.next();
-		if (m_currentImpulse.equals(Impulse.A))
-		{
-		    m_currentTurn++;//on est en impulsion A : on change donc de tour
+	    if (m_gameStarted)
+	    {
+		if (!m_replaying)
+		{//les mouvements de l'impulsion qui s'achève sont en base avant de passer à la suite
+		    m_store.flush(m_moveOwner);
 		}
-	    }
-	    m_firstPlayerTurn = !m_firstPlayerTurn;
-	    m_currentPlayer = m_currentPlayer.next();//TODO à terme il faudra gérer le changement d'initiative par les actions
+		journal(Collections.singletonList(makeEvent(0, GameEvent.Type.ADVANCE, -1, null)));
+		if (!m_firstPlayerTurn)
+		{//on était au tour du second joueur, il faut donc changer l'impulsion en plus de changer de joueur
+		    m_currentImpulse = m_currentImpulse.next();
+		    if (m_currentImpulse.equals(Impulse.A))
+		    {
+			m_currentTurn++;//on est en impulsion A : on change donc de tour
+		    }
+		}
+		m_firstPlayerTurn = !m_firstPlayerTurn;
+		m_currentPlayer = m_currentPlayer.next();//TODO à terme il faudra gérer le changement d'initiative par les actions
+		m_stateVersion.incrementAndGet();
 
-	    result = makeImpulseReport();
+		result = makeImpulseReport();
+		if (m_gameId != null && !m_replaying && m_firstPlayerTurn && m_currentImpulse == Impulse.A && (m_currentTurn - 1) % m_sessionDao.getSnapshotInterval() == 0)
+		{//début d'un tour multiple de l'intervalle : instantané, la reconstruction n'aura à rejouer que les événements suivants
+		    m_store.storeSnapshot(m_gameId, m_eventSeq, makeSnapshot());
+		}
+	    }
+	    else
+	    {//afin de ne pas se retrouver dans un état indéfini où le code appelant ferait avancer l'init sans l'avoir initialisée
+		result = startGame();
+	    }
 	}
-	else
-	{//afin de ne pas se retrouver dans un état indéfini où le code appelant ferait avancer l'init sans l'avoir initialisée
-	    result = startGame();
+	catch (SQLException e)
+	{
+	    Metrics.ENGINE_ADVANCE.recordError();
+	    throw e;
+	}
+	finally
+	{
+	    Metrics.ENGINE_ADVANCE.recordSince(start);
 	}
 	return result;
     }
@@ -169,35 +393,96 @@ public class GameManager
 
 	if (m_currentImpulse != Impulse.POWER)
 	{
-	    m_listShips.get(m_currentPlayer).forEach((ship) ->
+	    long mask = m_sessionDao.getCurveMask(m_currentImpulse);
+	    FleetCurves fleet = m_fleetCurves.get(m_currentPlayer);
+	    for (int i = 0; i < fleet.indexes.length; ++i)
 	    {
-		PowerCurve curve = ship.getPowerCurve();
-		if (m_sessionDao.getCurveByImpulse(m_currentImpulse).contains(curve.power))
+		if (SessionDao.isInCurveMask(mask, fleet.powers[i]))
 		{//ce vaisseau peut agir durant ce tour
-		    m_canActShips.add(ship.getId());
+		    m_canActShips.set(fleet.indexes[i]);
 		}
-		if (m_sessionDao.getCurveByImpulse(m_currentImpulse).contains(curve.speed))
+		if (SessionDao.isInCurveMask(mask, fleet.speeds[i]))
 		{
 		    //ce vaisseau doit bouger durant ce tour
-		    m_mustMoveShips.add(ship.getId());
+		    m_mustMoveShips.set(fleet.indexes[i]);
 		}
-	    });
+	    }
 	}
 	else
 	{
 	    //TODO traiter ce cas
 	}
-	return updateImpulseReport();
+	return fireImpulseChanged(updateImpulseReport());
     }
 
     /**
+     * prend un instantané de la situation actuelle et le publie comme dernier
+     * rapport, sans modification des listes de vaisseaux actifs
      *
-     * @return la mise à jour du rapport sans modification des listes de
-     * vaisseaux actifs
+     * @return le nouveau rapport
      */
     private ImpulseReport updateImpulseReport()
     {
-	return new ImpulseReport(m_currentPlayer.toString(), m_canActShips, m_mustMoveShips, m_currentImpulse.toString(), m_currentTurn);
+	ImpulseReport result = new ImpulseReport(m_currentPlayer.toString(), toIdArray(m_canActShips), toIdArray(m_mustMoveShips), m_currentImpulse.toString(), m_currentTurn);
+	m_lastReport = result;
+	return result;
+    }
+
+    /**
+     *
+     * @param p_set ensemble d'indices de vaisseaux
+     * @return les identifiants correspondants, par ordre croissant
+     */
+    private int[] toIdArray(BitSet p_set)
+    {
+	int[] result = new int[p_set.cardinality()];
+	int pos = 0;
+	for (int i = p_set.nextSetBit(0); i >= 0; i = p_set.nextSetBit(i + 1))
+	{
+	    result[pos++] = i + m_firstId;
+	}
+	return result;
+    }
+
+    /**
+     *
+     * @return le rapport décrivant la situation actuelle, sans rien modifier à
+     * la partie (celle-ci est démarrée si elle ne l'était pas). Une fois la
+     * partie démarrée il s'agit du dernier instantané publié : lecture sans
+     * verrou ni recalcul
+     */
+    public ImpulseReport getImpulseReport()
+    {
+	ImpulseReport result = m_lastReport;
+	if (result == null)
+	{
+	    result = startGame();
+	}
+	return result;
+    }
+
+    /**
+     * garantit que les mouvements et événements de la partie sauvegardés
+     * jusqu'ici sont écrits, avant qu'elle ne soit retirée de la mémoire
+     *
+     * @throws SQLException si l'une de ses écritures a échoué
+     */
+    public void flush() throws SQLException
+    {
+	if (!m_replaying)
+	{
+	    m_store.flush(m_moveOwner);
+	}
+    }
+
+    /**
+     *
+     * @return la version actuelle de l'état de la partie, elle ne fait que
+     * croître
+     */
+    public long getStateVersion()
+    {
+	return m_stateVersion.get();
     }
 
     /**
@@ -207,14 +492,33 @@ public class GameManager
      */
     public ImpulseReport moveShipStraight(int p_shipId) throws SQLException
     {
-	Ship ship = getShipToMove(p_shipId);
-	if (ship != null)
+	long start = System.nanoTime();
+	ImpulseReport result;
+	try
+	{
+	    Ship ship = getShipToMove(p_shipId);
+	    if (ship != null)
+	    {
+		journal(Collections.singletonList(makeEvent(0, GameEvent.Type.MOVE, rankOf(ship), null)));
+		ship.moveStraight();
+		finishMove(ship);
+		result = fireImpulseChanged(updateImpulseReport());
+	    }
+	    else
+	    {
+		result = m_lastReport;//rien n'a changé
+	    }
+	}
+	catch (SQLException e)
 	{
-	    ship.moveStraight();
-	    finishMove(ship);
+	    Metrics.ENGINE_MOVE.recordError();
+	    throw e;
 	}
-
-	return updateImpulseReport();
+	finally
+	{
+	    Metrics.ENGINE_MOVE.recordSince(start);
+	}
+	return result;
     }
 
     /**
@@ -225,16 +529,104 @@ public class GameManager
      */
     public ImpulseReport turnShip(int p_shipId, MapObject.Orientation p_orientation) throws SQLException//TODO : remplacer parun paramétre string pour indépendance du métier peut être
     {//TODO voir pour gérer la SQLException : ici en log ou plus haut avec un message d'erreur
-	Ship ship = getShipToMove(p_shipId);
-	if (ship != null)
+	long start = System.nanoTime();
+	ImpulseReport result;
+	try
 	{
-	    if (ship.canTurn(p_orientation))
+	    Ship ship = getShipToMove(p_shipId);
+	    if (ship != null && ship.canTurn(p_orientation))
 	    {
+		journal(Collections.singletonList(makeEvent(0, GameEvent.Type.TURN, rankOf(ship), p_orientation)));
 		ship.turn(p_orientation);
 		finishMove(ship);
+		result = fireImpulseChanged(updateImpulseReport());
+	    }
+	    else
+	    {
+		result = m_lastReport;//rien n'a changé
 	    }
 	}
-	return updateImpulseReport();
+	catch (SQLException e)
+	{
+	    Metrics.ENGINE_TURN.recordError();
+	    throw e;
+	}
+	finally
+	{
+	    Metrics.ENGINE_TURN.recordSince(start);
+	}
+	return result;
+    }
+
+    /**
+     * applique d'un coup une série d'ordres de l'impulsion en cours. Tous les
+     * ordres sont validés avant que le moindre ne soit exécuté : si l'un d'eux
+     * est illégal (vaisseau ne devant pas bouger, vaisseau cité deux fois,
+     * virage interdit) aucun n'est appliqué. Les mouvements sont sauvegardés
+     * en une seule transaction et un seul rapport est produit.
+     *
+     * @param p_orders
+     * @return le rapport d'impulsion après application de tous les ordres
+     * @throws SQLException
+     * @throws IllegalArgumentException si l'un des ordres est illégal
+     */
+    public ImpulseReport applyOrders(List<Order> p_orders) throws SQLException
+    {
+	//validation de l'ensemble avant toute modification
+	List<Ship> ships = new ArrayList<>(p_orders.size());
+	BitSet seen = new BitSet(m_shipsByIndex.length);
+	for (Order order : p_orders)
+	{
+	    Ship ship = getShipToMove(order.shipId);
+	    if (ship == null || seen.get(order.shipId - m_firstId) || (order.type == Order.Type.TURN && (order.orientation == null || !ship.canTurn(order.orientation))))
+	    {
+		GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("IllegalOrder", order.toString(), Locale.getDefault());
+	    }
+	    seen.set(order.shipId - m_firstId);
+	    ships.add(ship);
+	}
+
+	ImpulseReport result;
+	if (ships.isEmpty())
+	{
+	    result = m_lastReport;//rien n'a changé
+	}
+	else
+	{
+	    //journalisation du lot en une seule transaction, avant application
+	    List<GameEvent> events = new ArrayList<>(ships.size());
+	    for (int i = 0; i < ships.size(); ++i)
+	    {
+		Order order = p_orders.get(i);
+		events.add(makeEvent(i, order.type == Order.Type.TURN ? GameEvent.Type.TURN : GameEvent.Type.MOVE, rankOf(ships.get(i)), order.type == Order.Type.TURN ? order.orientation : null));
+	    }
+	    journal(events);
+
+	    //application en une passe
+	    for (int i = 0; i < ships.size(); ++i)
+	    {
+		Ship ship = ships.get(i);
+		Order order = p_orders.get(i);
+		if (order.type == Order.Type.TURN)
+		{
+		    ship.turn(order.orientation);
+		}
+		else
+		{
+		    ship.moveStraight();
+		}
+		markMoved(ship);
+	    }
+
+	    //sauvegarde en une seule transaction, puis notification
+	    m_store.storeMoves(m_moveOwner, ships, m_currentTurn, m_currentImpulse);
+	    for (Ship ship : ships)
+	    {
+		fireShipMoved(ship);
+	    }
+	    result = fireImpulseChanged(updateImpulseReport());
+	}
+	return result;
     }
 
     /**
@@ -247,24 +639,291 @@ public class GameManager
     private Ship getShipToMove(int p_shipId)
     {
 	Ship result = null;
-	if (m_mustMoveShips.contains(p_shipId))
+	int index = p_shipId - m_firstId;
+	if (index >= 0 && index < m_shipsByIndex.length && m_mustMoveShips.get(index))
+	{//seuls les vaisseaux du joueur courant figurent dans m_mustMoveShips
+	    result = m_shipsByIndex[index];
+	}//TODO faire quelque sinon ou juste ignorer l'ordre illégal?
+	return result;
+    }
+
+    private void finishMove(Ship p_ship) throws SQLException
+    {
+	markMoved(p_ship);
+	if (!m_replaying)
+	{//lors d'un rejeu le mouvement est déjà en base
+	    m_store.storeMove(m_moveOwner, p_ship.getId(), m_currentTurn, m_currentImpulse, p_ship.getCoordinates());//TODO à tester : est-ce que tout est bien sauvegardé?
+	}
+	fireShipMoved(p_ship);
+    }
+
+    /**
+     *
+     * @param p_ship
+     * @return le rang du vaisseau dans le scénario
+     */
+    private int rankOf(Ship p_ship)
+    {
+	return m_rankByIndex[p_ship.getId() - m_firstId];
+    }
+
+    /**
+     *
+     * @param p_offset position de l'événement dans le lot en cours de
+     * journalisation
+     * @param p_type
+     * @param p_rank rang du vaisseau concerné, -1 si aucun
+     * @param p_orientation
+     * @return un événement décrivant une commande sur l'impulsion en cours
+     */
+    private GameEvent makeEvent(int p_offset, GameEvent.Type p_type, int p_rank, MapObject.Orientation p_orientation)
+    {
+	return new GameEvent(m_eventSeq + 1 + p_offset, m_currentTurn, m_currentImpulse, p_type, p_rank, p_orientation);
+    }
+
+    /**
+     * ajoute des événements au journal, avant que les commandes
+     * correspondantes ne soient appliquées. Leur écriture suit la politique
+     * de durabilité des mouvements : attendue avec MOVE, la partie restant
+     * inchangée si elle échoue, différée sinon. L'échec d'une écriture
+     * différée est relevé ici, avant toute modification, plutôt qu'au dépôt
+     * suivant qui interviendrait une fois la commande appliquée
+     *
+     * @param p_events
+     * @throws SQLException
+     */
+    private void journal(List<GameEvent> p_events) throws SQLException
+    {
+	m_moveOwner.throwFailure();
+	if (m_gameId != null && !m_replaying)
+	{
+	    m_store.appendEvents(m_moveOwner, m_gameId, p_events);
+	}
+	m_eventSeq += p_events.size();
+    }
+
+    /**
+     *
+     * @return l'état de la partie sérialisé en JSON : position dans le tour et
+     * coordonnées des vaisseaux par rang. Les listes de vaisseaux actifs n'y
+     * figurent pas : l'instantané est pris en début d'impulsion, elles se
+     * recalculent
+     */
+    private String makeSnapshot()
+    {
+	JsonArrayBuilder ships = Json.createArrayBuilder();
+	for (Ship ship : m_shipsByRank)
+	{
+	    MapObject.HexCoordinates coordinates = ship.getCoordinates();
+	    ships.add(Json.createArrayBuilder().add(coordinates.posL).add(coordinates.posC).add(coordinates.orientation.name()));
+	}
+	return Json.createObjectBuilder()
+		.add("turn", m_currentTurn)
+		.add("impulse", m_currentImpulse.name())
+		.add("firstPlayerTurn", m_firstPlayerTurn)
+		.add("initHolder", m_initHolder.name())
+		.add("currentPlayer", m_currentPlayer.name())
+		.add("ships", ships)
+		.build().toString();
+    }
+
+    /**
+     * remet la partie dans l'état décrit par un instantané
+     *
+     * @param p_snapshot
+     */
+    private void applySnapshot(SessionDao.Snapshot p_snapshot)
+    {
+	JsonObject state = Json.createReader(new StringReader(p_snapshot.state)).readObject();
+	JsonArray ships = state.getJsonArray("ships");
+	if (ships.size() != m_shipsByRank.length)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("CorruptGameLog", m_gameId + " : instantané " + p_snapshot.seq, Locale.getDefault());
+	}
+	for (int i = 0; i < m_shipsByRank.length; ++i)
+	{
+	    JsonArray ship = ships.getJsonArray(i);
+	    m_shipsByRank[i].restoreCoordinates(new MapObject.HexCoordinates(ship.getInt(0), ship.getInt(1), MapObject.Orientation.valueOf(ship.getString(2))));
+	}
+	m_currentTurn = state.getInt("turn");
+	m_currentImpulse = Impulse.valueOf(state.getString("impulse"));
+	m_firstPlayerTurn = state.getBoolean("firstPlayerTurn");
+	m_initHolder = Player.valueOf(state.getString("initHolder"));
+	m_currentPlayer = Player.valueOf(state.getString("currentPlayer"));
+	m_gameStarted = true;
+	m_eventSeq = p_snapshot.seq;
+	m_stateVersion.incrementAndGet();
+	makeImpulseReport();
+    }
+
+    /**
+     * rejoue un événement du journal en repassant par la commande d'origine,
+     * après avoir vérifié qu'il s'enchaîne bien sur l'état actuel
+     *
+     * @param p_event
+     * @throws SQLException
+     */
+    private void replay(GameEvent p_event) throws SQLException
+    {
+	boolean hasShip = p_event.type != GameEvent.Type.ADVANCE;
+	if (p_event.seq != m_eventSeq + 1 || p_event.turn != m_currentTurn || p_event.impulse != m_currentImpulse || (hasShip && (p_event.ship < 0 || p_event.ship >= m_shipsByRank.length)))
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("CorruptGameLog", m_gameId + " : événement " + p_event.seq, Locale.getDefault());
+	}
+	switch (p_event.type)
+	{
+	    case MOVE:
+		moveShipStraight(m_shipsByRank[p_event.ship].getId());
+		break;
+	    case TURN:
+		turnShip(m_shipsByRank[p_event.ship].getId(), p_event.orientation);
+		break;
+	    default:
+		advanceImpulse();
+		break;
+	}
+	if (m_eventSeq != p_event.seq)
+	{//la commande a été refusée : le journal ne correspond pas à la partie
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("CorruptGameLog", m_gameId + " : événement " + p_event.seq, Locale.getDefault());
+	}
+    }
+
+    /**
+     * reconstruit une partie journalisée : chargement de son scénario, puis
+     * application du dernier instantané et rejeu des seuls événements
+     * postérieurs
+     *
+     * @param p_gameId
+     * @return la partie dans l'état qui suivait sa dernière commande
+     * journalisée, null si aucune partie n'est enregistrée sous cet
+     * identifiant
+     * @throws FileNotFoundException
+     * @throws URISyntaxException
+     * @throws ClassNotFoundException
+     * @throws SQLException
+     */
+    static GameManager restore(String p_gameId) throws FileNotFoundException, URISyntaxException, ClassNotFoundException, SQLException
+    {
+	GameManager result = null;
+	SessionDao dao = SessionDao.getInstance();
+	String scenario = dao.loadGameScenario(p_gameId);
+	if (scenario != null)
+	{
+	    result = new GameManager(p_gameId, scenario, dao, false);
+	    result.m_replaying = true;
+	    SessionDao.Snapshot snapshot = dao.loadLatestSnapshot(p_gameId);
+	    if (snapshot != null)
+	    {
+		result.applySnapshot(snapshot);
+	    }
+	    else
+	    {//le démarrage ne dépend que du scénario, il n'est pas journalisé
+		result.startGame();
+	    }
+	    for (GameEvent event : dao.loadEvents(p_gameId, result.m_eventSeq))
+	    {
+		result.replay(event);
+	    }
+	    result.m_replaying = false;
+	}
+	return result;
+    }
+
+    /**
+     * retire un vaisseau qui vient de bouger de la liste de ceux devant bouger
+     *
+     * @param p_ship
+     */
+    private void markMoved(Ship p_ship)
+    {
+	m_mustMoveShips.clear(p_ship.getId() - m_firstId);//le vaisseau ne peut plus bouger
+	m_stateVersion.incrementAndGet();
+    }
+
+    /**
+     * prévient les observateurs du déplacement d'un vaisseau. La commande est
+     * déjà appliquée et journalisée : un observateur défaillant est signalé
+     * dans le log sans l'interrompre ni priver les suivants de la nouvelle
+     *
+     * @param p_ship
+     */
+    private void fireShipMoved(Ship p_ship)
+    {
+	if (!m_listeners.isEmpty())
 	{
-	    for (Ship ship : m_listShips.get(m_currentPlayer))
+	    MapObject.HexCoordinates coordinates = p_ship.getCoordinates();
+	    for (GameListener listener : m_listeners)
 	    {
-		if (ship.getId() == p_shipId)
+		try
+		{
+		    listener.shipMoved(p_ship.getId(), coordinates);
+		}
+		catch (RuntimeException e)
 		{
-		    result = ship;
+		    LOG.log(Level.WARNING, "game listener failed on ship move", e);
 		}
 	    }
+	}
+    }
 
-	}//TODO faire quelque sinon ou juste ignorer l'ordre illégal?
-	return result;
+    /**
+     * prévient les observateurs d'un nouveau rapport d'impulsion, un
+     * observateur défaillant étant traité comme dans fireShipMoved
+     *
+     * @param p_report
+     * @return le rapport transmis, pour chaînage
+     */
+    private ImpulseReport fireImpulseChanged(ImpulseReport p_report)
+    {
+	for (GameListener listener : m_listeners)
+	{
+	    try
+	    {
+		listener.impulseChanged(p_report);
+	    }
+	    catch (RuntimeException e)
+	    {
+		LOG.log(Level.WARNING, "game listener failed on impulse change", e);
+	    }
+	}
+	return p_report;
     }
 
-    private void finishMove(Ship p_ship) throws SQLException
+    /**
+     * abonne un observateur aux changements de la partie
+     *
+     * @param p_listener
+     */
+    public void addGameListener(GameListener p_listener)
     {
-	m_mustMoveShips.remove(Integer.valueOf(p_ship.getId()));//le vaisseau ne peut plus bouger
-	m_sessionDao.storeMove(p_ship.getId(), m_currentTurn, m_currentImpulse, p_ship.getCoordinates());//TODO à tester : est-ce que tout est bien sauvegardé?
+	m_listeners.add(p_listener);
+    }
+
+    /**
+     * désabonne un observateur
+     *
+     * @param p_listener
+     */
+    public void removeGameListener(GameListener p_listener)
+    {
+	m_listeners.remove(p_listener);
+    }
+
+    /**
+     *
+     * @param p_shipId
+     * @return le vaisseau de la partie portant cet identifiant, trouvé en
+     * temps constant dans m_shipsByIndex, null s'il n'y en a pas
+     */
+    public Ship getShip(int p_shipId)
+    {
+	Ship result = null;
+	int index = p_shipId - m_firstId;
+	if (index >= 0 && index < m_shipsByIndex.length)
+	{
+	    result = m_shipsByIndex[index];
+	}
+	return result;
     }
 
     /**
@@ -277,11 +936,27 @@ public class GameManager
 	return new EnumMap<>(m_listShips);//TODO il vaudrait certainement mieux renvoyer cela comme une partie de l'ImpulseReport
     }
 
+    /**
+     *
+     * @return l'index spatial des vaisseaux, pour les questions de voisinage
+     * (occupation d'un hexagone, vaisseaux à portée). Comme les ordres, il ne
+     * doit être consulté que depuis la file de la partie
+     * (GameSession.submit())
+     */
+    public HexSpatialIndex getSpatialIndex()
+    {
+	return m_spatialIndex;
+    }
+
     /**
      * sous-classe représentant la situation au début d'un tour de joueur :
-     * vaisseaux actifs, situation dans le tour de jeu etc.
+     * vaisseaux actifs, situation dans le tour de jeu etc. Instantané
+     * immuable : les identifiants sont copiés dans des tableaux primitifs que
+     * plus personne ne modifie, les listes publiques n'en sont que des vues en
+     * lecture seule. Un rapport peut donc être lu par autant de threads que
+     * voulu, sans verrou.
      */
-    public static class ImpulseReport
+    public static final class ImpulseReport
     {//TODO voir si on passe des Strings aux vrais Enum, en fonction de comment marche le vrai serveur
 	//TODO ajouter le numéro du tour
 	//TODO ajouter si on est au tour du joueur ayant l'init ou pas
@@ -292,12 +967,12 @@ public class GameManager
 	public final String currentPlayer;
 
 	/**
-	 * liste des id des vaisseaux pouvant agir ce tour-ci
+	 * liste des id des vaisseaux pouvant agir ce tour-ci (lecture seule)
 	 */
 	public final List<Integer> canActShips;
 
 	/**
-	 * liste des id des vaisseaux devant bouger ce tour-ci
+	 * liste des id des vaisseaux devant bouger ce tour-ci (lecture seule)
 	 */
 	public final List<Integer> mustMoveShips;
 
@@ -311,35 +986,165 @@ public class GameManager
 	 */
 	public final int currentTurn;
 
+	/**
+	 * constructeur public : les listes sont copiées, le rapport ne dépend
+	 * donc plus d'elles
+	 *
+	 * @param p_currentPlayer
+	 * @param p_canActShips
+	 * @param p_mustMoveShips
+	 * @param p_currentImpulse
+	 * @param p_currentTurn
+	 */
 	public ImpulseReport(String p_currentPlayer, List<Integer> p_canActShips, List<Integer> p_mustMoveShips, String p_currentImpulse, int p_currentTurn)
+	{
+	    this(p_currentPlayer, toArray(p_canActShips), toArray(p_mustMoveShips), p_currentImpulse, p_currentTurn);
+	}
+
+	/**
+	 * constructeur interne : les tableaux sont repris tels quels, l'appelant
+	 * ne doit plus jamais les modifier
+	 *
+	 * @param p_currentPlayer
+	 * @param p_canActIds
+	 * @param p_mustMoveIds
+	 * @param p_currentImpulse
+	 * @param p_currentTurn
+	 */
+	ImpulseReport(String p_currentPlayer, int[] p_canActIds, int[] p_mustMoveIds, String p_currentImpulse, int p_currentTurn)
 	{
 	    currentPlayer = p_currentPlayer;
-	    canActShips = p_canActShips;
-	    mustMoveShips = p_mustMoveShips;
+	    canActShips = new IdListView(p_canActIds);
+	    mustMoveShips = new IdListView(p_mustMoveIds);
 	    currentImpulse = p_currentImpulse;
 	    currentTurn = p_currentTurn;
 	}
+
+	/**
+	 *
+	 * @param p_list
+	 * @return une copie primitive de la liste
+	 */
+	private static int[] toArray(List<Integer> p_list)
+	{
+	    int[] result = new int[p_list.size()];
+	    for (int i = 0; i < result.length; ++i)
+	    {
+		result[i] = p_list.get(i);
+	    }
+	    return result;
+	}
+
+	/**
+	 * vue en lecture seule d'un tableau d'identifiants
+	 */
+	private static final class IdListView extends AbstractList<Integer> implements RandomAccess
+	{
+
+	    /**
+	     * identifiants, jamais modifiés
+	     */
+	    private final int[] m_ids;
+
+	    /**
+	     *
+	     * @param p_ids
+	     */
+	    IdListView(int[] p_ids)
+	    {
+		m_ids = p_ids;
+	    }
+
+	    @Override
+	    public Integer get(int p_index)
+	    {
+		return m_ids[p_index];
+	    }
+
+	    @Override
+	    public int size()
+	    {
+		return m_ids.length;
+	    }
+
+	    @Override
+	    public boolean contains(Object p_object)
+	    {//parcours primitif, sans déballage élément par élément
+		boolean result = false;
+		if (p_object instanceof Integer)
+		{
+		    int id = (Integer) p_object;
+		    for (int i = 0; i < m_ids.length && !result; ++i)
+		    {
+			result = m_ids[i] == id;
+		    }
+		}
+		return result;
+	    }
+	}
     }
 
     /**
-     * représentation d'un joueur : talon ou terrien
+     * Power Curves d'une flotte en tableaux parallèles : l'élément i de chaque
+     * tableau décrit le même vaisseau
      */
-    public enum Player
+    private static final class FleetCurves
     {
-	TALON, TERRAN
+
+	/**
+	 * indice du vaisseau dans m_shipsByIndex
+	 */
+	final int[] indexes;
+
+	/**
+	 * énergie
+	 */
+	final int[] powers;
+
+	/**
+	 * vitesse
+	 */
+	final int[] speeds;
+
+	/**
+	 *
+	 * @param p_ships
+	 * @param p_firstId
+	 */
+	FleetCurves(List<Ship> p_ships, int p_firstId)
 	{
-	    @Override
-	    public Player next()
+	    indexes = new int[p_ships.size()];
+	    powers = new int[p_ships.size()];
+	    speeds = new int[p_ships.size()];
+	    for (int i = 0; i < p_ships.size(); ++i)
 	    {
-		return values()[0]; // retour à TALON dans le cas du dernier élément
+		PowerCurve curve = p_ships.get(i).getPowerCurve();
+		indexes[i] = p_ships.get(i).getId() - p_firstId;
+		powers[i] = curve.power;
+		speeds[i] = curve.speed;
 	    }
+	}
+    }
+
+    /**
+     * représentation d'un joueur : talon ou terrien
+     */
+    public enum Player
+    {
+	TALON, TERRAN;
 
-	};
+	/**
+	 * valeurs par ordinal, values() renvoyant une copie à chaque appel
+	 */
+	private static final Player[] VALUES = values();
 
+	/**
+	 *
+	 * @return l'autre joueur (retour à TALON après le dernier)
+	 */
 	public Player next()
 	{
-	    // pas besoin de checker si on est au dernier, l'override ci-dessus gère cela
-	    return values()[ordinal() + 1];
+	    return VALUES[(ordinal() + 1) % VALUES.length];
 	}
     }
 
@@ -354,20 +1159,20 @@ public class GameManager
 	D("D"),
 	E("E"),
 	F("F"),
-	POWER("Power Phase")
-	{
-	    @Override
-	    public Impulse next()
-	    {
-		return values()[0]; // retour à A dans le cas du dernier élément
-	    }
+	POWER("Power Phase");
 
-	};
+	/**
+	 * valeurs par ordinal, values() renvoyant une copie à chaque appel
+	 */
+	private static final Impulse[] VALUES = values();
 
+	/**
+	 *
+	 * @return l'impulsion suivante (retour à A après la power phase)
+	 */
 	public Impulse next()
 	{
-	    // pas besoin de checker si on est au dernier, l'override ci-dessus gère cela
-	    return values()[ordinal() + 1];
+	    return VALUES[(ordinal() + 1) % VALUES.length];
 	}
 
 	/**
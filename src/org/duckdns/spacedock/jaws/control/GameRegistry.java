@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.io.FileNotFoundException;
+import java.net.URISyntaxException;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.duckdns.spacedock.commonutils.files.GeneralFileHandler;
+
+/**
+ * registre de toutes les parties hébergées par le serveur, indexées par leur
+ * identifiant. Aucune opération ne prend de verrou global : la map concurrente
+ * ne verrouille au pire qu'un seul compartiment, les parties sont donc
+ * totalement indépendantes les unes des autres. Chaque partie est enveloppée
+ * dans une GameSession dont la file de commandes est vidée sur un exécuteur
+ * commun, dimensionné sur le nombre de cœurs.
+ *
+ * @author ykonoclast
+ */
+public class GameRegistry
+{
+
+    /**
+     * instance unique du registre, partagée par toute la partie web
+     */
+    private static final GameRegistry m_instance = new GameRegistry();
+
+    /**
+     * délai accordé aux commandes en attente lors de l'arrêt (ms)
+     */
+    private static final long SHUTDOWN_TIMEOUT = 10000;
+
+    /**
+     * ensemble des parties en cours, par identifiant
+     */
+    private final ConcurrentMap<String, GameSession> m_games = new ConcurrentHashMap<>();
+
+    /**
+     * exécuteur partagé vidant les files de commandes de toutes les parties
+     */
+    private final ExecutorService m_executor;
+
+    /**
+     * vrai une fois le serveur arrêté : plus aucune partie ne peut être créée
+     */
+    private volatile boolean m_closed = false;
+
+    /**
+     * constructeur privé : on passe par getInstance()
+     */
+    private GameRegistry()
+    {
+	AtomicInteger threadCount = new AtomicInteger();
+	m_executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), (runnable) ->
+	{
+	    Thread result = new Thread(runnable, "jaws-game-" + threadCount.incrementAndGet());
+	    result.setDaemon(true);//ne doit pas empêcher la JVM de s'arrêter
+	    return result;
+	});
+    }
+
+    /**
+     * pseudo-constructeur statique
+     *
+     * @return l'instance unique du registre
+     */
+    public static GameRegistry getInstance()
+    {
+	return m_instance;
+    }
+
+    /**
+     * renvoie la partie correspondant à l'identifiant. Si elle n'est pas en
+     * mémoire, elle est reconstruite depuis son journal s'il existe, sinon
+     * créée et démarrée.
+     *
+     * @param p_gameId identifiant de la partie
+     * @param p_scenario scénario à charger si la partie doit être créée
+     * @return la partie, jamais null
+     * @throws FileNotFoundException
+     * @throws URISyntaxException
+     * @throws ClassNotFoundException
+     * @throws SQLException
+     */
+    public GameSession getOrCreateGame(String p_gameId, String p_scenario) throws FileNotFoundException, URISyntaxException, ClassNotFoundException, SQLException
+    {
+	if (m_closed)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").mauvaiseMethode("RegistryClosed", p_gameId, Locale.getDefault());
+	}
+	GameSession result = m_games.get(p_gameId);
+	if (result == null || result.isClosed())
+	{//partie absente ou en cours d'éviction (on attend alors son retrait pour la reconstruire). La création écrit en base (enregistrement de la partie, effacement d'un ancien journal) : elle ne doit avoir lieu qu'une fois, d'où computeIfAbsent qui ne bloque que le compartiment de cet identifiant le temps de la construction
+	    Exception[] failure = new Exception[1];
+	    result = m_games.computeIfAbsent(p_gameId, (id) ->
+	    {
+		GameSession created = null;
+		try
+		{
+		    created = new GameSession(openGame(id, p_scenario), m_executor);
+		}
+		catch (FileNotFoundException | URISyntaxException | ClassNotFoundException | SQLException e)
+		{//rien n'est ajouté à la map, l'exception est relancée ci-dessous
+		    failure[0] = e;
+		}
+		return created;
+	    });
+	    rethrow(failure[0]);
+	}
+	return result;
+    }
+
+    /**
+     *
+     * @param p_gameId
+     * @param p_scenario
+     * @return la partie reconstruite depuis son journal, ou à défaut une
+     * nouvelle partie journalisée et démarrée
+     * @throws FileNotFoundException
+     * @throws URISyntaxException
+     * @throws ClassNotFoundException
+     * @throws SQLException
+     */
+    private static GameManager openGame(String p_gameId, String p_scenario) throws FileNotFoundException, URISyntaxException, ClassNotFoundException, SQLException
+    {
+	GameManager result = GameManager.restore(p_gameId);
+	if (result == null)
+	{
+	    result = new GameManager(p_gameId, p_scenario);
+	    result.startGame();//la partie n'est pas encore publiée : aucune concurrence possible
+	}
+	return result;
+    }
+
+    /**
+     * relance l'exception levée lors de la création d'une partie
+     *
+     * @param p_failure null si la création a réussi
+     */
+    private static void rethrow(Exception p_failure) throws FileNotFoundException, URISyntaxException, ClassNotFoundException, SQLException
+    {
+	if (p_failure instanceof FileNotFoundException)
+	{
+	    throw (FileNotFoundException) p_failure;
+	}
+	if (p_failure instanceof URISyntaxException)
+	{
+	    throw (URISyntaxException) p_failure;
+	}
+	if (p_failure instanceof ClassNotFoundException)
+	{
+	    throw (ClassNotFoundException) p_failure;
+	}
+	if (p_failure instanceof SQLException)
+	{
+	    throw (SQLException) p_failure;
+	}
+    }
+
+    /**
+     *
+     * @param p_gameId
+     * @return la partie correspondant à l'identifiant, null si elle n'existe
+     * pas
+     */
+    public GameSession getGame(String p_gameId)
+    {
+	return m_games.get(p_gameId);
+    }
+
+    /**
+     * retire une partie de la mémoire, son journal est conservé : elle sera
+     * reconstruite au prochain accès. La partie est d'abord fermée : les
+     * commandes suivantes sont refusées, celles en file exécutées et ses
+     * écritures différées vidées. Le retrait n'a lieu qu'ensuite, une
+     * reconstruction demandée entre-temps attendant qu'il soit fait.
+     *
+     * @param p_gameId
+     * @return la partie retirée, null si elle n'existait pas
+     * @throws SQLException si l'une des écritures de la partie a échoué :
+     * elle est retirée quand même
+     */
+    public GameSession evictGame(String p_gameId) throws SQLException
+    {
+	GameSession[] result = new GameSession[1];
+	Throwable[] failure = new Throwable[1];
+	m_games.computeIfPresent(p_gameId, (id, game) ->
+	{//la fermeture est attendue sous le verrou du compartiment, où computeIfAbsent attendra aussi
+	    result[0] = game;
+	    failure[0] = closeAndWait(game);
+	    return null;
+	});
+	if (failure[0] instanceof SQLException)
+	{
+	    throw (SQLException) failure[0];
+	}
+	if (failure[0] instanceof RuntimeException)
+	{
+	    throw (RuntimeException) failure[0];
+	}
+	if (failure[0] instanceof Error)
+	{
+	    throw (Error) failure[0];
+	}
+	return result[0];
+    }
+
+    /**
+     * ferme une partie et attend que sa file et ses écritures soient vidées
+     *
+     * @param p_game
+     * @return l'exception ou l'erreur ayant fait échouer la fermeture, null si
+     * elle a réussi
+     */
+    private static Throwable closeAndWait(GameSession p_game)
+    {
+	Throwable result = null;
+	try
+	{
+	    p_game.close().join();
+	}
+	catch (CompletionException e)
+	{
+	    result = e.getCause();
+	}
+	return result;
+    }
+
+    /**
+     * supprime définitivement une partie : retrait de la mémoire et
+     * effacement de son journal
+     *
+     * @param p_gameId
+     * @throws FileNotFoundException
+     * @throws URISyntaxException
+     * @throws ClassNotFoundException
+     * @throws SQLException
+     */
+    public void deleteGame(String p_gameId) throws FileNotFoundException, URISyntaxException, ClassNotFoundException, SQLException
+    {
+	m_games.computeIfPresent(p_gameId, (id, game) ->
+	{//les commandes en file ne doivent plus rien écrire une fois le journal effacé, l'échec d'une écriture est en revanche sans importance
+	    closeAndWait(game);
+	    return null;
+	});
+	SessionDao.getInstance().deleteGame(p_gameId);
+    }
+
+    /**
+     *
+     * @return une vue (faiblement cohérente) des identifiants des parties en
+     * cours
+     */
+    public Set<String> getGameIds()
+    {
+	return Collections.unmodifiableSet(m_games.keySet());
+    }
+
+    /**
+     *
+     * @return le nombre de parties en cours
+     */
+    public int getGameCount()
+    {
+	return m_games.size();
+    }
+
+    /**
+     * ferme le registre à l'arrêt du serveur, une fois les requêtes en cours
+     * terminées : plus aucune partie ne peut être créée, les commandes déjà
+     * en file sont exécutées (dans la limite de SHUTDOWN_TIMEOUT) puis toutes
+     * les parties sont retirées. Il ne reste alors qu'à écrire les mouvements
+     * encore dans le journal à écriture différée et à fermer les connexions à
+     * la base.
+     */
+    public void shutdown()
+    {
+	m_closed = true;
+	m_executor.shutdown();
+	try
+	{
+	    m_executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+	catch (InterruptedException e)
+	{
+	    Thread.currentThread().interrupt();
+	}
+	m_games.clear();
+	SessionDao.shutdown();
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.duckdns.spacedock.commonutils.files.GeneralFileHandler;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.Ship;
+
+/**
+ * partie hébergée, vue depuis l'extérieur : toutes les commandes modifiant le
+ * GameManager passent par une file propre à la partie, vidée par un seul
+ * thread à la fois (modèle acteur). Les commandes d'une partie sont donc
+ * exécutées une par une dans l'ordre d'arrivée sans aucun verrou, tandis que
+ * des parties différentes s'exécutent en parallèle sur l'exécuteur partagé.
+ *
+ * Les lectures (rapport, version, plateau) ne passent pas par la file : elles
+ * portent sur des instantanés publiés de façon sûre par le GameManager.
+ *
+ * Une partie fermée (voir close()) refuse toute nouvelle commande, celles déjà
+ * en file étant exécutées avant que ses écritures différées ne soient vidées.
+ *
+ * @author ykonoclast
+ */
+public class GameSession
+{
+
+    /**
+     * nombre maximal de commandes traitées d'affilée avant de rendre la main
+     * à l'exécuteur, pour qu'une partie très active n'affame pas les autres
+     */
+    private static final int MAX_BATCH = 64;
+
+    /**
+     * prochaine époque attribuée, partant de l'heure de démarrage pour ne pas
+     * reprendre les valeurs d'une exécution précédente du serveur
+     */
+    private static final AtomicLong m_nextEpoch = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * époque de la partie, unique : distingue cette instance d'une partie
+     * recréée sous le même identifiant, dont la version d'état repart de zéro
+     */
+    private final long m_epoch = m_nextEpoch.incrementAndGet();
+
+    /**
+     * la partie elle-même, jamais modifiée hors du thread vidant la file
+     */
+    private final GameManager m_game;
+
+    /**
+     * exécuteur partagé par toutes les parties
+     */
+    private final Executor m_executor;
+
+    /**
+     * commandes en attente
+     */
+    private final Queue<Runnable> m_mailbox = new ConcurrentLinkedQueue<>();
+
+    /**
+     * vrai lorsqu'une tâche de vidage de la file est planifiée ou en cours :
+     * garantit qu'un seul thread à la fois exécute les commandes
+     */
+    private final AtomicBoolean m_scheduled = new AtomicBoolean(false);
+
+    /**
+     * vrai une fois la partie fermée : les commandes soumises ensuite sont
+     * refusées sans être mises en file
+     */
+    private volatile boolean m_closed = false;
+
+    /**
+     * vrai une fois la commande de fermeture exécutée : une commande mise en
+     * file juste avant la fermeture mais arrivée derrière elle est refusée.
+     * Lu et écrit uniquement par le thread vidant la file.
+     */
+    private boolean m_retired = false;
+
+    /**
+     *
+     * @param p_game
+     * @param p_executor
+     */
+    GameSession(GameManager p_game, Executor p_executor)
+    {
+	m_game = p_game;
+	m_executor = p_executor;
+    }
+
+    /**
+     * place une commande dans la file de la partie
+     *
+     * @param <T>
+     * @param p_command
+     * @return le résultat à venir de la commande, en échec avec l'exception
+     * ou l'erreur levée le cas échéant (une erreur est ensuite propagée au
+     * thread vidant la file)
+     */
+    public <T> CompletableFuture<T> submit(GameCommand<T> p_command)
+    {
+	CompletableFuture<T> result;
+	if (m_closed)
+	{
+	    result = new CompletableFuture<>();
+	    result.completeExceptionally(makeClosedFailure());
+	}
+	else
+	{
+	    result = enqueue(p_command);
+	}
+	return result;
+    }
+
+    /**
+     * ferme la partie, avant son retrait de la mémoire : les commandes
+     * suivantes sont refusées, celles déjà en file exécutées, puis les
+     * écritures différées de la partie vidées
+     *
+     * @return le résultat à venir de la fermeture, en échec si l'une des
+     * écritures de la partie n'a pu être faite
+     */
+    CompletableFuture<Void> close()
+    {
+	m_closed = true;
+	return enqueue((game) ->
+	{
+	    m_retired = true;
+	    game.flush();
+	    return null;
+	});
+    }
+
+    /**
+     *
+     * @return vrai si la partie est fermée
+     */
+    public boolean isClosed()
+    {
+	return m_closed;
+    }
+
+    /**
+     * met une commande dans la file
+     *
+     * @param <T>
+     * @param p_command
+     * @return le résultat à venir de la commande
+     */
+    private <T> CompletableFuture<T> enqueue(GameCommand<T> p_command)
+    {
+	CompletableFuture<T> result = new CompletableFuture<>();
+	m_mailbox.add(() ->
+	{
+	    try
+	    {
+		if (m_retired)
+		{
+		    throw makeClosedFailure();
+		}
+		result.complete(p_command.execute(m_game));
+	    }
+	    catch (Throwable e)
+	    {
+		result.completeExceptionally(e);
+		if (e instanceof Error)
+		{
+		    throw (Error) e;
+		}
+	    }
+	});
+	schedule();
+	return result;
+    }
+
+    /**
+     *
+     * @return l'erreur transmise aux commandes refusées par une partie fermée
+     */
+    private static GameClosedException makeClosedFailure()
+    {
+	GameClosedException result = null;
+	try
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").mauvaiseMethode("PartieFermee", "", Locale.getDefault());
+	}
+	catch (IllegalStateException e)
+	{
+	    result = new GameClosedException(e.getMessage());
+	}
+	return result;
+    }
+
+    /**
+     * planifie le vidage de la file si personne ne s'en occupe déjà
+     */
+    private void schedule()
+    {
+	if (m_scheduled.compareAndSet(false, true))
+	{
+	    try
+	    {
+		m_executor.execute(this::drain);
+	    }
+	    catch (RejectedExecutionException e)
+	    {//exécuteur arrêté : les commandes en attente sont traitées ici même, le drapeau restant levé
+		drain();
+	    }
+	}
+    }
+
+    /**
+     * exécute les commandes en attente, au plus MAX_BATCH d'affilée. Même si
+     * une commande lève une erreur, la file est rendue et les commandes
+     * suivantes replanifiées : la partie ne reste jamais bloquée.
+     */
+    private void drain()
+    {
+	try
+	{
+	    int done = 0;
+	    Runnable command = m_mailbox.poll();
+	    while (command != null)
+	    {
+		command.run();
+		++done;
+		command = done < MAX_BATCH ? m_mailbox.poll() : null;
+	    }
+	}
+	finally
+	{
+	    m_scheduled.set(false);
+	    if (!m_mailbox.isEmpty())
+	    {//commandes arrivées entre-temps, ou lot interrompu : on replanifie
+		schedule();
+	    }
+	}
+    }
+
+    /**
+     *
+     * @param p_shipId
+     * @return le rapport à venir après le mouvement
+     */
+    public CompletableFuture<GameManager.ImpulseReport> moveShipStraight(int p_shipId)
+    {
+	return submit((game) -> game.moveShipStraight(p_shipId));
+    }
+
+    /**
+     *
+     * @param p_shipId
+     * @param p_orientation
+     * @return le rapport à venir après le virage
+     */
+    public CompletableFuture<GameManager.ImpulseReport> turnShip(int p_shipId, MapObject.Orientation p_orientation)
+    {
+	return submit((game) -> game.turnShip(p_shipId, p_orientation));
+    }
+
+    /**
+     *
+     * @return le rapport à venir de l'impulsion suivante
+     */
+    public CompletableFuture<GameManager.ImpulseReport> advanceImpulse()
+    {
+	return submit(GameManager::advanceImpulse);
+    }
+
+    /**
+     *
+     * @param p_orders
+     * @return le rapport à venir après application des ordres groupés
+     */
+    public CompletableFuture<GameManager.ImpulseReport> applyOrders(List<Order> p_orders)
+    {
+	return submit((game) -> game.applyOrders(p_orders));
+    }
+
+    /**
+     *
+     * @return le dernier rapport publié, sans attendre la file
+     */
+    public GameManager.ImpulseReport getImpulseReport()
+    {
+	return m_game.getImpulseReport();
+    }
+
+    /**
+     *
+     * @return la version actuelle de l'état de la partie
+     */
+    public long getStateVersion()
+    {
+	return m_game.getStateVersion();
+    }
+
+    /**
+     *
+     * @return l'époque de la partie, unique pour chaque GameSession créée
+     */
+    public long getEpoch()
+    {
+	return m_epoch;
+    }
+
+    /**
+     *
+     * @return les vaisseaux en jeu, leurs positions pouvant être lues sans
+     * attendre la file
+     */
+    public Map<GameManager.Player, List<Ship>> getAllShips()
+    {
+	return m_game.getAllShips();
+    }
+
+    /**
+     *
+     * @param p_shipId
+     * @return le vaisseau portant cet identifiant, null s'il n'y en a pas,
+     * sa position pouvant être lue sans attendre la file
+     */
+    public Ship getShip(int p_shipId)
+    {
+	return m_game.getShip(p_shipId);
+    }
+
+    /**
+     *
+     * @param p_listener
+     */
+    public void addGameListener(GameListener p_listener)
+    {
+	m_game.addGameListener(p_listener);
+    }
+
+    /**
+     *
+     * @param p_listener
+     */
+    public void removeGameListener(GameListener p_listener)
+    {
+	m_game.removeGameListener(p_listener);
+    }
+
+    /**
+     * commande refusée par une partie fermée : la partie est en cours de
+     * retrait de la mémoire, la commande peut être renvoyée à la partie
+     * reconstruite
+     */
+    public static final class GameClosedException extends IllegalStateException
+    {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 *
+	 * @param p_message
+	 */
+	GameClosedException(String p_message)
+	{
+	    super(p_message);
+	}
+    }
+
+    /**
+     * commande exécutée dans la file d'une partie
+     *
+     * @param <T> type du résultat
+     */
+    @FunctionalInterface
+    public interface GameCommand<T>
+    {
+
+	/**
+	 *
+	 * @param p_game la partie, accessible sans concurrence pendant l'appel
+	 * @return le résultat de la commande
+	 * @throws Exception transmise à l'appelant via le future
+	 */
+	T execute(GameManager p_game) throws Exception;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.sql.SQLException;
+import java.util.List;
+import org.duckdns.spacedock.jaws.control.GameManager.Impulse;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.Ship;
+
+/**
+ * destination des écritures d'une partie en cours : mouvements et journal.
+ * SessionDao écrit dans la base SQLite (les mouvements de façon différée, voir
+ * MoveJournal), les simulations sans interface utilisent une implémentation
+ * en mémoire ou sans effet.
+ *
+ * @author ykonoclast
+ */
+interface GameStore
+{
+
+    /**
+     * enregistre une nouvelle partie journalisée, en effaçant un éventuel
+     * journal de même identifiant
+     *
+     * @param p_gameId
+     * @param p_scenario
+     * @throws SQLException
+     */
+    void registerGame(String p_gameId, String p_scenario) throws SQLException;
+
+    /**
+     * sauvegarde la position d'un vaisseau venant de bouger
+     *
+     * @param p_owner partie déposante, à laquelle sont transmises les erreurs
+     * d'une écriture différée
+     * @param p_idShip
+     * @param p_turn
+     * @param p_impulse
+     * @param p_coord
+     * @throws SQLException
+     */
+    void storeMove(MoveJournal.Owner p_owner, int p_idShip, int p_turn, Impulse p_impulse, MapObject.HexCoordinates p_coord) throws SQLException;
+
+    /**
+     * sauvegarde en une fois la position de plusieurs vaisseaux ayant bougé
+     * durant la même impulsion
+     *
+     * @param p_owner partie déposante
+     * @param p_ships
+     * @param p_turn
+     * @param p_impulse
+     * @throws SQLException
+     */
+    void storeMoves(MoveJournal.Owner p_owner, List<Ship> p_ships, int p_turn, Impulse p_impulse) throws SQLException;
+
+    /**
+     * garantit que les mouvements et événements sauvegardés jusqu'ici sont
+     * écrits, une implémentation pouvant différer leur écriture
+     *
+     * @param p_owner partie déposante
+     * @throws SQLException si l'une des écritures de cette partie a échoué
+     */
+    void flush(MoveJournal.Owner p_owner) throws SQLException;
+
+    /**
+     * ajoute des événements à la fin du journal d'une partie, une
+     * implémentation pouvant différer leur écriture comme celle des
+     * mouvements
+     *
+     * @param p_owner partie déposante
+     * @param p_gameId
+     * @param p_events
+     * @throws SQLException
+     */
+    void appendEvents(MoveJournal.Owner p_owner, String p_gameId, List<GameEvent> p_events) throws SQLException;
+
+    /**
+     * enregistre un instantané de l'état d'une partie
+     *
+     * @param p_gameId
+     * @param p_seq numéro du dernier événement pris en compte dans l'instantané
+     * @param p_state état sérialisé
+     * @throws SQLException
+     */
+    void storeSnapshot(String p_gameId, long p_seq, String p_state) throws SQLException;
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * histogramme de latences sans verrou : les seaux sont des puissances de deux
+ * de microsecondes et chacun est un LongAdder, de sorte que des threads
+ * concurrents enregistrant des mesures ne se disputent pas la même ligne de
+ * cache
+ *
+ * @author ykonoclast
+ */
+public final class LatencyHistogram
+{
+
+    /**
+     * nombre de seaux bornés : le dernier couvre jusqu'à 2^(BUCKETS-1) µs
+     * (environ 33s), au delà la mesure tombe dans le seau infini
+     */
+    public static final int BUCKETS = 26;
+
+    /**
+     * nombre de mesures par seau, le dernier élément étant le seau infini
+     */
+    private final LongAdder[] m_buckets = new LongAdder[BUCKETS + 1];
+
+    /**
+     * somme des durées mesurées, en ns
+     */
+    private final LongAdder m_sumNanos = new LongAdder();
+
+    /**
+     * nombre d'opérations terminées par une exception
+     */
+    private final LongAdder m_errors = new LongAdder();
+
+    /**
+     * nom de l'opération mesurée
+     */
+    private final String m_name;
+
+    /**
+     *
+     * @param p_name
+     */
+    LatencyHistogram(String p_name)
+    {
+	m_name = p_name;
+	for (int i = 0; i < m_buckets.length; ++i)
+	{
+	    m_buckets[i] = new LongAdder();
+	}
+    }
+
+    /**
+     * enregistre la durée d'une opération
+     *
+     * @param p_nanos
+     */
+    public void record(long p_nanos)
+    {
+	long nanos = Math.max(0, p_nanos);
+	m_buckets[bucketIndex(nanos)].increment();
+	m_sumNanos.add(nanos);
+    }
+
+    /**
+     * enregistre la durée écoulée depuis un instant pris avec
+     * System.nanoTime()
+     *
+     * @param p_startNanos
+     */
+    public void recordSince(long p_startNanos)
+    {
+	record(System.nanoTime() - p_startNanos);
+    }
+
+    /**
+     * compte une opération ayant échoué (sa durée est enregistrée à part)
+     */
+    public void recordError()
+    {
+	m_errors.increment();
+    }
+
+    /**
+     *
+     * @param p_nanos
+     * @return l'indice du plus petit seau dont la borne supérieure (incluse)
+     * contient la durée
+     */
+    static int bucketIndex(long p_nanos)
+    {
+	long micros = p_nanos / 1000 + (p_nanos % 1000 == 0 ? 0 : 1);//arrondi supérieur sans débordement
+	int result = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+	return Math.min(result, BUCKETS);
+    }
+
+    /**
+     *
+     * @param p_index
+     * @return la borne supérieure du seau, en µs
+     */
+    static long bucketBoundMicros(int p_index)
+    {
+	return 1L << p_index;
+    }
+
+    /**
+     *
+     * @return une copie des compteurs de chaque seau (non cumulés), le dernier
+     * étant le seau infini
+     */
+    public long[] snapshotBuckets()
+    {
+	long[] result = new long[m_buckets.length];
+	for (int i = 0; i < m_buckets.length; ++i)
+	{
+	    result[i] = m_buckets[i].sum();
+	}
+	return result;
+    }
+
+    /**
+     *
+     * @return la somme des durées mesurées, en ns
+     */
+    public long getSumNanos()
+    {
+	return m_sumNanos.sum();
+    }
+
+    /**
+     *
+     * @return le nombre d'opérations en échec
+     */
+    public long getErrors()
+    {
+	return m_errors.sum();
+    }
+
+    /**
+     *
+     * @return le nom de l'opération
+     */
+    public String getName()
+    {
+	return m_name;
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import org.duckdns.spacedock.commonutils.files.GeneralFileHandler;
+import org.duckdns.spacedock.jaws.control.GameManager.Impulse;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.PackedHex;
+
+/**
+ * journal binaire des positions de vaisseaux, en ajout seul : des
+ * enregistrements de taille fixe écrits directement dans le fichier projeté
+ * en mémoire (FileChannel.map), par segments projetés au fur et à mesure. Une
+ * écriture ne coûte ni appel système ni copie intermédiaire, et un parcours
+ * relit le fichier séquentiellement sans rien allouer par enregistrement.
+ *
+ * Enregistrement (RECORD_SIZE octets) : étiquette (marque, drapeau de fin de
+ * lot, ordinal de l'impulsion) sur 4 octets, vaisseau sur 4, tour sur 4,
+ * exécution sur 4, position compactée (voir PackedHex) sur 8. L'exécution
+ * courante suit la plus récente trouvée à l'ouverture, les enregistrements
+ * antérieurs à leur numérotation valant 0. Le dernier
+ * enregistrement d'un lot porte le drapeau de fin, posé après que le lot a
+ * été forcé sur disque : à l'ouverture, les enregistrements suivant la
+ * dernière fin de lot (lot interrompu) sont effacés.
+ *
+ * Un seul thread écrit (l'écrivain du journal des mouvements), les lectures
+ * portent sur un état publié et peuvent se faire depuis n'importe quel
+ * thread. Rechercher une position parcourt le journal à rebours : ce stockage
+ * est fait pour l'écriture et la relecture en masse.
+ *
+ * @author ykonoclast
+ */
+final class MappedMoveLog implements MoveStore
+{
+
+    /**
+     * taille d'un enregistrement, en octets
+     */
+    static final int RECORD_SIZE = 24;
+
+    /**
+     * marque des enregistrements écrits ("JW"), une étiquette nulle marquant
+     * la fin du journal
+     */
+    private static final int TAG = 0x4A570000;
+
+    /**
+     * masque de la marque dans l'étiquette
+     */
+    private static final int TAG_MASK = 0xFFFF0000;
+
+    /**
+     * drapeau de l'étiquette du dernier enregistrement d'un lot
+     */
+    private static final int END_OF_BATCH = 0x8000;
+
+    /**
+     * masque de l'ordinal de l'impulsion dans l'étiquette
+     */
+    private static final int IMPULSE_MASK = 0xFF;
+
+    /**
+     * impulsions, dans l'ordre de déclaration
+     */
+    private static final Impulse[] IMPULSES = Impulse.values();
+
+    /**
+     * fichier du journal
+     */
+    private final File m_file;
+
+    /**
+     * nombre d'enregistrements par segment projeté
+     */
+    private final int m_segmentRecords;
+
+    /**
+     * exécution courante
+     */
+    private final int m_run;
+
+    /**
+     * canal du fichier courant, null une fois fermé
+     */
+    private FileChannel m_channel;
+
+    /**
+     * état publié : segments projetés et nombre d'enregistrements validés
+     */
+    private volatile View m_view;
+
+    /**
+     * ouvre (ou crée) le journal et efface un éventuel lot interrompu
+     *
+     * @param p_file
+     * @param p_segmentRecords nombre d'enregistrements par segment projeté
+     * @throws IOException
+     */
+    MappedMoveLog(File p_file, int p_segmentRecords) throws IOException
+    {
+	if (p_file == null || p_segmentRecords < 1 || (long) p_segmentRecords * RECORD_SIZE > Integer.MAX_VALUE)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("BadLogParam", p_file + " segment=" + p_segmentRecords, Locale.getDefault());
+	}
+	m_file = p_file;
+	m_segmentRecords = p_segmentRecords;
+	m_run = open() + 1;
+    }
+
+    /**
+     * ouvre le fichier, projette les segments existants et retrouve la fin du
+     * dernier lot complet
+     *
+     * @return l'exécution la plus récente trouvée dans le fichier (celle d'un
+     * lot interrompu comprise, pour ne pas la réutiliser), 0 s'il est vide
+     * @throws IOException
+     */
+    private int open() throws IOException
+    {
+	int result = 0;
+	m_channel = FileChannel.open(m_file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	long segmentBytes = (long) m_segmentRecords * RECORD_SIZE;
+	int segments = (int) Math.max(1, (m_channel.size() + segmentBytes - 1) / segmentBytes);
+	View view = new View(new MappedByteBuffer[0], 0);
+	for (int i = 0; i < segments; ++i)
+	{
+	    view = new View(mapSegment(view.segments), 0);
+	}
+
+	//fin du dernier lot complet, puis effacement de la suite éventuelle
+	long capacity = (long) segments * m_segmentRecords;
+	long scanned = 0;
+	long committed = 0;
+	while (scanned < capacity && (view.tag(scanned, m_segmentRecords) & TAG_MASK) == TAG)
+	{
+	    result = Math.max(result, view.buffer(scanned, m_segmentRecords).getInt(view.offset(scanned, m_segmentRecords) + 12));
+	    if ((view.tag(scanned, m_segmentRecords) & END_OF_BATCH) != 0)
+	    {
+		committed = scanned + 1;
+	    }
+	    ++scanned;
+	}
+	for (long i = committed; i < scanned; ++i)
+	{
+	    view.buffer(i, m_segmentRecords).putInt(view.offset(i, m_segmentRecords), 0);
+	}
+	if (scanned > committed)
+	{
+	    forceAll(view.segments);
+	}
+	m_view = new View(view.segments, committed);
+	return result;
+    }
+
+    /**
+     *
+     * @param p_segments segments déjà projetés
+     * @return les segments suivis d'un nouveau, projeté à la suite (le
+     * fichier est agrandi si besoin)
+     * @throws IOException
+     */
+    private MappedByteBuffer[] mapSegment(MappedByteBuffer[] p_segments) throws IOException
+    {
+	long segmentBytes = (long) m_segmentRecords * RECORD_SIZE;
+	MappedByteBuffer[] result = Arrays.copyOf(p_segments, p_segments.length + 1);
+	result[p_segments.length] = m_channel.map(FileChannel.MapMode.READ_WRITE, p_segments.length * segmentBytes, segmentBytes);
+	return result;
+    }
+
+    /**
+     * ajoute un lot à la fin du journal : enregistrements écrits et forcés sur
+     * disque, puis drapeau de fin de lot posé et forcé à son tour
+     *
+     * @param p_batch
+     * @throws SQLException si le fichier ne peut être agrandi
+     */
+    @Override
+    public synchronized void write(List<MoveJournal.Entry> p_batch) throws SQLException
+    {
+	checkOpen();
+	View view = m_view;
+	MappedByteBuffer[] segments = view.segments;
+	long next = view.count;
+	int firstSegment = (int) (next / m_segmentRecords);
+	try
+	{
+	    for (MoveJournal.Entry entry : p_batch)
+	    {
+		for (int i = 0; i < entry.ids.length; ++i, ++next)
+		{
+		    if (next / m_segmentRecords >= segments.length)
+		    {
+			segments = mapSegment(segments);
+		    }
+		    MappedByteBuffer buffer = segments[(int) (next / m_segmentRecords)];
+		    int offset = (int) (next % m_segmentRecords) * RECORD_SIZE;
+		    buffer.putInt(offset + 4, entry.ids[i]);
+		    buffer.putInt(offset + 8, entry.turn);
+		    buffer.putInt(offset + 12, m_run);
+		    buffer.putLong(offset + 16, entry.positions[i]);
+		    buffer.putInt(offset, TAG | entry.impulse.ordinal());
+		}
+	    }
+	}
+	catch (IOException e)
+	{
+	    throw new SQLException(e.getMessage(), e);
+	}
+	if (next > view.count)
+	{
+	    MappedByteBuffer[] touched = Arrays.copyOfRange(segments, firstSegment, (int) ((next - 1) / m_segmentRecords) + 1);
+	    forceAll(touched);
+	    MappedByteBuffer last = segments[(int) ((next - 1) / m_segmentRecords)];
+	    int offset = (int) ((next - 1) % m_segmentRecords) * RECORD_SIZE;
+	    last.putInt(offset, last.getInt(offset) | END_OF_BATCH);
+	    last.force();
+	    m_view = new View(segments, next);
+	}
+    }
+
+    @Override
+    public int getRun()
+    {
+	return m_run;
+    }
+
+    @Override
+    public MapObject.HexCoordinates load(int p_idShip, int p_turn, Impulse p_impulse)
+    {
+	MapObject.HexCoordinates result = null;
+	View view = m_view;
+	for (long i = view.count - 1; i >= 0 && result == null; --i)
+	{
+	    MappedByteBuffer buffer = view.buffer(i, m_segmentRecords);
+	    int offset = view.offset(i, m_segmentRecords);
+	    if (buffer.getInt(offset + 12) == m_run && buffer.getInt(offset + 4) == p_idShip && buffer.getInt(offset + 8) == p_turn && (buffer.getInt(offset) & IMPULSE_MASK) == p_impulse.ordinal())
+	    {
+		result = PackedHex.toCoordinates(buffer.getLong(offset + 16));
+	    }
+	}
+	return result;
+    }
+
+    @Override
+    public void replay(MoveVisitor p_visitor)
+    {
+	View view = m_view;
+	for (long i = 0; i < view.count; ++i)
+	{
+	    MappedByteBuffer buffer = view.buffer(i, m_segmentRecords);
+	    int offset = view.offset(i, m_segmentRecords);
+	    p_visitor.visit(buffer.getInt(offset + 12), buffer.getInt(offset + 4), buffer.getInt(offset + 8), IMPULSES[buffer.getInt(offset) & IMPULSE_MASK], buffer.getLong(offset + 16));
+	}
+    }
+
+    /**
+     *
+     * @return le nombre d'enregistrements validés
+     */
+    long getRecordCount()
+    {
+	return m_view.count;
+    }
+
+    /**
+     * vide le journal : le fichier est remplacé par un fichier vide
+     *
+     * @throws IOException
+     */
+    void truncate() throws IOException
+    {
+	rotate(null);
+    }
+
+    /**
+     * archive le journal et en commence un nouveau, vide, sous le même nom.
+     * Les lectures en cours finissent sur l'ancien fichier, dont la
+     * projection reste valide, et l'exécution courante se poursuit dans le
+     * nouveau.
+     *
+     * @param p_archive nouveau nom du journal actuel, null pour le supprimer
+     * @throws IOException
+     */
+    synchronized void rotate(File p_archive) throws IOException
+    {
+	checkOpen();
+	forceAll(m_view.segments);
+	m_channel.close();
+	if (p_archive == null)
+	{
+	    Files.delete(m_file.toPath());
+	}
+	else
+	{
+	    Files.move(m_file.toPath(), p_archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+	open();
+    }
+
+    /**
+     * force les écritures sur disque et ferme le fichier, les lectures
+     * restant possibles sur l'état publié
+     */
+    @Override
+    public synchronized void close()
+    {
+	if (m_channel != null)
+	{
+	    forceAll(m_view.segments);
+	    try
+	    {
+		m_channel.close();
+	    }
+	    catch (IOException e)
+	    {
+		//rien à faire de plus : les écritures ont été forcées
+	    }
+	    m_channel = null;
+	}
+    }
+
+    /**
+     * refuse toute écriture une fois le journal fermé
+     */
+    private void checkOpen()
+    {
+	if (m_channel == null)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").mauvaiseMethode("LogFerme", m_file.getPath(), Locale.getDefault());
+	}
+    }
+
+    /**
+     *
+     * @param p_segments segments à forcer sur disque
+     */
+    private static void forceAll(MappedByteBuffer[] p_segments)
+    {
+	for (MappedByteBuffer segment : p_segments)
+	{
+	    segment.force();
+	}
+    }
+
+    /**
+     * état du journal publié aux lecteurs, remplacé en bloc après chaque lot
+     */
+    private static final class View
+    {
+
+	/**
+	 * segments projetés, dans l'ordre du fichier
+	 */
+	final MappedByteBuffer[] segments;
+
+	/**
+	 * nombre d'enregistrements validés
+	 */
+	final long count;
+
+	View(MappedByteBuffer[] p_segments, long p_count)
+	{
+	    segments = p_segments;
+	    count = p_count;
+	}
+
+	/**
+	 *
+	 * @param p_index
+	 * @param p_segmentRecords
+	 * @return le segment contenant l'enregistrement
+	 */
+	MappedByteBuffer buffer(long p_index, int p_segmentRecords)
+	{
+	    return segments[(int) (p_index / p_segmentRecords)];
+	}
+
+	/**
+	 *
+	 * @param p_index
+	 * @param p_segmentRecords
+	 * @return la position de l'enregistrement dans son segment
+	 */
+	int offset(long p_index, int p_segmentRecords)
+	{
+	    return (int) (p_index % p_segmentRecords) * RECORD_SIZE;
+	}
+
+	/**
+	 *
+	 * @param p_index
+	 * @param p_segmentRecords
+	 * @return l'étiquette de l'enregistrement
+	 */
+	int tag(long p_index, int p_segmentRecords)
+	{
+	    return buffer(p_index, p_segmentRecords).getInt(offset(p_index, p_segmentRecords));
+	}
+    }
+}
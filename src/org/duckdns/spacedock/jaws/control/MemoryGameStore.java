@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.duckdns.spacedock.jaws.control.GameManager.Impulse;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.Ship;
+
+/**
+ * stockage en mémoire d'une seule partie : journal, dernier instantané et
+ * nombre de mouvements sauvegardés. Comme la partie elle-même, il n'est
+ * utilisé que par un thread à la fois et ne prend donc aucun verrou.
+ *
+ * @author ykonoclast
+ */
+final class MemoryGameStore implements GameStore
+{
+
+    /**
+     * journal de la partie, dans l'ordre
+     */
+    private final List<GameEvent> m_events = new ArrayList<>();
+
+    /**
+     * dernier instantané enregistré, null s'il n'y en a aucun
+     */
+    private SessionDao.Snapshot m_lastSnapshot = null;
+
+    /**
+     * nombre de positions de vaisseaux sauvegardées
+     */
+    private long m_storedMoves = 0;
+
+    @Override
+    public void registerGame(String p_gameId, String p_scenario)
+    {
+	m_events.clear();
+	m_lastSnapshot = null;
+	m_storedMoves = 0;
+    }
+
+    @Override
+    public void storeMove(MoveJournal.Owner p_owner, int p_idShip, int p_turn, Impulse p_impulse, MapObject.HexCoordinates p_coord)
+    {
+	++m_storedMoves;
+    }
+
+    @Override
+    public void storeMoves(MoveJournal.Owner p_owner, List<Ship> p_ships, int p_turn, Impulse p_impulse)
+    {
+	m_storedMoves += p_ships.size();
+    }
+
+    @Override
+    public void flush(MoveJournal.Owner p_owner)
+    {
+    }
+
+    @Override
+    public void appendEvents(MoveJournal.Owner p_owner, String p_gameId, List<GameEvent> p_events)
+    {
+	m_events.addAll(p_events);
+    }
+
+    @Override
+    public void storeSnapshot(String p_gameId, long p_seq, String p_state)
+    {
+	m_lastSnapshot = new SessionDao.Snapshot(p_seq, p_state);
+    }
+
+    /**
+     *
+     * @return le journal de la partie
+     */
+    List<GameEvent> getEvents()
+    {
+	return Collections.unmodifiableList(m_events);
+    }
+
+    /**
+     *
+     * @return le dernier instantané, null s'il n'y en a aucun
+     */
+    SessionDao.Snapshot getLastSnapshot()
+    {
+	return m_lastSnapshot;
+    }
+
+    /**
+     *
+     * @return le nombre de positions de vaisseaux sauvegardées
+     */
+    long getStoredMoves()
+    {
+	return m_storedMoves;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.duckdns.spacedock.jaws.control.GameManager.Impulse;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.PackedHex;
+
+/**
+ * positions de vaisseaux gardées en mémoire, perdues à l'arrêt : pour les
+ * tests et les simulations. La clé (vaisseau, tour, impulsion) est compactée
+ * dans un long, un tour devant tenir sur 24 bits. Rien ne survivant à
+ * l'exécution, toutes les positions appartiennent à la même (RUN).
+ *
+ * L'écrivain du journal étant seul à écrire, le verrou n'est disputé que par
+ * les lectures, rares.
+ *
+ * @author ykonoclast
+ */
+final class MemoryMoveStore implements MoveStore
+{
+
+    /**
+     * impulsions, dans l'ordre de déclaration
+     */
+    private static final Impulse[] IMPULSES = Impulse.values();
+
+    /**
+     * exécution unique de ce stockage
+     */
+    static final int RUN = 1;
+
+    /**
+     * position compactée par clé compactée, dans l'ordre de la dernière
+     * écriture
+     */
+    private final Map<Long, Long> m_moves = new LinkedHashMap<>();
+
+    @Override
+    public synchronized void write(List<MoveJournal.Entry> p_batch)
+    {
+	for (MoveJournal.Entry entry : p_batch)
+	{
+	    for (int i = 0; i < entry.ids.length; ++i)
+	    {
+		Long key = key(entry.ids[i], entry.turn, entry.impulse);
+		m_moves.remove(key);//une position remplacée passe en dernier
+		m_moves.put(key, entry.positions[i]);
+	    }
+	}
+    }
+
+    @Override
+    public int getRun()
+    {
+	return RUN;
+    }
+
+    @Override
+    public synchronized MapObject.HexCoordinates load(int p_idShip, int p_turn, Impulse p_impulse)
+    {
+	Long position = m_moves.get(key(p_idShip, p_turn, p_impulse));
+	return position == null ? null : PackedHex.toCoordinates(position);
+    }
+
+    @Override
+    public synchronized void replay(MoveVisitor p_visitor)
+    {
+	for (Map.Entry<Long, Long> move : m_moves.entrySet())
+	{
+	    long key = move.getKey();
+	    p_visitor.visit(RUN, (int) (key >> 32), (int) (key >>> 8) & 0xFFFFFF, IMPULSES[(int) key & 0xFF], move.getValue());
+	}
+    }
+
+    @Override
+    public synchronized void close()
+    {
+	m_moves.clear();
+    }
+
+    /**
+     *
+     * @return le nombre de positions gardées
+     */
+    synchronized int size()
+    {
+	return m_moves.size();
+    }
+
+    /**
+     *
+     * @param p_idShip
+     * @param p_turn
+     * @param p_impulse
+     * @return la clé compactée : vaisseau sur 32 bits, tour sur 24 et
+     * impulsion sur 8
+     */
+    private static long key(int p_idShip, int p_turn, Impulse p_impulse)
+    {
+	return ((long) p_idShip << 32) | ((long) (p_turn & 0xFFFFFF) << 8) | p_impulse.ordinal();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * registre des métriques de l'application : un histogramme de latence par
+ * opération surveillée, exposé au format texte de Prometheus
+ *
+ * @author ykonoclast
+ */
+public final class Metrics
+{
+
+    /**
+     * histogrammes enregistrés, dans l'ordre d'exposition
+     */
+    private static final List<LatencyHistogram> m_histograms = new ArrayList<>();
+
+    /**
+     * rendu de la page HTML
+     */
+    public static final LatencyHistogram HTTP_HTML = register("http_html");
+
+    /**
+     * requêtes de l'API JSON
+     */
+    public static final LatencyHistogram HTTP_API = register("http_api");
+
+    /**
+     * mouvement en ligne droite
+     */
+    public static final LatencyHistogram ENGINE_MOVE = register("engine_move");
+
+    /**
+     * virage
+     */
+    public static final LatencyHistogram ENGINE_TURN = register("engine_turn");
+
+    /**
+     * passage à l'impulsion suivante
+     */
+    public static final LatencyHistogram ENGINE_ADVANCE = register("engine_advance");
+
+    /**
+     * dépôt de mouvements dans le journal à écriture différée, attente d'une
+     * place libre comprise
+     */
+    public static final LatencyHistogram DB_STORE_MOVE = register("db_store_move");
+
+    /**
+     * écriture d'un lot du journal des mouvements en une transaction
+     */
+    public static final LatencyHistogram DB_STORE_MOVES = register("db_store_moves");
+
+    /**
+     * écriture d'un lot du journal des événements en une transaction
+     */
+    public static final LatencyHistogram DB_APPEND_EVENTS = register("db_append_events");
+
+    /**
+     * exécution d'un ordre SQL isolé
+     */
+    public static final LatencyHistogram DB_EXECUTE = register("db_execute");
+
+    /**
+     * classe utilitaire, pas d'instanciation
+     */
+    private Metrics()
+    {
+    }
+
+    /**
+     *
+     * @param p_name
+     * @return un nouvel histogramme ajouté au registre
+     */
+    private static LatencyHistogram register(String p_name)
+    {
+	LatencyHistogram result = new LatencyHistogram(p_name);
+	m_histograms.add(result);
+	return result;
+    }
+
+    /**
+     *
+     * @return les histogrammes enregistrés
+     */
+    public static List<LatencyHistogram> getHistograms()
+    {
+	return Collections.unmodifiableList(m_histograms);
+    }
+
+    /**
+     * écrit toutes les métriques au format texte de Prometheus (version 0.0.4)
+     *
+     * @param p_writer
+     * @throws IOException
+     */
+    public static void writeText(Writer p_writer) throws IOException
+    {
+	p_writer.write("# HELP jaws_operation_seconds Latence des opérations surveillées.\n");
+	p_writer.write("# TYPE jaws_operation_seconds histogram\n");
+	for (LatencyHistogram histogram : m_histograms)
+	{
+	    String label = "{op=\"" + histogram.getName() + "\"";
+	    long[] buckets = histogram.snapshotBuckets();
+	    long cumulated = 0;
+	    for (int i = 0; i < LatencyHistogram.BUCKETS; ++i)
+	    {
+		cumulated += buckets[i];
+		p_writer.write("jaws_operation_seconds_bucket" + label + ",le=\"" + BigDecimal.valueOf(LatencyHistogram.bucketBoundMicros(i), 6).stripTrailingZeros().toPlainString() + "\"} " + cumulated + "\n");
+	    }
+	    cumulated += buckets[LatencyHistogram.BUCKETS];
+	    p_writer.write("jaws_operation_seconds_bucket" + label + ",le=\"+Inf\"} " + cumulated + "\n");
+	    p_writer.write("jaws_operation_seconds_sum" + label + "} " + BigDecimal.valueOf(histogram.getSumNanos(), 9).toPlainString() + "\n");
+	    p_writer.write("jaws_operation_seconds_count" + label + "} " + cumulated + "\n");
+	}
+	p_writer.write("# HELP jaws_operation_errors_total Opérations terminées par une exception.\n");
+	p_writer.write("# TYPE jaws_operation_errors_total counter\n");
+	for (LatencyHistogram histogram : m_histograms)
+	{
+	    p_writer.write("jaws_operation_errors_total{op=\"" + histogram.getName() + "\"} " + histogram.getErrors() + "\n");
+	}
+    }
+}
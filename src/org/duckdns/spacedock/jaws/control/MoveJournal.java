@@ -0,0 +1,776 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import org.duckdns.spacedock.commonutils.files.GeneralFileHandler;
+import org.duckdns.spacedock.jaws.control.GameManager.Impulse;
+
+/**
+ * journal des mouvements à écriture différée : les parties déposent leurs
+ * mouvements dans une file sans verrou et reprennent aussitôt la main, un
+ * thread dédié vidant la file par lots écrits chacun en une seule transaction
+ * (commit groupé : un seul accès disque pour tous les mouvements du lot,
+ * toutes parties confondues). Le même mécanisme sert au journal des
+ * événements de partie, déposés par appendEvents dans une instance dédiée.
+ *
+ * La file est bornée en nombre de mouvements : une partie qui la trouve pleine
+ * attend que l'écrivain ait libéré de la place. Le moment où un mouvement est
+ * garanti en base dépend de la politique de durabilité choisie, flush()
+ * garantissant dans tous les cas que tout ce qui a été déposé avant lui est
+ * écrit.
+ *
+ * Un lot en échec est réécrit dépôt par dépôt, pour que seuls les dépôts
+ * fautifs soient perdus : l'erreur est transmise à l'appelant attendant un
+ * tel dépôt ou, si personne ne l'attendait, à la même partie qui la relève
+ * avant sa prochaine commande ou lors de sa prochaine vidange (voir Owner).
+ * Un dépôt que l'écrivain n'écrira plus (journal fermé ou écrivain arrêté)
+ * échoue de la même façon.
+ *
+ * @author ykonoclast
+ */
+final class MoveJournal implements AutoCloseable
+{
+
+    /**
+     * moment à partir duquel un mouvement déposé est garanti en base
+     */
+    enum Durability
+    {
+	/**
+	 * dès le retour du dépôt : chaque mouvement attend le commit de son lot
+	 */
+	MOVE,
+	/**
+	 * au passage à l'impulsion suivante, qui vide la file
+	 */
+	IMPULSE,
+	/**
+	 * comme IMPULSE, avec en plus un lot écrit au plus tard une fenêtre de
+	 * temps après le dépôt
+	 */
+	WINDOW
+    }
+
+    /**
+     * destination des lots, appelée uniquement par le thread écrivain
+     */
+    @FunctionalInterface
+    interface Sink
+    {
+
+	/**
+	 * écrit un lot en une seule transaction : soit tout est écrit, soit
+	 * rien
+	 *
+	 * @param p_batch entrées dans l'ordre de dépôt, celles ne portant aucun
+	 * mouvement ni événement (vidanges) étant à ignorer
+	 * @throws SQLException
+	 */
+	void write(List<Entry> p_batch) throws SQLException;
+    }
+
+    /**
+     * attente maximale d'une partie bloquée sur une file pleine avant de
+     * revérifier la place disponible, en ns (filet de sécurité : l'écrivain
+     * réveille les parties bloquées après chaque lot)
+     */
+    private static final long BLOCKED_PARK = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * attente d'une écriture entre deux vérifications que l'écrivain tourne
+     * encore, en ms
+     */
+    private static final long AWAIT_SLICE = 100;
+
+    /**
+     * politique de durabilité
+     */
+    private final Durability m_durability;
+
+    /**
+     * délai maximal entre deux lots pour la politique WINDOW, en ns
+     */
+    private final long m_windowNanos;
+
+    /**
+     * nombre maximal de mouvements en file
+     */
+    private final int m_capacity;
+
+    /**
+     * nombre de mouvements au delà duquel un lot est fermé (un dépôt n'étant
+     * jamais coupé, un lot peut le dépasser s'il ne contient qu'un dépôt)
+     */
+    private final int m_batchSize;
+
+    /**
+     * destination des lots
+     */
+    private final Sink m_sink;
+
+    /**
+     * dépôts en attente d'écriture, dans l'ordre
+     */
+    private final Queue<Entry> m_queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * nombre de mouvements déposés et pas encore écrits (ou abandonnés)
+     */
+    private final AtomicInteger m_pending = new AtomicInteger(0);
+
+    /**
+     * parties attendant de la place dans la file
+     */
+    private final Queue<Thread> m_blocked = new ConcurrentLinkedQueue<>();
+
+    /**
+     * vrai lorsque l'écrivain doit vider la file sans attendre
+     */
+    private final AtomicBoolean m_signal = new AtomicBoolean(false);
+
+    /**
+     * durée d'écriture de chaque lot
+     */
+    private final LatencyHistogram m_metric;
+
+    /**
+     * thread écrivain
+     */
+    private final Thread m_writer;
+
+    /**
+     * vrai une fois le journal fermé : plus aucun dépôt n'est accepté
+     */
+    private volatile boolean m_closed = false;
+
+    /**
+     *
+     * @param p_sink destination des lots
+     * @param p_durability
+     * @param p_windowMs délai maximal entre deux lots pour la politique
+     * WINDOW, en ms
+     * @param p_capacity nombre maximal de mouvements en file
+     * @param p_batchSize nombre de mouvements par lot
+     */
+    MoveJournal(Sink p_sink, Durability p_durability, int p_windowMs, int p_capacity, int p_batchSize)
+    {
+	this("jaws-move-journal", Metrics.DB_STORE_MOVES, p_sink, p_durability, p_windowMs, p_capacity, p_batchSize);
+    }
+
+    /**
+     *
+     * @param p_name nom du thread écrivain
+     * @param p_metric durée d'écriture de chaque lot
+     * @param p_sink destination des lots
+     * @param p_durability
+     * @param p_windowMs délai maximal entre deux lots pour la politique
+     * WINDOW, en ms
+     * @param p_capacity nombre maximal d'écritures en file
+     * @param p_batchSize nombre d'écritures par lot
+     */
+    MoveJournal(String p_name, LatencyHistogram p_metric, Sink p_sink, Durability p_durability, int p_windowMs, int p_capacity, int p_batchSize)
+    {
+	if (p_sink == null || p_durability == null || p_windowMs < 1 || p_capacity < 1 || p_batchSize < 1)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("BadJournalParam", p_durability + " window=" + p_windowMs + " capacity=" + p_capacity + " batch=" + p_batchSize, Locale.getDefault());
+	}
+	m_sink = p_sink;
+	m_durability = p_durability;
+	m_windowNanos = TimeUnit.MILLISECONDS.toNanos(p_windowMs);
+	m_capacity = p_capacity;
+	m_batchSize = p_batchSize;
+	m_metric = p_metric;
+	m_writer = new Thread(this::runWriter, p_name);
+	m_writer.setDaemon(true);//ne doit pas empêcher la JVM de s'arrêter
+	m_writer.start();
+    }
+
+    /**
+     * dépose les positions de vaisseaux ayant bougé durant la même impulsion,
+     * écrites plus tard dans la même transaction. Attend que la file ait de
+     * la place et, avec la politique MOVE, que le lot soit écrit. L'échec
+     * d'un dépôt précédent de la partie n'empêche pas celui-ci : il reste à
+     * relever par la partie (voir Owner).
+     *
+     * @param p_owner partie déposante
+     * @param p_ids identifiants des vaisseaux
+     * @param p_positions positions compactées (voir PackedHex), dans le même
+     * ordre
+     * @param p_turn
+     * @param p_impulse
+     * @throws SQLException si (politique MOVE) le dépôt n'a pu être écrit
+     */
+    void append(Owner p_owner, int[] p_ids, long[] p_positions, int p_turn, Impulse p_impulse) throws SQLException
+    {
+	submit(new Entry(p_owner, p_ids, p_positions, p_turn, p_impulse, m_durability == Durability.MOVE));
+    }
+
+    /**
+     * dépose des événements d'une partie, écrits plus tard dans la même
+     * transaction, selon la même politique de durabilité que les mouvements
+     *
+     * @param p_owner partie déposante
+     * @param p_gameId identifiant de journalisation de la partie
+     * @param p_events
+     * @throws SQLException si (politique MOVE) le dépôt n'a pu être écrit
+     */
+    void appendEvents(Owner p_owner, String p_gameId, List<GameEvent> p_events) throws SQLException
+    {
+	submit(new Entry(p_owner, p_gameId, p_events, m_durability == Durability.MOVE));
+    }
+
+    /**
+     * place un dépôt en file, presse l'écrivain si le dépôt est attendu ou
+     * si un lot est complet, puis attend l'écriture si besoin
+     *
+     * @param p_entry
+     * @throws SQLException si le dépôt attendu n'a pu être écrit
+     */
+    private void submit(Entry p_entry) throws SQLException
+    {
+	reserve(p_entry.size());
+	enqueue(p_entry);
+	if (p_entry.done != null || m_pending.get() >= m_batchSize)
+	{
+	    signal();
+	}
+	await(p_entry);
+    }
+
+    /**
+     * attend que tous les mouvements déposés auparavant soient écrits
+     *
+     * @param p_owner partie déposante
+     * @throws SQLException si l'un des mouvements de cette partie n'a pu être
+     * écrit
+     */
+    void flush(Owner p_owner) throws SQLException
+    {
+	checkOpen();
+	Entry barrier = new Entry(p_owner, new int[0], new long[0], 0, null, true);
+	enqueue(barrier);//une vidange n'occupe pas de place : elle ne doit jamais attendre
+	signal();
+	await(barrier);
+	p_owner.throwFailure();
+    }
+
+    /**
+     *
+     * @return le nombre de mouvements en attente d'écriture
+     */
+    int getPending()
+    {
+	return m_pending.get();
+    }
+
+    /**
+     * écrit les mouvements en file puis arrête l'écrivain. Les dépôts
+     * ultérieurs sont refusés, ceux en cours pendant la fermeture et arrivés
+     * trop tard pour l'écrivain échouant.
+     */
+    @Override
+    public void close()
+    {
+	m_closed = true;
+	signal();
+	boolean interrupted = false;
+	while (m_writer.isAlive())
+	{
+	    try
+	    {
+		m_writer.join();
+	    }
+	    catch (InterruptedException e)
+	    {
+		interrupted = true;
+	    }
+	}
+	if (interrupted)
+	{
+	    Thread.currentThread().interrupt();
+	}
+	abandonQueue();//débloque aussi les parties attendant de la place
+    }
+
+    /**
+     * ajoute un dépôt à la file, en le faisant échouer aussitôt si
+     * l'écrivain s'est arrêté entre-temps : plus personne ne viderait la file
+     *
+     * @param p_entry
+     */
+    private void enqueue(Entry p_entry)
+    {
+	m_queue.add(p_entry);
+	if (!m_writer.isAlive())
+	{//sinon l'écrivain, ou close() après lui, videra la file
+	    abandonQueue();
+	}
+    }
+
+    /**
+     * réserve la place d'un dépôt dans la file, en attendant qu'elle se
+     * libère si besoin : un dépôt plus gros que la file passe quand elle est
+     * vide
+     *
+     * @param p_moves nombre de mouvements du dépôt
+     */
+    private void reserve(int p_moves)
+    {
+	boolean reserved = false;
+	while (!reserved)
+	{
+	    checkOpen();
+	    int pending = m_pending.get();
+	    if (pending == 0 || pending + p_moves <= m_capacity)
+	    {
+		reserved = m_pending.compareAndSet(pending, pending + p_moves);
+	    }
+	    else
+	    {//file pleine : on presse l'écrivain et on attend son réveil
+		Thread current = Thread.currentThread();
+		m_blocked.add(current);
+		signal();
+		if (m_pending.get() == pending)
+		{
+		    LockSupport.parkNanos(this, BLOCKED_PARK);
+		}
+		m_blocked.remove(current);
+	    }
+	}
+    }
+
+    /**
+     * attend l'écriture d'un dépôt si quelqu'un l'attend, par tranches : un
+     * écrivain arrêté fait échouer l'attente au lieu de la prolonger
+     * indéfiniment
+     *
+     * @param p_entry
+     * @throws SQLException si le dépôt n'a pu être écrit
+     */
+    private void await(Entry p_entry) throws SQLException
+    {
+	if (p_entry.done != null)
+	{
+	    boolean interrupted = false;
+	    boolean waiting = true;
+	    try
+	    {
+		while (waiting)
+		{
+		    try
+		    {
+			p_entry.done.get(AWAIT_SLICE, TimeUnit.MILLISECONDS);
+			waiting = false;
+		    }
+		    catch (TimeoutException e)
+		    {
+			if (!m_writer.isAlive())
+			{//le dépôt peut avoir été retiré de la file par l'écrivain avant son arrêt
+			    abandonQueue();
+			    p_entry.done.completeExceptionally(makeStopFailure());
+			}
+		    }
+		    catch (InterruptedException e)
+		    {
+			interrupted = true;
+		    }
+		    catch (ExecutionException e)
+		    {
+			throw new SQLException(e.getCause().getMessage(), e.getCause());
+		    }
+		}
+	    }
+	    finally
+	    {
+		if (interrupted)
+		{
+		    Thread.currentThread().interrupt();
+		}
+	    }
+	}
+    }
+
+    /**
+     * refuse tout dépôt une fois le journal fermé ou l'écrivain arrêté
+     */
+    private void checkOpen()
+    {
+	if (m_closed)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").mauvaiseMethode("JournalFerme", "", Locale.getDefault());
+	}
+	if (!m_writer.isAlive())
+	{
+	    abandonQueue();
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").mauvaiseMethode("JournalArrete", "", Locale.getDefault());
+	}
+    }
+
+    /**
+     * fait échouer tous les dépôts en file, que l'écrivain n'écrira plus, et
+     * libère leur place
+     */
+    private void abandonQueue()
+    {
+	SQLException failure = null;
+	Entry entry = m_queue.poll();
+	while (entry != null)
+	{
+	    if (failure == null)
+	    {
+		failure = makeStopFailure();
+	    }
+	    m_pending.addAndGet(-entry.size());
+	    entry.fail(failure);
+	    entry = m_queue.poll();
+	}
+	m_blocked.forEach(LockSupport::unpark);//les parties bloquées constatent l'arrêt
+    }
+
+    /**
+     *
+     * @return l'erreur transmise aux dépôts que l'écrivain n'écrira plus
+     */
+    private SQLException makeStopFailure()
+    {
+	SQLException result = null;
+	try
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").mauvaiseMethode(m_closed ? "JournalFerme" : "JournalArrete", "", Locale.getDefault());
+	}
+	catch (IllegalStateException e)
+	{
+	    result = new SQLException(e.getMessage(), e);
+	}
+	return result;
+    }
+
+    /**
+     * demande à l'écrivain de vider la file sans attendre
+     */
+    private void signal()
+    {
+	if (m_signal.compareAndSet(false, true))
+	{
+	    LockSupport.unpark(m_writer);
+	}
+    }
+
+    /**
+     * boucle de l'écrivain : attend d'être sollicité (ou la fin de la fenêtre
+     * pour la politique WINDOW) puis vide toute la file, jusqu'à la fermeture.
+     * Ce qui reste en file à son arrêt, quelle qu'en soit la cause, échoue.
+     */
+    private void runWriter()
+    {
+	List<Entry> batch = new ArrayList<>();
+	boolean running = true;
+	try
+	{
+	    while (running)
+	    {
+		if (!m_signal.get())
+		{//un réveil intempestif ne fait qu'écrire un lot plus tôt
+		    if (m_durability == Durability.WINDOW)
+		    {
+			LockSupport.parkNanos(this, m_windowNanos);
+		    }
+		    else
+		    {
+			LockSupport.park(this);
+		    }
+		}
+		m_signal.set(false);
+		running = !m_closed;//lu avant la vidange : ce qui précède la fermeture est écrit
+		drain(batch);
+	    }
+	}
+	finally
+	{
+	    abandonQueue();
+	}
+    }
+
+    /**
+     * écrit toute la file, par lots d'au plus m_batchSize mouvements
+     *
+     * @param p_batch liste de travail réutilisée d'un lot à l'autre
+     */
+    private void drain(List<Entry> p_batch)
+    {
+	Entry next = m_queue.poll();
+	while (next != null)
+	{
+	    p_batch.clear();
+	    int moves = 0;
+	    do
+	    {
+		p_batch.add(next);
+		moves += next.size();
+		next = m_queue.poll();
+	    }
+	    while (next != null && moves + next.size() <= m_batchSize);
+	    writeBatch(p_batch, moves);
+	}
+    }
+
+    /**
+     * écrit un lot, prévient ceux qui l'attendent et libère sa place dans la
+     * file. Si le lot échoue, chacun de ses dépôts est réécrit seul : les
+     * dépôts sains des autres parties sont conservés et seuls les fautifs
+     * échouent.
+     *
+     * @param p_batch
+     * @param p_moves nombre de mouvements du lot
+     */
+    private void writeBatch(List<Entry> p_batch, int p_moves)
+    {
+	SQLException failure = p_moves > 0 ? write(p_batch) : null;
+	boolean isolated = failure != null && p_batch.size() > 1;
+	for (Entry entry : p_batch)
+	{
+	    SQLException entryFailure = failure;
+	    if (isolated)
+	    {
+		entryFailure = entry.size() > 0 ? write(Collections.singletonList(entry)) : null;
+	    }
+	    m_pending.addAndGet(-entry.size());
+	    if (entryFailure == null)
+	    {
+		entry.succeed();
+	    }
+	    else
+	    {
+		entry.fail(entryFailure);
+	    }
+	}
+	m_blocked.forEach(LockSupport::unpark);
+    }
+
+    /**
+     * confie un lot à la destination, dont aucune erreur ne doit arrêter
+     * l'écrivain
+     *
+     * @param p_batch
+     * @return l'erreur d'écriture, null si le lot est écrit
+     */
+    private SQLException write(List<Entry> p_batch)
+    {
+	SQLException result = null;
+	long start = System.nanoTime();
+	try
+	{
+	    m_sink.write(p_batch);
+	}
+	catch (SQLException e)
+	{
+	    result = e;
+	}
+	catch (RuntimeException e)
+	{//par exemple une destination déjà fermée
+	    result = new SQLException(e.getMessage(), e);
+	}
+	finally
+	{
+	    if (result != null)
+	    {
+		m_metric.recordError();
+	    }
+	    m_metric.recordSince(start);
+	}
+	return result;
+    }
+
+    /**
+     * partie déposant des mouvements ou des événements : reçoit les erreurs
+     * d'écriture de ses dépôts que personne n'attendait, transmises lors de sa
+     * prochaine vidange ou relevées par la partie avant de modifier son état
+     */
+    static final class Owner
+    {
+
+	/**
+	 * première erreur pas encore transmise
+	 */
+	private final AtomicReference<SQLException> m_failure = new AtomicReference<>();
+
+	/**
+	 * garde une erreur d'écriture jusqu'à sa transmission
+	 *
+	 * @param p_failure
+	 */
+	void fail(SQLException p_failure)
+	{
+	    m_failure.compareAndSet(null, p_failure);
+	}
+
+	/**
+	 * transmet une éventuelle erreur d'écriture pas encore signalée
+	 *
+	 * @throws SQLException
+	 */
+	void throwFailure() throws SQLException
+	{
+	    SQLException failure = m_failure.getAndSet(null);
+	    if (failure != null)
+	    {
+		throw new SQLException(failure.getMessage(), failure);
+	    }
+	}
+    }
+
+    /**
+     * dépôt d'une partie : positions de vaisseaux ayant bougé durant la même
+     * impulsion, événements de son journal, ou simple vidange si aucun
+     */
+    static final class Entry
+    {
+
+	/**
+	 * partie déposante
+	 */
+	final Owner owner;
+
+	/**
+	 * identifiants des vaisseaux
+	 */
+	final int[] ids;
+
+	/**
+	 * positions compactées, dans le même ordre
+	 */
+	final long[] positions;
+
+	/**
+	 * tour de jeu
+	 */
+	final int turn;
+
+	/**
+	 * impulsion, null pour une vidange
+	 */
+	final Impulse impulse;
+
+	/**
+	 * identifiant de journalisation de la partie, null pour des mouvements
+	 */
+	final String gameId;
+
+	/**
+	 * événements du journal de la partie, dans l'ordre
+	 */
+	final List<GameEvent> events;
+
+	/**
+	 * complété une fois le lot écrit, null si personne n'attend
+	 */
+	final CompletableFuture<Void> done;
+
+	/**
+	 *
+	 * @param p_owner
+	 * @param p_ids
+	 * @param p_positions
+	 * @param p_turn
+	 * @param p_impulse
+	 * @param p_awaited vrai si le déposant attend l'écriture
+	 */
+	Entry(Owner p_owner, int[] p_ids, long[] p_positions, int p_turn, Impulse p_impulse, boolean p_awaited)
+	{
+	    owner = p_owner;
+	    ids = p_ids;
+	    positions = p_positions;
+	    turn = p_turn;
+	    impulse = p_impulse;
+	    gameId = null;
+	    events = Collections.emptyList();
+	    done = p_awaited ? new CompletableFuture<>() : null;
+	}
+
+	/**
+	 *
+	 * @param p_owner
+	 * @param p_gameId
+	 * @param p_events
+	 * @param p_awaited vrai si le déposant attend l'écriture
+	 */
+	Entry(Owner p_owner, String p_gameId, List<GameEvent> p_events, boolean p_awaited)
+	{
+	    owner = p_owner;
+	    ids = new int[0];
+	    positions = new long[0];
+	    turn = 0;
+	    impulse = null;
+	    gameId = p_gameId;
+	    events = p_events;
+	    done = p_awaited ? new CompletableFuture<>() : null;
+	}
+
+	/**
+	 *
+	 * @return le nombre d'écritures du dépôt : mouvements et événements
+	 */
+	int size()
+	{
+	    return ids.length + events.size();
+	}
+
+	/**
+	 * prévient le déposant s'il attend l'écriture
+	 */
+	void succeed()
+	{
+	    if (done != null)
+	    {
+		done.complete(null);
+	    }
+	}
+
+	/**
+	 * transmet une erreur d'écriture au déposant s'il l'attend, à sa partie
+	 * sinon
+	 *
+	 * @param p_failure
+	 */
+	void fail(SQLException p_failure)
+	{
+	    if (done != null)
+	    {
+		done.completeExceptionally(p_failure);
+	    }
+	    else
+	    {
+		owner.fail(p_failure);
+	    }
+	}
+    }
+}
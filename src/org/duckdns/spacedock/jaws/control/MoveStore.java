@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.sql.SQLException;
+import org.duckdns.spacedock.jaws.control.GameManager.Impulse;
+import org.duckdns.spacedock.jaws.model.MapObject;
+
+/**
+ * stockage des positions de vaisseaux, alimenté par lots par le thread
+ * écrivain du journal des mouvements (voir MoveJournal) : une seule position
+ * par exécution, vaisseau, tour et impulsion (une seconde fait échouer son
+ * lot dans la base SQLite, remplace la première ailleurs). Les
+ * identifiants de vaisseaux repartant de zéro à chaque démarrage, chaque
+ * position est rattachée à l'exécution qui l'a écrite et celles des
+ * exécutions précédentes ne sont jamais écrasées.
+ *
+ * Trois implémentations, choisies dans session.properties : la table moves de
+ * la base SQLite, une table en mémoire pour les tests et les simulations, et
+ * un journal binaire en ajout seul projeté en mémoire pour les parties à fort
+ * volume.
+ *
+ * @author ykonoclast
+ */
+interface MoveStore extends MoveJournal.Sink, AutoCloseable
+{
+
+    /**
+     * implémentations disponibles
+     */
+    enum Backend
+    {
+	SQLITE, MEMORY, MAPPED_LOG
+    }
+
+    /**
+     *
+     * @return l'exécution courante, à laquelle sont rattachées les positions
+     * écrites
+     */
+    int getRun();
+
+    /**
+     *
+     * @param p_idShip
+     * @param p_turn
+     * @param p_impulse
+     * @return la position enregistrée par l'exécution courante pour ce
+     * vaisseau à cette impulsion, null s'il n'y en a pas
+     * @throws SQLException
+     */
+    MapObject.HexCoordinates load(int p_idShip, int p_turn, Impulse p_impulse) throws SQLException;
+
+    /**
+     * parcourt les positions enregistrées, toutes exécutions confondues, dans
+     * l'ordre où elles ont été écrites : la dernière visitée pour une même
+     * clé est celle en vigueur
+     * (une implémentation peut ne présenter que celle-ci)
+     *
+     * @param p_visitor
+     * @throws SQLException
+     */
+    void replay(MoveVisitor p_visitor) throws SQLException;
+
+    /**
+     * libère les ressources du stockage, les lots déjà écrits restant acquis
+     */
+    @Override
+    void close();
+
+    /**
+     * traitement appliqué à chaque position lors d'un parcours
+     */
+    @FunctionalInterface
+    interface MoveVisitor
+    {
+
+	/**
+	 *
+	 * @param p_run exécution ayant écrit la position
+	 * @param p_idShip
+	 * @param p_turn
+	 * @param p_impulse
+	 * @param p_position position compactée (voir PackedHex)
+	 */
+	void visit(int p_run, int p_idShip, int p_turn, Impulse p_impulse, long p_position);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.util.List;
+import org.duckdns.spacedock.jaws.control.GameManager.Impulse;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.Ship;
+
+/**
+ * stockage sans effet : rien n'est conservé, pour les simulations dont seul
+ * le résultat compte
+ *
+ * @author ykonoclast
+ */
+final class NullGameStore implements GameStore
+{
+
+    /**
+     * instance unique, l'objet n'ayant pas d'état
+     */
+    private static final NullGameStore m_instance = new NullGameStore();
+
+    /**
+     * constructeur privé : on passe par getInstance()
+     */
+    private NullGameStore()
+    {
+    }
+
+    /**
+     *
+     * @return l'instance unique
+     */
+    static NullGameStore getInstance()
+    {
+	return m_instance;
+    }
+
+    @Override
+    public void registerGame(String p_gameId, String p_scenario)
+    {
+    }
+
+    @Override
+    public void storeMove(MoveJournal.Owner p_owner, int p_idShip, int p_turn, Impulse p_impulse, MapObject.HexCoordinates p_coord)
+    {
+    }
+
+    @Override
+    public void storeMoves(MoveJournal.Owner p_owner, List<Ship> p_ships, int p_turn, Impulse p_impulse)
+    {
+    }
+
+    @Override
+    public void appendEvents(MoveJournal.Owner p_owner, String p_gameId, List<GameEvent> p_events)
+    {
+    }
+
+    @Override
+    public void flush(MoveJournal.Owner p_owner)
+    {
+    }
+
+    @Override
+    public void storeSnapshot(String p_gameId, long p_seq, String p_state)
+    {
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import org.duckdns.spacedock.jaws.model.MapObject;
+
+/**
+ * ordre de mouvement donné à un vaisseau pendant l'impulsion en cours, objet
+ * immuable utilisé pour les ordres groupés
+ *
+ * @author ykonoclast
+ */
+public final class Order
+{
+
+    /**
+     * nature de l'ordre
+     */
+    public final Type type;
+
+    /**
+     * identifiant du vaisseau concerné
+     */
+    public final int shipId;
+
+    /**
+     * nouvelle orientation pour un virage, null pour un mouvement tout droit
+     */
+    public final MapObject.Orientation orientation;
+
+    /**
+     * constructeur privé : on passe par les méthodes factory
+     *
+     * @param p_type
+     * @param p_shipId
+     * @param p_orientation
+     */
+    private Order(Type p_type, int p_shipId, MapObject.Orientation p_orientation)
+    {
+	type = p_type;
+	shipId = p_shipId;
+	orientation = p_orientation;
+    }
+
+    /**
+     *
+     * @param p_shipId
+     * @return un ordre d'avancer tout droit
+     */
+    public static Order move(int p_shipId)
+    {
+	return new Order(Type.MOVE, p_shipId, null);
+    }
+
+    /**
+     *
+     * @param p_shipId
+     * @param p_orientation
+     * @return un ordre de virage vers l'orientation indiquée
+     */
+    public static Order turn(int p_shipId, MapObject.Orientation p_orientation)
+    {
+	return new Order(Type.TURN, p_shipId, p_orientation);
+    }
+
+    @Override
+    public String toString()
+    {
+	return type + " " + shipId + (orientation == null ? "" : " " + orientation);
+    }
+
+    /**
+     * types d'ordres
+     */
+    public enum Type
+    {
+	MOVE, TURN
+    }
+}
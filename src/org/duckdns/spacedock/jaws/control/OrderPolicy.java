@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.Ship;
+
+/**
+ * stratégie donnant les ordres d'un joueur lors d'une simulation : à chaque
+ * impulsion elle reçoit le rapport et les vaisseaux de la partie, et renvoie
+ * le lot d'ordres à appliquer. Une stratégie scriptée est une simple lambda,
+ * les stratégies usuelles sont fournies par les méthodes factory.
+ *
+ * @author ykonoclast
+ */
+@FunctionalInterface
+public interface OrderPolicy
+{
+
+    /**
+     *
+     * @param p_report rapport de l'impulsion en cours
+     * @param p_ships vaisseaux de la partie, par joueur
+     * @param p_random générateur propre à la partie : seul lui doit servir au
+     * hasard pour que la simulation soit reproductible
+     * @return les ordres à appliquer en un seul lot
+     */
+    List<Order> decide(GameManager.ImpulseReport p_report, Map<GameManager.Player, List<Ship>> p_ships, Random p_random);
+
+    /**
+     *
+     * @return une stratégie faisant avancer tout droit chaque vaisseau devant
+     * bouger
+     */
+    static OrderPolicy straight()
+    {
+	return random(0);
+    }
+
+    /**
+     *
+     * @param p_turnRatio probabilité qu'un vaisseau devant bouger vire (d'un
+     * cran à bâbord ou à tribord, si c'est permis) plutôt que d'avancer
+     * @return une stratégie aléatoire
+     */
+    static OrderPolicy random(double p_turnRatio)
+    {
+	return (report, ships, random) ->
+	{
+	    List<Order> result = new ArrayList<>();
+	    for (List<Ship> fleet : ships.values())
+	    {
+		for (Ship ship : fleet)
+		{
+		    if (report.mustMoveShips.contains(ship.getId()))
+		    {
+			Order order = Order.move(ship.getId());
+			if (p_turnRatio > 0 && random.nextDouble() < p_turnRatio)
+			{
+			    MapObject.Orientation current = ship.getOrientation();
+			    MapObject.Orientation target = random.nextBoolean() ? current.next() : current.previous();
+			    if (ship.canTurn(target))
+			    {
+				order = Order.turn(ship.getId(), target);
+			    }
+			}
+			result.add(order);
+		    }
+		}
+	    }
+	    return result;
+	};
+    }
+}
@@ -18,9 +18,11 @@ package org.duckdns.spacedock.jaws.control;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
@@ -28,11 +30,15 @@ import java.util.EnumMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.json.JsonArray;
 import javax.json.JsonNumber;
 import javax.json.JsonObject;
 import javax.json.JsonValue;
+import org.duckdns.spacedock.jaws.model.FleetStore;
 import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.PackedHex;
 import org.duckdns.spacedock.jaws.model.Ship;
 import org.duckdns.spacedock.commonutils.files.GeneralFileHandler;
 import org.duckdns.spacedock.jaws.control.GameManager.Impulse;
@@ -43,7 +49,7 @@ import org.duckdns.spacedock.jaws.control.GameManager.Impulse;
  *
  * @author ykonoclast
  */
-class SessionDao
+class SessionDao implements GameStore
 {
 
     /**
@@ -52,9 +58,17 @@ class SessionDao
     private final Map<Impulse, List<Integer>> m_curveByImpulse = new EnumMap<>(Impulse.class);
 
     /**
-     * instance privée singleton
+     * même table compilée en masques : le bit v du masque d'indice
+     * impulse.ordinal() est levé si la valeur de Power Curve v est jouable
+     * durant cette Impulse
      */
-    private static SessionDao m_instance;
+    private final long[] m_curveMasks = new long[Impulse.values().length];
+
+    /**
+     * instance privée singleton, volatile pour la publication sûre entre
+     * threads
+     */
+    private static volatile SessionDao m_instance;
 
     /**
      * accesseur pour les fichiers JSON
@@ -76,6 +90,51 @@ class SessionDao
      */
     private final File m_databaseRoot;//TODO à passer en paramétre plutôt qu'en dur comme ici
 
+    /**
+     * nombre de tours entre deux instantanés d'une partie
+     */
+    private final int m_snapshotInterval;
+
+    /**
+     * nombre de vaisseaux à partir duquel un scénario est chargé dans un
+     * stockage compact (FleetStore) plutôt qu'en objets autonomes
+     */
+    private final int m_fleetStoreThreshold;
+
+    /**
+     * scénarios déjà lus, par nom : les objets JSON étant immuables, ils sont
+     * partagés par toutes les parties qui les jouent (les simulations en
+     * créent des milliers)
+     */
+    private final ConcurrentMap<String, JsonObject> m_scenarios = new ConcurrentHashMap<>();
+
+    /**
+     * connexions à la base, gardées ouvertes d'un ordre SQL à l'autre
+     */
+    private final ConnectionPool m_pool;
+
+    /**
+     * réglages SQLite appliqués à chaque connexion
+     */
+    private final StorageProfile m_profile;
+
+    /**
+     * stockage des positions de vaisseaux
+     */
+    private final MoveStore m_moves;
+
+    /**
+     * mouvements en attente d'écriture, vidés par lots par un thread dédié
+     * dans m_moves
+     */
+    private final MoveJournal m_journal;
+
+    /**
+     * événements de partie en attente d'écriture, vidés par lots par un
+     * thread dédié selon la même politique que les mouvements
+     */
+    private final MoveJournal m_eventJournal;
+
     /**
      * constructeur privé pour éviter trop d'instanciations
      */
@@ -125,7 +184,13 @@ class SessionDao
 	    //on stocke le tout dans une EnumMap
 	    for (JsonValue number : jsonCurve)
 	    {
-		m_curveByImpulse.get(impulse).add(((JsonNumber) number).intValue());
+		int value = ((JsonNumber) number).intValue();
+		if (value < 0 || value >= Long.SIZE)
+		{
+		    m_handler.paramAberrant("BadCurveJSON", Integer.toString(value), Locale.getDefault());
+		}
+		m_curveByImpulse.get(impulse).add(value);
+		m_curveMasks[impulse.ordinal()] |= 1L << value;
 	    }
 
 	});
@@ -134,10 +199,136 @@ class SessionDao
 	Class.forName("org.sqlite.JDBC");
 	m_databaseRoot = new File(SessionDao.class.getProtectionDomain().getCodeSource().getLocation().toURI());
 	m_urlBase = "jdbc:sqlite:" + m_databaseRoot.getAbsoluteFile().getParent() + "/" + m_databaseFileName;
+	m_profile = new StorageProfile(readSessionEnum(StorageProfile.JournalMode.class, "dbJournalMode"), readSessionEnum(StorageProfile.Synchronous.class, "dbSynchronous"), readSessionParam("dbCacheSize", Integer.MIN_VALUE), readSessionParam("dbMmapSize", 0), readSessionParam("dbBusyTimeout", 0));
+	m_pool = new ConnectionPool(m_urlBase, readSessionParam("connectionPoolSize", 1), readSessionParam("connectionTimeout", 0), m_profile);
 
 	//création des tables si elles n'existent pas
-	String sql = "CREATE TABLE IF NOT EXISTS moves (id integer,turn integer,impulse text,mvt text NOT NULL,PRIMARY KEY(id, turn, impulse));";
-	executeSQLStatement(sql);
+	executeSQLStatement("CREATE TABLE IF NOT EXISTS games (game text PRIMARY KEY,scenario text NOT NULL);");
+	executeSQLStatement("CREATE TABLE IF NOT EXISTS events (game text,seq integer,turn integer,impulse text,type text NOT NULL,ship integer,orientation text,PRIMARY KEY(game, seq));");
+	executeSQLStatement("CREATE TABLE IF NOT EXISTS snapshots (game text,seq integer,state text NOT NULL,PRIMARY KEY(game, seq));");
+
+	m_snapshotInterval = readSessionParam("snapshotInterval", 1);
+	m_fleetStoreThreshold = readSessionParam("fleetStoreThreshold", 0);
+	m_moves = openMoveStore(readSessionEnum(MoveStore.Backend.class, "moveStore"));
+	MoveJournal.Durability durability = readSessionEnum(MoveJournal.Durability.class, "moveDurability");
+	int window = readSessionParam("moveWindow", 1);
+	int capacity = readSessionParam("moveQueueCapacity", 1);
+	int batchSize = readSessionParam("moveBatchSize", 1);
+	m_journal = new MoveJournal(m_moves, durability, window, capacity, batchSize);
+	m_eventJournal = new MoveJournal("jaws-event-journal", Metrics.DB_APPEND_EVENTS, this::writeEvents, durability, window, capacity, batchSize);
+    }
+
+    /**
+     *
+     * @param p_key
+     * @param p_min plus petite valeur admise
+     * @return la valeur entière du paramétre dans session.properties
+     * @throws FileNotFoundException si le fichier de configuration est absent
+     */
+    private int readSessionParam(String p_key, int p_min) throws FileNotFoundException
+    {
+	int result = 0;
+	try
+	{
+	    result = Integer.parseInt(m_handler.getAppProperty("session", p_key).trim());
+	}
+	catch (IOException e)
+	{
+	    m_handler.fichIntrouvable("ConfigIntrouvable", "session", Locale.getDefault());
+	}
+	catch (NumberFormatException | NullPointerException e)
+	{
+	    m_handler.paramAberrant("BadSessionParam", p_key, Locale.getDefault());
+	}
+	if (result < p_min)
+	{
+	    m_handler.paramAberrant("BadSessionParam", p_key + "=" + result, Locale.getDefault());
+	}
+	return result;
+    }
+
+    /**
+     *
+     * @param p_key
+     * @return la valeur non vide du paramétre dans session.properties, sans
+     * les blancs l'entourant
+     * @throws FileNotFoundException si le fichier de configuration est absent
+     */
+    private String readSessionString(String p_key) throws FileNotFoundException
+    {
+	String result = null;
+	try
+	{
+	    result = m_handler.getAppProperty("session", p_key);
+	}
+	catch (IOException e)
+	{
+	    m_handler.fichIntrouvable("ConfigIntrouvable", "session", Locale.getDefault());
+	}
+	if (result == null || result.trim().isEmpty())
+	{
+	    m_handler.paramAberrant("BadSessionParam", p_key, Locale.getDefault());
+	}
+	return result.trim();
+    }
+
+    /**
+     *
+     * @param <E>
+     * @param p_type
+     * @param p_key
+     * @return la constante nommée par le paramétre dans session.properties
+     * @throws FileNotFoundException si le fichier de configuration est absent
+     */
+    private <E extends Enum<E>> E readSessionEnum(Class<E> p_type, String p_key) throws FileNotFoundException
+    {
+	E result = null;
+	try
+	{
+	    result = Enum.valueOf(p_type, m_handler.getAppProperty("session", p_key).trim());
+	}
+	catch (IOException e)
+	{
+	    m_handler.fichIntrouvable("ConfigIntrouvable", "session", Locale.getDefault());
+	}
+	catch (IllegalArgumentException | NullPointerException e)
+	{
+	    m_handler.paramAberrant("BadSessionParam", p_key, Locale.getDefault());
+	}
+	return result;
+    }
+
+    /**
+     *
+     * @param p_backend
+     * @return le stockage des mouvements choisi, ouvert (le journal binaire
+     * est placé à côté de la base)
+     * @throws SQLException
+     * @throws FileNotFoundException si le fichier de configuration est absent
+     */
+    private MoveStore openMoveStore(MoveStore.Backend p_backend) throws SQLException, FileNotFoundException
+    {
+	MoveStore result;
+	switch (p_backend)
+	{
+	    case MEMORY:
+		result = new MemoryMoveStore();
+		break;
+	    case MAPPED_LOG:
+		File log = new File(m_databaseRoot.getAbsoluteFile().getParent(), readSessionString("moveLogFile"));
+		try
+		{
+		    result = new MappedMoveLog(log, readSessionParam("moveLogSegment", 1));
+		}
+		catch (IOException e)
+		{
+		    throw new SQLException(e.getMessage(), e);
+		}
+		break;
+	    default:
+		result = new SqliteMoveStore(m_pool);
+	}
+	return result;
     }
 
     /**
@@ -147,16 +338,59 @@ class SessionDao
      */
     static SessionDao getInstance() throws FileNotFoundException, URISyntaxException, ClassNotFoundException, SQLException
     {
-	SessionDao result;
-	if (m_instance == null)
+	SessionDao result = m_instance;
+	if (result == null)
 	{
-	    result = new SessionDao();
+	    synchronized (SessionDao.class)
+	    {//verrou pris uniquement lors de la toute première création
+		result = m_instance;
+		if (result == null)
+		{
+		    result = new SessionDao();
+		    m_instance = result;
+		}
+	    }
 	}
-	else
+	return result;
+    }
+
+    /**
+     * écrit les mouvements en attente puis ferme les connexions à la base à
+     * l'arrêt de l'application. Une utilisation ultérieure recrée une
+     * instance et rouvre la base.
+     */
+    static void shutdown()
+    {
+	synchronized (SessionDao.class)
 	{
-	    result = m_instance;
+	    SessionDao instance = m_instance;
+	    if (instance != null)
+	    {
+		m_instance = null;
+		instance.m_eventJournal.close();
+		instance.m_journal.close();
+		instance.m_moves.close();
+		instance.m_pool.close();
+	    }
 	}
-	return result;
+    }
+
+    /**
+     *
+     * @return le pool de connexions de la base
+     */
+    ConnectionPool getConnectionPool()
+    {
+	return m_pool;
+    }
+
+    /**
+     *
+     * @return les réglages SQLite appliqués à chaque connexion
+     */
+    StorageProfile getStorageProfile()
+    {
+	return m_profile;
     }
 
     /**
@@ -172,19 +406,48 @@ class SessionDao
      */
     void loadScenario(String p_scenario, List<Ship> p_listTalonShips, List<Ship> p_listTerranShips) throws FileNotFoundException
     {
-	JsonObject scenar = m_handler.loadJsonFile("scenarii/" + p_scenario);
+	loadScenario(p_scenario, p_listTalonShips, p_listTerranShips, null);
+    }
+
+    /**
+     * charge un scénario, en choisissant le stockage des vaisseaux
+     *
+     * @param p_scenario
+     * @param p_listTalonShips
+     * @param p_listTerranShips
+     * @param p_fleetStore vrai pour ranger chaque flotte dans un FleetStore,
+     * faux pour des vaisseaux autonomes, null pour décider selon le nombre de
+     * vaisseaux et le seuil de session.properties
+     * @throws FileNotFoundException
+     */
+    void loadScenario(String p_scenario, List<Ship> p_listTalonShips, List<Ship> p_listTerranShips, Boolean p_fleetStore) throws FileNotFoundException
+    {
+	JsonObject scenar = m_scenarios.get(p_scenario);
+	if (scenar == null)
+	{//lecture hors de la map : au pire deux threads lisent le même fichier, un seul résultat est conservé
+	    JsonObject loaded = m_handler.loadJsonFile("scenarii/" + p_scenario);
+	    scenar = m_scenarios.putIfAbsent(p_scenario, loaded);
+	    if (scenar == null)
+	    {
+		scenar = loaded;
+	    }
+	}
 
 	JsonArray talonShips = scenar.getJsonArray("Talon ships");
 	JsonArray terranShips = scenar.getJsonArray("Terran ships");
 
+	boolean compact = p_fleetStore != null ? p_fleetStore : talonShips.size() + terranShips.size() >= m_fleetStoreThreshold;
+	FleetStore talonStore = compact ? new FleetStore(talonShips.size()) : null;
+	FleetStore terranStore = compact ? new FleetStore(terranShips.size()) : null;
+
 	for (JsonValue ship : talonShips)
 	{
-	    p_listTalonShips.add(makeShip((JsonObject) ship));
+	    p_listTalonShips.add(makeShip((JsonObject) ship, talonStore));
 	}
 
 	for (JsonValue ship : terranShips)
 	{
-	    p_listTerranShips.add(makeShip((JsonObject) ship));
+	    p_listTerranShips.add(makeShip((JsonObject) ship, terranStore));
 	}
     }
 
@@ -193,9 +456,11 @@ class SessionDao
      * respectant le bon format
      *
      * @param p_object
+     * @param p_store stockage compact de la flotte, null pour un vaisseau
+     * autonome
      * @return
      */
-    private Ship makeShip(JsonObject p_object) throws FileNotFoundException
+    private Ship makeShip(JsonObject p_object, FleetStore p_store) throws FileNotFoundException
     {
 	String name = p_object.getString("name");
 	String type = p_object.getString("type");
@@ -229,30 +494,388 @@ class SessionDao
 	    default:
 		orientation = MapObject.Orientation.NE;//tolérance aux erreurs : si l'orientation n'est pas une chaîne conforme, le vaisseau pointe au NE
 	}
-	return new Ship(type, name, new MapObject.HexCoordinates(posL, posC, orientation));
+	MapObject.HexCoordinates coordinates = new MapObject.HexCoordinates(posL, posC, orientation);
+	return p_store != null ? new Ship(p_store, type, name, coordinates) : new Ship(type, name, coordinates);
     }
 
     private void executeSQLStatement(String p_SQLCode) throws SQLException
     {
 	//try with resources pour tout fermer automatiquement si ça part mal
-	try (Connection conn = DriverManager.getConnection(m_urlBase);
-		Statement stmt = conn.createStatement())
+	long start = System.nanoTime();
+	try (ConnectionPool.Lease lease = m_pool.acquire();
+		Statement stmt = lease.get().createStatement())
+	{
+	    stmt.execute(p_SQLCode);
+	}
+	catch (SQLException e)
 	{
-	    if (conn != null)
+	    Metrics.DB_EXECUTE.recordError();
+	    throw e;//on renvoie juste l'exception : à voir si plus haut on souhaite afficher ou juste logger
+	}
+	finally
+	{
+	    Metrics.DB_EXECUTE.recordSince(start);
+	}
+    }
+
+    /**
+     * dépose le mouvement dans le journal à écriture différée : il est écrit
+     * plus tard par lots, selon la politique de durabilité configurée
+     *
+     * @param p_owner
+     * @param p_idShip
+     * @param p_turn
+     * @param p_impulse
+     * @param p_coord
+     * @throws SQLException
+     */
+    @Override
+    public void storeMove(MoveJournal.Owner p_owner, int p_idShip, int p_turn, Impulse p_impulse, MapObject.HexCoordinates p_coord) throws SQLException
+    {
+	long start = System.nanoTime();
+	try
+	{
+	    m_journal.append(p_owner, new int[]
 	    {
-		stmt.execute(p_SQLCode);
-	    }
+		p_idShip
+	    }, new long[]
+	    {
+		PackedHex.pack(p_coord)
+	    }, p_turn, p_impulse);
+	}
+	catch (SQLException e)
+	{
+	    Metrics.DB_STORE_MOVE.recordError();
+	    throw e;//on renvoie juste l'exception : à voir si plus haut on souhaite afficher ou juste logger
+	}
+	finally
+	{
+	    Metrics.DB_STORE_MOVE.recordSince(start);
+	}
+    }
+
+    /**
+     * dépose la position de plusieurs vaisseaux ayant bougé durant la même
+     * impulsion dans le journal à écriture différée : elles seront écrites
+     * dans la même transaction, soit toutes, soit aucune
+     *
+     * @param p_owner
+     * @param p_ships
+     * @param p_turn
+     * @param p_impulse
+     * @throws SQLException
+     */
+    @Override
+    public void storeMoves(MoveJournal.Owner p_owner, List<Ship> p_ships, int p_turn, Impulse p_impulse) throws SQLException
+    {
+	long start = System.nanoTime();
+	int[] ids = new int[p_ships.size()];
+	long[] positions = new long[ids.length];
+	for (int i = 0; i < ids.length; ++i)
+	{//les positions sont figées maintenant, l'écriture venant plus tard
+	    Ship ship = p_ships.get(i);
+	    ids[i] = ship.getId();
+	    positions[i] = ship.getPosition();
+	}
+	try
+	{
+	    m_journal.append(p_owner, ids, positions, p_turn, p_impulse);
 	}
 	catch (SQLException e)
 	{
+	    Metrics.DB_STORE_MOVE.recordError();
 	    throw e;//on renvoie juste l'exception : à voir si plus haut on souhaite afficher ou juste logger
 	}
+	finally
+	{
+	    Metrics.DB_STORE_MOVE.recordSince(start);
+	}
+    }
+
+    @Override
+    public void flush(MoveJournal.Owner p_owner) throws SQLException
+    {
+	try
+	{
+	    m_eventJournal.flush(p_owner);
+	}
+	finally
+	{//les mouvements sont vidés même si l'écriture d'un événement a échoué
+	    m_journal.flush(p_owner);
+	}
+    }
+
+    /**
+     *
+     * @param p_idShip
+     * @param p_turn
+     * @param p_impulse
+     * @return la position enregistrée pour ce vaisseau à cette impulsion,
+     * null s'il n'y en a pas
+     * @throws SQLException
+     */
+    MapObject.HexCoordinates loadMove(int p_idShip, int p_turn, Impulse p_impulse) throws SQLException
+    {
+	return m_moves.load(p_idShip, p_turn, p_impulse);
+    }
+
+    /**
+     * enregistre une nouvelle partie : un éventuel journal laissé par une
+     * ancienne partie de même identifiant est effacé
+     *
+     * @param p_gameId
+     * @param p_scenario
+     * @throws SQLException
+     */
+    @Override
+    public void registerGame(String p_gameId, String p_scenario) throws SQLException
+    {
+	awaitEvents();
+	try (ConnectionPool.Lease lease = m_pool.acquire())
+	{
+	    lease.get().setAutoCommit(false);
+	    try
+	    {
+		deleteGameRows(lease.get(), p_gameId);
+		try (PreparedStatement stmt = lease.get().prepareStatement("INSERT INTO games VALUES (?,?);"))
+		{
+		    stmt.setString(1, p_gameId);
+		    stmt.setString(2, p_scenario);
+		    stmt.executeUpdate();
+		}
+		lease.get().commit();
+	    }
+	    catch (SQLException e)
+	    {
+		lease.get().rollback();
+		throw e;
+	    }
+	}
+    }
+
+    /**
+     * efface définitivement une partie et tout son journal
+     *
+     * @param p_gameId
+     * @throws SQLException
+     */
+    void deleteGame(String p_gameId) throws SQLException
+    {
+	awaitEvents();
+	try (ConnectionPool.Lease lease = m_pool.acquire())
+	{
+	    lease.get().setAutoCommit(false);
+	    try
+	    {
+		deleteGameRows(lease.get(), p_gameId);
+		lease.get().commit();
+	    }
+	    catch (SQLException e)
+	    {
+		lease.get().rollback();
+		throw e;
+	    }
+	}
+    }
+
+    /**
+     * supprime les lignes d'une partie dans toutes les tables la concernant
+     *
+     * @param p_conn connexion dans une transaction en cours
+     * @param p_gameId
+     * @throws SQLException
+     */
+    private static void deleteGameRows(Connection p_conn, String p_gameId) throws SQLException
+    {
+	for (String table : new String[]
+	{
+	    "games", "events", "snapshots"
+	})
+	{
+	    try (PreparedStatement stmt = p_conn.prepareStatement("DELETE FROM " + table + " WHERE game = ?;"))
+	    {
+		stmt.setString(1, p_gameId);
+		stmt.executeUpdate();
+	    }
+	}
+    }
+
+    /**
+     *
+     * @param p_gameId
+     * @return le scénario de la partie enregistrée sous cet identifiant, null
+     * si aucune ne l'est
+     * @throws SQLException
+     */
+    String loadGameScenario(String p_gameId) throws SQLException
+    {
+	String result = null;
+	try (ConnectionPool.Lease lease = m_pool.acquire();
+		PreparedStatement stmt = lease.get().prepareStatement("SELECT scenario FROM games WHERE game = ?;"))
+	{
+	    stmt.setString(1, p_gameId);
+	    try (ResultSet rs = stmt.executeQuery())
+	    {
+		if (rs.next())
+		{
+		    result = rs.getString(1);
+		}
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * dépose des événements dans le journal à écriture différée : ils sont
+     * écrits plus tard par lots, avec ceux des autres parties, selon la
+     * politique de durabilité configurée
+     *
+     * @param p_owner
+     * @param p_gameId
+     * @param p_events
+     * @throws SQLException
+     */
+    @Override
+    public void appendEvents(MoveJournal.Owner p_owner, String p_gameId, List<GameEvent> p_events) throws SQLException
+    {
+	m_eventJournal.appendEvents(p_owner, p_gameId, p_events);
+    }
+
+    /**
+     * écrit un lot d'événements, toutes parties confondues, en une seule
+     * transaction
+     *
+     * @param p_batch
+     * @throws SQLException
+     */
+    private void writeEvents(List<MoveJournal.Entry> p_batch) throws SQLException
+    {
+	try (ConnectionPool.Lease lease = m_pool.acquire())
+	{
+	    PreparedStatement stmt = lease.prepare("INSERT INTO events VALUES (?,?,?,?,?,?,?);");
+	    lease.get().setAutoCommit(false);
+	    try
+	    {
+		for (MoveJournal.Entry entry : p_batch)
+		{
+		    for (GameEvent event : entry.events)
+		    {
+			stmt.setString(1, entry.gameId);
+			stmt.setLong(2, event.seq);
+			stmt.setInt(3, event.turn);
+			stmt.setString(4, event.impulse.name());
+			stmt.setString(5, event.type.name());
+			stmt.setInt(6, event.ship);
+			stmt.setString(7, event.orientation == null ? null : event.orientation.name());
+			stmt.addBatch();
+		    }
+		}
+		stmt.executeBatch();
+		lease.get().commit();
+	    }
+	    catch (SQLException e)
+	    {
+		lease.get().rollback();
+		throw e;
+	    }
+	}
+    }
+
+    /**
+     * attend l'écriture des événements déposés jusqu'ici, avant de lire ou
+     * d'effacer un journal : un événement resté en file ne doit ni manquer à
+     * la lecture ni être écrit après l'effacement. Les échecs d'écriture
+     * restent signalés à leurs parties.
+     *
+     * @throws SQLException
+     */
+    private void awaitEvents() throws SQLException
+    {
+	m_eventJournal.flush(new MoveJournal.Owner());
+    }
+
+    /**
+     *
+     * @param p_gameId
+     * @param p_afterSeq
+     * @return les événements de la partie postérieurs au numéro indiqué, dans
+     * l'ordre
+     * @throws SQLException
+     */
+    List<GameEvent> loadEvents(String p_gameId, long p_afterSeq) throws SQLException
+    {
+	awaitEvents();
+	List<GameEvent> result = new ArrayList<>();
+	try (ConnectionPool.Lease lease = m_pool.acquire();
+		PreparedStatement stmt = lease.get().prepareStatement("SELECT seq, turn, impulse, type, ship, orientation FROM events WHERE game = ? AND seq > ? ORDER BY seq;"))
+	{
+	    stmt.setString(1, p_gameId);
+	    stmt.setLong(2, p_afterSeq);
+	    try (ResultSet rs = stmt.executeQuery())
+	    {
+		while (rs.next())
+		{
+		    String orientation = rs.getString(6);
+		    result.add(new GameEvent(rs.getLong(1), rs.getInt(2), Impulse.valueOf(rs.getString(3)), GameEvent.Type.valueOf(rs.getString(4)), rs.getInt(5), orientation == null ? null : MapObject.Orientation.valueOf(orientation)));
+		}
+	    }
+	}
+	return result;
     }
 
-    void storeMove(int p_idShip, int p_turn, Impulse p_impulse, MapObject.HexCoordinates p_coord) throws SQLException
+    /**
+     * enregistre un instantané de l'état d'une partie
+     *
+     * @param p_gameId
+     * @param p_seq numéro du dernier événement pris en compte dans l'instantané
+     * @param p_state état sérialisé
+     * @throws SQLException
+     */
+    @Override
+    public void storeSnapshot(String p_gameId, long p_seq, String p_state) throws SQLException
     {
-	String sql = "INSERT INTO moves VALUES (" + p_idShip + "," + p_turn + "," + "\"" + p_impulse.toString() + "\"" + "," + "\"" + p_coord.toString() + "\"" + ");";
-	executeSQLStatement(sql);
+	try (ConnectionPool.Lease lease = m_pool.acquire();
+		PreparedStatement stmt = lease.get().prepareStatement("INSERT OR REPLACE INTO snapshots VALUES (?,?,?);"))
+	{
+	    stmt.setString(1, p_gameId);
+	    stmt.setLong(2, p_seq);
+	    stmt.setString(3, p_state);
+	    stmt.executeUpdate();
+	}
+    }
+
+    /**
+     *
+     * @param p_gameId
+     * @return le plus récent instantané de la partie, null s'il n'y en a
+     * aucun
+     * @throws SQLException
+     */
+    Snapshot loadLatestSnapshot(String p_gameId) throws SQLException
+    {
+	Snapshot result = null;
+	try (ConnectionPool.Lease lease = m_pool.acquire();
+		PreparedStatement stmt = lease.get().prepareStatement("SELECT seq, state FROM snapshots WHERE game = ? ORDER BY seq DESC LIMIT 1;"))
+	{
+	    stmt.setString(1, p_gameId);
+	    try (ResultSet rs = stmt.executeQuery())
+	    {
+		if (rs.next())
+		{
+		    result = new Snapshot(rs.getLong(1), rs.getString(2));
+		}
+	    }
+	}
+	return result;
+    }
+
+    /**
+     *
+     * @return le nombre de tours entre deux instantanés d'une partie
+     */
+    int getSnapshotInterval()
+    {
+	return m_snapshotInterval;
     }
 
     /**
@@ -266,4 +889,54 @@ class SessionDao
     {
 	return m_curveByImpulse.get(p_impulse);
     }
+
+    /**
+     *
+     * @param p_impulse une impulsion
+     * @return le masque des valeurs de Power Curve ouvrant droit à action ou
+     * mouvement dans cette Impulse, à tester avec isInCurveMask()
+     */
+    long getCurveMask(GameManager.Impulse p_impulse)
+    {
+	return m_curveMasks[p_impulse.ordinal()];
+    }
+
+    /**
+     *
+     * @param p_mask masque obtenu par getCurveMask()
+     * @param p_value valeur de Power Curve
+     * @return vrai si la valeur est jouable
+     */
+    static boolean isInCurveMask(long p_mask, int p_value)
+    {
+	return p_value >= 0 && p_value < Long.SIZE && (p_mask & (1L << p_value)) != 0;
+    }
+
+    /**
+     * instantané sérialisé de l'état d'une partie
+     */
+    static final class Snapshot
+    {
+
+	/**
+	 * numéro du dernier événement pris en compte
+	 */
+	final long seq;
+
+	/**
+	 * état sérialisé
+	 */
+	final String state;
+
+	/**
+	 *
+	 * @param p_seq
+	 * @param p_state
+	 */
+	Snapshot(long p_seq, String p_state)
+	{
+	    seq = p_seq;
+	    state = p_state;
+	}
+    }
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import org.duckdns.spacedock.jaws.control.GameManager.Player;
+
+/**
+ * statistiques cumulées d'un lot de parties simulées. Chaque tâche de la
+ * simulation remplit ses propres statistiques, qui sont fusionnées deux à
+ * deux en remontant : aucun compteur n'est partagé entre threads.
+ *
+ * @author ykonoclast
+ */
+public final class SimulationStats
+{
+
+    /**
+     * nombre de parties jouées
+     */
+    private long m_games = 0;
+
+    /**
+     * nombre d'impulsions jouées (une par joueur et par impulsion)
+     */
+    private long m_impulses = 0;
+
+    /**
+     * nombre de mouvements tout droit appliqués
+     */
+    private long m_moves = 0;
+
+    /**
+     * nombre de virages appliqués
+     */
+    private long m_turns = 0;
+
+    /**
+     * nombre de lots d'ordres refusés par le moteur
+     */
+    private long m_rejectedBatches = 0;
+
+    /**
+     * nombre d'événements journalisés (stockage en mémoire uniquement)
+     */
+    private long m_events = 0;
+
+    /**
+     * somme, pour chaque joueur, des distances en hexagones entre la position
+     * de départ et la position finale de ses vaisseaux
+     */
+    private final long[] m_displacement = new long[Player.values().length];
+
+    /**
+     * ajoute le résultat d'une partie
+     *
+     * @param p_impulses
+     * @param p_moves
+     * @param p_turns
+     * @param p_rejectedBatches
+     * @param p_events
+     * @param p_displacement distances parcourues par joueur
+     */
+    void recordGame(long p_impulses, long p_moves, long p_turns, long p_rejectedBatches, long p_events, Map<Player, Integer> p_displacement)
+    {
+	++m_games;
+	m_impulses += p_impulses;
+	m_moves += p_moves;
+	m_turns += p_turns;
+	m_rejectedBatches += p_rejectedBatches;
+	m_events += p_events;
+	for (Map.Entry<Player, Integer> entry : p_displacement.entrySet())
+	{
+	    m_displacement[entry.getKey().ordinal()] += entry.getValue();
+	}
+    }
+
+    /**
+     * ajoute les statistiques d'un autre lot à celles-ci
+     *
+     * @param p_other
+     */
+    void merge(SimulationStats p_other)
+    {
+	m_games += p_other.m_games;
+	m_impulses += p_other.m_impulses;
+	m_moves += p_other.m_moves;
+	m_turns += p_other.m_turns;
+	m_rejectedBatches += p_other.m_rejectedBatches;
+	m_events += p_other.m_events;
+	for (int i = 0; i < m_displacement.length; ++i)
+	{
+	    m_displacement[i] += p_other.m_displacement[i];
+	}
+    }
+
+    /**
+     *
+     * @return le nombre de parties jouées
+     */
+    public long getGames()
+    {
+	return m_games;
+    }
+
+    /**
+     *
+     * @return le nombre d'impulsions jouées, une par joueur et par impulsion
+     */
+    public long getImpulses()
+    {
+	return m_impulses;
+    }
+
+    /**
+     *
+     * @return le nombre de mouvements tout droit
+     */
+    public long getMoves()
+    {
+	return m_moves;
+    }
+
+    /**
+     *
+     * @return le nombre de virages
+     */
+    public long getTurns()
+    {
+	return m_turns;
+    }
+
+    /**
+     *
+     * @return le nombre de lots d'ordres refusés
+     */
+    public long getRejectedBatches()
+    {
+	return m_rejectedBatches;
+    }
+
+    /**
+     *
+     * @return le nombre d'événements journalisés en mémoire
+     */
+    public long getEvents()
+    {
+	return m_events;
+    }
+
+    /**
+     *
+     * @param p_player
+     * @return la distance moyenne par partie, en hexagones, entre départ et
+     * arrivée de la flotte du joueur (somme sur ses vaisseaux)
+     */
+    public double getMeanDisplacement(Player p_player)
+    {
+	return m_games == 0 ? 0 : m_displacement[p_player.ordinal()] / (double) m_games;
+    }
+
+    /**
+     *
+     * @param o
+     * @return
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+	boolean result = false;
+	if (o instanceof SimulationStats)
+	{
+	    SimulationStats other = (SimulationStats) o;
+	    result = m_games == other.m_games && m_impulses == other.m_impulses && m_moves == other.m_moves && m_turns == other.m_turns && m_rejectedBatches == other.m_rejectedBatches && m_events == other.m_events && Arrays.equals(m_displacement, other.m_displacement);
+	}
+	return result;
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public int hashCode()
+    {
+	return Objects.hash(m_games, m_impulses, m_moves, m_turns, m_rejectedBatches, m_events, Arrays.hashCode(m_displacement));
+    }
+
+    @Override
+    public String toString()
+    {
+	return "games=" + m_games + " impulses=" + m_impulses + " moves=" + m_moves + " turns=" + m_turns + " rejected=" + m_rejectedBatches + " events=" + m_events + " displacement=" + Arrays.toString(m_displacement);
+    }
+}
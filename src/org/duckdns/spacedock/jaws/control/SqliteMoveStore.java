@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import org.duckdns.spacedock.jaws.control.GameManager.Impulse;
+import org.duckdns.spacedock.jaws.model.HexGeometry;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.PackedHex;
+
+/**
+ * positions de vaisseaux dans la table moves de la base SQLite, en colonnes
+ * typées (une table à l'ancien format est convertie à l'ouverture). Chaque
+ * ouverture inscrit une nouvelle exécution dans la table runs : les lignes
+ * sont repérées par l'exécution qui les a écrites, celles des exécutions
+ * précédentes restant intactes.
+ *
+ * @author ykonoclast
+ */
+final class SqliteMoveStore implements MoveStore
+{
+
+    /**
+     * insertion d'un mouvement, préparée une fois par connexion : une
+     * position déjà enregistrée pour la même clé n'est jamais écrasée, le lot
+     * qui la contient échoue
+     */
+    private static final String MOVE_INSERT = "INSERT INTO moves (run, id, turn, impulse, posL, posC, orientation) VALUES (?,?,?,?,?,?,?);";
+
+    /**
+     * exécution à laquelle sont rattachées les lignes écrites avant que les
+     * exécutions ne soient numérotées
+     */
+    static final int LEGACY_RUN = 0;
+
+    /**
+     * impulsions, dans l'ordre de déclaration
+     */
+    private static final Impulse[] IMPULSES = Impulse.values();
+
+    /**
+     * connexions à la base, appartenant à SessionDao
+     */
+    private final ConnectionPool m_pool;
+
+    /**
+     * exécution courante, inscrite dans la table runs à l'ouverture
+     */
+    private final int m_run;
+
+    /**
+     * crée les tables si besoin, convertit celle des mouvements si elle est à
+     * l'ancien format et inscrit une nouvelle exécution
+     *
+     * @param p_pool
+     * @throws SQLException
+     */
+    SqliteMoveStore(ConnectionPool p_pool) throws SQLException
+    {
+	m_pool = p_pool;
+	try (ConnectionPool.Lease lease = m_pool.acquire();
+		Statement stmt = lease.get().createStatement())
+	{
+	    stmt.execute(makeMovesTable("moves"));
+	    stmt.execute("CREATE TABLE IF NOT EXISTS runs (run integer PRIMARY KEY AUTOINCREMENT,started integer NOT NULL);");
+	}
+	migrateMoves();
+	int run = LEGACY_RUN;
+	try (ConnectionPool.Lease lease = m_pool.acquire();
+		Statement stmt = lease.get().createStatement())
+	{
+	    stmt.executeUpdate("INSERT INTO runs (started) VALUES (" + System.currentTimeMillis() + ");");
+	    try (ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid();"))
+	    {
+		rs.next();
+		run = rs.getInt(1);
+	    }
+	}
+	m_run = run;
+    }
+
+    @Override
+    public int getRun()
+    {
+	return m_run;
+    }
+
+    /**
+     * écrit un lot en une seule transaction
+     *
+     * @param p_batch
+     * @throws SQLException
+     */
+    @Override
+    public void write(List<MoveJournal.Entry> p_batch) throws SQLException
+    {
+	try (ConnectionPool.Lease lease = m_pool.acquire())
+	{
+	    PreparedStatement stmt = lease.prepare(MOVE_INSERT);
+	    lease.get().setAutoCommit(false);
+	    try
+	    {
+		for (MoveJournal.Entry entry : p_batch)
+		{
+		    for (int i = 0; i < entry.ids.length; ++i)
+		    {
+			long position = entry.positions[i];
+			bindMove(stmt, m_run, entry.ids[i], entry.turn, entry.impulse, PackedHex.posL(position), PackedHex.posC(position), PackedHex.orientation(position));
+			stmt.addBatch();
+		    }
+		}
+		stmt.executeBatch();
+		lease.get().commit();
+	    }
+	    catch (SQLException e)
+	    {
+		lease.get().rollback();
+		throw e;
+	    }
+	}
+    }
+
+    /**
+     * renseigne les paramétres de MOVE_INSERT
+     *
+     * @param p_stmt
+     * @param p_run
+     * @param p_idShip
+     * @param p_turn
+     * @param p_impulse
+     * @param p_posL
+     * @param p_posC
+     * @param p_orientation
+     * @throws SQLException
+     */
+    private static void bindMove(PreparedStatement p_stmt, int p_run, int p_idShip, int p_turn, Impulse p_impulse, int p_posL, int p_posC, MapObject.Orientation p_orientation) throws SQLException
+    {
+	p_stmt.setInt(1, p_run);
+	p_stmt.setInt(2, p_idShip);
+	p_stmt.setInt(3, p_turn);
+	p_stmt.setString(4, p_impulse.toString());
+	p_stmt.setInt(5, p_posL);
+	p_stmt.setInt(6, p_posC);
+	p_stmt.setInt(7, p_orientation.ordinal());
+    }
+
+    @Override
+    public MapObject.HexCoordinates load(int p_idShip, int p_turn, Impulse p_impulse) throws SQLException
+    {
+	MapObject.HexCoordinates result = null;
+	try (ConnectionPool.Lease lease = m_pool.acquire())
+	{
+	    PreparedStatement stmt = lease.prepare("SELECT posL, posC, orientation FROM moves WHERE run = ? AND id = ? AND turn = ? AND impulse = ?;");
+	    stmt.setInt(1, m_run);
+	    stmt.setInt(2, p_idShip);
+	    stmt.setInt(3, p_turn);
+	    stmt.setString(4, p_impulse.toString());
+	    try (ResultSet rs = stmt.executeQuery())
+	    {
+		if (rs.next())
+		{
+		    result = new MapObject.HexCoordinates(rs.getInt(1), rs.getInt(2), HexGeometry.orientation(rs.getInt(3)));
+		}
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * les lignes n'étant jamais remplacées, l'ordre des rowid est celui des
+     * écritures
+     *
+     * @param p_visitor
+     * @throws SQLException
+     */
+    @Override
+    public void replay(MoveVisitor p_visitor) throws SQLException
+    {
+	try (ConnectionPool.Lease lease = m_pool.acquire();
+		Statement stmt = lease.get().createStatement();
+		ResultSet rs = stmt.executeQuery("SELECT run, id, turn, impulse, posL, posC, orientation FROM moves ORDER BY rowid;"))
+	{
+	    while (rs.next())
+	    {
+		Impulse impulse = parseImpulse(rs.getString(4));
+		if (impulse != null)
+		{//tolérance aux erreurs : une ligne illisible est ignorée
+		    p_visitor.visit(rs.getInt(1), rs.getInt(2), rs.getInt(3), impulse, PackedHex.pack(rs.getInt(5), rs.getInt(6), HexGeometry.orientation(rs.getInt(7))));
+		}
+	    }
+	}
+    }
+
+    /**
+     * les connexions appartiennent à SessionDao : rien à libérer ici
+     */
+    @Override
+    public void close()
+    {
+    }
+
+    /**
+     *
+     * @param p_impulse impulsion au format de son toString()
+     * @return l'impulsion correspondante, null s'il n'y en a pas
+     */
+    private static Impulse parseImpulse(String p_impulse)
+    {
+	Impulse result = null;
+	for (Impulse impulse : IMPULSES)
+	{
+	    if (impulse.toString().equals(p_impulse))
+	    {
+		result = impulse;
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * convertit une table moves d'un ancien format vers le format courant,
+     * ses lignes étant rattachées à LEGACY_RUN : position en chaîne
+     * "L-C:ORIENTATION" ou colonnes typées sans exécution. Sans effet si la
+     * table est déjà au format courant.
+     *
+     * @throws SQLException
+     */
+    void migrateMoves() throws SQLException
+    {
+	try (ConnectionPool.Lease lease = m_pool.acquire())
+	{
+	    boolean legacy = false;
+	    boolean numbered = false;
+	    try (Statement stmt = lease.get().createStatement();
+		    ResultSet rs = stmt.executeQuery("PRAGMA table_info(moves);"))
+	    {
+		while (rs.next())
+		{
+		    legacy |= "mvt".equals(rs.getString("name"));
+		    numbered |= "run".equals(rs.getString("name"));
+		}
+	    }
+	    if (!numbered)
+	    {
+		lease.get().setAutoCommit(false);
+		try (Statement stmt = lease.get().createStatement())
+		{
+		    stmt.execute(makeMovesTable("moves_typed"));
+		    if (legacy)
+		    {
+			try (PreparedStatement insert = lease.get().prepareStatement("INSERT INTO moves_typed (run, id, turn, impulse, posL, posC, orientation) VALUES (?,?,?,?,?,?,?);");
+				ResultSet rs = stmt.executeQuery("SELECT id, turn, impulse, mvt FROM moves;"))
+			{
+			    while (rs.next())
+			    {
+				MapObject.HexCoordinates coordinates = parseLegacyMove(rs.getString(4));
+				if (coordinates != null)
+				{//tolérance aux erreurs : une ligne illisible n'est pas reprise
+				    insert.setInt(1, LEGACY_RUN);
+				    insert.setInt(2, rs.getInt(1));
+				    insert.setInt(3, rs.getInt(2));
+				    insert.setString(4, rs.getString(3));
+				    insert.setInt(5, coordinates.posL);
+				    insert.setInt(6, coordinates.posC);
+				    insert.setInt(7, coordinates.orientation.ordinal());
+				    insert.addBatch();
+				}
+			    }
+			    insert.executeBatch();
+			}
+		    }
+		    else
+		    {//l'ordre des rowid, celui des écritures, est conservé
+			stmt.execute("INSERT INTO moves_typed (run, id, turn, impulse, posL, posC, orientation) SELECT " + LEGACY_RUN + ", id, turn, impulse, posL, posC, orientation FROM moves ORDER BY rowid;");
+		    }
+		    stmt.execute("DROP TABLE moves;");
+		    stmt.execute("ALTER TABLE moves_typed RENAME TO moves;");
+		    lease.get().commit();
+		}
+		catch (SQLException e)
+		{
+		    lease.get().rollback();
+		    throw e;
+		}
+	    }
+	}
+    }
+
+    /**
+     *
+     * @param p_mvt position au format de HexCoordinates.toString(), lignes et
+     * colonnes pouvant être négatives ("-1--2:NE")
+     * @return les coordonnées correspondantes, null si la chaîne est illisible
+     */
+    static MapObject.HexCoordinates parseLegacyMove(String p_mvt)
+    {
+	MapObject.HexCoordinates result = null;
+	int colon = p_mvt == null ? -1 : p_mvt.lastIndexOf(':');
+	int dash = colon > 1 ? p_mvt.indexOf('-', 1) : -1;//le premier tiret après un éventuel signe
+	if (dash > 0 && dash < colon)
+	{
+	    try
+	    {
+		result = new MapObject.HexCoordinates(Integer.parseInt(p_mvt.substring(0, dash)), Integer.parseInt(p_mvt.substring(dash + 1, colon)), MapObject.Orientation.valueOf(p_mvt.substring(colon + 1)));
+	    }
+	    catch (IllegalArgumentException e)
+	    {
+		//nombre ou orientation illisible : result reste null
+	    }
+	}
+	return result;
+    }
+
+    /**
+     *
+     * @param p_table
+     * @return l'ordre de création d'une table des mouvements
+     */
+    private static String makeMovesTable(String p_table)
+    {
+	return "CREATE TABLE IF NOT EXISTS " + p_table + " (run integer,id integer,turn integer,impulse text,posL integer NOT NULL,posC integer NOT NULL,orientation integer NOT NULL,PRIMARY KEY(run, id, turn, impulse));";
+    }
+}
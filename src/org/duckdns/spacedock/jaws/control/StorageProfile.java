@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import org.duckdns.spacedock.commonutils.files.GeneralFileHandler;
+
+/**
+ * réglages SQLite appliqués à chaque connexion à son ouverture : mode de
+ * journal, niveau de synchronisation disque, taille du cache de pages, taille
+ * de la projection mémoire du fichier et attente sur verrou.
+ *
+ * En mode WAL les lecteurs lisent le dernier état validé pendant qu'un
+ * écrivain ajoute au journal : ni la relecture d'une partie ni le chargement
+ * d'un mouvement ne bloquent l'écrivain du journal des mouvements, et
+ * inversement. Le niveau NORMAL n'y synchronise le disque qu'aux points de
+ * reprise : un arrêt brutal du système peut perdre les dernières
+ * transactions, jamais corrompre la base.
+ *
+ * @author ykonoclast
+ */
+public final class StorageProfile
+{
+
+    /**
+     * modes de journal de SQLite (PRAGMA journal_mode)
+     */
+    public enum JournalMode
+    {
+	DELETE, TRUNCATE, PERSIST, MEMORY, WAL, OFF
+    }
+
+    /**
+     * niveaux de synchronisation disque de SQLite (PRAGMA synchronous)
+     */
+    public enum Synchronous
+    {
+	OFF, NORMAL, FULL, EXTRA
+    }
+
+    /**
+     * réglages par défaut de SQLite et de son pilote JDBC : journal effacé à
+     * chaque transaction, synchronisation complète à chaque commit et 3s
+     * d'attente sur verrou
+     */
+    public static final StorageProfile SQLITE_DEFAULTS = new StorageProfile(JournalMode.DELETE, Synchronous.FULL, -2000, 0, 3000);
+
+    /**
+     * mode de journal
+     */
+    private final JournalMode m_journalMode;
+
+    /**
+     * niveau de synchronisation
+     */
+    private final Synchronous m_synchronous;
+
+    /**
+     * taille du cache de pages : en pages si positive, en Kio si négative
+     */
+    private final int m_cacheSize;
+
+    /**
+     * taille maximale de la projection mémoire du fichier, en octets (0 pour
+     * n'en faire aucune)
+     */
+    private final long m_mmapSize;
+
+    /**
+     * attente maximale d'un verrou tenu par une autre connexion, en ms
+     */
+    private final int m_busyTimeout;
+
+    /**
+     *
+     * @param p_journalMode
+     * @param p_synchronous
+     * @param p_cacheSize taille du cache de pages : en pages si positive, en
+     * Kio si négative
+     * @param p_mmapSize taille maximale de la projection mémoire, en octets
+     * @param p_busyTimeout attente maximale d'un verrou, en ms
+     */
+    public StorageProfile(JournalMode p_journalMode, Synchronous p_synchronous, int p_cacheSize, long p_mmapSize, int p_busyTimeout)
+    {
+	if (p_journalMode == null || p_synchronous == null || p_mmapSize < 0 || p_busyTimeout < 0)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("BadStorageProfile", p_journalMode + " " + p_synchronous + " mmap=" + p_mmapSize + " busy=" + p_busyTimeout, Locale.getDefault());
+	}
+	m_journalMode = p_journalMode;
+	m_synchronous = p_synchronous;
+	m_cacheSize = p_cacheSize;
+	m_mmapSize = p_mmapSize;
+	m_busyTimeout = p_busyTimeout;
+    }
+
+    /**
+     * applique les réglages à une connexion qui vient d'être ouverte.
+     * L'attente sur verrou est réglée d'abord : le passage en WAL doit
+     * pouvoir attendre une autre connexion. Le mode de journal est
+     * enregistré dans le fichier, les autres réglages valent pour la
+     * connexion seule.
+     *
+     * @param p_conn
+     * @throws SQLException
+     */
+    public void apply(Connection p_conn) throws SQLException
+    {
+	try (Statement stmt = p_conn.createStatement())
+	{
+	    stmt.execute("PRAGMA busy_timeout = " + m_busyTimeout + ";");
+	    stmt.execute("PRAGMA journal_mode = " + m_journalMode + ";");
+	    stmt.execute("PRAGMA synchronous = " + m_synchronous + ";");
+	    stmt.execute("PRAGMA cache_size = " + m_cacheSize + ";");
+	    stmt.execute("PRAGMA mmap_size = " + m_mmapSize + ";");
+	}
+    }
+
+    /**
+     *
+     * @return le mode de journal
+     */
+    public JournalMode getJournalMode()
+    {
+	return m_journalMode;
+    }
+
+    /**
+     *
+     * @return le niveau de synchronisation
+     */
+    public Synchronous getSynchronous()
+    {
+	return m_synchronous;
+    }
+
+    /**
+     *
+     * @return la taille du cache de pages : en pages si positive, en Kio si
+     * négative
+     */
+    public int getCacheSize()
+    {
+	return m_cacheSize;
+    }
+
+    /**
+     *
+     * @return la taille maximale de la projection mémoire, en octets
+     */
+    public long getMmapSize()
+    {
+	return m_mmapSize;
+    }
+
+    /**
+     *
+     * @return l'attente maximale d'un verrou, en ms
+     */
+    public int getBusyTimeout()
+    {
+	return m_busyTimeout;
+    }
+
+    @Override
+    public String toString()
+    {
+	return "journal_mode=" + m_journalMode + " synchronous=" + m_synchronous + " cache_size=" + m_cacheSize + " mmap_size=" + m_mmapSize + " busy_timeout=" + m_busyTimeout;
+    }
+}
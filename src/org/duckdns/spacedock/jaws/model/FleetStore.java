@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * stockage compact d'une flotte : position (compacte, voir PackedHex) et
+ * Power Curve de chaque vaisseau sont rangées dans des tableaux primitifs
+ * parallèles, un emplacement par vaisseau. Les Ship créés sur un tel
+ * stockage n'en sont que des vues : un mouvement écrit une case au lieu
+ * d'allouer de nouvelles coordonnées, et un balayage de toute la flotte
+ * parcourt des tableaux contigus. Destiné aux très grands scénarios.
+ *
+ * Comme la partie elle-même, le stockage n'est modifié que par un thread à
+ * la fois. Position et orientation tenant dans un seul long, lu et écrit
+ * avec la sémantique volatile d'AtomicLongArray comme MapObject.m_position,
+ * un lecteur concurrent (affichage du plateau) voit toujours une position
+ * entière et la dernière publiée.
+ *
+ * @author ykonoclast
+ */
+public final class FleetStore
+{
+
+    /**
+     * position compacte (voir PackedHex) de chaque vaisseau, remplacée en
+     * bloc par un agrandissement
+     */
+    private volatile AtomicLongArray m_position;
+
+    /**
+     * énergie de chaque vaisseau
+     */
+    private int[] m_power;
+
+    /**
+     * vitesse de chaque vaisseau
+     */
+    private int[] m_speed;
+
+    /**
+     * rayon de virage de chaque vaisseau
+     */
+    private int[] m_turnRadius;
+
+    /**
+     * nombre d'emplacements occupés
+     */
+    private int m_size = 0;
+
+    /**
+     *
+     * @param p_capacity nombre de vaisseaux prévus, le stockage s'agrandit au
+     * besoin
+     */
+    public FleetStore(int p_capacity)
+    {
+	int capacity = Math.max(1, p_capacity);
+	m_position = new AtomicLongArray(capacity);
+	m_power = new int[capacity];
+	m_speed = new int[capacity];
+	m_turnRadius = new int[capacity];
+    }
+
+    /**
+     * ajoute un vaisseau au stockage
+     *
+     * @param p_coordinates position initiale
+     * @param p_curve Power Curve du vaisseau
+     * @return l'emplacement attribué
+     */
+    int add(MapObject.HexCoordinates p_coordinates, Ship.PowerCurve p_curve)
+    {
+	if (m_size == m_position.length())
+	{
+	    int capacity = m_size * 2;
+	    AtomicLongArray position = new AtomicLongArray(capacity);
+	    for (int i = 0; i < m_size; ++i)
+	    {
+		position.set(i, m_position.get(i));
+	    }
+	    m_position = position;
+	    m_power = Arrays.copyOf(m_power, capacity);
+	    m_speed = Arrays.copyOf(m_speed, capacity);
+	    m_turnRadius = Arrays.copyOf(m_turnRadius, capacity);
+	}
+	int result = m_size;
+	m_position.set(result, PackedHex.pack(p_coordinates));
+	m_power[result] = p_curve.power;
+	m_speed[result] = p_curve.speed;
+	m_turnRadius[result] = p_curve.turnRadius;
+	++m_size;
+	return result;
+    }
+
+    /**
+     *
+     * @return le nombre de vaisseaux stockés
+     */
+    public int size()
+    {
+	return m_size;
+    }
+
+    /**
+     *
+     * @param p_slot
+     * @return la ligne du vaisseau
+     */
+    int getPosL(int p_slot)
+    {
+	return PackedHex.posL(m_position.get(p_slot));
+    }
+
+    /**
+     *
+     * @param p_slot
+     * @return la colonne du vaisseau
+     */
+    int getPosC(int p_slot)
+    {
+	return PackedHex.posC(m_position.get(p_slot));
+    }
+
+    /**
+     *
+     * @param p_slot
+     * @return l'orientation du vaisseau
+     */
+    MapObject.Orientation getOrientation(int p_slot)
+    {
+	return PackedHex.orientation(m_position.get(p_slot));
+    }
+
+    /**
+     *
+     * @param p_slot
+     * @return les coordonnées du vaisseau, objet créé à la demande
+     */
+    MapObject.HexCoordinates getCoordinates(int p_slot)
+    {
+	return PackedHex.toCoordinates(m_position.get(p_slot));
+    }
+
+    /**
+     *
+     * @param p_slot
+     * @return la Power Curve du vaisseau, objet créé à la demande
+     */
+    Ship.PowerCurve getPowerCurve(int p_slot)
+    {
+	return new Ship.PowerCurve(m_power[p_slot], m_speed[p_slot], m_turnRadius[p_slot]);
+    }
+
+    /**
+     *
+     * @param p_slot
+     * @return la position compacte du vaisseau
+     */
+    long getPosition(int p_slot)
+    {
+	return m_position.get(p_slot);
+    }
+
+    /**
+     * déplace un vaisseau
+     *
+     * @param p_slot
+     * @param p_position nouvelle position compacte
+     */
+    void setPosition(int p_slot, long p_position)
+    {
+	m_position.set(p_slot, p_position);
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.model;
+
+import java.util.Locale;
+import org.duckdns.spacedock.commonutils.files.GeneralFileHandler;
+
+/**
+ * noyau de géométrie hexagonale : tables précalculées des déplacements, des
+ * rotations, de la légalité des virages et des relèvements, plus le tracé de
+ * lignes entre hexagones. Tout est statique et rien n'est alloué après le
+ * chargement de la classe : c'est la base des mouvements, des calculs de
+ * portée et des futurs arcs de tir.
+ *
+ * Les orientations se succèdent dans le sens horaire dans l'ordre de l'enum
+ * (NE, E, SE, SW, W, NW). Les calculs de relèvement et de tracé passent par
+ * les coordonnées cubiques q = C, r = L - C, s = -L, dans lesquelles les six
+ * voisins d'un hexagone sont les six vecteurs unitaires habituels.
+ *
+ * @author ykonoclast
+ */
+public final class HexGeometry
+{
+
+    /**
+     * nombre de directions
+     */
+    public static final int DIRECTIONS = 6;
+
+    /**
+     * orientations par ordinal, values() renvoyant une copie à chaque appel
+     */
+    private static final MapObject.Orientation[] ORIENTATIONS = MapObject.Orientation.values();
+
+    /**
+     * déplacement en ligne pour un pas dans chaque orientation, par ordinal
+     */
+    static final int[] DELTA_L =
+    {
+	-1, 0, 1, 1, 0, -1
+    };
+
+    /**
+     * déplacement en colonne pour un pas dans chaque orientation, par ordinal
+     */
+    static final int[] DELTA_C =
+    {
+	0, 1, 1, 0, -1, -1
+    };
+
+    /**
+     * ROTATION[o][k] : orientation obtenue en tournant de k sixièmes de tour
+     * dans le sens horaire depuis l'orientation d'ordinal o
+     */
+    private static final MapObject.Orientation[][] ROTATION = new MapObject.Orientation[DIRECTIONS][DIRECTIONS];
+
+    /**
+     * TURN_LEGAL[o][t] : vrai si un vaisseau orienté o peut virer vers t
+     * (uniquement les deux orientations adjacentes)
+     */
+    private static final boolean[][] TURN_LEGAL = new boolean[DIRECTIONS][DIRECTIONS];
+
+    /**
+     * écart maximal en ligne et en colonne couvert par la table des
+     * relèvements, au delà le calcul est fait à la volée
+     */
+    private static final int BEARING_RANGE = 16;
+
+    /**
+     * largeur de la table des relèvements
+     */
+    private static final int BEARING_WIDTH = 2 * BEARING_RANGE + 1;
+
+    /**
+     * ordinal du relèvement pour chaque écart (ligne, colonne) de la table,
+     * -1 pour l'écart nul
+     */
+    private static final byte[] BEARING = new byte[BEARING_WIDTH * BEARING_WIDTH];
+
+    static
+    {
+	for (int o = 0; o < DIRECTIONS; ++o)
+	{
+	    for (int k = 0; k < DIRECTIONS; ++k)
+	    {
+		ROTATION[o][k] = ORIENTATIONS[(o + k) % DIRECTIONS];
+	    }
+	    TURN_LEGAL[o][(o + 1) % DIRECTIONS] = true;
+	    TURN_LEGAL[o][(o + DIRECTIONS - 1) % DIRECTIONS] = true;
+	}
+	for (int deltaL = -BEARING_RANGE; deltaL <= BEARING_RANGE; ++deltaL)
+	{
+	    for (int deltaC = -BEARING_RANGE; deltaC <= BEARING_RANGE; ++deltaC)
+	    {
+		BEARING[(deltaL + BEARING_RANGE) * BEARING_WIDTH + deltaC + BEARING_RANGE] = (byte) computeBearing(deltaL, deltaC);
+	    }
+	}
+    }
+
+    /**
+     * classe utilitaire, pas d'instanciation
+     */
+    private HexGeometry()
+    {
+    }
+
+    /**
+     *
+     * @param p_ordinal
+     * @return l'orientation correspondant à l'ordinal, sans copier values()
+     */
+    public static MapObject.Orientation orientation(int p_ordinal)
+    {
+	return ORIENTATIONS[p_ordinal];
+    }
+
+    /**
+     *
+     * @param p_orientation
+     * @return le déplacement en ligne d'un pas dans cette direction
+     */
+    public static int deltaL(MapObject.Orientation p_orientation)
+    {
+	return DELTA_L[p_orientation.ordinal()];
+    }
+
+    /**
+     *
+     * @param p_orientation
+     * @return le déplacement en colonne d'un pas dans cette direction
+     */
+    public static int deltaC(MapObject.Orientation p_orientation)
+    {
+	return DELTA_C[p_orientation.ordinal()];
+    }
+
+    /**
+     *
+     * @param p_orientation
+     * @param p_sixths nombre de sixièmes de tour, positif dans le sens
+     * horaire, négatif dans l'autre
+     * @return l'orientation après rotation
+     */
+    public static MapObject.Orientation rotate(MapObject.Orientation p_orientation, int p_sixths)
+    {
+	return ROTATION[p_orientation.ordinal()][((p_sixths % DIRECTIONS) + DIRECTIONS) % DIRECTIONS];
+    }
+
+    /**
+     *
+     * @param p_current orientation actuelle
+     * @param p_target orientation visée
+     * @return vrai si le virage est permis (orientations adjacentes)
+     */
+    public static boolean canTurn(MapObject.Orientation p_current, MapObject.Orientation p_target)
+    {
+	return TURN_LEGAL[p_current.ordinal()][p_target.ordinal()];
+    }
+
+    /**
+     *
+     * @param p_deltaL
+     * @param p_deltaC
+     * @return la distance en hexagones correspondant à cet écart
+     */
+    public static int distance(int p_deltaL, int p_deltaC)
+    {
+	return Math.max(Math.abs(p_deltaL - p_deltaC), Math.max(Math.abs(p_deltaL), Math.abs(p_deltaC)));
+    }
+
+    /**
+     * relèvement d'un hexagone vu d'un autre : la direction dont le secteur
+     * de 60° (centré sur cette direction) contient la cible. Une cible placée
+     * exactement sur la limite entre deux secteurs est attribuée au secteur
+     * suivant dans le sens horaire.
+     *
+     * @param p_from position compacte de l'observateur
+     * @param p_to position compacte de la cible
+     * @return la direction de la cible, null si c'est le même hexagone
+     */
+    public static MapObject.Orientation bearing(long p_from, long p_to)
+    {
+	int ordinal = bearingOrdinal(PackedHex.posL(p_to) - PackedHex.posL(p_from), PackedHex.posC(p_to) - PackedHex.posC(p_from));
+	return ordinal < 0 ? null : ORIENTATIONS[ordinal];
+    }
+
+    /**
+     *
+     * @param p_from position compacte de l'observateur, dont l'orientation
+     * sert de référence
+     * @param p_to position compacte de la cible
+     * @return le relèvement de la cible en sixièmes de tour dans le sens
+     * horaire depuis l'avant de l'observateur (0 droit devant, 3 droit
+     * derrière), -1 si c'est le même hexagone
+     */
+    public static int relativeBearing(long p_from, long p_to)
+    {
+	int result = bearingOrdinal(PackedHex.posL(p_to) - PackedHex.posL(p_from), PackedHex.posC(p_to) - PackedHex.posC(p_from));
+	if (result >= 0)
+	{
+	    result = (result - PackedHex.orientation(p_from).ordinal() + DIRECTIONS) % DIRECTIONS;
+	}
+	return result;
+    }
+
+    /**
+     * trace la ligne droite entre deux hexagones : les distance + 1 hexagones
+     * traversés, extrémités comprises, dans l'ordre. Les cas limites (ligne
+     * passant exactement entre deux hexagones) sont toujours tranchés du même
+     * côté.
+     *
+     * @param p_from position compacte de départ, dont l'orientation est
+     * reprise pour tous les hexagones de la ligne
+     * @param p_to position compacte d'arrivée
+     * @param p_out tampon recevant les positions compactes, de taille au moins
+     * distance + 1 : rien n'est alloué
+     * @return le nombre d'hexagones écrits dans le tampon
+     */
+    public static int traceLine(long p_from, long p_to, long[] p_out)
+    {
+	int fromL = PackedHex.posL(p_from);
+	int fromC = PackedHex.posC(p_from);
+	int toL = PackedHex.posL(p_to);
+	int toC = PackedHex.posC(p_to);
+	MapObject.Orientation orientation = PackedHex.orientation(p_from);
+	int steps = distance(toL - fromL, toC - fromC);
+	if (p_out.length <= steps)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("BadBuffer", p_out.length + "<" + (steps + 1), Locale.getDefault());
+	}
+
+	//départ légèrement décalé (somme nulle) pour ne jamais tomber pile entre deux hexagones
+	double q0 = fromC + 1e-6;
+	double r0 = fromL - fromC + 2e-6;
+	double s0 = -fromL - 3e-6;
+	double dq = toC - fromC;
+	double dr = (toL - toC) - (fromL - fromC);
+	double ds = -(toL - fromL);
+	p_out[0] = PackedHex.pack(fromL, fromC, orientation);
+	for (int i = 1; i <= steps; ++i)
+	{
+	    double t = i / (double) steps;
+	    double q = q0 + dq * t;
+	    double r = r0 + dr * t;
+	    double s = s0 + ds * t;
+	    long roundQ = Math.round(q);
+	    long roundR = Math.round(r);
+	    long roundS = Math.round(s);
+	    double errorQ = Math.abs(roundQ - q);
+	    double errorR = Math.abs(roundR - r);
+	    double errorS = Math.abs(roundS - s);
+	    if (errorQ > errorR && errorQ > errorS)
+	    {
+		roundQ = -roundR - roundS;
+	    }
+	    else if (errorR <= errorS)
+	    {
+		roundS = -roundQ - roundR;
+	    }
+	    p_out[i] = PackedHex.pack((int) -roundS, (int) roundQ, orientation);
+	}
+	return steps + 1;
+    }
+
+    /**
+     *
+     * @param p_deltaL
+     * @param p_deltaC
+     * @return l'ordinal du relèvement pour cet écart, lu dans la table s'il y
+     * est, -1 pour l'écart nul
+     */
+    private static int bearingOrdinal(int p_deltaL, int p_deltaC)
+    {
+	int result;
+	if (Math.abs(p_deltaL) <= BEARING_RANGE && Math.abs(p_deltaC) <= BEARING_RANGE)
+	{
+	    result = BEARING[(p_deltaL + BEARING_RANGE) * BEARING_WIDTH + p_deltaC + BEARING_RANGE];
+	}
+	else
+	{
+	    result = computeBearing(p_deltaL, p_deltaC);
+	}
+	return result;
+    }
+
+    /**
+     * le secteur est celui de la direction ayant le plus grand produit
+     * scalaire avec l'écart, en coordonnées cubiques. Deux directions
+     * adjacentes à égalité : la cible est sur la limite, on prend la
+     * seconde dans le sens horaire.
+     *
+     * @param p_deltaL
+     * @param p_deltaC
+     * @return l'ordinal du relèvement, -1 pour l'écart nul
+     */
+    private static int computeBearing(int p_deltaL, int p_deltaC)
+    {
+	int result = -1;
+	if (p_deltaL != 0 || p_deltaC != 0)
+	{
+	    long best = Long.MIN_VALUE;
+	    for (int d = 0; d < DIRECTIONS; ++d)
+	    {
+		best = Math.max(best, dot(p_deltaL, p_deltaC, d));
+	    }
+	    for (int d = 0; d < DIRECTIONS; ++d)
+	    {
+		if (dot(p_deltaL, p_deltaC, d) == best && (result < 0 || dot(p_deltaL, p_deltaC, (d + DIRECTIONS - 1) % DIRECTIONS) == best))
+		{//premier maximum, remplacé par le suivant dans le sens horaire en cas d'égalité
+		    result = d;
+		}
+	    }
+	}
+	return result;
+    }
+
+    /**
+     *
+     * @param p_deltaL
+     * @param p_deltaC
+     * @param p_direction
+     * @return le produit scalaire (coordonnées cubiques) de l'écart et du pas
+     * dans la direction
+     */
+    private static long dot(int p_deltaL, int p_deltaC, int p_direction)
+    {
+	return (long) p_deltaC * DELTA_C[p_direction] + ((long) p_deltaL - p_deltaC) * (DELTA_L[p_direction] - DELTA_C[p_direction]) + (long) p_deltaL * DELTA_L[p_direction];
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.duckdns.spacedock.commonutils.files.GeneralFileHandler;
+
+/**
+ * index spatial des objets d'un plateau : table de hachage dont la clé est
+ * l'hexagone (ligne et colonne empaquetées dans un long) et la valeur la
+ * liste de ses occupants. L'occupation d'un hexagone se vérifie donc en temps
+ * constant, et une recherche dans un rayon N ne visite que les hexagones du
+ * disque (3N(N+1)+1) ou, s'ils sont moins nombreux, les hexagones occupés :
+ * le coût ne dépend ni de la taille de la carte ni, pour un petit rayon, du
+ * nombre d'objets.
+ *
+ * Les objets indexés préviennent eux-mêmes l'index à chaque mouvement. Comme
+ * la partie, l'index n'est modifié et interrogé que par un thread à la fois.
+ *
+ * @author ykonoclast
+ */
+public final class HexSpatialIndex
+{
+
+    /**
+     * occupants de chaque hexagone occupé
+     */
+    private final Map<Long, List<MapObject>> m_cells = new HashMap<>();
+
+    /**
+     * nombre d'objets indexés
+     */
+    private int m_size = 0;
+
+    /**
+     *
+     * @param p_posL
+     * @param p_posC
+     * @return la clé d'un hexagone
+     */
+    static long key(int p_posL, int p_posC)
+    {
+	return ((long) p_posL << 32) | (p_posC & 0xFFFFFFFFL);
+    }
+
+    /**
+     * ajoute un objet à l'index, qui suivra désormais ses mouvements. Un
+     * objet ne peut appartenir qu'à un seul index
+     *
+     * @param p_object
+     */
+    public void add(MapObject p_object)
+    {
+	if (p_object.m_spatialIndex != null)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").mauvaiseMethode("DejaIndexe", p_object.toString(), Locale.getDefault());
+	}
+	long position = p_object.getPosition();
+	cell(PackedHex.posL(position), PackedHex.posC(position)).add(p_object);
+	p_object.m_spatialIndex = this;
+	++m_size;
+    }
+
+    /**
+     * retire un objet de l'index
+     *
+     * @param p_object
+     */
+    public void remove(MapObject p_object)
+    {
+	if (p_object.m_spatialIndex == this)
+	{
+	    long position = p_object.getPosition();
+	    detach(p_object, PackedHex.posL(position), PackedHex.posC(position));
+	    p_object.m_spatialIndex = null;
+	    --m_size;
+	}
+    }
+
+    /**
+     * met l'index à jour après le mouvement d'un objet
+     *
+     * @param p_object
+     * @param p_oldL
+     * @param p_oldC
+     * @param p_newL
+     * @param p_newC
+     */
+    void move(MapObject p_object, int p_oldL, int p_oldC, int p_newL, int p_newC)
+    {
+	if (p_oldL != p_newL || p_oldC != p_newC)
+	{
+	    detach(p_object, p_oldL, p_oldC);
+	    cell(p_newL, p_newC).add(p_object);
+	}
+    }
+
+    /**
+     *
+     * @param p_posL
+     * @param p_posC
+     * @return la liste des occupants de l'hexagone, créée si besoin
+     */
+    private List<MapObject> cell(int p_posL, int p_posC)
+    {
+	return m_cells.computeIfAbsent(key(p_posL, p_posC), (key) -> new ArrayList<>(2));
+    }
+
+    /**
+     * retire un objet de la liste de son hexagone, la liste disparaissant
+     * avec son dernier occupant
+     *
+     * @param p_object
+     * @param p_posL
+     * @param p_posC
+     */
+    private void detach(MapObject p_object, int p_posL, int p_posC)
+    {
+	Long key = key(p_posL, p_posC);
+	List<MapObject> occupants = m_cells.get(key);
+	if (occupants != null)
+	{
+	    for (int i = 0; i < occupants.size(); ++i)
+	    {
+		if (occupants.get(i) == p_object)
+		{//identité et non égalité : deux vaisseaux du même type peuvent être égaux
+		    occupants.remove(i);
+		    break;
+		}
+	    }
+	    if (occupants.isEmpty())
+	    {
+		m_cells.remove(key);
+	    }
+	}
+    }
+
+    /**
+     *
+     * @param p_posL
+     * @param p_posC
+     * @return vrai si au moins un objet occupe l'hexagone
+     */
+    public boolean isOccupied(int p_posL, int p_posC)
+    {
+	return m_cells.containsKey(key(p_posL, p_posC));
+    }
+
+    /**
+     *
+     * @param p_posL
+     * @param p_posC
+     * @return les objets occupant l'hexagone (vue en lecture seule, vide si
+     * aucun)
+     */
+    public List<MapObject> getObjectsAt(int p_posL, int p_posC)
+    {
+	List<MapObject> result = m_cells.get(key(p_posL, p_posC));
+	return result == null ? Collections.emptyList() : Collections.unmodifiableList(result);
+    }
+
+    /**
+     * recherche de voisinage (k-ring) : tous les objets à au plus p_radius
+     * hexagones du centre, au sens de MapObject.getDistancePROVISOIRE
+     *
+     * @param p_center
+     * @param p_radius 0 pour le seul hexagone central
+     * @return les objets trouvés, dans un ordre quelconque
+     */
+    public List<MapObject> getObjectsInRange(MapObject.HexCoordinates p_center, int p_radius)
+    {
+	List<MapObject> result = new ArrayList<>();
+	if (p_radius >= 0)
+	{
+	    long area = 3L * p_radius * (p_radius + 1) + 1;
+	    if (area <= m_cells.size())
+	    {//disque plus petit que le nombre d'hexagones occupés : on visite le disque
+		for (int dL = -p_radius; dL <= p_radius; ++dL)
+		{
+		    //|dL - dC| <= rayon en plus de |dC| <= rayon
+		    int minC = Math.max(-p_radius, dL - p_radius);
+		    int maxC = Math.min(p_radius, dL + p_radius);
+		    for (int dC = minC; dC <= maxC; ++dC)
+		    {
+			List<MapObject> occupants = m_cells.get(key(p_center.posL + dL, p_center.posC + dC));
+			if (occupants != null)
+			{
+			    result.addAll(occupants);
+			}
+		    }
+		}
+	    }
+	    else
+	    {//sinon on filtre les hexagones occupés
+		for (Map.Entry<Long, List<MapObject>> cell : m_cells.entrySet())
+		{
+		    long key = cell.getKey();
+		    int deltaL = (int) (key >> 32) - p_center.posL;
+		    int deltaC = (int) key - p_center.posC;
+		    if (HexGeometry.distance(deltaL, deltaC) <= p_radius)
+		    {
+			result.addAll(cell.getValue());
+		    }
+		}
+	    }
+	}
+	return result;
+    }
+
+    /**
+     *
+     * @return le nombre d'objets indexés
+     */
+    public int size()
+    {
+	return m_size;
+    }
+}
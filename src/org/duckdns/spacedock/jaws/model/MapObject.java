@@ -17,7 +17,6 @@
 package org.duckdns.spacedock.jaws.model;
 
 import java.io.FileNotFoundException;
-import java.util.Objects;
 
 /**
  * superclasse de tous les objets présents sur le plateau de jeu, contient les
@@ -40,9 +39,13 @@ public abstract class MapObject
     final String m_name;
 
     /**
-     * coordonnés sur l'hexmap
+     * coordonnées sur l'hexmap sous forme compacte (voir PackedHex) : un
+     * mouvement n'écrit qu'un long, et volatile garantit qu'un thread lisant
+     * le plateau pendant que la partie joue voit toujours une position
+     * entière. Inutilisé pour un vaisseau rangé dans un FleetStore, qui porte
+     * alors sa position
      */
-    MapObject.HexCoordinates m_coordinates;
+    volatile long m_position;
 
     /**
      * type de l'objet, pour affichage et récupération des caracs dans la
@@ -55,6 +58,12 @@ public abstract class MapObject
      */
     final MapObjectDao m_mapObjectDao;
 
+    /**
+     * index spatial auquel l'objet appartient, à prévenir de chacun de ses
+     * mouvements, null s'il n'est pas indexé
+     */
+    HexSpatialIndex m_spatialIndex = null;
+
     /**
      * calcule la distance en hexagones entre deux centre d'hexagones
      *
@@ -64,10 +73,7 @@ public abstract class MapObject
      */
     public static int getDistancePROVISOIRE(HexCoordinates p_a, HexCoordinates p_b)//TODO réutiliser ce code ailleurs de façon objet (par exemple dans les objets d'attaque) plutôt qu'ávec un méthode statique dégueulasse au milieu
     {
-	int deltaL = p_a.posL - p_b.posL;
-	int deltaC = p_a.posC - p_b.posC;
-	int deltaDelta = deltaL - deltaC;
-	return Math.max(Math.abs(deltaDelta), Math.max(Math.abs(deltaL), Math.abs(deltaC)));
+	return HexGeometry.distance(p_a.posL - p_b.posL, p_a.posC - p_b.posC);
     }
 
     /**
@@ -84,7 +90,7 @@ public abstract class MapObject
 	m_type = p_type;
 	m_name = p_name;
 	m_id = m_mapObjectDao.makeId();
-	m_coordinates = p_coordinates;
+	m_position = p_coordinates != null ? PackedHex.pack(p_coordinates) : 0;
     }
 
     /**
@@ -102,7 +108,52 @@ public abstract class MapObject
      */
     public MapObject.HexCoordinates getCoordinates()
     {
-	return new MapObject.HexCoordinates(m_coordinates.posL, m_coordinates.posC, m_coordinates.orientation);//copie, pas de possibilité de modifier la position de l'éxtérieur
+	return PackedHex.toCoordinates(getPosition());//copie, pas de possibilité de modifier la position de l'éxtérieur
+    }
+
+    /**
+     *
+     * @return la position sous forme compacte, sans allocation
+     */
+    public long getPosition()
+    {
+	return m_position;
+    }
+
+    /**
+     *
+     * @return l'orientation actuelle, sans allocation
+     */
+    public Orientation getOrientation()
+    {
+	return PackedHex.orientation(getPosition());
+    }
+
+    /**
+     * replace l'objet à une position sauvegardée, sans passer par les règles
+     * de mouvement : réservé à la reconstruction d'une partie
+     *
+     * @param p_coordinates
+     */
+    public void restoreCoordinates(MapObject.HexCoordinates p_coordinates)
+    {
+	long old = m_position;
+	m_position = PackedHex.pack(p_coordinates);
+	notifyMoved(old, m_position);
+    }
+
+    /**
+     * tient l'index spatial à jour après un changement de position
+     *
+     * @param p_old ancienne position compacte
+     * @param p_new nouvelle position compacte
+     */
+    void notifyMoved(long p_old, long p_new)
+    {
+	if (m_spatialIndex != null)
+	{
+	    m_spatialIndex.move(this, PackedHex.posL(p_old), PackedHex.posC(p_old), PackedHex.posL(p_new), PackedHex.posC(p_new));
+	}
     }
 
     /**
@@ -133,7 +184,7 @@ public abstract class MapObject
 	{
 	    if (o != null && getClass() == o.getClass())
 	    {
-		if (toString().equals(o.toString()) && getCoordinates().equals(((MapObject) o).getCoordinates()))//l'ID n'est PAS considéré : il constitue une identité, pas une égalité
+		if (toString().equals(o.toString()) && getPosition() == ((MapObject) o).getPosition())//l'ID n'est PAS considéré : il constitue une identité, pas une égalité
 		{
 		    result = true;
 
@@ -150,7 +201,7 @@ public abstract class MapObject
     @Override
     public int hashCode()//TODO : mettre à jour au fur et à mesure que la classe est updatée
     {
-	return Objects.hash(toString(), m_coordinates);
+	return 31 * toString().hashCode() + Long.hashCode(getPosition());
     }
 
     /**
@@ -158,34 +209,25 @@ public abstract class MapObject
      */
     public enum Orientation
     {
-	NE
-	{
-	    @Override
-	    public Orientation previous()
-	    {//override de ce qui est plus loin uniquement pour cette valeur
-		return values()[5]; // retour à NW dans le cas du premier élément
-	    }
-
-	}, E, SE, SW, W, NW
-	{
-	    @Override
-	    public Orientation next()
-	    {//override de ce qui est plus loin uniquement pour cette valeur
-		return values()[0]; // retour à NE dans le cas du dernier élément
-	    }
-
-	};
+	NE, E, SE, SW, W, NW;
 
+	/**
+	 *
+	 * @return l'orientation suivante dans le sens horaire (NE après NW),
+	 * lue dans la table de rotation
+	 */
 	public Orientation next()
 	{
-	    // pas besoin de checker si on est au dernier, l'override ci-dessus gère cela
-	    return values()[ordinal() + 1];
+	    return HexGeometry.rotate(this, 1);
 	}
 
+	/**
+	 *
+	 * @return l'orientation précédente dans le sens horaire (NW avant NE)
+	 */
 	public Orientation previous()
 	{
-	    // pas besoin de checker si on est au premier, l'override ci-dessus gère cela
-	    return values()[ordinal() - 1];
+	    return HexGeometry.rotate(this, -1);
 	}
         
         
@@ -265,8 +307,8 @@ public abstract class MapObject
 	 */
 	@Override
 	public int hashCode()
-	{
-	    return Objects.hash(posL, posC, orientation);
+	{//sans boxing : l'ordinal plutôt que le hashCode d'identité de l'enum
+	    return (31 * posL + posC) * 31 + orientation.ordinal();
 	}
         
          @Override
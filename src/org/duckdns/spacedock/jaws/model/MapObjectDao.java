@@ -18,6 +18,7 @@ package org.duckdns.spacedock.jaws.model;
 
 import java.io.FileNotFoundException;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.json.JsonValue;
@@ -43,14 +44,16 @@ public class MapObjectDao
 
     /**
      * compteur, pour création d'identifiant unique pour les objets créés sur la
-     * carte.
+     * carte. Atomique car plusieurs parties peuvent être créées en même temps
+     * par des threads différents
      */
-    private static int m_idCounter = 0;
+    private static final AtomicInteger m_idCounter = new AtomicInteger();
 
     /**
-     * instance unique det accesseur
+     * instance unique det accesseur, volatile pour la publication sûre entre
+     * threads
      */
-    private static MapObjectDao m_instance;
+    private static volatile MapObjectDao m_instance;
 
     /**
      *
@@ -58,9 +61,7 @@ public class MapObjectDao
      */
     public int makeId()
     {
-	int result = m_idCounter;
-	++m_idCounter;
-	return result;
+	return m_idCounter.getAndIncrement();
     }
 
     /**
@@ -82,14 +83,18 @@ public class MapObjectDao
      */
     public static MapObjectDao getInstance() throws FileNotFoundException
     {
-	MapObjectDao result;
-	if (m_instance == null)
-	{
-	    result = new MapObjectDao();
-	}
-	else
+	MapObjectDao result = m_instance;
+	if (result == null)
 	{
-	    result = m_instance;
+	    synchronized (MapObjectDao.class)
+	    {//verrou pris uniquement lors de la toute première création
+		result = m_instance;
+		if (result == null)
+		{
+		    result = new MapObjectDao();
+		    m_instance = result;
+		}
+	    }
 	}
 	return result;
     }
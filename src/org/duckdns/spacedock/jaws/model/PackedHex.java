@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.model;
+
+import java.util.Locale;
+import org.duckdns.spacedock.commonutils.files.GeneralFileHandler;
+
+/**
+ * représentation compacte d'une position : ligne, colonne et orientation
+ * rangées dans un seul long, manipulées par des méthodes statiques qui
+ * n'allouent rien. C'est la forme sous laquelle les objets du plateau
+ * stockent leur position, HexCoordinates n'en étant plus qu'une vue créée à
+ * la demande.
+ *
+ * Disposition : ligne sur les 30 bits de poids fort, colonne sur les 30
+ * suivants (toutes deux signées), ordinal de l'orientation sur les 4 bits de
+ * poids faible.
+ *
+ * @author ykonoclast
+ */
+public final class PackedHex
+{
+
+    /**
+     * plus petite ligne ou colonne représentable
+     */
+    public static final int MIN_COORDINATE = -(1 << 29);
+
+    /**
+     * plus grande ligne ou colonne représentable
+     */
+    public static final int MAX_COORDINATE = (1 << 29) - 1;
+
+    /**
+     * masque d'une coordonnée sur 30 bits
+     */
+    private static final long COORDINATE_MASK = (1L << 30) - 1;
+
+    /**
+     * classe utilitaire, pas d'instanciation
+     */
+    private PackedHex()
+    {
+    }
+
+    /**
+     *
+     * @param p_posL
+     * @param p_posC
+     * @param p_orientation
+     * @return la position compacte correspondante
+     */
+    public static long pack(int p_posL, int p_posC, MapObject.Orientation p_orientation)
+    {
+	if (p_posL < MIN_COORDINATE || p_posL > MAX_COORDINATE || p_posC < MIN_COORDINATE || p_posC > MAX_COORDINATE)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("HorsLimites", p_posL + "-" + p_posC, Locale.getDefault());
+	}
+	return encode(p_posL, p_posC, p_orientation.ordinal());
+    }
+
+    /**
+     *
+     * @param p_coordinates
+     * @return la position compacte correspondant aux coordonnées
+     */
+    public static long pack(MapObject.HexCoordinates p_coordinates)
+    {
+	return pack(p_coordinates.posL, p_coordinates.posC, p_coordinates.orientation);
+    }
+
+    /**
+     *
+     * @param p_packed
+     * @return une vue objet de la position (seule méthode qui alloue)
+     */
+    public static MapObject.HexCoordinates toCoordinates(long p_packed)
+    {
+	return new MapObject.HexCoordinates(posL(p_packed), posC(p_packed), orientation(p_packed));
+    }
+
+    /**
+     *
+     * @param p_packed
+     * @return la ligne
+     */
+    public static int posL(long p_packed)
+    {
+	return (int) (p_packed >> 34);
+    }
+
+    /**
+     *
+     * @param p_packed
+     * @return la colonne
+     */
+    public static int posC(long p_packed)
+    {
+	return (int) ((p_packed << 30) >> 34);//décalage arithmétique : le signe est propagé
+    }
+
+    /**
+     *
+     * @param p_packed
+     * @return l'orientation
+     */
+    public static MapObject.Orientation orientation(long p_packed)
+    {
+	return HexGeometry.orientation((int) (p_packed & 0xF));
+    }
+
+    /**
+     *
+     * @param p_packed
+     * @param p_orientation
+     * @return la position d'un hexagone plus loin dans la direction donnée,
+     * avec cette orientation : un pas tout droit si c'est l'orientation
+     * actuelle, un virage sinon
+     */
+    public static long step(long p_packed, MapObject.Orientation p_orientation)
+    {
+	int direction = p_orientation.ordinal();
+	return encode(posL(p_packed) + HexGeometry.DELTA_L[direction], posC(p_packed) + HexGeometry.DELTA_C[direction], direction);
+    }
+
+    /**
+     *
+     * @param p_packed
+     * @return la position un hexagone plus loin tout droit
+     */
+    public static long stepStraight(long p_packed)
+    {
+	return step(p_packed, orientation(p_packed));
+    }
+
+    /**
+     *
+     * @param p_packed
+     * @param p_orientation
+     * @return la même case avec une autre orientation
+     */
+    public static long withOrientation(long p_packed, MapObject.Orientation p_orientation)
+    {
+	return (p_packed & ~0xFL) | p_orientation.ordinal();
+    }
+
+    /**
+     *
+     * @param p_a
+     * @param p_b
+     * @return vrai si les deux positions désignent la même case, quelle que
+     * soit l'orientation
+     */
+    public static boolean sameCell(long p_a, long p_b)
+    {
+	return (p_a & ~0xFL) == (p_b & ~0xFL);
+    }
+
+    /**
+     * même calcul que MapObject.getDistancePROVISOIRE
+     *
+     * @param p_a
+     * @param p_b
+     * @return la distance en hexagones entre les deux cases
+     */
+    public static int distance(long p_a, long p_b)
+    {
+	return HexGeometry.distance(posL(p_a) - posL(p_b), posC(p_a) - posC(p_b));
+    }
+
+    /**
+     * assemblage sans contrôle, les coordonnées étant supposées dans les
+     * limites
+     */
+    private static long encode(int p_posL, int p_posC, int p_orientation)
+    {
+	return ((long) p_posL << 34) | (((long) p_posC & COORDINATE_MASK) << 4) | p_orientation;
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.duckdns.spacedock.commonutils.files.GeneralFileHandler;
+
+/**
+ * moteur d'accessibilité : toutes les positions finales qu'un vaisseau peut
+ * atteindre en un tour, c'est à dire en autant de mouvements d'un hexagone
+ * que sa vitesse, et le chemin le moins coûteux (le moins de virages) vers
+ * chacune.
+ *
+ * Règles appliquées à chaque mouvement : tout droit, ou virage vers l'une des
+ * deux orientations adjacentes (comme Ship.canTurn) suivi d'un pas dans la
+ * nouvelle direction. Après un virage, le vaisseau doit faire turnRadius pas
+ * tout droit avant de pouvoir virer à nouveau. Le jeu ne mémorisant pas
+ * encore les marqueurs de virage, le vaisseau est supposé libre de virer au
+ * premier pas.
+ *
+ * Le calcul ne dépend que de la vitesse, du rayon de virage et de
+ * l'orientation de départ (tout est relatif à la position de départ) : il est
+ * fait une fois par combinaison puis conservé, une requête pour un vaisseau
+ * ne coûte ensuite qu'une lecture dans le cache.
+ *
+ * @author ykonoclast
+ */
+public final class Reachability
+{
+
+    /**
+     * tables déjà calculées, par vitesse, rayon de virage et orientation de
+     * départ
+     */
+    private static final ConcurrentMap<Long, Table> m_cache = new ConcurrentHashMap<>();
+
+    /**
+     * classe utilitaire, pas d'instanciation
+     */
+    private Reachability()
+    {
+    }
+
+    /**
+     *
+     * @param p_ship
+     * @return les positions que le vaisseau peut atteindre ce tour-ci depuis
+     * sa position actuelle
+     */
+    public static Result forShip(Ship p_ship)
+    {
+	Ship.PowerCurve curve = p_ship.getPowerCurve();
+	long position = p_ship.getPosition();
+	return from(PackedHex.posL(position), PackedHex.posC(position), PackedHex.orientation(position), curve.speed, curve.turnRadius);
+    }
+
+    /**
+     *
+     * @param p_start position et orientation de départ
+     * @param p_speed nombre de pas
+     * @param p_turnRadius pas tout droit imposés après un virage
+     * @return les positions atteignables
+     */
+    public static Result from(MapObject.HexCoordinates p_start, int p_speed, int p_turnRadius)
+    {
+	return from(p_start.posL, p_start.posC, p_start.orientation, p_speed, p_turnRadius);
+    }
+
+    /**
+     *
+     * @param p_posL ligne de départ
+     * @param p_posC colonne de départ
+     * @param p_orientation orientation de départ
+     * @param p_speed
+     * @param p_turnRadius
+     * @return les positions atteignables
+     */
+    private static Result from(int p_posL, int p_posC, MapObject.Orientation p_orientation, int p_speed, int p_turnRadius)
+    {
+	if (p_speed < 0 || p_turnRadius < 0)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("BadCurve", "speed=" + p_speed + " turnRadius=" + p_turnRadius, Locale.getDefault());
+	}
+	long key = ((long) p_speed << 32) | ((long) p_turnRadius << 3) | p_orientation.ordinal();
+	Table table = m_cache.get(key);
+	if (table == null)
+	{//calcul hors de la map : au pire deux threads calculent la même table, une seule est conservée
+	    Table computed = new Table(p_speed, p_turnRadius, p_orientation.ordinal());
+	    table = m_cache.putIfAbsent(key, computed);
+	    if (table == null)
+	    {
+		table = computed;
+	    }
+	}
+	return new Result(table, p_posL, p_posC);
+    }
+
+    /**
+     * résultat du parcours pour une combinaison vitesse, rayon de virage et
+     * orientation de départ, relatif à la position de départ. Immuable une
+     * fois construit, partagé entre tous les threads
+     */
+    private static final class Table
+    {
+
+	/**
+	 * décalage en ligne de chaque état final
+	 */
+	private final int[] m_endL;
+
+	/**
+	 * décalage en colonne de chaque état final
+	 */
+	private final int[] m_endC;
+
+	/**
+	 * ordinal de l'orientation de chaque état final
+	 */
+	private final byte[] m_endO;
+
+	/**
+	 * nombre de virages du meilleur chemin vers chaque état final
+	 */
+	private final int[] m_turns;
+
+	/**
+	 * meilleur chemin vers chaque état final : ordinal de la direction de
+	 * chaque pas
+	 */
+	private final byte[][] m_paths;
+
+	/**
+	 * parcours en largeur, couche par couche : la couche k est l'ensemble
+	 * (bitset) des états atteignables en k pas. Un état est une position
+	 * relative, une orientation et le nombre de pas tout droit restant dus
+	 * avant le prochain virage. Pour chaque état on garde le moins de
+	 * virages pour l'atteindre et son prédécesseur, afin de reconstruire le
+	 * chemin.
+	 *
+	 * @param p_speed
+	 * @param p_turnRadius
+	 * @param p_orientation
+	 */
+	Table(int p_speed, int p_turnRadius, int p_orientation)
+	{
+	    int width = 2 * p_speed + 1;
+	    int cooldowns = p_turnRadius + 1;
+	    int stateCount = width * width * HexGeometry.DIRECTIONS * cooldowns;
+
+	    int[][] cost = new int[p_speed + 1][];
+	    int[][] parent = new int[p_speed + 1][];
+	    BitSet frontier = new BitSet(stateCount);
+	    int startState = encode(p_speed, p_speed, p_orientation, 0, width, cooldowns);
+	    frontier.set(startState);
+	    cost[0] = new int[stateCount];
+	    cost[0][startState] = 0;
+
+	    for (int step = 1; step <= p_speed; ++step)
+	    {
+		BitSet next = new BitSet(stateCount);
+		int[] stepCost = new int[stateCount];
+		int[] stepParent = new int[stateCount];
+		for (int state = frontier.nextSetBit(0); state >= 0; state = frontier.nextSetBit(state + 1))
+		{
+		    int cooldown = state % cooldowns;
+		    int orientation = (state / cooldowns) % HexGeometry.DIRECTIONS;
+		    int cell = state / cooldowns / HexGeometry.DIRECTIONS;
+		    int posL = cell / width;
+		    int posC = cell % width;
+		    int baseCost = cost[step - 1][state];
+
+		    //tout droit d'abord : à coût égal, le chemin sans virage est préféré
+		    relax(next, stepCost, stepParent, state, baseCost, posL + HexGeometry.DELTA_L[orientation], posC + HexGeometry.DELTA_C[orientation], orientation, Math.max(0, cooldown - 1), width, cooldowns);
+		    if (cooldown == 0)
+		    {
+			int previous = HexGeometry.rotate(HexGeometry.orientation(orientation), -1).ordinal();
+			int following = HexGeometry.rotate(HexGeometry.orientation(orientation), 1).ordinal();
+			relax(next, stepCost, stepParent, state, baseCost + 1, posL + HexGeometry.DELTA_L[previous], posC + HexGeometry.DELTA_C[previous], previous, p_turnRadius, width, cooldowns);
+			relax(next, stepCost, stepParent, state, baseCost + 1, posL + HexGeometry.DELTA_L[following], posC + HexGeometry.DELTA_C[following], following, p_turnRadius, width, cooldowns);
+		    }
+		}
+		cost[step] = stepCost;
+		parent[step] = stepParent;
+		frontier = next;
+	    }
+
+	    //fusion des états finaux ne différant que par les pas dus avant virage
+	    int[] best = new int[width * width * HexGeometry.DIRECTIONS];
+	    Arrays.fill(best, -1);
+	    int endCount = 0;
+	    for (int state = frontier.nextSetBit(0); state >= 0; state = frontier.nextSetBit(state + 1))
+	    {
+		int end = state / cooldowns;
+		if (best[end] < 0)
+		{
+		    ++endCount;
+		    best[end] = state;
+		}
+		else if (cost[p_speed][state] < cost[p_speed][best[end]])
+		{
+		    best[end] = state;
+		}
+	    }
+
+	    m_endL = new int[endCount];
+	    m_endC = new int[endCount];
+	    m_endO = new byte[endCount];
+	    m_turns = new int[endCount];
+	    m_paths = new byte[endCount][];
+	    int index = 0;
+	    for (int end = 0; end < best.length; ++end)
+	    {
+		int state = best[end];
+		if (state >= 0)
+		{
+		    int cell = end / HexGeometry.DIRECTIONS;
+		    m_endL[index] = cell / width - p_speed;
+		    m_endC[index] = cell % width - p_speed;
+		    m_endO[index] = (byte) (end % HexGeometry.DIRECTIONS);
+		    m_turns[index] = cost[p_speed][state];
+		    byte[] path = new byte[p_speed];
+		    for (int step = p_speed; step > 0; --step)
+		    {//la direction d'un pas est l'orientation de l'état auquel il mène
+			path[step - 1] = (byte) ((state / cooldowns) % HexGeometry.DIRECTIONS);
+			state = parent[step][state];
+		    }
+		    m_paths[index] = path;
+		    ++index;
+		}
+	    }
+	}
+
+	/**
+	 * enregistre un état atteint s'il est nouveau dans la couche ou si ce
+	 * chemin est moins coûteux
+	 */
+	private static void relax(BitSet p_layer, int[] p_cost, int[] p_parent, int p_from, int p_cost0, int p_posL, int p_posC, int p_orientation, int p_cooldown, int p_width, int p_cooldowns)
+	{
+	    int state = encode(p_posL, p_posC, p_orientation, p_cooldown, p_width, p_cooldowns);
+	    if (!p_layer.get(state) || p_cost0 < p_cost[state])
+	    {
+		p_layer.set(state);
+		p_cost[state] = p_cost0;
+		p_parent[state] = p_from;
+	    }
+	}
+
+	/**
+	 *
+	 * @return l'indice d'un état dans les bitsets et tableaux d'une couche
+	 */
+	private static int encode(int p_posL, int p_posC, int p_orientation, int p_cooldown, int p_width, int p_cooldowns)
+	{
+	    return ((p_posL * p_width + p_posC) * HexGeometry.DIRECTIONS + p_orientation) * p_cooldowns + p_cooldown;
+	}
+    }
+
+    /**
+     * positions atteignables par un vaisseau, vue de la table partagée
+     * translatée à sa position : la créer ne coûte rien
+     */
+    public static final class Result
+    {
+
+	/**
+	 * table relative partagée
+	 */
+	private final Table m_table;
+
+	/**
+	 * ligne de départ
+	 */
+	private final int m_originL;
+
+	/**
+	 * colonne de départ
+	 */
+	private final int m_originC;
+
+	/**
+	 *
+	 * @param p_table
+	 * @param p_originL
+	 * @param p_originC
+	 */
+	private Result(Table p_table, int p_originL, int p_originC)
+	{
+	    m_table = p_table;
+	    m_originL = p_originL;
+	    m_originC = p_originC;
+	}
+
+	/**
+	 *
+	 * @return le nombre d'états finaux distincts (position et orientation)
+	 */
+	public int size()
+	{
+	    return m_table.m_endL.length;
+	}
+
+	/**
+	 *
+	 * @param p_index
+	 * @return la position et l'orientation finales
+	 */
+	public MapObject.HexCoordinates getEnd(int p_index)
+	{
+	    return new MapObject.HexCoordinates(m_originL + m_table.m_endL[p_index], m_originC + m_table.m_endC[p_index], HexGeometry.orientation(m_table.m_endO[p_index]));
+	}
+
+	/**
+	 *
+	 * @param p_index
+	 * @return le nombre de virages du chemin le moins coûteux
+	 */
+	public int getTurns(int p_index)
+	{
+	    return m_table.m_turns[p_index];
+	}
+
+	/**
+	 *
+	 * @param p_index
+	 * @return le chemin le moins coûteux : direction de chaque pas, un pas
+	 * changeant d'orientation étant un virage
+	 */
+	public List<MapObject.Orientation> getPath(int p_index)
+	{
+	    return new PathView(m_table.m_paths[p_index]);
+	}
+
+	/**
+	 *
+	 * @param p_end
+	 * @return l'indice de l'état final correspondant, -1 s'il n'est pas
+	 * atteignable
+	 */
+	public int indexOf(MapObject.HexCoordinates p_end)
+	{
+	    int result = -1;
+	    int endL = p_end.posL - m_originL;
+	    int endC = p_end.posC - m_originC;
+	    int endO = p_end.orientation.ordinal();
+	    for (int i = 0; i < m_table.m_endL.length && result < 0; ++i)
+	    {
+		if (m_table.m_endL[i] == endL && m_table.m_endC[i] == endC && m_table.m_endO[i] == endO)
+		{
+		    result = i;
+		}
+	    }
+	    return result;
+	}
+    }
+
+    /**
+     * vue en lecture seule d'un chemin stocké en ordinaux
+     */
+    private static final class PathView extends AbstractList<MapObject.Orientation> implements RandomAccess
+    {
+
+	private final byte[] m_steps;
+
+	PathView(byte[] p_steps)
+	{
+	    m_steps = p_steps;
+	}
+
+	@Override
+	public MapObject.Orientation get(int p_index)
+	{
+	    return HexGeometry.orientation(m_steps[p_index]);
+	}
+
+	@Override
+	public int size()
+	{
+	    return m_steps.length;
+	}
+    }
+}
@@ -27,7 +27,21 @@ import java.util.Objects;
 public class Ship extends MapObject
 {
 
-    private PowerCurve m_powerCurve;
+    /**
+     * Power Curve du vaisseau, null s'il est rangé dans un FleetStore
+     */
+    private final PowerCurve m_powerCurve;
+
+    /**
+     * stockage compact dont ce vaisseau n'est qu'une vue, null pour un
+     * vaisseau autonome (coordonnées et Power Curve portées par l'objet)
+     */
+    private final FleetStore m_fleet;
+
+    /**
+     * emplacement du vaisseau dans m_fleet
+     */
+    private final int m_slot;
 
     /**
      * constructeur, appelle la superclasse puis enrichit lui-même ses donnés
@@ -43,6 +57,59 @@ public class Ship extends MapObject
     {
 	super(p_type, p_name, p_coordinates);
 	m_powerCurve = m_mapObjectDao.getPowerCurve(p_type);
+	m_fleet = null;
+	m_slot = -1;
+    }
+
+    /**
+     * constructeur d'un vaisseau rangé dans un stockage compact : position et
+     * Power Curve sont écrites dans le stockage, l'objet n'en garde que
+     * l'emplacement
+     *
+     * @param p_fleet stockage de la flotte
+     * @param p_type typage au sens JSON
+     * @param p_name pour affichage
+     * @param p_coordinates position initiale
+     * @throws FileNotFoundException
+     */
+    public Ship(FleetStore p_fleet, String p_type, String p_name, MapObject.HexCoordinates p_coordinates) throws FileNotFoundException
+    {
+	super(p_type, p_name, null);
+	m_powerCurve = null;
+	m_fleet = p_fleet;
+	m_slot = p_fleet.add(p_coordinates, m_mapObjectDao.getPowerCurve(p_type));
+    }
+
+    /**
+     *
+     * @return la position compacte du vaisseau, lue dans le stockage de la
+     * flotte le cas échéant
+     */
+    @Override
+    public long getPosition()
+    {
+	return m_fleet != null ? m_fleet.getPosition(m_slot) : m_position;
+    }
+
+    /**
+     * replace le vaisseau à une position sauvegardée, sans passer par les
+     * règles de mouvement : réservé à la reconstruction d'une partie
+     *
+     * @param p_coordinates
+     */
+    @Override
+    public void restoreCoordinates(MapObject.HexCoordinates p_coordinates)
+    {
+	if (m_fleet != null)
+	{
+	    long old = m_fleet.getPosition(m_slot);
+	    m_fleet.setPosition(m_slot, PackedHex.pack(p_coordinates));
+	    notifyMoved(old, m_fleet.getPosition(m_slot));
+	}
+	else
+	{
+	    super.restoreCoordinates(p_coordinates);
+	}
     }
 
     /**
@@ -50,7 +117,7 @@ public class Ship extends MapObject
      */
     public void moveStraight()
     {
-	transformPos(getCoordinates().orientation);
+	transformPos(getOrientation());
     }
 
     /**
@@ -75,29 +142,17 @@ public class Ship extends MapObject
      */
     private void transformPos(Orientation p_orientation)
     {
-	int curL = m_coordinates.posL;
-	int curC = m_coordinates.posC;
-	switch (p_orientation)
+	long old = getPosition();
+	long moved = PackedHex.step(old, p_orientation);
+	if (m_fleet != null)
+	{//écriture en place dans le stockage
+	    m_fleet.setPosition(m_slot, moved);
+	}
+	else
 	{
-	    case NE:
-		m_coordinates = new HexCoordinates(curL - 1, curC, p_orientation);
-		break;
-	    case E:
-		m_coordinates = new HexCoordinates(curL, curC + 1, p_orientation);
-		break;
-	    case SE:
-		m_coordinates = new HexCoordinates(curL + 1, curC + 1, p_orientation);
-		break;
-	    case SW:
-		m_coordinates = new HexCoordinates(curL + 1, curC, p_orientation);
-		break;
-	    case W:
-		m_coordinates = new HexCoordinates(curL, curC - 1, p_orientation);
-		break;
-	    case NW:
-		m_coordinates = new HexCoordinates(curL - 1, curC - 1, p_orientation);
-		break;
+	    m_position = moved;
 	}
+	notifyMoved(old, moved);
     }
 
     /**
@@ -110,7 +165,7 @@ public class Ship extends MapObject
     public boolean canTurn(Orientation p_orientation)
     {
 	boolean result = false;
-	if (m_coordinates.orientation.equals(p_orientation.next()) || m_coordinates.orientation.equals(p_orientation.previous()))
+	if (HexGeometry.canTurn(getOrientation(), p_orientation))
 	{
 	    //TODO ajouter gestion des marqueurs virages
 	    result = true;
@@ -125,7 +180,7 @@ public class Ship extends MapObject
      */
     public PowerCurve getPowerCurve()
     {
-	return m_powerCurve;//on peut renvoyer la PowerCurve sans crainte de modification : c'est un objet imutable de toute façon
+	return m_fleet != null ? m_fleet.getPowerCurve(m_slot) : m_powerCurve;//on peut renvoyer la PowerCurve sans crainte de modification : c'est un objet imutable de toute façon
     }
 
     /**
@@ -163,7 +218,7 @@ public class Ship extends MapObject
     @Override
     public int hashCode()//TODO : mettre à jour au fur et à mesure que la classe est updatée
     {
-	return Objects.hash(super.hashCode(), m_powerCurve);//seulement les éléments en plus de ceux présents en superclasse
+	return Objects.hash(super.hashCode(), getPowerCurve());//seulement les éléments en plus de ceux présents en superclasse
     }
 
     /**
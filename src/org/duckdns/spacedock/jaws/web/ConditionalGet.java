@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.web;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.duckdns.spacedock.jaws.control.GameSession;
+
+/**
+ * gestion des GET conditionnels : l'ETag d'une ressource est dérivé de la
+ * version d'état de la partie, un client qui la possède déjà reçoit un 304
+ * sans que rien ne soit recalculé ni rendu
+ *
+ * @author ykonoclast
+ */
+final class ConditionalGet
+{
+
+    /**
+     * classe utilitaire, pas d'instanciation
+     */
+    private ConditionalGet()
+    {
+    }
+
+    /**
+     * construit l'ETag d'une représentation de la partie. L'époque de la
+     * partie y figure afin qu'une partie recréée sous le même identifiant (et
+     * dont la version repart donc de zéro) ne soit pas confondue avec
+     * l'ancienne.
+     *
+     * @param p_representation type de représentation (html, board...)
+     * @param p_game
+     * @return l'ETag, guillemets compris
+     */
+    static String makeETag(String p_representation, GameSession p_game)
+    {
+	return "\"" + p_representation + "-" + Long.toHexString(p_game.getEpoch()) + "-" + p_game.getStateVersion() + "\"";
+    }
+
+    /**
+     * pose l'ETag sur la réponse et vérifie l'en-tête If-None-Match de la
+     * requête
+     *
+     * @param p_req
+     * @param p_resp
+     * @param p_etag
+     * @return vrai si le client a déjà cette version : la réponse 304 est
+     * alors envoyée et l'appelant ne doit plus rien écrire
+     */
+    static boolean checkNotModified(HttpServletRequest p_req, HttpServletResponse p_resp, String p_etag)
+    {
+	p_resp.setHeader("ETag", p_etag);
+	p_resp.setHeader("Cache-Control", "no-cache");//le client doit revalider à chaque fois, mais peut garder sa copie
+	boolean result = matches(p_req.getHeader("If-None-Match"), p_etag);
+	if (result)
+	{
+	    p_resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+	}
+	return result;
+    }
+
+    /**
+     *
+     * @param p_header valeur de If-None-Match, éventuellement une liste
+     * @param p_etag
+     * @return vrai si l'un des ETags de l'en-tête correspond (comparaison
+     * faible, comme l'exige la RFC 7232 pour If-None-Match)
+     */
+    static boolean matches(String p_header, String p_etag)
+    {
+	boolean result = false;
+	if (p_header != null)
+	{
+	    for (String candidate : p_header.split(","))
+	    {
+		String tag = candidate.trim();
+		if (tag.startsWith("W/"))
+		{
+		    tag = tag.substring(2);
+		}
+		if (tag.equals("*") || tag.equals(p_etag))
+		{
+		    result = true;
+		}
+	    }
+	}
+	return result;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.web;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.json.stream.JsonGenerator;
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import org.duckdns.spacedock.jaws.control.GameListener;
+import org.duckdns.spacedock.jaws.control.GameManager;
+import org.duckdns.spacedock.jaws.control.GameSession;
+import org.duckdns.spacedock.jaws.model.MapObject;
+
+/**
+ * diffuse les changements d'une partie à toutes les sessions WebSocket qui y
+ * sont abonnées. Il n'existe qu'un diffuseur par partie : chaque événement
+ * n'est sérialisé qu'une fois quel que soit le nombre d'abonnés, puis envoyé
+ * de façon asynchrone pour ne jamais bloquer le GameManager. Un abonné trop
+ * lent pour suivre, dont les envois en cours dépassent MAX_IN_FLIGHT, est
+ * déconnecté plutôt que de laisser ses messages s'accumuler : il reçoit la
+ * situation actuelle en se reconnectant.
+ *
+ * @author ykonoclast
+ */
+class GameBroadcaster implements GameListener
+{
+
+    /**
+     * diffuseurs actifs, par identifiant de partie
+     */
+    private static final ConcurrentMap<String, GameBroadcaster> m_broadcasters = new ConcurrentHashMap<>();
+
+    /**
+     * nombre maximal d'envois non terminés par abonné
+     */
+    private static final int MAX_IN_FLIGHT = 32;
+
+    /**
+     * partie observée
+     */
+    private final GameSession m_game;
+
+    /**
+     * sessions abonnées, avec pour chacune le nombre d'envois non terminés
+     */
+    private final ConcurrentMap<Session, AtomicInteger> m_sessions = new ConcurrentHashMap<>();
+
+    /**
+     * constructeur, on passe par subscribe()
+     *
+     * @param p_game
+     */
+    private GameBroadcaster(GameSession p_game)
+    {
+	m_game = p_game;
+    }
+
+    /**
+     * abonne une session aux changements d'une partie, le diffuseur est créé
+     * et branché sur la partie au premier abonné
+     *
+     * @param p_gameId
+     * @param p_game
+     * @param p_session
+     */
+    static void subscribe(String p_gameId, GameSession p_game, Session p_session)
+    {
+	m_broadcasters.compute(p_gameId, (id, current) ->
+	{
+	    GameBroadcaster result = current;
+	    if (result == null || result.m_game != p_game)
+	    {//pas encore de diffuseur ou partie recréée depuis sous le même identifiant
+		if (result != null)
+		{
+		    result.m_game.removeGameListener(result);
+		}
+		result = new GameBroadcaster(p_game);
+		p_game.addGameListener(result);
+	    }
+	    result.m_sessions.putIfAbsent(p_session, new AtomicInteger(0));
+	    return result;
+	});
+    }
+
+    /**
+     * désabonne une session, le diffuseur est débranché de la partie au départ
+     * du dernier abonné
+     *
+     * @param p_gameId
+     * @param p_session
+     */
+    static void unsubscribe(String p_gameId, Session p_session)
+    {
+	m_broadcasters.computeIfPresent(p_gameId, (id, current) ->
+	{
+	    GameBroadcaster result = current;
+	    current.m_sessions.remove(p_session);
+	    if (current.m_sessions.isEmpty())
+	    {
+		current.m_game.removeGameListener(current);
+		result = null;
+	    }
+	    return result;
+	});
+    }
+
+    @Override
+    public void impulseChanged(GameManager.ImpulseReport p_report)
+    {
+	StringWriter out = new StringWriter();
+	try (JsonGenerator gen = JsonSerializer.createGenerator(out))
+	{
+	    JsonSerializer.writeReportEvent(gen, p_report);
+	}
+	broadcast(out.toString());
+    }
+
+    @Override
+    public void shipMoved(int p_shipId, MapObject.HexCoordinates p_coordinates)
+    {
+	StringWriter out = new StringWriter();
+	try (JsonGenerator gen = JsonSerializer.createGenerator(out))
+	{
+	    JsonSerializer.writeMoveEvent(gen, p_shipId, p_coordinates);
+	}
+	broadcast(out.toString());
+    }
+
+    /**
+     * envoie un message déjà sérialisé à tous les abonnés, sans attendre
+     *
+     * @param p_message
+     */
+    private void broadcast(String p_message)
+    {
+	for (Map.Entry<Session, AtomicInteger> subscriber : m_sessions.entrySet())
+	{
+	    Session session = subscriber.getKey();
+	    AtomicInteger inFlight = subscriber.getValue();
+	    if (session.isOpen())
+	    {
+		if (inFlight.incrementAndGet() <= MAX_IN_FLIGHT)
+		{
+		    session.getAsyncRemote().sendText(p_message, (result) -> inFlight.decrementAndGet());
+		}
+		else if (m_sessions.remove(session, inFlight))
+		{//désabonné ici pour ne plus rien lui envoyer, le diffuseur étant débranché par onClose s'il était le dernier
+		    dropSlow(session);
+		}
+	    }
+	}
+    }
+
+    /**
+     * déconnecte un abonné qui ne suit plus
+     *
+     * @param p_session
+     */
+    private static void dropSlow(Session p_session)
+    {
+	try
+	{
+	    p_session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "too slow"));
+	}
+	catch (IOException e)
+	{//connexion déjà perdue : onError ou onClose finira le désabonnement
+	}
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.web;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import javax.json.stream.JsonGenerator;
+import javax.websocket.CloseReason;
+import javax.websocket.OnClose;
+import javax.websocket.OnError;
+import javax.websocket.OnOpen;
+import javax.websocket.Session;
+import javax.websocket.server.PathParam;
+import javax.websocket.server.ServerEndpoint;
+import org.duckdns.spacedock.jaws.control.GameRegistry;
+import org.duckdns.spacedock.jaws.control.GameSession;
+
+/**
+ * point d'accès WebSocket : un client s'abonne à une partie et reçoit ensuite,
+ * sans avoir à interroger le serveur, chaque nouveau rapport d'impulsion et
+ * chaque déplacement de vaisseau (messages JSON de type "report" et "move")
+ *
+ * @author ykonoclast
+ */
+@ServerEndpoint("/ws/games/{game}")
+public class GameEventSocket
+{
+
+    @OnOpen
+    public void onOpen(Session p_session, @PathParam("game") String p_gameId) throws IOException
+    {
+	GameSession game = GameRegistry.getInstance().getGame(p_gameId);
+	if (game == null)
+	{
+	    p_session.close(new CloseReason(CloseReason.CloseCodes.CANNOT_ACCEPT, "unknown game"));
+	}
+	else
+	{
+	    GameBroadcaster.subscribe(p_gameId, game, p_session);
+
+	    //le client reçoit immédiatement la situation actuelle, les changements suivront
+	    StringWriter out = new StringWriter();
+	    try (JsonGenerator gen = JsonSerializer.createGenerator(out))
+	    {
+		JsonSerializer.writeReportEvent(gen, game.getImpulseReport());
+	    }
+	    p_session.getAsyncRemote().sendText(out.toString());
+	}
+    }
+
+    @OnClose
+    public void onClose(Session p_session, @PathParam("game") String p_gameId)
+    {
+	GameBroadcaster.unsubscribe(p_gameId, p_session);
+    }
+
+    @OnError
+    public void onError(Session p_session, @PathParam("game") String p_gameId, Throwable p_error)
+    {
+	GameBroadcaster.unsubscribe(p_gameId, p_session);
+    }
+}
@@ -5,18 +5,23 @@
  */
 package org.duckdns.spacedock.jaws.web;
 
-import java.io.FileNotFoundException;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.net.URISyntaxException;
-import java.util.List;
-import java.util.Map;
+import java.io.Writer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.duckdns.spacedock.jaws.control.GameManager;
+import org.duckdns.spacedock.jaws.control.GameRegistry;
+import org.duckdns.spacedock.jaws.control.GameSession;
+import org.duckdns.spacedock.jaws.control.Metrics;
 import org.duckdns.spacedock.jaws.model.MapObject;
-import org.duckdns.spacedock.jaws.model.Ship;
 
 /**
  * Une servlet ma foi fort bien nommée
@@ -29,32 +34,201 @@ public class HorribleServlet extends HttpServlet
     //allez, mettons des chaînes en dur, là on est dans l'état de l'art
     private final String m_title = "Java Astral Warfare Simulator";
 
-    private GameManager m_manager;
+    /**
+     * partie utilisée quand la requête n'en précise aucune
+     */
+    static final String DEFAULT_GAME = "default";
 
-    private GameManager.ImpulseReport m_report;
+    /**
+     * scénario chargé à la création d'une partie
+     */
+    static final String DEFAULT_SCENARIO = "scenar2";//un seul scénar pour l'instant
+
+    /**
+     * format accepté pour les identifiants de partie : évite de créer des
+     * parties à partir de n'importe quoi
+     */
+    private static final Pattern GAME_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    /**
+     * attente maximale du résultat d'une commande, en ms : au delà, la
+     * partie est considérée comme occupée et le thread de requête est rendu
+     */
+    static final long COMMAND_TIMEOUT = 10000;
+
+    /**
+     * délai suggéré au client avant de réessayer auprès d'une partie occupée,
+     * en s
+     */
+    static final int RETRY_AFTER = 1;
+
+    /**
+     * registre de toutes les parties hébergées
+     */
+    private final GameRegistry m_registry = GameRegistry.getInstance();
 
     @Override
     public void init() throws ServletException
     {
 	try
 	{
-	    m_manager = new GameManager("scenar2");//un seul scénar pour l'instant
+	    m_registry.getOrCreateGame(DEFAULT_GAME, DEFAULT_SCENARIO);
 	}
 	catch (Exception e)
 	{
 	    //mange silencieusement toute exception comme un gros dégueulasse
 	}
-	m_report = m_manager.startGame();
+    }
+
+    /**
+     * extrait l'identifiant de partie de la requête : paramétre "game" ou bien
+     * URL de la forme /game/&lt;id&gt;
+     *
+     * @param p_req
+     * @return l'identifiant, DEFAULT_GAME si la requête n'en précise aucun,
+     * null s'il est mal formé
+     */
+    static String resolveGameId(HttpServletRequest p_req)
+    {
+	String result = p_req.getParameter("game");
+	if (result == null)
+	{
+	    String path = p_req.getPathInfo();
+	    if (path != null && path.startsWith("/game/"))
+	    {
+		result = path.substring("/game/".length());
+		int slash = result.indexOf('/');
+		if (slash >= 0)
+		{
+		    result = result.substring(0, slash);
+		}
+	    }
+	    else
+	    {
+		result = DEFAULT_GAME;
+	    }
+	}
+	if (!GAME_ID_PATTERN.matcher(result).matches())
+	{
+	    result = null;
+	}
+	return result;
+    }
+
+    /**
+     * attend le résultat d'une commande passée à la file d'une partie : le
+     * thread de requête patiente, la partie elle-même n'est modifiée que par
+     * le thread vidant sa file
+     *
+     * @param <T>
+     * @param p_future
+     * @return le résultat de la commande
+     * @throws ServletException si la commande a échoué sur une exception
+     * contrôlée (les exceptions non contrôlées sont relancées telles
+     * quelles), GameBusyException si elle n'a pas abouti à temps
+     */
+    static <T> T await(CompletableFuture<T> p_future) throws ServletException
+    {
+	return await(p_future, COMMAND_TIMEOUT);
+    }
+
+    /**
+     *
+     * @param <T>
+     * @param p_future
+     * @param p_timeoutMs attente maximale, en ms
+     * @return le résultat de la commande
+     * @throws ServletException si la commande a échoué sur une exception
+     * contrôlée, GameBusyException si elle n'a pas abouti à temps (elle reste
+     * en file et sera exécutée plus tard) ou si la partie a été fermée
+     */
+    static <T> T await(CompletableFuture<T> p_future, long p_timeoutMs) throws ServletException
+    {
+	T result = null;
+	try
+	{
+	    result = p_future.get(p_timeoutMs, TimeUnit.MILLISECONDS);
+	}
+	catch (TimeoutException e)
+	{
+	    throw new GameBusyException(e);
+	}
+	catch (InterruptedException e)
+	{
+	    Thread.currentThread().interrupt();
+	    throw new ServletException(e);
+	}
+	catch (ExecutionException e)
+	{
+	    if (e.getCause() instanceof GameSession.GameClosedException)
+	    {//partie en cours d'éviction : la requête renvoyée plus tard trouvera la partie reconstruite
+		throw new GameBusyException((GameSession.GameClosedException) e.getCause());
+	    }
+	    if (e.getCause() instanceof RuntimeException)
+	    {
+		throw (RuntimeException) e.getCause();
+	    }
+	    throw new ServletException(e.getCause());
+	}
+	return result;
+    }
+
+    /**
+     * mesure la durée de traitement de chaque requête de page
+     */
+    @Override
+    protected void service(HttpServletRequest p_req, HttpServletResponse p_resp) throws ServletException, IOException
+    {
+	long start = System.nanoTime();
+	try
+	{
+	    super.service(p_req, p_resp);
+	}
+	catch (GameBusyException e)
+	{
+	    Metrics.HTTP_HTML.recordError();
+	    p_resp.setIntHeader("Retry-After", RETRY_AFTER);
+	    p_resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+	}
+	catch (ServletException | IOException | RuntimeException e)
+	{
+	    Metrics.HTTP_HTML.recordError();
+	    throw e;
+	}
+	finally
+	{
+	    Metrics.HTTP_HTML.recordSince(start);
+	}
     }
 
     //Allez, une seule méthode, on utilise le GET pour tout et on rebalance l'intégralité de la page à chaque fois, magnifique.
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse response) throws ServletException, IOException
     {
+	String gameId = resolveGameId(req);
+	if (gameId == null)
+	{
+	    response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+	    return;
+	}
+
+	GameSession manager;
+	try
+	{
+	    manager = m_registry.getOrCreateGame(gameId, DEFAULT_SCENARIO);
+	}
+	catch (Exception e)
+	{
+	    throw new ServletException(e);
+	}
+	if (!req.getParameterMap().containsKey("id") && ConditionalGet.checkNotModified(req, response, ConditionalGet.makeETag("html", manager)))
+	{//simple consultation et le client a déjà la page à jour : rien à calculer
+	    return;
+	}
+	GameManager.ImpulseReport report = manager.getImpulseReport();
 
 	response.setContentType("text/html");
 	response.setStatus(HttpServletResponse.SC_OK);
-	response.getWriter().println("<h1>" + m_title + "</h1>");
 
 	if (req.getParameterMap().containsKey("id"))
 	{
@@ -69,7 +243,11 @@ public class HorribleServlet extends HttpServlet
 		int id = Integer.parseInt(req.getParameter("id"));
 		try
 		{
-		    m_report = m_manager.moveShipStraight(id);
+		    report = await(manager.moveShipStraight(id));
+		}
+		catch (GameBusyException e)
+		{
+		    throw e;
 		}
 		catch (Exception e)
 		{
@@ -105,7 +283,11 @@ public class HorribleServlet extends HttpServlet
 		    }
 		    try
 		    {
-			m_report = m_manager.turnShip(id, orient);
+			report = await(manager.turnShip(id, orient));
+		    }
+		    catch (GameBusyException e)
+		    {
+			throw e;
 		    }
 		    catch (Exception e)
 		    {
@@ -116,48 +298,36 @@ public class HorribleServlet extends HttpServlet
 		{
 		    if (str3 != null) // turn
 		    {
-			m_report = m_manager.advanceImpulse();
+			report = await(manager.advanceImpulse());
 		    }
 		}
 	    }
 
 	}
 
-	//tour courant
-	String tour = "<h2>Tour " + m_report.currentTurn + "</h2>";
+	//rendu en flux directement dans la réponse, la page n'est jamais construite en mémoire
+	Writer out = new BufferedWriter(response.getWriter(), 8192);
+	HtmlRenderer.render(out, m_title, gameId, report, manager.getAllShips());
+	out.flush();
+    }
 
-	//impulsion courante
-	String impulsion = "<h2>Impulsion " + m_report.currentImpulse + "</h2>";
-	String joueur = "<h2>Joueur : " + m_report.currentPlayer + "</h2>";
+    /**
+     * commande n'ayant pas abouti dans le délai imparti, ou refusée par une
+     * partie en cours d'éviction : la partie est occupée, la requête est
+     * refusée avec un statut 503
+     */
+    static final class GameBusyException extends ServletException
+    {
 
-	//liste de tous les vaisseaux en jeu ainsi que de ceux devant bouger
-	Map<GameManager.Player, List<Ship>> listAllShips = m_manager.getAllShips();
-	String listTotale = "<h2>Liste des vaisseaux en jeu :</h2>";
-	String list2Move = "<h2>Liste des vaisseaux devant bouger :</h2>";
-	listTotale = listTotale.concat("<h3>" + GameManager.Player.TALON.toString() + " :</h3>");
-	list2Move = list2Move.concat("<h3>" + GameManager.Player.TALON.toString() + " :</h3>");
+	private static final long serialVersionUID = 1L;
 
-	for (Ship ship : listAllShips.get(GameManager.Player.TALON))
+	/**
+	 *
+	 * @param p_cause
+	 */
+	GameBusyException(Exception p_cause)
 	{
-	    listTotale = listTotale.concat(ship.getId() + " " + ship.toString() + " " + ship.getCoordinates().toString() + "<br />");
-	    if (m_report.mustMoveShips.contains(ship.getId()))
-	    {
-		list2Move = list2Move.concat(ship.getId() + " " + ship.toString() + "<br />");
-	    }
+	    super(p_cause);
 	}
-	listTotale = listTotale.concat("<h3>" + GameManager.Player.TERRAN.toString() + " :</h3>");
-	list2Move = list2Move.concat("<h3>" + GameManager.Player.TERRAN.toString() + " :</h3>");
-	for (Ship ship : listAllShips.get(GameManager.Player.TERRAN))
-	{
-	    listTotale = listTotale.concat(ship.getId() + " " + ship.toString() + "<br />");
-	    if (m_report.mustMoveShips.contains(ship.getId()))
-	    {
-		list2Move = list2Move.concat(ship.getId() + " " + ship.toString() + "<br />");
-	    }
-	}
-
-	String form = "<form method=\"get\" action=\"http://localhost:8080/\"><b>id de vaisseau<input type=\"text\" name=\"id\"><br><b>nouvelle orientation<input type=\"text\" name=\"orient\"><br><input type=\"submit\" value=\"avancer\" name=\"av\"><input type=\"submit\" value=\"tourner\" name=\"turn\"><br><input type=\"submit\" value=\"fin de tour\" name=\"end\"></b></form>";
-
-	response.getWriter().println("<body>" + tour + impulsion + joueur + listTotale + list2Move + form + "</body>");
     }
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.web;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.duckdns.spacedock.jaws.control.GameManager;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.Ship;
+
+/**
+ * rendu de la page HTML de jeu. Le gabarit est découpé une seule fois, au
+ * chargement de la classe, en fragments fixes et en emplacements ; le rendu
+ * écrit ensuite chaque morceau directement dans le flux de sortie, sans jamais
+ * concaténer de chaînes, et son coût est linéaire en nombre de vaisseaux.
+ *
+ * @author ykonoclast
+ */
+final class HtmlRenderer
+{
+
+    /**
+     * gabarit de la page, les emplacements sont notés ${nom}
+     */
+    private static final String TEMPLATE = "<h1>${title}</h1>\n"
+	    + "<body><h2>Tour ${turn}</h2><h2>Impulsion ${impulse}</h2><h2>Joueur : ${player}</h2>"
+	    + "<h2>Liste des vaisseaux en jeu :</h2>${allShips}"
+	    + "<h2>Liste des vaisseaux devant bouger :</h2>${mustMoveShips}"
+	    + "<form method=\"get\" action=\"http://localhost:8080/\"><b>id de vaisseau<input type=\"hidden\" name=\"game\" value=\"${game}\"><input type=\"text\" name=\"id\"><br><b>nouvelle orientation<input type=\"text\" name=\"orient\"><br><input type=\"submit\" value=\"avancer\" name=\"av\"><input type=\"submit\" value=\"tourner\" name=\"turn\"><br><input type=\"submit\" value=\"fin de tour\" name=\"end\"></b></form>"
+	    + "</body>\n";
+
+    /**
+     * emplacements reconnus dans le gabarit
+     */
+    private enum Slot
+    {
+	TITLE("title"), TURN("turn"), IMPULSE("impulse"), PLAYER("player"), ALL_SHIPS("allShips"), MUST_MOVE_SHIPS("mustMoveShips"), GAME("game");
+
+	/**
+	 * nom de l'emplacement dans le gabarit
+	 */
+	private final String m_name;
+
+	Slot(String p_name)
+	{
+	    m_name = p_name;
+	}
+    }
+
+    /**
+     * fragments fixes du gabarit : le fragment i précède l'emplacement i, le
+     * dernier fragment termine la page
+     */
+    private static final String[] m_fragments;
+
+    /**
+     * emplacements du gabarit, dans l'ordre
+     */
+    private static final Slot[] m_slots;
+
+    static
+    {//découpage du gabarit, une fois pour toutes
+	List<String> fragments = new ArrayList<>();
+	List<Slot> slots = new ArrayList<>();
+	int start = 0;
+	int open = TEMPLATE.indexOf("${", start);
+	while (open >= 0)
+	{
+	    int close = TEMPLATE.indexOf('}', open);
+	    String name = TEMPLATE.substring(open + 2, close);
+	    Slot found = null;
+	    for (Slot slot : Slot.values())
+	    {
+		if (slot.m_name.equals(name))
+		{
+		    found = slot;
+		}
+	    }
+	    if (found == null)
+	    {
+		throw new IllegalStateException(name);
+	    }
+	    fragments.add(TEMPLATE.substring(start, open));
+	    slots.add(found);
+	    start = close + 1;
+	    open = TEMPLATE.indexOf("${", start);
+	}
+	fragments.add(TEMPLATE.substring(start));
+	m_fragments = fragments.toArray(new String[fragments.size()]);
+	m_slots = slots.toArray(new Slot[slots.size()]);
+    }
+
+    /**
+     * classe utilitaire, pas d'instanciation
+     */
+    private HtmlRenderer()
+    {
+    }
+
+    /**
+     * écrit la page complète
+     *
+     * @param p_out flux de sortie, idéalement bufferisé
+     * @param p_title titre de la page
+     * @param p_gameId partie affichée
+     * @param p_report situation actuelle
+     * @param p_ships tous les vaisseaux en jeu
+     * @throws IOException
+     */
+    static void render(Writer p_out, String p_title, String p_gameId, GameManager.ImpulseReport p_report, Map<GameManager.Player, List<Ship>> p_ships) throws IOException
+    {
+	Set<Integer> mustMove = new HashSet<>(p_report.mustMoveShips);//test d'appartenance en temps constant
+
+	for (int i = 0; i < m_slots.length; ++i)
+	{
+	    p_out.write(m_fragments[i]);
+	    switch (m_slots[i])
+	    {
+		case TITLE:
+		    p_out.write(p_title);
+		    break;
+		case TURN:
+		    p_out.write(Integer.toString(p_report.currentTurn));
+		    break;
+		case IMPULSE:
+		    p_out.write(p_report.currentImpulse);
+		    break;
+		case PLAYER:
+		    p_out.write(p_report.currentPlayer);
+		    break;
+		case ALL_SHIPS:
+		    writeShips(p_out, p_ships, null);
+		    break;
+		case MUST_MOVE_SHIPS:
+		    writeShips(p_out, p_ships, mustMove);
+		    break;
+		case GAME:
+		    p_out.write(p_gameId);
+		    break;
+	    }
+	}
+	p_out.write(m_fragments[m_fragments.length - 1]);
+    }
+
+    /**
+     * écrit la liste des vaisseaux de chaque joueur
+     *
+     * @param p_out
+     * @param p_ships
+     * @param p_filter si non null, seuls les vaisseaux dont l'id y figure sont
+     * écrits (sans leurs coordonnées)
+     * @throws IOException
+     */
+    private static void writeShips(Writer p_out, Map<GameManager.Player, List<Ship>> p_ships, Set<Integer> p_filter) throws IOException
+    {
+	for (GameManager.Player player : GameManager.Player.values())
+	{
+	    p_out.write("<h3>");
+	    p_out.write(player.toString());
+	    p_out.write(" :</h3>");
+	    List<Ship> ships = p_ships.get(player);
+	    if (ships != null)
+	    {
+		for (Ship ship : ships)
+		{
+		    if (p_filter == null)
+		    {
+			writeShipLine(p_out, ship, true);
+		    }
+		    else if (p_filter.contains(ship.getId()))
+		    {
+			writeShipLine(p_out, ship, false);
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * écrit la ligne d'un vaisseau
+     *
+     * @param p_out
+     * @param p_ship
+     * @param p_withCoordinates
+     * @throws IOException
+     */
+    private static void writeShipLine(Writer p_out, Ship p_ship, boolean p_withCoordinates) throws IOException
+    {
+	p_out.write(Integer.toString(p_ship.getId()));
+	p_out.write(' ');
+	p_out.write(p_ship.toString());
+	if (p_withCoordinates)
+	{
+	    MapObject.HexCoordinates coord = p_ship.getCoordinates();
+	    p_out.write(' ');
+	    p_out.write(Integer.toString(coord.posL));
+	    p_out.write('-');
+	    p_out.write(Integer.toString(coord.posC));
+	    p_out.write(':');
+	    p_out.write(coord.orientation.toString());
+	}
+	p_out.write("<br />");
+    }
+}
@@ -16,29 +16,153 @@
  */
 package org.duckdns.spacedock.jaws.web;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import javax.websocket.server.ServerContainer;
+import org.duckdns.spacedock.jaws.control.GameRegistry;
 import org.eclipse.jetty.server.Server;
-import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.websocket.jsr356.server.deploy.WebSocketServerContainerInitializer;
 
 /**
+ * point d'entrée du serveur : construit et démarre Jetty selon la
+ * configuration (voir ServerConfig)
  *
  * @author ykonoclast
  */
 public class JawsLauncher
 {
 
+    private static final Logger LOG = Log.getLogger(JawsLauncher.class);
+
     /**
-     * @param args the command line arguments
+     * @param args the command line arguments, de la forme --clé=valeur (voir
+     * resources/app/server.properties)
      */
     public static void main(String[] args) throws Exception
     {
-	Server server = new Server(8080);//à passer en paramétre avec valeur par défaut
-         
-        ServletHandler handler = new ServletHandler();
-        server.setHandler(handler);
-        
-        handler.addServletWithMapping(HorribleServlet.class, "/*");//quelle bonne idée, balançons tout sur la même URL, droit dans la racine, ça sert à rien les arborescences
-        
-        server.start();        
-        server.join();//rien fait pour s'arrêter proprement, se fera une joie de polluer l'espace d'adresses
+	Server server = createServer(ServerConfig.load(args));
+	server.setStopAtShutdown(true);//arrêt propre sur SIGTERM : les ordres en cours sont terminés avant de couper
+
+	server.start();
+	server.join();
+    }
+
+    /**
+     * construit un serveur prêt à démarrer
+     *
+     * @param p_config
+     * @return le serveur, non démarré
+     * @throws Exception
+     */
+    public static Server createServer(ServerConfig p_config) throws Exception
+    {
+	Server server = new Server(createThreadPool(p_config));
+
+	ServerConnector connector = new ServerConnector(server, p_config.acceptors, p_config.selectors);
+	connector.setPort(p_config.port);
+	connector.setIdleTimeout(p_config.idleTimeout);
+	server.addConnector(connector);
+
+	ServletContextHandler handler = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);//contexte complet nécessaire pour y greffer les WebSockets
+	handler.setContextPath("/");
+
+	handler.addServlet(JsonApiServlet.class, "/api/*");//API JSON pour les clients automatisés
+	handler.addServlet(MetricsServlet.class, "/metrics");//métriques au format texte de Prometheus
+	handler.addServlet(HorribleServlet.class, "/*");//quelle bonne idée, balançons tout sur la même URL, droit dans la racine, ça sert à rien les arborescences
+
+	//le StatisticsHandler compte les requêtes en cours : c'est lui qui permet à l'arrêt d'attendre leur fin
+	StatisticsHandler stats = new StatisticsHandler();
+	stats.setHandler(handler);
+	server.setHandler(stats);
+	server.setStopTimeout(p_config.stopTimeout);
+
+	ServerContainer wsContainer = WebSocketServerContainerInitializer.configureContext(handler);//le contexte doit déjà être rattaché au serveur
+	wsContainer.addEndpoint(GameEventSocket.class);//notifications poussées aux abonnés de chaque partie
+
+	server.addLifeCycleListener(new AbstractLifeCycle.AbstractLifeCycleListener()
+	{
+	    @Override
+	    public void lifeCycleStopped(LifeCycle p_event)
+	    {//plus aucune requête ne tourne : on ferme les parties
+		GameRegistry.getInstance().shutdown();
+	    }
+	});
+	return server;
+    }
+
+    /**
+     * construit le pool de threads des requêtes
+     *
+     * @param p_config
+     * @return
+     */
+    private static ThreadPool createThreadPool(ServerConfig p_config)
+    {
+	ThreadPool result = null;
+	if (p_config.executor == ServerConfig.ExecutorMode.VIRTUAL)
+	{
+	    ExecutorService virtual = createVirtualThreadExecutor();
+	    if (virtual != null)
+	    {
+		result = new ExecutorThreadPool(virtual);
+	    }
+	    else
+	    {
+		LOG.warn("virtual threads not supported by this JDK, using the thread pool");
+	    }
+	}
+	if (result == null)
+	{
+	    BlockingQueue<Runnable> queue;
+	    switch (p_config.queue)
+	    {
+		case BOUNDED:
+		    queue = new BlockingArrayQueue<>(p_config.queueCapacity, 0, p_config.queueCapacity);
+		    break;
+		case LINKED:
+		    queue = new LinkedBlockingQueue<>();
+		    break;
+		default:
+		    queue = new BlockingArrayQueue<>(p_config.queueCapacity, p_config.queueCapacity);
+	    }
+	    QueuedThreadPool pool = new QueuedThreadPool(p_config.maxThreads, p_config.minThreads, p_config.threadIdleTimeout, queue);
+	    pool.setName("jaws");
+	    result = pool;
+	}
+	return result;
+    }
+
+    /**
+     *
+     * @return un exécuteur à un thread virtuel par tâche, null si le JDK
+     * courant ne connaît pas les threads virtuels (avant Java 21)
+     */
+    private static ExecutorService createVirtualThreadExecutor()
+    {
+	ExecutorService result = null;
+	try
+	{//par réflexion : le projet reste compilable et exécutable en Java 8
+	    Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+	    result = (ExecutorService) factory.invoke(null);
+	}
+	catch (ReflectiveOperationException e)
+	{
+	    //méthode absente : on renvoie null et l'appelant se rabat sur le pool
+	}
+	return result;
     }
 }
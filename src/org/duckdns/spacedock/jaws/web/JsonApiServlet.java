@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.web;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.duckdns.spacedock.jaws.control.GameManager;
+import org.duckdns.spacedock.jaws.control.GameRegistry;
+import org.duckdns.spacedock.jaws.control.GameSession;
+import org.duckdns.spacedock.jaws.control.Metrics;
+import org.duckdns.spacedock.jaws.control.Order;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.Reachability;
+import org.duckdns.spacedock.jaws.model.Ship;
+
+/**
+ * API JSON destinée aux clients automatisés : on n'échange que le rapport
+ * d'impulsion ou l'état du plateau, jamais la page HTML complète.
+ *
+ * Ressources (relatives au mapping /api) :
+ * <ul>
+ * <li>POST /games/&lt;id&gt; : crée la partie si besoin, renvoie le
+ * rapport</li>
+ * <li>GET /games/&lt;id&gt;/report : rapport d'impulsion courant</li>
+ * <li>GET /games/&lt;id&gt;/board : rapport et position de tous les
+ * vaisseaux</li>
+ * <li>GET /games/&lt;id&gt;/reach : positions finales atteignables ce tour-ci
+ * par un vaisseau (paramétre ship) et chemin le moins coûteux vers chacune</li>
+ * <li>POST /games/&lt;id&gt;/orders : applique un ordre (paramétres order =
+ * move|turn|end, ship, orient) et renvoie le rapport résultant</li>
+ * <li>POST /games/&lt;id&gt;/batch : applique d'un bloc les ordres du corps de
+ * la requête, tableau JSON d'objets {"order": "move"|"turn", "ship": id,
+ * "orient": orientation} et renvoie le rapport résultant</li>
+ * </ul>
+ *
+ * @author ykonoclast
+ */
+public class JsonApiServlet extends HttpServlet
+{
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * découpage du chemin : identifiant de partie puis ressource optionnelle
+     */
+    private static final Pattern PATH_PATTERN = Pattern.compile("/games/([A-Za-z0-9_-]{1,64})(?:/([a-z]+))?/?");
+
+    /**
+     * registre de toutes les parties hébergées
+     */
+    private final transient GameRegistry m_registry = GameRegistry.getInstance();
+
+    /**
+     * mesure la durée de traitement de chaque requête de l'API
+     */
+    @Override
+    protected void service(HttpServletRequest p_req, HttpServletResponse p_resp) throws ServletException, IOException
+    {
+	long start = System.nanoTime();
+	try
+	{
+	    super.service(p_req, p_resp);
+	}
+	catch (HorribleServlet.GameBusyException e)
+	{
+	    Metrics.HTTP_API.recordError();
+	    p_resp.setIntHeader("Retry-After", HorribleServlet.RETRY_AFTER);
+	    sendError(p_resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "game busy");
+	}
+	catch (ServletException | IOException | RuntimeException e)
+	{
+	    Metrics.HTTP_API.recordError();
+	    throw e;
+	}
+	finally
+	{
+	    Metrics.HTTP_API.recordSince(start);
+	}
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest p_req, HttpServletResponse p_resp) throws ServletException, IOException
+    {
+	Matcher path = matchPath(p_req, p_resp);
+	if (path != null)
+	{
+	    GameSession game = m_registry.getGame(path.group(1));
+	    String resource = path.group(2);
+	    if (game == null)
+	    {
+		sendError(p_resp, HttpServletResponse.SC_NOT_FOUND, "unknown game");
+	    }
+	    else if ("report".equals(resource))
+	    {
+		if (!ConditionalGet.checkNotModified(p_req, p_resp, ConditionalGet.makeETag(resource, game)))
+		{//le client n'a pas encore cette version
+		    GameManager.ImpulseReport report = game.getImpulseReport();
+		    try (JsonGenerator gen = startJson(p_resp, HttpServletResponse.SC_OK))
+		    {
+			JsonSerializer.writeReport(gen, report);
+		    }
+		}
+	    }
+	    else if ("board".equals(resource))
+	    {
+		if (!ConditionalGet.checkNotModified(p_req, p_resp, ConditionalGet.makeETag(resource, game)))
+		{//le client n'a pas encore cette version
+		    GameManager.ImpulseReport report = game.getImpulseReport();
+		    try (JsonGenerator gen = startJson(p_resp, HttpServletResponse.SC_OK))
+		    {
+			JsonSerializer.writeBoard(gen, report, game.getAllShips());
+		    }
+		}
+	    }
+	    else if ("reach".equals(resource))
+	    {
+		sendReach(game, p_req, p_resp);
+	    }
+	    else
+	    {
+		sendError(p_resp, HttpServletResponse.SC_NOT_FOUND, "unknown resource");
+	    }
+	}
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest p_req, HttpServletResponse p_resp) throws ServletException, IOException
+    {
+	Matcher path = matchPath(p_req, p_resp);
+	if (path != null)
+	{
+	    String gameId = path.group(1);
+	    String resource = path.group(2);
+	    if (resource == null)
+	    {//création de partie
+		GameSession game;
+		try
+		{
+		    game = m_registry.getOrCreateGame(gameId, HorribleServlet.DEFAULT_SCENARIO);
+		}
+		catch (Exception e)
+		{
+		    throw new ServletException(e);
+		}
+		GameManager.ImpulseReport report = game.getImpulseReport();
+		try (JsonGenerator gen = startJson(p_resp, HttpServletResponse.SC_OK))
+		{
+		    JsonSerializer.writeReport(gen, report);
+		}
+	    }
+	    else if ("orders".equals(resource) || "batch".equals(resource))
+	    {
+		GameSession game = m_registry.getGame(gameId);
+		if (game == null)
+		{
+		    sendError(p_resp, HttpServletResponse.SC_NOT_FOUND, "unknown game");
+		}
+		else if ("orders".equals(resource))
+		{
+		    applyOrder(game, p_req, p_resp);
+		}
+		else
+		{
+		    applyBatch(game, p_req, p_resp);
+		}
+	    }
+	    else
+	    {
+		sendError(p_resp, HttpServletResponse.SC_NOT_FOUND, "unknown resource");
+	    }
+	}
+    }
+
+    /**
+     * décode et applique un ordre unique puis renvoie le rapport résultant, une
+     * fois l'ordre exécuté dans la file de la partie
+     *
+     * @param p_game
+     * @param p_req
+     * @param p_resp
+     */
+    private void applyOrder(GameSession p_game, HttpServletRequest p_req, HttpServletResponse p_resp) throws ServletException, IOException
+    {
+	String order = p_req.getParameter("order");
+	GameManager.ImpulseReport report = null;
+	String error = null;
+	try
+	{
+	    if ("end".equals(order))
+	    {
+		report = HorribleServlet.await(p_game.advanceImpulse());
+	    }
+	    else if ("move".equals(order))
+	    {
+		report = HorribleServlet.await(p_game.moveShipStraight(Integer.parseInt(p_req.getParameter("ship"))));
+	    }
+	    else if ("turn".equals(order))
+	    {
+		int shipId = Integer.parseInt(p_req.getParameter("ship"));
+		MapObject.Orientation orientation = parseOrientation(p_req.getParameter("orient"));
+		if (orientation == null)
+		{
+		    error = "bad orientation";
+		}
+		else
+		{
+		    report = HorribleServlet.await(p_game.turnShip(shipId, orientation));
+		}
+	    }
+	    else
+	    {
+		error = "unknown order";
+	    }
+	}
+	catch (NumberFormatException e)
+	{
+	    error = "bad ship id";
+	}
+
+	if (report != null)
+	{
+	    try (JsonGenerator gen = startJson(p_resp, HttpServletResponse.SC_OK))
+	    {
+		JsonSerializer.writeReport(gen, report);
+	    }
+	}
+	else
+	{
+	    sendError(p_resp, HttpServletResponse.SC_BAD_REQUEST, error);
+	}
+    }
+
+    /**
+     * décode les ordres groupés du corps de la requête et les applique en bloc
+     *
+     * @param p_game
+     * @param p_req
+     * @param p_resp
+     */
+    private void applyBatch(GameSession p_game, HttpServletRequest p_req, HttpServletResponse p_resp) throws ServletException, IOException
+    {
+	List<Order> orders = new ArrayList<>();
+	String error = null;
+	try (JsonReader reader = Json.createReader(p_req.getReader()))
+	{
+	    for (JsonValue value : reader.readArray())
+	    {
+		JsonObject jsonOrder = (JsonObject) value;
+		String type = jsonOrder.getString("order");
+		int shipId = jsonOrder.getInt("ship");
+		if ("move".equals(type))
+		{
+		    orders.add(Order.move(shipId));
+		}
+		else if ("turn".equals(type))
+		{
+		    orders.add(Order.turn(shipId, parseOrientation(jsonOrder.getString("orient", null))));
+		}
+		else
+		{
+		    error = "unknown order " + type;
+		}
+	    }
+	}
+	catch (JsonException | ClassCastException | NullPointerException e)
+	{
+	    error = "malformed orders";
+	}
+
+	GameManager.ImpulseReport report = null;
+	if (error == null)
+	{
+	    try
+	    {
+		report = HorribleServlet.await(p_game.applyOrders(orders));
+	    }
+	    catch (IllegalArgumentException e)
+	    {//au moins un ordre illégal : aucun n'a été appliqué
+		error = e.getMessage();
+	    }
+	}
+
+	if (report != null)
+	{
+	    try (JsonGenerator gen = startJson(p_resp, HttpServletResponse.SC_OK))
+	    {
+		JsonSerializer.writeReport(gen, report);
+	    }
+	}
+	else
+	{
+	    sendError(p_resp, HttpServletResponse.SC_BAD_REQUEST, error);
+	}
+    }
+
+    /**
+     * répond avec les positions atteignables par le vaisseau désigné
+     *
+     * @param p_game
+     * @param p_req
+     * @param p_resp
+     * @throws IOException
+     */
+    private void sendReach(GameSession p_game, HttpServletRequest p_req, HttpServletResponse p_resp) throws IOException
+    {
+	Ship ship = null;
+	try
+	{
+	    ship = p_game.getShip(Integer.parseInt(p_req.getParameter("ship")));
+	    if (ship == null)
+	    {
+		sendError(p_resp, HttpServletResponse.SC_NOT_FOUND, "unknown ship");
+	    }
+	}
+	catch (NumberFormatException e)
+	{
+	    sendError(p_resp, HttpServletResponse.SC_BAD_REQUEST, "bad ship id");
+	}
+
+	if (ship != null)
+	{
+	    try (JsonGenerator gen = startJson(p_resp, HttpServletResponse.SC_OK))
+	    {
+		JsonSerializer.writeReach(gen, ship.getId(), Reachability.forShip(ship));
+	    }
+	}
+    }
+
+    /**
+     *
+     * @param p_text
+     * @return l'orientation correspondant au libellé, null s'il n'y en a pas
+     */
+    static MapObject.Orientation parseOrientation(String p_text)
+    {
+	MapObject.Orientation result = null;
+	if (p_text != null)
+	{
+	    try
+	    {
+		result = MapObject.Orientation.valueOf(p_text);
+	    }
+	    catch (IllegalArgumentException e)
+	    {
+		//libellé inconnu : on renvoie null, l'appelant répondra par une erreur
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * analyse le chemin de la requête, répond directement 404 s'il n'est pas
+     * reconnu
+     *
+     * @param p_req
+     * @param p_resp
+     * @return le résultat de l'analyse, null si une erreur a déjà été envoyée
+     */
+    private Matcher matchPath(HttpServletRequest p_req, HttpServletResponse p_resp) throws IOException
+    {
+	String pathInfo = p_req.getPathInfo();
+	Matcher result = PATH_PATTERN.matcher(pathInfo == null ? "" : pathInfo);
+	if (!result.matches())
+	{
+	    sendError(p_resp, HttpServletResponse.SC_NOT_FOUND, "unknown resource");
+	    result = null;
+	}
+	return result;
+    }
+
+    /**
+     * prépare la réponse JSON et renvoie un générateur écrivant directement
+     * dedans
+     *
+     * @param p_resp
+     * @param p_status
+     * @return
+     * @throws IOException
+     */
+    private static JsonGenerator startJson(HttpServletResponse p_resp, int p_status) throws IOException
+    {
+	p_resp.setStatus(p_status);
+	p_resp.setContentType("application/json");
+	p_resp.setCharacterEncoding("UTF-8");
+	return JsonSerializer.createGenerator(p_resp.getWriter());
+    }
+
+    /**
+     * envoie une erreur au format JSON
+     *
+     * @param p_resp
+     * @param p_status
+     * @param p_message
+     * @throws IOException
+     */
+    private static void sendError(HttpServletResponse p_resp, int p_status, String p_message) throws IOException
+    {
+	try (JsonGenerator gen = startJson(p_resp, p_status))
+	{
+	    JsonSerializer.writeError(gen, p_message);
+	}
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.web;
+
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import org.duckdns.spacedock.jaws.control.GameManager;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.Reachability;
+import org.duckdns.spacedock.jaws.model.Ship;
+
+/**
+ * sérialisation JSON des objets échangés avec les clients, écrite directement
+ * dans le flux de sortie via un JsonGenerator : aucun document ni aucune chaîne
+ * intermédiaire n'est construit
+ *
+ * @author ykonoclast
+ */
+final class JsonSerializer
+{
+
+    /**
+     * fabrique partagée : la recherche du fournisseur JSON n'est faite qu'une
+     * fois, les générateurs qu'elle produit sont eux propres à chaque appel
+     */
+    private static final JsonGeneratorFactory m_factory = Json.createGeneratorFactory(Collections.<String, Object>emptyMap());
+
+    /**
+     * classe utilitaire, pas d'instanciation
+     */
+    private JsonSerializer()
+    {
+    }
+
+    /**
+     *
+     * @param p_out
+     * @return un générateur écrivant dans le flux fourni
+     */
+    static JsonGenerator createGenerator(Writer p_out)
+    {
+	return m_factory.createGenerator(p_out);
+    }
+
+    /**
+     * écrit un rapport d'impulsion sous la forme d'un objet JSON
+     *
+     * @param p_gen
+     * @param p_report
+     */
+    static void writeReport(JsonGenerator p_gen, GameManager.ImpulseReport p_report)
+    {
+	p_gen.writeStartObject();
+	writeReportFields(p_gen, p_report);
+	p_gen.writeEnd();
+    }
+
+    /**
+     * écrit l'état complet du plateau : le rapport d'impulsion et la position
+     * de tous les vaisseaux, par joueur
+     *
+     * @param p_gen
+     * @param p_report
+     * @param p_ships
+     */
+    static void writeBoard(JsonGenerator p_gen, GameManager.ImpulseReport p_report, Map<GameManager.Player, List<Ship>> p_ships)
+    {
+	p_gen.writeStartObject();
+	p_gen.writeStartObject("report");
+	writeReportFields(p_gen, p_report);
+	p_gen.writeEnd();
+	p_gen.writeStartObject("ships");
+	for (Map.Entry<GameManager.Player, List<Ship>> entry : p_ships.entrySet())
+	{
+	    p_gen.writeStartArray(entry.getKey().name());
+	    for (Ship ship : entry.getValue())
+	    {
+		writeShip(p_gen, ship);
+	    }
+	    p_gen.writeEnd();
+	}
+	p_gen.writeEnd();
+	p_gen.writeEnd();
+    }
+
+    /**
+     * écrit l'événement "nouveau rapport d'impulsion" poussé aux abonnés d'une
+     * partie
+     *
+     * @param p_gen
+     * @param p_report
+     */
+    static void writeReportEvent(JsonGenerator p_gen, GameManager.ImpulseReport p_report)
+    {
+	p_gen.writeStartObject();
+	p_gen.write("type", "report");
+	writeReportFields(p_gen, p_report);
+	p_gen.writeEnd();
+    }
+
+    /**
+     * écrit l'événement "déplacement de vaisseau" poussé aux abonnés d'une
+     * partie
+     *
+     * @param p_gen
+     * @param p_shipId
+     * @param p_coordinates
+     */
+    static void writeMoveEvent(JsonGenerator p_gen, int p_shipId, MapObject.HexCoordinates p_coordinates)
+    {
+	p_gen.writeStartObject();
+	p_gen.write("type", "move");
+	p_gen.write("id", p_shipId);
+	writeCoordinatesFields(p_gen, p_coordinates);
+	p_gen.writeEnd();
+    }
+
+    /**
+     * écrit les positions finales atteignables par un vaisseau, chacune avec
+     * le nombre de virages et la direction de chaque pas du meilleur chemin
+     *
+     * @param p_gen
+     * @param p_shipId
+     * @param p_reach
+     */
+    static void writeReach(JsonGenerator p_gen, int p_shipId, Reachability.Result p_reach)
+    {
+	p_gen.writeStartObject();
+	p_gen.write("id", p_shipId);
+	p_gen.writeStartArray("ends");
+	for (int i = 0; i < p_reach.size(); ++i)
+	{
+	    p_gen.writeStartObject();
+	    writeCoordinatesFields(p_gen, p_reach.getEnd(i));
+	    p_gen.write("turns", p_reach.getTurns(i));
+	    p_gen.writeStartArray("path");
+	    for (MapObject.Orientation step : p_reach.getPath(i))
+	    {
+		p_gen.write(step.name());
+	    }
+	    p_gen.writeEnd();
+	    p_gen.writeEnd();
+	}
+	p_gen.writeEnd();
+	p_gen.writeEnd();
+    }
+
+    /**
+     * écrit un message d'erreur
+     *
+     * @param p_gen
+     * @param p_message
+     */
+    static void writeError(JsonGenerator p_gen, String p_message)
+    {
+	p_gen.writeStartObject();
+	p_gen.write("error", p_message);
+	p_gen.writeEnd();
+    }
+
+    /**
+     * écrit les champs d'un rapport dans l'objet JSON courant
+     *
+     * @param p_gen
+     * @param p_report
+     */
+    private static void writeReportFields(JsonGenerator p_gen, GameManager.ImpulseReport p_report)
+    {
+	p_gen.write("currentTurn", p_report.currentTurn);
+	p_gen.write("currentImpulse", p_report.currentImpulse);
+	p_gen.write("currentPlayer", p_report.currentPlayer);
+	p_gen.writeStartArray("canActShips");
+	for (int id : p_report.canActShips)
+	{
+	    p_gen.write(id);
+	}
+	p_gen.writeEnd();
+	p_gen.writeStartArray("mustMoveShips");
+	for (int id : p_report.mustMoveShips)
+	{
+	    p_gen.write(id);
+	}
+	p_gen.writeEnd();
+    }
+
+    /**
+     * écrit un vaisseau sous la forme d'un objet JSON anonyme (élément de
+     * tableau)
+     *
+     * @param p_gen
+     * @param p_ship
+     */
+    private static void writeShip(JsonGenerator p_gen, Ship p_ship)
+    {
+	p_gen.writeStartObject();
+	p_gen.write("id", p_ship.getId());
+	p_gen.write("name", p_ship.toString());
+	writeCoordinatesFields(p_gen, p_ship.getCoordinates());
+	p_gen.writeEnd();
+    }
+
+    /**
+     * écrit des coordonnées dans l'objet JSON courant
+     *
+     * @param p_gen
+     * @param p_coordinates
+     */
+    private static void writeCoordinatesFields(JsonGenerator p_gen, MapObject.HexCoordinates p_coordinates)
+    {
+	p_gen.write("posL", p_coordinates.posL);
+	p_gen.write("posC", p_coordinates.posC);
+	p_gen.write("orientation", p_coordinates.orientation.name());
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.web;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.duckdns.spacedock.jaws.control.GameRegistry;
+import org.duckdns.spacedock.jaws.control.Metrics;
+
+/**
+ * expose les métriques de l'application au format texte de Prometheus, à
+ * destination d'un collecteur
+ *
+ * @author ykonoclast
+ */
+public class MetricsServlet extends HttpServlet
+{
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(HttpServletRequest p_req, HttpServletResponse p_resp) throws IOException
+    {
+	p_resp.setStatus(HttpServletResponse.SC_OK);
+	p_resp.setContentType("text/plain; version=0.0.4");
+	p_resp.setCharacterEncoding("UTF-8");
+	p_resp.setHeader("Cache-Control", "no-store");
+
+	Writer out = new BufferedWriter(p_resp.getWriter(), 8192);
+	Metrics.writeText(out);
+	out.write("# HELP jaws_games Parties actuellement hébergées.\n");
+	out.write("# TYPE jaws_games gauge\n");
+	out.write("jaws_games " + GameRegistry.getInstance().getGameCount() + "\n");
+	out.flush();
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.web;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.duckdns.spacedock.commonutils.files.GeneralFileHandler;
+
+/**
+ * configuration du serveur Jetty. Les valeurs par défaut sont lues dans le
+ * fichier resources/app/server.properties puis peuvent être surchargées par
+ * les propriétés système jaws.server.&lt;clé&gt; et enfin par les arguments de
+ * ligne de commande --&lt;clé&gt;=&lt;valeur&gt;
+ *
+ * @author ykonoclast
+ */
+public class ServerConfig
+{
+
+    /**
+     * nom du fichier de configuration dans resources/app
+     */
+    private static final String CONFIG_FILE = "server";
+
+    /**
+     * préfixe des propriétés système surchargeant la configuration
+     */
+    private static final String SYSTEM_PREFIX = "jaws.server.";
+
+    /**
+     * clés reconnues
+     */
+    private static final String[] KEYS =
+    {
+	"port", "minThreads", "maxThreads", "threadIdleTimeout", "queue", "queueCapacity", "acceptors", "selectors", "idleTimeout", "executor", "stopTimeout"
+    };
+
+    /**
+     * port d'écoute HTTP, 0 pour un port libre choisi par le système
+     */
+    public final int port;
+
+    /**
+     * nombre minimal de threads du pool
+     */
+    public final int minThreads;
+
+    /**
+     * nombre maximal de threads du pool
+     */
+    public final int maxThreads;
+
+    /**
+     * durée de vie d'un thread inactif au delà de minThreads (ms)
+     */
+    public final int threadIdleTimeout;
+
+    /**
+     * type de file d'attente des tâches du pool
+     */
+    public final QueueType queue;
+
+    /**
+     * capacité de la file d'attente
+     */
+    public final int queueCapacity;
+
+    /**
+     * nombre d'acceptors du connecteur, -1 pour la valeur par défaut de Jetty
+     */
+    public final int acceptors;
+
+    /**
+     * nombre de selectors du connecteur, -1 pour la valeur par défaut de Jetty
+     */
+    public final int selectors;
+
+    /**
+     * délai d'inactivité d'une connexion (ms)
+     */
+    public final long idleTimeout;
+
+    /**
+     * mode d'exécution des requêtes
+     */
+    public final ExecutorMode executor;
+
+    /**
+     * délai maximal accordé aux requêtes en cours lors de l'arrêt (ms)
+     */
+    public final long stopTimeout;
+
+    /**
+     * constructeur à partir des valeurs brutes déjà fusionnées
+     *
+     * @param p_values
+     */
+    private ServerConfig(Map<String, String> p_values)
+    {
+	port = parseInt(p_values, "port", 0);
+	minThreads = parseInt(p_values, "minThreads", 1);
+	maxThreads = parseInt(p_values, "maxThreads", minThreads);
+	threadIdleTimeout = parseInt(p_values, "threadIdleTimeout", 0);
+	queue = QueueType.parse(p_values.get("queue"));
+	queueCapacity = parseInt(p_values, "queueCapacity", 1);
+	acceptors = parseInt(p_values, "acceptors", -1);
+	selectors = parseInt(p_values, "selectors", -1);
+	idleTimeout = parseInt(p_values, "idleTimeout", 0);
+	executor = ExecutorMode.parse(p_values.get("executor"));
+	stopTimeout = parseInt(p_values, "stopTimeout", 0);
+    }
+
+    /**
+     * charge la configuration : fichier, puis propriétés système, puis
+     * arguments
+     *
+     * @param p_args arguments de la ligne de commande, de la forme
+     * --clé=valeur
+     * @return
+     * @throws IOException si le fichier de configuration est introuvable
+     */
+    public static ServerConfig load(String[] p_args) throws IOException
+    {
+	GeneralFileHandler handler = GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws");
+	Map<String, String> values = new HashMap<>();
+	for (String key : KEYS)
+	{
+	    values.put(key, handler.getAppProperty(CONFIG_FILE, key));
+	    String system = System.getProperty(SYSTEM_PREFIX + key);
+	    if (system != null)
+	    {
+		values.put(key, system);
+	    }
+	}
+	for (String arg : p_args)
+	{
+	    int equal = arg.indexOf('=');
+	    if (!arg.startsWith("--") || equal < 0 || !values.containsKey(arg.substring(2, equal)))
+	    {
+		handler.paramAberrant("BadServerParam", arg, Locale.getDefault());
+	    }
+	    values.put(arg.substring(2, equal), arg.substring(equal + 1));
+	}
+	return new ServerConfig(values);
+    }
+
+    /**
+     *
+     * @param p_values
+     * @param p_key
+     * @param p_min valeur minimale acceptée
+     * @return la valeur entière de la clé
+     */
+    private static int parseInt(Map<String, String> p_values, String p_key, int p_min)
+    {
+	int result = 0;
+	try
+	{
+	    result = Integer.parseInt(p_values.get(p_key).trim());
+	}
+	catch (NumberFormatException | NullPointerException e)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("BadServerParam", p_key, Locale.getDefault());
+	}
+	if (result < p_min)
+	{
+	    GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("BadServerParam", p_key + "=" + result, Locale.getDefault());
+	}
+	return result;
+    }
+
+    /**
+     * types de file d'attente possibles pour le pool de threads
+     */
+    public enum QueueType
+    {
+	/**
+	 * file de Jetty croissant à la demande (comportement par défaut)
+	 */
+	GROWABLE,
+	/**
+	 * file de Jetty de capacité fixe : les requêtes en excès sont rejetées
+	 */
+	BOUNDED,
+	/**
+	 * LinkedBlockingQueue du JDK, non bornée
+	 */
+	LINKED;
+
+	/**
+	 *
+	 * @param p_text
+	 * @return le type correspondant au libellé du fichier de configuration
+	 */
+	static QueueType parse(String p_text)
+	{
+	    QueueType result = GROWABLE;
+	    try
+	    {
+		result = valueOf(p_text.trim().toUpperCase(Locale.ROOT));
+	    }
+	    catch (IllegalArgumentException | NullPointerException e)
+	    {
+		GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("BadServerParam", "queue=" + p_text, Locale.getDefault());
+	    }
+	    return result;
+	}
+    }
+
+    /**
+     * modes d'exécution des requêtes
+     */
+    public enum ExecutorMode
+    {
+	/**
+	 * pool de threads classique de Jetty
+	 */
+	POOL,
+	/**
+	 * un thread virtuel par tâche, si le JDK le permet (repli sur POOL sinon)
+	 */
+	VIRTUAL;
+
+	/**
+	 *
+	 * @param p_text
+	 * @return le mode correspondant au libellé du fichier de configuration
+	 */
+	static ExecutorMode parse(String p_text)
+	{
+	    ExecutorMode result = POOL;
+	    try
+	    {
+		result = valueOf(p_text.trim().toUpperCase(Locale.ROOT));
+	    }
+	    catch (IllegalArgumentException | NullPointerException e)
+	    {
+		GeneralFileHandler.getInstance("org.duckdns.spacedock.jaws").paramAberrant("BadServerParam", "executor=" + p_text, Locale.getDefault());
+	    }
+	    return result;
+	}
+    }
+}
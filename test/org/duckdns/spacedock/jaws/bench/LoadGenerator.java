@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.web.JawsLauncher;
+import org.duckdns.spacedock.jaws.web.ServerConfig;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+/**
+ * générateur de charge de bout en bout : démarre le serveur dans le processus
+ * (ou vise un serveur existant) puis simule N clients jouant chacun leur
+ * propre partie scenar2 via l'API JSON (mouvements, virages, fins
+ * d'impulsion). Affiche le débit et les latences p50/p99/p999 par requête.
+ *
+ * Arguments (tous optionnels, un ou deux tirets) : --clients=N --duration=secondes
+ * --warmup=secondes --turnRatio=0..1 --url=http://hôte:port (pas de serveur
+ * local dans ce cas). Lancement : ant bench-load -Dbench.args="..."
+ *
+ * @author ykonoclast
+ */
+public class LoadGenerator
+{
+
+    private int m_clients = 16;
+    private int m_durationSec = 30;
+    private int m_warmupSec = 5;
+    private double m_turnRatio = 0.2;
+    private String m_url = null;
+
+    public static void main(String[] args) throws Exception
+    {
+	LoadGenerator generator = new LoadGenerator();
+	generator.parseArgs(args);
+	generator.run();
+    }
+
+    private void parseArgs(String[] p_args)
+    {
+	for (String arg : p_args)
+	{
+	    String[] pair = arg.replaceFirst("^--?", "").split("=", 2);
+	    switch (pair[0])
+	    {
+		case "clients":
+		    m_clients = Integer.parseInt(pair[1]);
+		    break;
+		case "duration":
+		    m_durationSec = Integer.parseInt(pair[1]);
+		    break;
+		case "warmup":
+		    m_warmupSec = Integer.parseInt(pair[1]);
+		    break;
+		case "turnRatio":
+		    m_turnRatio = Double.parseDouble(pair[1]);
+		    break;
+		case "url":
+		    m_url = pair[1];
+		    break;
+		default:
+		    throw new IllegalArgumentException(arg);
+	    }
+	}
+    }
+
+    private void run() throws Exception
+    {
+	Server server = null;
+	String baseUrl = m_url;
+	if (baseUrl == null)
+	{//serveur local sur un port libre
+	    server = JawsLauncher.createServer(ServerConfig.load(new String[]
+	    {
+		"--port=0"
+	    }));
+	    server.start();
+	    baseUrl = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+	}
+
+	long now = System.nanoTime();
+	long measureStart = now + m_warmupSec * 1_000_000_000L;
+	long measureEnd = measureStart + m_durationSec * 1_000_000_000L;
+
+	List<Client> clients = new ArrayList<>();
+	CountDownLatch done = new CountDownLatch(m_clients);
+	for (int i = 0; i < m_clients; ++i)
+	{
+	    Client client = new Client(baseUrl + "/api/games/bench" + i + "-" + now, measureStart, measureEnd, new Random(i), done);
+	    clients.add(client);
+	    Thread thread = new Thread(client, "load-client-" + i);
+	    thread.start();
+	}
+	done.await();
+
+	if (server != null)
+	{
+	    server.stop();
+	}
+
+	//agrégation
+	int total = 0;
+	int errors = 0;
+	for (Client client : clients)
+	{
+	    total += client.m_count;
+	    errors += client.m_errors;
+	}
+	long[] all = new long[total];
+	int pos = 0;
+	for (Client client : clients)
+	{
+	    System.arraycopy(client.m_latencies, 0, all, pos, client.m_count);
+	    pos += client.m_count;
+	}
+	Arrays.sort(all);
+
+	System.out.println(String.format(Locale.ROOT, "clients=%d duration=%ds requests=%d errors=%d", m_clients, m_durationSec, total, errors));
+	System.out.println(String.format(Locale.ROOT, "throughput=%.1f req/s", total / (double) m_durationSec));
+	System.out.println(String.format(Locale.ROOT, "latency p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms", percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999), all.length == 0 ? 0.0 : all[all.length - 1] / 1e6));
+    }
+
+    /**
+     *
+     * @param p_sorted latences triées, en ns
+     * @param p_quantile
+     * @return le quantile demandé, en ms
+     */
+    private static double percentile(long[] p_sorted, double p_quantile)
+    {
+	double result = 0;
+	if (p_sorted.length > 0)
+	{
+	    int index = (int) Math.min(p_sorted.length - 1, Math.ceil(p_quantile * p_sorted.length) - 1);
+	    result = p_sorted[Math.max(0, index)] / 1e6;
+	}
+	return result;
+    }
+
+    /**
+     * un client joue les deux camps de sa propre partie, en boucle
+     */
+    private class Client implements Runnable
+    {
+
+	private final String m_gameUrl;
+	private final long m_measureStart;
+	private final long m_measureEnd;
+	private final Random m_random;
+	private final CountDownLatch m_done;
+	private long[] m_latencies = new long[1 << 16];
+	private int m_count = 0;
+	private int m_errors = 0;
+
+	Client(String p_gameUrl, long p_measureStart, long p_measureEnd, Random p_random, CountDownLatch p_done)
+	{
+	    m_gameUrl = p_gameUrl;
+	    m_measureStart = p_measureStart;
+	    m_measureEnd = p_measureEnd;
+	    m_random = p_random;
+	    m_done = p_done;
+	}
+
+	@Override
+	public void run()
+	{
+	    try
+	    {
+		request("POST", m_gameUrl, null);
+		while (System.nanoTime() < m_measureEnd)
+		{
+		    playImpulse();
+		}
+	    }
+	    catch (IOException e)
+	    {
+		++m_errors;
+	    }
+	    finally
+	    {
+		m_done.countDown();
+	    }
+	}
+
+	/**
+	 * joue une impulsion : bouge chaque vaisseau qui doit bouger puis passe
+	 * à la suite
+	 */
+	private void playImpulse() throws IOException
+	{
+	    JsonObject report = request("GET", m_gameUrl + "/report", null);
+	    JsonArray mustMove = report.getJsonArray("mustMoveShips");
+	    if (!mustMove.isEmpty())
+	    {
+		Map<Integer, String> orientations = null;
+		for (JsonValue value : mustMove)
+		{
+		    int shipId = ((javax.json.JsonNumber) value).intValue();
+		    if (m_random.nextDouble() < m_turnRatio)
+		    {
+			if (orientations == null)
+			{
+			    orientations = readOrientations();
+			}
+			String next = MapObject.Orientation.valueOf(orientations.get(shipId)).next().name();
+			request("POST", m_gameUrl + "/orders?order=turn&ship=" + shipId + "&orient=" + next, null);
+		    }
+		    else
+		    {
+			request("POST", m_gameUrl + "/orders?order=move&ship=" + shipId, null);
+		    }
+		}
+	    }
+	    request("POST", m_gameUrl + "/orders?order=end", null);
+	}
+
+	/**
+	 *
+	 * @return l'orientation actuelle de chaque vaisseau de la partie
+	 */
+	private Map<Integer, String> readOrientations() throws IOException
+	{
+	    Map<Integer, String> result = new HashMap<>();
+	    JsonObject ships = request("GET", m_gameUrl + "/board", null).getJsonObject("ships");
+	    for (String player : ships.keySet())
+	    {
+		for (JsonValue ship : ships.getJsonArray(player))
+		{
+		    result.put(((JsonObject) ship).getInt("id"), ((JsonObject) ship).getString("orientation"));
+		}
+	    }
+	    return result;
+	}
+
+	/**
+	 * envoie une requête et enregistre sa latence si elle tombe dans la
+	 * fenêtre de mesure
+	 */
+	private JsonObject request(String p_method, String p_url, String p_body) throws IOException
+	{
+	    long start = System.nanoTime();
+	    HttpURLConnection conn = (HttpURLConnection) new URL(p_url).openConnection();
+	    conn.setRequestMethod(p_method);
+	    if (p_body != null)
+	    {
+		conn.setDoOutput(true);
+		conn.getOutputStream().write(p_body.getBytes(StandardCharsets.UTF_8));
+	    }
+	    int status = conn.getResponseCode();
+	    InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    byte[] buffer = new byte[4096];
+	    int read;
+	    while (in != null && (read = in.read(buffer)) > 0)
+	    {
+		bytes.write(buffer, 0, read);
+	    }
+	    if (in != null)
+	    {
+		in.close();//rend la connexion au pool keep-alive
+	    }
+	    long end = System.nanoTime();
+
+	    if (start >= m_measureStart && end <= m_measureEnd)
+	    {
+		if (m_count == m_latencies.length)
+		{
+		    m_latencies = Arrays.copyOf(m_latencies, m_count * 2);
+		}
+		m_latencies[m_count++] = end - start;
+		if (status >= 400)
+		{
+		    ++m_errors;
+		}
+	    }
+	    return Json.createReader(new StringReader(new String(bytes.toByteArray(), StandardCharsets.UTF_8))).readObject();
+	}
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.bench;
+
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import org.duckdns.spacedock.jaws.control.BatchSimulator;
+import org.duckdns.spacedock.jaws.control.OrderPolicy;
+import org.duckdns.spacedock.jaws.control.SimulationStats;
+
+/**
+ * banc de la simulation sans interface : joue le même lot de parties avec 1,
+ * 2, 4... threads jusqu'au nombre de cœurs et affiche le débit et
+ * l'accélération obtenus.
+ *
+ * Arguments (tous optionnels, un ou deux tirets) : --games=N --turns=N
+ * --scenario=nom --turnRatio=0..1 --persistence=NONE|MEMORY. Lancement : ant
+ * bench-sim -Dbench.args="..."
+ *
+ * @author ykonoclast
+ */
+public class SimulationBench
+{
+
+    private int m_games = 2000;
+    private int m_turns = 10;
+    private String m_scenario = "scenar2";
+    private double m_turnRatio = 0.2;
+    private BatchSimulator.Persistence m_persistence = BatchSimulator.Persistence.NONE;
+
+    public static void main(String[] args) throws Exception
+    {
+	SimulationBench bench = new SimulationBench();
+	bench.parseArgs(args);
+	bench.run();
+    }
+
+    private void parseArgs(String[] p_args)
+    {
+	for (String arg : p_args)
+	{
+	    String[] pair = arg.replaceFirst("^--?", "").split("=", 2);
+	    switch (pair[0])
+	    {
+		case "games":
+		    m_games = Integer.parseInt(pair[1]);
+		    break;
+		case "turns":
+		    m_turns = Integer.parseInt(pair[1]);
+		    break;
+		case "scenario":
+		    m_scenario = pair[1];
+		    break;
+		case "turnRatio":
+		    m_turnRatio = Double.parseDouble(pair[1]);
+		    break;
+		case "persistence":
+		    m_persistence = BatchSimulator.Persistence.valueOf(pair[1]);
+		    break;
+		default:
+		    throw new IllegalArgumentException(arg);
+	    }
+	}
+    }
+
+    private void run() throws Exception
+    {
+	OrderPolicy policy = OrderPolicy.random(m_turnRatio);
+
+	//chauffe du JIT sur un petit lot
+	ForkJoinPool warmup = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	new BatchSimulator(warmup, m_persistence).run(m_scenario, Math.max(1, m_games / 4), m_turns, policy, 1);
+	warmup.shutdown();
+
+	double reference = 0;
+	int max = Runtime.getRuntime().availableProcessors();
+	for (int threads = 1; threads <= max; threads = threads < max && threads * 2 > max ? max : threads * 2)
+	{
+	    ForkJoinPool pool = new ForkJoinPool(threads);
+	    long start = System.nanoTime();
+	    SimulationStats stats = new BatchSimulator(pool, m_persistence).run(m_scenario, m_games, m_turns, policy, 0);
+	    double seconds = (System.nanoTime() - start) / 1e9;
+	    pool.shutdown();
+
+	    double throughput = stats.getGames() / seconds;
+	    if (threads == 1)
+	    {
+		reference = throughput;
+	    }
+	    System.out.println(String.format(Locale.ROOT, "threads=%d games=%d time=%.2fs throughput=%.1f games/s speedup=%.2f", threads, stats.getGames(), seconds, throughput, throughput / reference));
+	}
+    }
+}
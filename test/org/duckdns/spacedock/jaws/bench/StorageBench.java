@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.bench;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.duckdns.spacedock.jaws.control.StorageProfile;
+
+/**
+ * banc des réglages SQLite : pour chaque profil de stockage, un écrivain
+ * insère des mouvements par transactions (d'un mouvement, puis d'un lot comme
+ * le journal des mouvements) pendant que des lecteurs chargent des
+ * mouvements au hasard. Affiche le débit d'écriture, le pire commit, le débit
+ * de lecture et le nombre d'ordres (lectures ou lots) refusés pour cause de
+ * verrou.
+ *
+ * Arguments (tous optionnels, un ou deux tirets) : --duration=secondes par
+ * mesure --batch=N --readers=N. Lancement : ant bench-storage
+ * -Dbench.args="..."
+ *
+ * @author ykonoclast
+ */
+public class StorageBench
+{
+
+    private int m_durationSec = 3;
+    private int m_batch = 256;
+    private int m_readers = 2;
+
+    public static void main(String[] args) throws Exception
+    {
+	StorageBench bench = new StorageBench();
+	bench.parseArgs(args);
+	bench.run();
+    }
+
+    private void parseArgs(String[] p_args)
+    {
+	for (String arg : p_args)
+	{
+	    String[] pair = arg.replaceFirst("^--?", "").split("=", 2);
+	    switch (pair[0])
+	    {
+		case "duration":
+		    m_durationSec = Integer.parseInt(pair[1]);
+		    break;
+		case "batch":
+		    m_batch = Integer.parseInt(pair[1]);
+		    break;
+		case "readers":
+		    m_readers = Integer.parseInt(pair[1]);
+		    break;
+		default:
+		    throw new IllegalArgumentException(arg);
+	    }
+	}
+    }
+
+    private void run() throws Exception
+    {
+	Class.forName("org.sqlite.JDBC");
+	List<StorageProfile> profiles = Arrays.asList(StorageProfile.SQLITE_DEFAULTS,
+		new StorageProfile(StorageProfile.JournalMode.WAL, StorageProfile.Synchronous.FULL, -2000, 0, 5000),
+		new StorageProfile(StorageProfile.JournalMode.WAL, StorageProfile.Synchronous.NORMAL, -2000, 0, 5000),
+		new StorageProfile(StorageProfile.JournalMode.WAL, StorageProfile.Synchronous.NORMAL, -16000, 268435456, 5000),
+		new StorageProfile(StorageProfile.JournalMode.WAL, StorageProfile.Synchronous.OFF, -16000, 268435456, 5000));
+	System.out.println(String.format(Locale.ROOT, "duration=%ds readers=%d", m_durationSec, m_readers));
+	for (StorageProfile profile : profiles)
+	{
+	    for (int batch : new int[]
+	    {
+		1, m_batch
+	    })
+	    {
+		measure(profile, batch);
+	    }
+	}
+    }
+
+    /**
+     * une mesure sur une base neuve
+     *
+     * @param p_profile
+     * @param p_batch mouvements par transaction
+     */
+    private void measure(StorageProfile p_profile, int p_batch) throws Exception
+    {
+	File database = File.createTempFile("jaws-bench", ".db");
+	String url = "jdbc:sqlite:" + database.getAbsolutePath();
+	try (Connection conn = open(url, p_profile);
+		Statement stmt = conn.createStatement())
+	{
+	    stmt.execute("CREATE TABLE moves (id integer,turn integer,impulse text,posL integer NOT NULL,posC integer NOT NULL,orientation integer NOT NULL,PRIMARY KEY(id, turn, impulse));");
+	}
+
+	long end = System.nanoTime() + m_durationSec * 1_000_000_000L;
+	AtomicLong written = new AtomicLong();
+	AtomicLong reads = new AtomicLong();
+	AtomicLong busy = new AtomicLong();
+	long[] worstCommit = new long[1];
+	List<Thread> threads = new ArrayList<>();
+	threads.add(new Thread(() -> write(url, p_profile, p_batch, end, written, worstCommit, busy), "bench-writer"));
+	for (int i = 0; i < m_readers; ++i)
+	{
+	    Random random = new Random(i);
+	    threads.add(new Thread(() -> read(url, p_profile, random, end, written, reads, busy), "bench-reader-" + i));
+	}
+	for (Thread thread : threads)
+	{
+	    thread.start();
+	}
+	for (Thread thread : threads)
+	{
+	    thread.join();
+	}
+	database.delete();
+	new File(database.getPath() + "-wal").delete();
+	new File(database.getPath() + "-shm").delete();
+
+	System.out.println(String.format(Locale.ROOT, "%-95s batch=%-4d writes=%9.0f moves/s commit max=%8.3fms reads=%9.0f/s busy=%d", p_profile, p_batch, written.get() / (double) m_durationSec, worstCommit[0] / 1e6, reads.get() / (double) m_durationSec, busy.get()));
+    }
+
+    private static Connection open(String p_url, StorageProfile p_profile) throws SQLException
+    {
+	Connection result = DriverManager.getConnection(p_url);
+	p_profile.apply(result);
+	return result;
+    }
+
+    /**
+     * écrivain : transactions de p_batch mouvements jusqu'à l'échéance, un
+     * lot refusé étant annulé puis retenté
+     */
+    private static void write(String p_url, StorageProfile p_profile, int p_batch, long p_end, AtomicLong p_written, long[] p_worstCommit, AtomicLong p_busy)
+    {
+	try (Connection conn = open(p_url, p_profile);
+		PreparedStatement stmt = conn.prepareStatement("INSERT OR REPLACE INTO moves (id, turn, impulse, posL, posC, orientation) VALUES (?,?,?,?,?,?);"))
+	{
+	    conn.setAutoCommit(false);
+	    long id = 0;
+	    while (System.nanoTime() < p_end)
+	    {
+		long start = System.nanoTime();
+		for (int i = 0; i < p_batch; ++i)
+		{
+		    stmt.setLong(1, id + i);
+		    stmt.setInt(2, 1);
+		    stmt.setString(3, "A");
+		    stmt.setInt(4, (int) (id + i) % 100);
+		    stmt.setInt(5, (int) (id + i) % 50);
+		    stmt.setInt(6, (int) (id + i) % 6);
+		    stmt.addBatch();
+		}
+		try
+		{
+		    stmt.executeBatch();
+		    conn.commit();
+		    id += p_batch;
+		    p_written.set(id);
+		}
+		catch (SQLException e)
+		{//base verrouillée par un lecteur
+		    stmt.clearBatch();
+		    conn.rollback();
+		    p_busy.incrementAndGet();
+		}
+		p_worstCommit[0] = Math.max(p_worstCommit[0], System.nanoTime() - start);
+	    }
+	}
+	catch (SQLException e)
+	{
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    /**
+     * lecteur : charge des mouvements déjà écrits, au hasard, jusqu'à
+     * l'échéance
+     */
+    private static void read(String p_url, StorageProfile p_profile, Random p_random, long p_end, AtomicLong p_written, AtomicLong p_reads, AtomicLong p_busy)
+    {
+	try (Connection conn = open(p_url, p_profile);
+		PreparedStatement stmt = conn.prepareStatement("SELECT posL, posC, orientation FROM moves WHERE id = ? AND turn = ? AND impulse = ?;"))
+	{
+	    while (System.nanoTime() < p_end)
+	    {
+		stmt.setLong(1, (long) (p_random.nextDouble() * Math.max(1, p_written.get())));
+		stmt.setInt(2, 1);
+		stmt.setString(3, "A");
+		try (ResultSet rs = stmt.executeQuery())
+		{
+		    rs.next();
+		    p_reads.incrementAndGet();
+		}
+		catch (SQLException e)
+		{//base verrouillée par l'écrivain
+		    p_busy.incrementAndGet();
+		}
+	    }
+	}
+	catch (SQLException e)
+	{
+	    throw new IllegalStateException(e);
+	}
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class BatchSimulatorIntegTest
+{
+
+    @AfterClass
+    public static void cleanUpAtTheEnd() throws URISyntaxException
+    {
+	File root = new File(SessionDao.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+	File fullPath = new File(root.getAbsoluteFile().getParent() + "/jaws-data.db");
+	fullPath.delete();
+    }
+
+    /**
+     * le résultat d'un lot ne dépend que de sa graine, pas du nombre de
+     * threads
+     */
+    @Test
+    public void determinismTest() throws Exception
+    {
+	ForkJoinPool single = new ForkJoinPool(1);
+	ForkJoinPool multi = new ForkJoinPool(4);
+	SimulationStats expected = new BatchSimulator(single, BatchSimulator.Persistence.NONE).run("scenar2", 40, 3, OrderPolicy.random(0.3), 42);
+	SimulationStats actual = new BatchSimulator(multi, BatchSimulator.Persistence.NONE).run("scenar2", 40, 3, OrderPolicy.random(0.3), 42);
+	single.shutdown();
+	multi.shutdown();
+
+	Assert.assertEquals(40, expected.getGames());
+	Assert.assertEquals(expected, actual);
+	Assert.assertTrue(actual.getTurns() > 0);
+	Assert.assertEquals(0, actual.getRejectedBatches());
+    }
+
+    /**
+     * stratégie tout droit : toutes les parties sont identiques, chacune
+     * jouant 14 impulsions (A à F plus la Power Phase, pour les deux joueurs)
+     * par tour
+     */
+    @Test
+    public void straightTest() throws Exception
+    {
+	SimulationStats stats = new BatchSimulator(ForkJoinPool.commonPool(), BatchSimulator.Persistence.MEMORY).run("scenar2", 10, 2, OrderPolicy.straight(), 0);
+
+	Assert.assertEquals(10, stats.getGames());
+	Assert.assertEquals(10 * 2 * 14, stats.getImpulses());
+	Assert.assertEquals(0, stats.getTurns());
+	Assert.assertEquals(0, stats.getMoves() % 10);
+	Assert.assertTrue(stats.getMoves() > 0);
+	//journal en mémoire : un événement par mouvement et par fin d'impulsion
+	Assert.assertEquals(stats.getMoves() + stats.getImpulses(), stats.getEvents());
+	Assert.assertTrue(stats.getMeanDisplacement(GameManager.Player.TALON) > 0);
+    }
+
+    /**
+     * stratégie scriptée refusée par le moteur : le lot est compté comme
+     * rejeté et la partie continue
+     */
+    @Test
+    public void rejectedPolicyTest() throws Exception
+    {
+	OrderPolicy twice = (report, ships, random) -> Arrays.asList(Order.move(report.mustMoveShips.get(0)), Order.move(report.mustMoveShips.get(0)));
+	SimulationStats stats = new BatchSimulator(ForkJoinPool.commonPool(), BatchSimulator.Persistence.NONE).run("scenar2", 3, 1, twice, 0);
+
+	Assert.assertEquals(3, stats.getGames());
+	Assert.assertEquals(0, stats.getMoves());
+	Assert.assertTrue(stats.getRejectedBatches() > 0);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class ConnectionPoolIntegTest
+{
+
+    private File database;
+
+    private ConnectionPool testee;
+
+    @Before
+    public void setUpForEach() throws IOException
+    {
+	database = File.createTempFile("jaws-pool", ".db");
+	testee = new ConnectionPool("jdbc:sqlite:" + database.getAbsolutePath(), 2, 50, StorageProfile.SQLITE_DEFAULTS);
+    }
+
+    @After
+    public void cleanUpForEach()
+    {
+	testee.close();
+	database.delete();
+    }
+
+    @Test
+    public void acquireTestNominal() throws SQLException
+    {
+	Connection first;
+	try (ConnectionPool.Lease lease = testee.acquire())
+	{
+	    first = lease.get();
+	    try (Statement stmt = first.createStatement())
+	    {
+		stmt.execute("CREATE TABLE t (v integer);");
+	    }
+	}
+	Assert.assertEquals(1, testee.getOpenCount());
+
+	//connexion rendue puis reprêtée telle quelle, toujours ouverte
+	try (ConnectionPool.Lease lease = testee.acquire())
+	{
+	    Assert.assertSame(first, lease.get());
+	    Assert.assertFalse(first.isClosed());
+
+	    //un second emprunt simultané ouvre une seconde connexion
+	    try (ConnectionPool.Lease other = testee.acquire())
+	    {
+		Assert.assertNotSame(first, other.get());
+		Assert.assertEquals(2, testee.getOpenCount());
+	    }
+	}
+
+	//transaction laissée ouverte : annulée au retour
+	try (ConnectionPool.Lease lease = testee.acquire())
+	{
+	    lease.get().setAutoCommit(false);
+	    try (Statement stmt = lease.get().createStatement())
+	    {
+		stmt.execute("INSERT INTO t VALUES (1);");
+	    }
+	}
+	try (ConnectionPool.Lease lease = testee.acquire();
+		Statement stmt = lease.get().createStatement();
+		ResultSet rs = stmt.executeQuery("SELECT count(*) FROM t;"))
+	{
+	    Assert.assertTrue(lease.get().getAutoCommit());
+	    Assert.assertTrue(rs.next());
+	    Assert.assertEquals(0, rs.getInt(1));
+	}
+
+	//ordre préparé gardé par la connexion d'un emprunt à l'autre
+	PreparedStatement insert;
+	try (ConnectionPool.Lease lease = testee.acquire())
+	{
+	    insert = lease.prepare("INSERT INTO t VALUES (?);");
+	    insert.setInt(1, 2);
+	    insert.executeUpdate();
+	}
+	try (ConnectionPool.Lease lease = testee.acquire())
+	{
+	    Assert.assertSame(insert, lease.prepare("INSERT INTO t VALUES (?);"));
+	    Assert.assertNotSame(insert, lease.prepare("DELETE FROM t WHERE v = ?;"));
+	}
+    }
+
+    @Test
+    public void acquireTestLimite() throws SQLException
+    {
+	//connexion morte rendue au pool : écartée puis remplacée
+	try (ConnectionPool.Lease lease = testee.acquire())
+	{
+	    lease.get().close();
+	}
+	Assert.assertEquals(0, testee.getOpenCount());
+	try (ConnectionPool.Lease lease = testee.acquire())
+	{
+	    Assert.assertTrue(lease.get().isValid(1));
+	}
+
+	//pool plein : l'attente échoue au bout du délai
+	try (ConnectionPool.Lease first = testee.acquire();
+		ConnectionPool.Lease second = testee.acquire())
+	{
+	    Assert.assertNotSame(first.get(), second.get());
+	    testee.acquire();
+	    Assert.fail();
+	}
+	catch (SQLTransientConnectionException e)
+	{
+	    Assert.assertEquals(2, testee.getOpenCount());
+	}
+    }
+
+    /**
+     * une connexion écartée libère une place aussitôt utilisable par un
+     * emprunteur qui attendait, sans attendre la fin du délai
+     */
+    @Test
+    public void acquireTestWaiter() throws Exception
+    {
+	ConnectionPool pool = new ConnectionPool("jdbc:sqlite:" + database.getAbsolutePath(), 1, 5000, StorageProfile.SQLITE_DEFAULTS);
+	try
+	{
+	    ConnectionPool.Lease dead = pool.acquire();
+	    dead.get().close();
+	    CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() ->
+	    {
+		try (ConnectionPool.Lease lease = pool.acquire())
+		{
+		    return lease.get().isValid(1);
+		}
+		catch (SQLException e)
+		{
+		    throw new IllegalStateException(e);
+		}
+	    });
+	    Thread.sleep(100);
+	    dead.close();//connexion morte : écartée au lieu d'être rendue
+	    Assert.assertTrue(waiter.get(1, TimeUnit.SECONDS));
+	}
+	finally
+	{
+	    pool.close();
+	}
+    }
+
+    @Test
+    public void closeTest() throws SQLException
+    {
+	ConnectionPool.Lease lease = testee.acquire();
+	Connection conn = lease.get();
+	try (ConnectionPool.Lease other = testee.acquire())
+	{
+	    Assert.assertNotSame(conn, other.get());
+	    Assert.assertEquals(2, testee.getOpenCount());
+	}
+	testee.close();
+	Assert.assertEquals(1, testee.getOpenCount());
+
+	//connexion encore prêtée à la fermeture : fermée à son retour
+	Assert.assertFalse(conn.isClosed());
+	lease.close();
+	Assert.assertTrue(conn.isClosed());
+	Assert.assertEquals(0, testee.getOpenCount());
+
+	try
+	{
+	    testee.acquire();
+	    Assert.fail();
+	}
+	catch (IllegalStateException e)
+	{
+	    Assert.assertTrue(e.getMessage().contains("le pool de connexions est fermé"));
+	}
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.duckdns.spacedock.jaws.model.Ship;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class GameRegistryIntegTest
+{
+
+    private final GameRegistry testee = GameRegistry.getInstance();
+
+    @After
+    public void cleanUpForEach() throws Exception
+    {
+	for (String id : new ArrayList<>(testee.getGameIds()))
+	{
+	    testee.deleteGame(id);
+	}
+    }
+
+    @AfterClass
+    public static void cleanUpAtTheEnd() throws URISyntaxException
+    {
+	File root = new File(SessionDao.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+	File fullPath = new File(root.getAbsoluteFile().getParent() + "/jaws-data.db");
+	fullPath.delete();
+    }
+
+    /**
+     * création, récupération et éviction d'une partie
+     */
+    @Test
+    public void lifecycleTest() throws Exception
+    {
+	Assert.assertNull(testee.getGame("partie1"));
+
+	GameSession game = testee.getOrCreateGame("partie1", "scenar2");
+	Assert.assertNotNull(game);
+	Assert.assertSame(game, testee.getGame("partie1"));
+	Assert.assertSame(game, testee.getOrCreateGame("partie1", "scenar2"));
+	Assert.assertEquals(1, testee.getGameCount());
+
+	//la partie est démarrée dès sa création
+	Assert.assertEquals(GameManager.Impulse.A.toString(), game.getImpulseReport().currentImpulse);
+
+	Assert.assertSame(game, testee.evictGame("partie1"));
+	Assert.assertNull(testee.getGame("partie1"));
+	Assert.assertEquals(0, testee.getGameCount());
+
+	//la partie évincée n'accepte plus de commande
+	try
+	{
+	    game.advanceImpulse().get();
+	    Assert.fail();
+	}
+	catch (ExecutionException e)
+	{
+	    Assert.assertTrue(e.getCause() instanceof GameSession.GameClosedException);
+	}
+    }
+
+    /**
+     * une partie évincée est reconstruite depuis son journal au prochain
+     * accès, une partie supprimée repart de zéro
+     */
+    @Test
+    public void restoreTest() throws Exception
+    {
+	GameSession game = testee.getOrCreateGame("partie1", "scenar2");
+	game.advanceImpulse().get();
+	game.advanceImpulse().get();
+	testee.evictGame("partie1");
+
+	GameSession restored = testee.getOrCreateGame("partie1", "scenar2");
+	Assert.assertNotSame(game, restored);
+	Assert.assertEquals(GameManager.Impulse.B.toString(), restored.getImpulseReport().currentImpulse);
+
+	testee.deleteGame("partie1");
+	Assert.assertNull(testee.getGame("partie1"));
+	Assert.assertEquals(GameManager.Impulse.A.toString(), testee.getOrCreateGame("partie1", "scenar2").getImpulseReport().currentImpulse);
+    }
+
+    /**
+     * deux parties ne partagent rien : avancer l'une ne change pas l'autre
+     */
+    @Test
+    public void isolationTest() throws Exception
+    {
+	GameSession game1 = testee.getOrCreateGame("partie1", "scenar2");
+	GameSession game2 = testee.getOrCreateGame("partie2", "scenar2");
+	Assert.assertNotSame(game1, game2);
+
+	game1.advanceImpulse().get();
+	game1.advanceImpulse().get();
+	Assert.assertEquals(GameManager.Impulse.B.toString(), game1.getImpulseReport().currentImpulse);
+	Assert.assertEquals(GameManager.Impulse.A.toString(), game2.getImpulseReport().currentImpulse);
+
+	//chaque partie a ses propres vaisseaux
+	Ship ship1 = game1.getAllShips().get(GameManager.Player.TALON).get(0);
+	Ship ship2 = game2.getAllShips().get(GameManager.Player.TALON).get(0);
+	Assert.assertNotSame(ship1, ship2);
+    }
+
+    /**
+     * de nombreux threads demandant la même partie obtiennent tous la même
+     * instance
+     */
+    @Test
+    public void concurrentCreationTest() throws Exception
+    {
+	ExecutorService pool = Executors.newFixedThreadPool(8);
+	List<Future<GameSession>> futures = new ArrayList<>();
+	Callable<GameSession> task = () -> testee.getOrCreateGame("partieconcurrente", "scenar2");
+	for (int i = 0; i < 32; ++i)
+	{
+	    futures.add(pool.submit(task));
+	}
+	GameSession expected = testee.getGame("partieconcurrente");
+	for (Future<GameSession> future : futures)
+	{
+	    GameSession actual = future.get();
+	    if (expected == null)
+	    {
+		expected = actual;
+	    }
+	    Assert.assertSame(expected, actual);
+	}
+	pool.shutdown();
+	Assert.assertEquals(1, testee.getGameCount());
+    }
+
+    /**
+     * des ordres envoyés à la même partie par de nombreux threads sont tous
+     * exécutés, un par un : aucun n'est perdu ni entrelacé avec un autre
+     */
+    @Test
+    public void serialCommandsTest() throws Exception
+    {
+	GameSession game = testee.getOrCreateGame("partieconcurrente", "scenar2");
+	long version = game.getStateVersion();
+
+	ExecutorService pool = Executors.newFixedThreadPool(8);
+	List<Future<GameManager.ImpulseReport>> futures = new ArrayList<>();
+	for (int i = 0; i < 98; ++i)
+	{
+	    futures.add(pool.submit(() -> game.advanceImpulse().get()));
+	}
+	for (Future<GameManager.ImpulseReport> future : futures)
+	{
+	    future.get();
+	}
+	pool.shutdown();
+
+	//98 demi-impulsions = 49 impulsions = 7 tours complets (A à F plus la Power Phase)
+	Assert.assertEquals(version + 98, game.getStateVersion());
+	Assert.assertEquals(GameManager.Impulse.A.toString(), game.getImpulseReport().currentImpulse);
+	Assert.assertEquals(8, game.getImpulseReport().currentTurn);
+	Assert.assertEquals(GameManager.Player.TALON.toString(), game.getImpulseReport().currentPlayer);
+    }
+
+    /**
+     * une commande en échec transmet son exception via le future, la file
+     * continue de fonctionner ensuite
+     */
+    @Test
+    public void failedCommandTest() throws Exception
+    {
+	GameSession game = testee.getOrCreateGame("partie1", "scenar2");
+	try
+	{
+	    game.submit((manager) ->
+	    {
+		throw new IllegalStateException("test");
+	    }).get();
+	    Assert.fail();
+	}
+	catch (ExecutionException e)
+	{
+	    Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+	}
+	Assert.assertNotNull(game.advanceImpulse().get());
+    }
+}
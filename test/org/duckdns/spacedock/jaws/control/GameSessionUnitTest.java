@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class GameSessionUnitTest
+{
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void cleanUpForEach()
+    {
+	executor.shutdownNow();
+    }
+
+    /**
+     * une erreur levée par une commande la fait échouer sans bloquer la file
+     * de la partie
+     */
+    @Test
+    public void submitTestErreur() throws Exception
+    {
+	GameSession testee = new GameSession(null, executor);//les commandes ci-dessous n'utilisent pas la partie
+	CompletableFuture<Integer> broken = testee.submit((game) ->
+	{
+	    throw new AssertionError("commande cassée");
+	});
+	try
+	{
+	    broken.get(5, TimeUnit.SECONDS);
+	    Assert.fail();
+	}
+	catch (ExecutionException e)
+	{
+	    Assert.assertEquals("commande cassée", e.getCause().getMessage());
+	}
+	Assert.assertEquals(42, (int) testee.submit((game) -> 42).get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * deux parties, même créées l'une après l'autre, n'ont jamais la même
+     * époque
+     */
+    @Test
+    public void epochTest()
+    {
+	GameSession first = new GameSession(null, executor);
+	GameSession second = new GameSession(null, executor);
+	Assert.assertNotEquals(first.getEpoch(), second.getEpoch());
+    }
+
+    /**
+     * une partie fermée exécute les commandes déjà en file mais refuse les
+     * suivantes, la fermeture n'aboutissant qu'une fois la file vidée
+     */
+    @Test
+    public void closeTest() throws Exception
+    {
+	GameSession testee = new GameSession(new GameManager("scenar2"), executor);
+	CountDownLatch release = new CountDownLatch(1);
+	CompletableFuture<Integer> blocking = testee.submit((game) ->
+	{
+	    release.await();
+	    return 1;
+	});
+	CompletableFuture<Integer> queued = testee.submit((game) -> 2);
+	CompletableFuture<Void> closed = testee.close();
+	CompletableFuture<Integer> refused = testee.submit((game) -> 3);
+	Assert.assertTrue(testee.isClosed());
+	Assert.assertFalse(closed.isDone());
+	try
+	{
+	    refused.get(5, TimeUnit.SECONDS);
+	    Assert.fail();
+	}
+	catch (ExecutionException e)
+	{
+	    Assert.assertTrue(e.getCause() instanceof GameSession.GameClosedException);
+	}
+
+	release.countDown();
+	closed.get(5, TimeUnit.SECONDS);
+	Assert.assertEquals(1, (int) blocking.get(5, TimeUnit.SECONDS));
+	Assert.assertEquals(2, (int) queued.get(5, TimeUnit.SECONDS));
+    }
+}
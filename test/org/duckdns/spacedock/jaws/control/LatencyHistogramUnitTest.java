@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class LatencyHistogramUnitTest
+{
+
+    @Test
+    public void bucketIndexTest()
+    {
+	//les bornes supérieures sont incluses
+	Assert.assertEquals(0, LatencyHistogram.bucketIndex(0));
+	Assert.assertEquals(0, LatencyHistogram.bucketIndex(1000));
+	Assert.assertEquals(1, LatencyHistogram.bucketIndex(1001));
+	Assert.assertEquals(1, LatencyHistogram.bucketIndex(2000));
+	Assert.assertEquals(2, LatencyHistogram.bucketIndex(2001));
+	Assert.assertEquals(10, LatencyHistogram.bucketIndex(1_024_000));
+	Assert.assertEquals(11, LatencyHistogram.bucketIndex(1_024_001));
+
+	//au delà du dernier seau borné : seau infini
+	Assert.assertEquals(LatencyHistogram.BUCKETS, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void recordTest()
+    {
+	LatencyHistogram histogram = new LatencyHistogram("test");
+	histogram.record(500);
+	histogram.record(1500);
+	histogram.record(1500);
+	histogram.record(-5);//horloge capricieuse : compté comme nul
+	histogram.recordError();
+
+	long[] buckets = histogram.snapshotBuckets();
+	Assert.assertEquals(2, buckets[0]);
+	Assert.assertEquals(2, buckets[1]);
+	Assert.assertEquals(3500, histogram.getSumNanos());
+	Assert.assertEquals(1, histogram.getErrors());
+    }
+
+    @Test
+    public void writeTextTest() throws IOException
+    {
+	long before = Metrics.ENGINE_ADVANCE.snapshotBuckets()[0];
+	Metrics.ENGINE_ADVANCE.record(800);
+
+	StringWriter out = new StringWriter();
+	Metrics.writeText(out);
+	String text = out.toString();
+
+	Assert.assertTrue(text.contains("# TYPE jaws_operation_seconds histogram\n"));
+	Assert.assertTrue(text.contains("jaws_operation_seconds_bucket{op=\"engine_advance\",le=\"0.000001\"} " + (before + 1) + "\n"));
+	Assert.assertTrue(text.contains("jaws_operation_seconds_bucket{op=\"engine_advance\",le=\"+Inf\"}"));
+	Assert.assertTrue(text.contains("jaws_operation_errors_total{op=\"db_execute\"}"));
+    }
+}
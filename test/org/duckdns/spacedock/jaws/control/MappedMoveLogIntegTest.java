@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.PackedHex;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class MappedMoveLogIntegTest
+{
+
+    private File file;
+
+    private File archive;
+
+    private MappedMoveLog testee;
+
+    @Before
+    public void setUpForEach() throws IOException
+    {
+	file = File.createTempFile("jaws-moves", ".log");
+	archive = new File(file.getPath() + ".1");
+	testee = new MappedMoveLog(file, 4);//petits segments : plusieurs projections dès quelques lots
+    }
+
+    @After
+    public void cleanUpForEach()
+    {
+	testee.close();
+	file.delete();
+	archive.delete();
+    }
+
+    /**
+     *
+     * @param p_first identifiant du premier vaisseau
+     * @param p_count nombre de vaisseaux
+     * @return un dépôt de p_count vaisseaux consécutifs, le vaisseau i en
+     * (i, -i)
+     */
+    private static MoveJournal.Entry entry(int p_first, int p_count, int p_turn, GameManager.Impulse p_impulse)
+    {
+	int[] ids = new int[p_count];
+	long[] positions = new long[p_count];
+	for (int i = 0; i < p_count; ++i)
+	{
+	    ids[i] = p_first + i;
+	    positions[i] = PackedHex.pack(p_first + i, -p_first - i, MapObject.Orientation.NW);
+	}
+	return new MoveJournal.Entry(new MoveJournal.Owner(), ids, positions, p_turn, p_impulse, false);
+    }
+
+    private List<Integer> replayIds()
+    {
+	List<Integer> result = new ArrayList<>();
+	testee.replay((run, id, turn, impulse, position) -> result.add(id));
+	return result;
+    }
+
+    @Test
+    public void writeTestNominal() throws SQLException, IOException
+    {
+	testee.write(Arrays.asList(entry(1, 3, 2, GameManager.Impulse.A), entry(4, 3, 2, GameManager.Impulse.POWER)));
+	testee.write(Collections.singletonList(entry(1, 1, 2, GameManager.Impulse.A)));
+	Assert.assertEquals(7, testee.getRecordCount());
+	Assert.assertEquals(2 * MappedMoveLog.RECORD_SIZE * 4, file.length());//deux segments de 4, projetés au besoin
+
+	Assert.assertEquals(new MapObject.HexCoordinates(5, -5, MapObject.Orientation.NW), testee.load(5, 2, GameManager.Impulse.POWER));
+	Assert.assertNull(testee.load(5, 2, GameManager.Impulse.A));
+	Assert.assertNull(testee.load(5, 3, GameManager.Impulse.POWER));
+
+	List<String> replayed = new ArrayList<>();
+	testee.replay((run, id, turn, impulse, position) -> replayed.add(run + "/" + id + "/" + turn + "/" + impulse.name() + "/" + PackedHex.toCoordinates(position)));
+	Assert.assertEquals(7, replayed.size());
+	Assert.assertEquals("1/1/2/A/" + new MapObject.HexCoordinates(1, -1, MapObject.Orientation.NW), replayed.get(0));
+	Assert.assertEquals("1/6/2/POWER/" + new MapObject.HexCoordinates(6, -6, MapObject.Orientation.NW), replayed.get(5));
+
+	//réouverture : tout est relu, les écritures suivantes appartenant à une nouvelle exécution
+	testee.close();
+	testee = new MappedMoveLog(file, 4);
+	Assert.assertEquals(2, testee.getRun());
+	Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 1), replayIds());
+	Assert.assertNull(testee.load(5, 2, GameManager.Impulse.POWER));
+	testee.write(Collections.singletonList(entry(9, 1, 3, GameManager.Impulse.B)));
+	Assert.assertEquals(new MapObject.HexCoordinates(9, -9, MapObject.Orientation.NW), testee.load(9, 3, GameManager.Impulse.B));
+    }
+
+    /**
+     * un lot interrompu (enregistrements sans fin de lot) est effacé à
+     * l'ouverture
+     */
+    @Test
+    public void interruptedBatchTest() throws SQLException, IOException
+    {
+	testee.write(Collections.singletonList(entry(1, 2, 1, GameManager.Impulse.A)));
+	testee.write(Collections.singletonList(entry(3, 2, 1, GameManager.Impulse.A)));
+	testee.close();
+
+	//on retire le drapeau de fin du second lot, comme si le processus s'était arrêté avant de le poser
+	try (RandomAccessFile raw = new RandomAccessFile(file, "rw"))
+	{
+	    raw.seek(3 * MappedMoveLog.RECORD_SIZE);
+	    int tag = raw.readInt();
+	    raw.seek(3 * MappedMoveLog.RECORD_SIZE);
+	    raw.writeInt(tag & ~0x8000);
+	}
+	testee = new MappedMoveLog(file, 4);
+	Assert.assertEquals(2, testee.getRecordCount());
+	Assert.assertEquals(Arrays.asList(1, 2), replayIds());
+
+	//un lot plus court écrit à la place n'est pas suivi des restes de l'ancien
+	testee.write(Collections.singletonList(entry(7, 1, 1, GameManager.Impulse.B)));
+	testee.close();
+	testee = new MappedMoveLog(file, 4);
+	Assert.assertEquals(Arrays.asList(1, 2, 7), replayIds());
+    }
+
+    @Test
+    public void rotateTest() throws SQLException, IOException
+    {
+	testee.write(Collections.singletonList(entry(1, 3, 1, GameManager.Impulse.A)));
+	testee.rotate(archive);
+	Assert.assertEquals(0, testee.getRecordCount());
+	testee.write(Collections.singletonList(entry(10, 1, 2, GameManager.Impulse.A)));
+	Assert.assertEquals(Collections.singletonList(10), replayIds());
+
+	try (MappedMoveLog archived = new MappedMoveLog(archive, 4))
+	{
+	    Assert.assertEquals(3, archived.getRecordCount());
+	}
+
+	testee.truncate();
+	Assert.assertEquals(0, testee.getRecordCount());
+	Assert.assertNull(testee.load(10, 2, GameManager.Impulse.A));
+    }
+
+    @Test
+    public void closeTest() throws SQLException
+    {
+	testee.write(Collections.singletonList(entry(1, 1, 1, GameManager.Impulse.A)));
+	testee.close();
+	Assert.assertEquals(Collections.singletonList(1), replayIds());//lecture toujours possible
+	try
+	{
+	    testee.write(Collections.singletonList(entry(2, 1, 1, GameManager.Impulse.A)));
+	    Assert.fail();
+	}
+	catch (IllegalStateException e)
+	{
+	    Assert.assertTrue(e.getMessage().contains("le journal binaire des mouvements est fermé"));
+	}
+    }
+}
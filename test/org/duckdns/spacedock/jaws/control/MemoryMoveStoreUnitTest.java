@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.PackedHex;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class MemoryMoveStoreUnitTest
+{
+
+    private static MoveJournal.Entry entry(int p_id, int p_turn, GameManager.Impulse p_impulse, MapObject.HexCoordinates p_coord)
+    {
+	return new MoveJournal.Entry(new MoveJournal.Owner(), new int[]
+	{
+	    p_id
+	}, new long[]
+	{
+	    PackedHex.pack(p_coord)
+	}, p_turn, p_impulse, false);
+    }
+
+    @Test
+    public void writeTestNominal()
+    {
+	MemoryMoveStore testee = new MemoryMoveStore();
+	MapObject.HexCoordinates first = new MapObject.HexCoordinates(1, 2, MapObject.Orientation.E);
+	MapObject.HexCoordinates second = new MapObject.HexCoordinates(1, 3, MapObject.Orientation.E);
+	MapObject.HexCoordinates other = new MapObject.HexCoordinates(-7, 0, MapObject.Orientation.SW);
+	testee.write(Arrays.asList(entry(3, 12, GameManager.Impulse.F, first), entry(Integer.MAX_VALUE, 0xFFFFFF, GameManager.Impulse.POWER, other)));
+	testee.write(Arrays.asList(entry(3, 12, GameManager.Impulse.F, second)));
+
+	Assert.assertEquals(2, testee.size());
+	Assert.assertEquals(second, testee.load(3, 12, GameManager.Impulse.F));
+	Assert.assertEquals(other, testee.load(Integer.MAX_VALUE, 0xFFFFFF, GameManager.Impulse.POWER));
+	Assert.assertNull(testee.load(3, 12, GameManager.Impulse.E));
+
+	List<String> replayed = new ArrayList<>();
+	testee.replay((run, id, turn, impulse, position) -> replayed.add(run + "/" + id + "/" + turn + "/" + impulse.name() + "/" + PackedHex.toCoordinates(position)));
+	Assert.assertEquals(Arrays.asList(MemoryMoveStore.RUN + "/" + Integer.MAX_VALUE + "/" + 0xFFFFFF + "/POWER/" + other, MemoryMoveStore.RUN + "/3/12/F/" + second), replayed);
+
+	testee.close();
+	Assert.assertEquals(0, testee.size());
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class MoveJournalUnitTest
+{
+
+    /**
+     * identifiants écrits, dans l'ordre
+     */
+    private final List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * taille en mouvements de chaque lot écrit
+     */
+    private final List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+
+    private final MoveJournal.Owner owner = new MoveJournal.Owner();
+
+    private MoveJournal testee;
+
+    @After
+    public void cleanUpForEach()
+    {
+	if (testee != null)
+	{
+	    testee.close();
+	}
+    }
+
+    /**
+     * destination factice notant ce qui est écrit
+     *
+     * @param p_batch
+     */
+    private void record(List<MoveJournal.Entry> p_batch)
+    {
+	int moves = 0;
+	for (MoveJournal.Entry entry : p_batch)
+	{
+	    for (int id : entry.ids)
+	    {
+		written.add(id);
+	    }
+	    moves += entry.size();
+	}
+	batches.add(moves);
+    }
+
+    private void append(int p_id) throws SQLException
+    {
+	append(owner, p_id);
+    }
+
+    private void append(MoveJournal.Owner p_owner, int p_id) throws SQLException
+    {
+	testee.append(p_owner, new int[]
+	{
+	    p_id
+	}, new long[]
+	{
+	    0L
+	}, 1, GameManager.Impulse.A);
+    }
+
+    @Test
+    public void flushTestNominal() throws SQLException
+    {
+	testee = new MoveJournal(this::record, MoveJournal.Durability.IMPULSE, 1, 100, 4);
+	for (int i = 0; i < 10; ++i)
+	{
+	    append(i);
+	}
+	testee.append(owner, new int[]
+	{
+	    10, 11
+	}, new long[]
+	{
+	    0L, 0L
+	}, 1, GameManager.Impulse.B);
+	testee.flush(owner);
+
+	//tout est écrit dans l'ordre de dépôt, par lots bornés ne coupant pas un dépôt
+	Assert.assertEquals(12, written.size());
+	for (int i = 0; i < 12; ++i)
+	{
+	    Assert.assertEquals(i, (int) written.get(i));
+	}
+	for (int size : batches)
+	{
+	    Assert.assertTrue(size <= 4);
+	}
+	Assert.assertEquals(0, testee.getPending());
+    }
+
+    @Test
+    public void moveDurabilityTest() throws SQLException
+    {
+	testee = new MoveJournal(this::record, MoveJournal.Durability.MOVE, 1, 100, 100);
+	append(1);
+	Assert.assertEquals(Collections.singletonList(1), written);
+	append(2);
+	Assert.assertEquals(2, written.size());
+    }
+
+    /**
+     * les événements de plusieurs parties sont écrits dans l'ordre de dépôt,
+     * au plus tard à la vidange
+     */
+    @Test
+    public void appendEventsTest() throws SQLException
+    {
+	List<String> events = Collections.synchronizedList(new ArrayList<>());
+	testee = new MoveJournal((batch) ->
+	{
+	    for (MoveJournal.Entry entry : batch)
+	    {
+		for (GameEvent event : entry.events)
+		{
+		    events.add(entry.gameId + event.seq);
+		}
+	    }
+	}, MoveJournal.Durability.IMPULSE, 1, 100, 100);
+	testee.appendEvents(owner, "a", Arrays.asList(new GameEvent(1, 1, GameManager.Impulse.A, GameEvent.Type.MOVE, 0, null), new GameEvent(2, 1, GameManager.Impulse.A, GameEvent.Type.ADVANCE, -1, null)));
+	testee.appendEvents(new MoveJournal.Owner(), "b", Collections.singletonList(new GameEvent(1, 1, GameManager.Impulse.A, GameEvent.Type.MOVE, 0, null)));
+	Assert.assertEquals(3, testee.getPending());
+	testee.flush(owner);
+	Assert.assertEquals(Arrays.asList("a1", "a2", "b1"), events);
+	Assert.assertEquals(0, testee.getPending());
+    }
+
+    @Test
+    public void windowDurabilityTest() throws SQLException, InterruptedException
+    {
+	testee = new MoveJournal(this::record, MoveJournal.Durability.WINDOW, 5, 100, 100);
+	append(1);
+	long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+	while (written.isEmpty() && System.nanoTime() < deadline)
+	{
+	    Thread.sleep(1);
+	}
+	Assert.assertEquals(Collections.singletonList(1), written);
+    }
+
+    /**
+     * une file pleine bloque les dépôts jusqu'à ce que l'écriture la vide
+     */
+    @Test
+    public void backpressureTest() throws Exception
+    {
+	CountDownLatch release = new CountDownLatch(1);
+	testee = new MoveJournal((batch) ->
+	{
+	    try
+	    {
+		release.await();
+	    }
+	    catch (InterruptedException e)
+	    {
+		Thread.currentThread().interrupt();
+	    }
+	    record(batch);
+	}, MoveJournal.Durability.IMPULSE, 1, 3, 1);
+	for (int i = 0; i < 3; ++i)
+	{
+	    append(i);
+	}
+	CompletableFuture<Void> blocked = CompletableFuture.runAsync(() ->
+	{
+	    try
+	    {
+		append(3);
+	    }
+	    catch (SQLException e)
+	    {
+		throw new IllegalStateException(e);
+	    }
+	});
+	Thread.sleep(100);
+	Assert.assertFalse(blocked.isDone());
+	Assert.assertEquals(3, testee.getPending());
+
+	release.countDown();
+	blocked.get(5, TimeUnit.SECONDS);
+	testee.flush(owner);
+	Assert.assertEquals(4, written.size());
+    }
+
+    /**
+     * un lot en échec est signalé une fois puis le journal repart
+     */
+    @Test
+    public void failureTest() throws SQLException
+    {
+	boolean[] fail =
+	{
+	    true
+	};
+	testee = new MoveJournal((batch) ->
+	{
+	    if (fail[0])
+	    {
+		throw new SQLException("disque plein");
+	    }
+	    record(batch);
+	}, MoveJournal.Durability.IMPULSE, 1, 100, 100);
+	append(1);
+	try
+	{
+	    testee.flush(owner);
+	    Assert.fail();
+	}
+	catch (SQLException e)
+	{
+	    Assert.assertEquals("disque plein", e.getMessage());
+	}
+	Assert.assertEquals(0, testee.getPending());
+
+	fail[0] = false;
+	append(2);
+	testee.flush(owner);
+	Assert.assertEquals(Collections.singletonList(2), written);
+    }
+
+    /**
+     * un dépôt fautif n'emporte pas ceux des autres parties écrits dans le
+     * même lot, et son échec n'est signalé qu'à sa partie
+     */
+    @Test
+    public void failureTestIsolation() throws SQLException
+    {
+	MoveJournal.Owner other = new MoveJournal.Owner();
+	testee = new MoveJournal((batch) ->
+	{
+	    for (MoveJournal.Entry entry : batch)
+	    {
+		if (entry.size() > 0 && entry.ids[0] == 666)
+		{
+		    throw new SQLException("vaisseau refusé");
+		}
+	    }
+	    record(batch);
+	}, MoveJournal.Durability.IMPULSE, 1, 100, 100);
+	append(1);
+	append(other, 666);
+	append(2);
+	testee.flush(owner);
+	Assert.assertEquals(Arrays.asList(1, 2), written);
+
+	append(3);//l'échec de l'autre partie ne concerne pas celle-ci
+	testee.flush(owner);
+	try
+	{
+	    testee.flush(other);
+	    Assert.fail();
+	}
+	catch (SQLException e)
+	{
+	    Assert.assertEquals("vaisseau refusé", e.getMessage());
+	}
+	testee.flush(other);//signalé une seule fois
+	Assert.assertEquals(Arrays.asList(1, 2, 3), written);
+	Assert.assertEquals(0, testee.getPending());
+    }
+
+    /**
+     * un lot en échec n'empêche pas le dépôt suivant de la même partie :
+     * celui-ci est écrit, l'échec restant à relever par la partie
+     */
+    @Test
+    public void failureTestNextMove() throws SQLException
+    {
+	MoveJournal.Owner other = new MoveJournal.Owner();
+	testee = new MoveJournal((batch) ->
+	{
+	    for (MoveJournal.Entry entry : batch)
+	    {
+		if (entry.size() > 0 && entry.ids[0] == 666)
+		{
+		    throw new SQLException("vaisseau refusé");
+		}
+	    }
+	    record(batch);
+	}, MoveJournal.Durability.IMPULSE, 1, 100, 100);
+	append(666);
+	testee.flush(other);//le lot fautif est passé
+
+	append(1);//n'échoue pas et n'est pas perdu
+	testee.flush(other);
+	Assert.assertEquals(Collections.singletonList(1), written);
+	try
+	{
+	    owner.throwFailure();
+	    Assert.fail();
+	}
+	catch (SQLException e)
+	{
+	    Assert.assertEquals("vaisseau refusé", e.getMessage());
+	}
+	testee.flush(owner);//signalé une seule fois
+	Assert.assertEquals(0, testee.getPending());
+    }
+
+    /**
+     * une exception imprévue de la destination est signalée comme une erreur
+     * d'écriture sans arrêter l'écrivain
+     */
+    @Test
+    public void failureTestRuntime() throws SQLException
+    {
+	boolean[] fail =
+	{
+	    true
+	};
+	testee = new MoveJournal((batch) ->
+	{
+	    if (fail[0])
+	    {
+		throw new IllegalStateException("destination fermée");
+	    }
+	    record(batch);
+	}, MoveJournal.Durability.MOVE, 1, 100, 100);
+	try
+	{
+	    append(1);
+	    Assert.fail();
+	}
+	catch (SQLException e)
+	{
+	    Assert.assertEquals("destination fermée", e.getMessage());
+	}
+
+	fail[0] = false;
+	append(2);
+	Assert.assertEquals(Collections.singletonList(2), written);
+    }
+
+    /**
+     * un écrivain arrêté fait échouer les dépôts qui l'attendent au lieu de
+     * les bloquer
+     */
+    @Test
+    public void stoppedWriterTest() throws SQLException
+    {
+	testee = new MoveJournal((batch) ->
+	{
+	    throw new OutOfMemoryError("simulée");
+	}, MoveJournal.Durability.MOVE, 1, 100, 100);
+	try
+	{
+	    append(1);
+	    Assert.fail();
+	}
+	catch (SQLException e)
+	{
+	    Assert.assertTrue(e.getMessage().contains("l'écrivain du journal des mouvements est arrêté"));
+	}
+	try
+	{
+	    append(2);
+	    Assert.fail();
+	}
+	catch (IllegalStateException e)
+	{
+	    Assert.assertTrue(e.getMessage().contains("l'écrivain du journal des mouvements est arrêté"));
+	}
+    }
+
+    @Test
+    public void closeTest() throws SQLException
+    {
+	testee = new MoveJournal(this::record, MoveJournal.Durability.IMPULSE, 1, 100, 100);
+	append(1);
+	testee.close();
+	Assert.assertEquals(Collections.singletonList(1), written);
+	try
+	{
+	    append(2);
+	    Assert.fail();
+	}
+	catch (IllegalStateException e)
+	{
+	    Assert.assertTrue(e.getMessage().contains("le journal des mouvements est fermé"));
+	}
+	testee = null;
+    }
+
+    @Test
+    public void constructorTestErreur()
+    {
+	try
+	{
+	    testee = new MoveJournal(this::record, MoveJournal.Durability.IMPULSE, 1, 0, 100);
+	    Assert.fail();
+	}
+	catch (IllegalArgumentException e)
+	{
+	    Assert.assertEquals("paramétre aberrant:paramètres du journal des mouvements invalides: IMPULSE window=1 capacity=0 batch=100", e.getMessage());
+	}
+    }
+}
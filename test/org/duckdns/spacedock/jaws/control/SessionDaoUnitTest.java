@@ -58,6 +58,13 @@ public class SessionDaoUnitTest
 	assertEquals(terranShipsActual, terranShipsExpected);
 	//assertTrue(talonShipsActual.equals(talonShipsExpected));
 	assertEquals(talonShipsActual, talonShipsExpected);
+
+	//même scénario rangé dans des FleetStore : vaisseaux identiques
+	talonShipsActual.clear();
+	terranShipsActual.clear();
+	testee.loadScenario("scenar2", talonShipsActual, terranShipsActual, true);
+	assertEquals(terranShipsExpected, terranShipsActual);
+	assertEquals(talonShipsExpected, talonShipsActual);
     }
 
     /**
@@ -118,4 +125,44 @@ public class SessionDaoUnitTest
 
     }
 
+    /**
+     * les masques compilés doivent refléter exactement les listes lues
+     */
+    @Test
+    public void getCurveMaskTestNominal()
+    {
+	for (GameManager.Impulse impulse : GameManager.Impulse.values())
+	{
+	    long mask = testee.getCurveMask(impulse);
+	    for (int value = -1; value <= Long.SIZE; ++value)
+	    {
+		Assert.assertEquals(testee.getCurveByImpulse(impulse).contains(value), SessionDao.isInCurveMask(mask, value));
+	    }
+	}
+	Assert.assertEquals(0b1110000L, testee.getCurveMask(GameManager.Impulse.A));
+	Assert.assertEquals(0L, testee.getCurveMask(GameManager.Impulse.POWER));
+    }
+
+    @Test
+    public void storeMoveTest() throws FileNotFoundException, SQLException
+    {
+	MoveJournal.Owner owner = new MoveJournal.Owner();
+	testee.storeMove(owner, 900001, 3, GameManager.Impulse.B, new MapObject.HexCoordinates(-4, 12, MapObject.Orientation.SW));
+	testee.flush(owner);//écriture différée
+	Assert.assertEquals(new MapObject.HexCoordinates(-4, 12, MapObject.Orientation.SW), testee.loadMove(900001, 3, GameManager.Impulse.B));
+	Assert.assertNull(testee.loadMove(900001, 3, GameManager.Impulse.C));
+
+	testee.storeMove(owner, 900001, 3, GameManager.Impulse.C, new MapObject.HexCoordinates(-5, 12, MapObject.Orientation.NE));
+	testee.flush(owner);
+	Assert.assertEquals(new MapObject.HexCoordinates(-4, 12, MapObject.Orientation.SW), testee.loadMove(900001, 3, GameManager.Impulse.B));
+	Assert.assertEquals(new MapObject.HexCoordinates(-5, 12, MapObject.Orientation.NE), testee.loadMove(900001, 3, GameManager.Impulse.C));
+
+	Ship surprise = new Ship("Talon FF", "Surprise", new MapObject.HexCoordinates(10, 11, MapObject.Orientation.NE));
+	Ship hunter = new Ship("Talon DD", "Hunter", new MapObject.HexCoordinates(0, -3, MapObject.Orientation.W));
+	testee.storeMoves(owner, Arrays.asList(surprise, hunter), 4, GameManager.Impulse.POWER);
+	testee.flush(owner);
+	Assert.assertEquals(surprise.getCoordinates(), testee.loadMove(surprise.getId(), 4, GameManager.Impulse.POWER));
+	Assert.assertEquals(hunter.getCoordinates(), testee.loadMove(hunter.getId(), 4, GameManager.Impulse.POWER));
+    }
+
 }
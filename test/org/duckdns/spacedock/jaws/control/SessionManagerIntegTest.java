@@ -20,6 +20,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.net.URISyntaxException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -59,7 +61,7 @@ public class SessionManagerIntegTest
      * advanceInit : toutes sont très liées
      */
     @Test
-    public void initTestNominal()
+    public void initTestNominal() throws SQLException
     {
 	//commencement de la partie
 	GameManager.ImpulseReport report = testee.startGame();
@@ -233,7 +235,7 @@ public class SessionManagerIntegTest
      * cas particuliers où le système doit tolérer l'erreur
      */
     @Test
-    public void initTestLimite()
+    public void initTestLimite() throws SQLException
     {
 	//advanceImpulse alors que le jeu n'est pas commencé : même effet que démarrer la partie.
 	GameManager.ImpulseReport report = testee.advanceImpulse();
@@ -275,6 +277,8 @@ public class SessionManagerIntegTest
 	MapObject.HexCoordinates coordTest = shipTest.getCoordinates();
 	MapObject.HexCoordinates coordExpected = new MapObject.HexCoordinates(9, 11, MapObject.Orientation.NE);
 	Assert.assertEquals(coordExpected, coordTest);
+	Assert.assertSame(shipTest, testee.getSpatialIndex().getObjectsAt(9, 11).get(0));
+	Assert.assertFalse(testee.getSpatialIndex().isOccupied(10, 11));
 	//Surprise a déjà bougé, on ne peut plus la bouger
 	Assert.assertFalse(report.mustMoveShips.contains(shipTestId));
 	testee.moveShipStraight(shipTestId);
@@ -309,4 +313,310 @@ public class SessionManagerIntegTest
 	coordTest = shipTest.getCoordinates();
 	Assert.assertEquals(coordExpected, coordTest);
     }
+
+    /**
+     * un rapport déjà publié ne change plus, quoi qu'il arrive à la partie
+     */
+    @Test
+    public void reportSnapshotTest() throws SQLException
+    {
+	testee.startGame();
+	testee.advanceImpulse();
+	GameManager.ImpulseReport before = testee.advanceImpulse();
+	Assert.assertSame(before, testee.getImpulseReport());
+
+	//premier tour de l'impulsion B : les trois vaisseaux Talon doivent bouger
+	int movedId = before.mustMoveShips.get(0);
+	GameManager.ImpulseReport after = testee.moveShipStraight(movedId);
+	Assert.assertEquals(3, before.mustMoveShips.size());
+	Assert.assertTrue(before.mustMoveShips.contains(movedId));
+	Assert.assertEquals(2, after.mustMoveShips.size());
+	Assert.assertFalse(after.mustMoveShips.contains(movedId));
+	Assert.assertSame(after, testee.getImpulseReport());
+
+	//ordre ignoré : le rapport publié est renvoyé tel quel
+	Assert.assertSame(after, testee.moveShipStraight(movedId));
+
+	try
+	{
+	    before.mustMoveShips.clear();
+	    Assert.fail();
+	}
+	catch (UnsupportedOperationException e)
+	{
+	    Assert.assertEquals(3, before.mustMoveShips.size());
+	}
+    }
+
+    /**
+     * ordres visant des identifiants hors de la partie : ignorés
+     */
+    @Test
+    public void unknownShipTest() throws SQLException
+    {
+	testee.startGame();
+	testee.advanceImpulse();
+	testee.advanceImpulse();
+
+	//premier tour de l'impulsion B : les trois vaisseaux Talon doivent bouger
+	int maxId = Integer.MIN_VALUE;
+	for (Ship ship : testee.getAllShips().get(Player.TERRAN))
+	{
+	    maxId = Math.max(maxId, ship.getId());
+	}
+	Assert.assertEquals(3, testee.moveShipStraight(-1).mustMoveShips.size());
+	Assert.assertEquals(3, testee.moveShipStraight(maxId + 1).mustMoveShips.size());
+	Assert.assertEquals(3, testee.turnShip(Integer.MIN_VALUE, MapObject.Orientation.NE).mustMoveShips.size());
+	Assert.assertEquals(3, testee.moveShipStraight(Integer.MAX_VALUE).mustMoveShips.size());
+    }
+
+    /**
+     * accès direct aux vaisseaux par identifiant
+     */
+    @Test
+    public void getShipTest()
+    {
+	for (List<Ship> fleet : testee.getAllShips().values())
+	{
+	    for (Ship ship : fleet)
+	    {
+		Assert.assertSame(ship, testee.getShip(ship.getId()));
+	    }
+	}
+	Assert.assertNull(testee.getShip(-1));
+	Assert.assertNull(testee.getShip(Integer.MAX_VALUE));
+    }
+
+    /**
+     * un observateur défaillant n'interrompt pas la commande et ne prive pas
+     * les suivants des notifications
+     */
+    @Test
+    public void listenerTestErreur() throws SQLException
+    {
+	List<Integer> moved = new ArrayList<>();
+	List<GameManager.ImpulseReport> reports = new ArrayList<>();
+	testee.addGameListener(new GameListener()
+	{
+	    @Override
+	    public void impulseChanged(GameManager.ImpulseReport p_report)
+	    {
+		throw new IllegalStateException("observateur cassé");
+	    }
+
+	    @Override
+	    public void shipMoved(int p_shipId, MapObject.HexCoordinates p_coordinates)
+	    {
+		throw new IllegalStateException("observateur cassé");
+	    }
+	});
+	testee.addGameListener(new GameListener()
+	{
+	    @Override
+	    public void impulseChanged(GameManager.ImpulseReport p_report)
+	    {
+		reports.add(p_report);
+	    }
+
+	    @Override
+	    public void shipMoved(int p_shipId, MapObject.HexCoordinates p_coordinates)
+	    {
+		moved.add(p_shipId);
+	    }
+	});
+	testee.startGame();
+	testee.advanceImpulse();
+	GameManager.ImpulseReport report = testee.advanceImpulse();
+	int shipId = report.mustMoveShips.get(0);
+
+	report = testee.moveShipStraight(shipId);
+	Assert.assertEquals(Arrays.asList(shipId), moved);
+	Assert.assertSame(report, reports.get(reports.size() - 1));
+	Assert.assertFalse(report.mustMoveShips.contains(shipId));
+    }
+
+    /**
+     * ordres groupés : tout ou rien
+     */
+    @Test
+    public void batchTest() throws SQLException
+    {
+	testee.startGame();
+	testee.advanceImpulse();
+	testee.advanceImpulse();
+
+	//premier tour de l'impulsion B : les trois vaisseaux Talon doivent bouger
+	Map<String, Ship> ships = new HashMap<>();
+	for (Ship ship : testee.getAllShips().get(Player.TALON))
+	{
+	    ships.put(ship.toString(), ship);
+	}
+	Ship surprise = ships.get("Talon FF Surprise");
+	Ship hunter = ships.get("Talon DD Hunter");
+	Ship shadow = ships.get("Talon DD Shadow");
+
+	//un virage illégal dans le lot : rien n'est appliqué
+	try
+	{
+	    testee.applyOrders(Arrays.asList(Order.move(surprise.getId()), Order.turn(hunter.getId(), MapObject.Orientation.SW)));
+	    Assert.fail();
+	}
+	catch (IllegalArgumentException e)
+	{
+	    Assert.assertEquals(new MapObject.HexCoordinates(10, 11, MapObject.Orientation.NE), surprise.getCoordinates());
+	}
+
+	//un vaisseau cité deux fois : rien n'est appliqué non plus
+	try
+	{
+	    testee.applyOrders(Arrays.asList(Order.move(surprise.getId()), Order.move(surprise.getId())));
+	    Assert.fail();
+	}
+	catch (IllegalArgumentException e)
+	{
+	    Assert.assertEquals(new MapObject.HexCoordinates(10, 11, MapObject.Orientation.NE), surprise.getCoordinates());
+	}
+
+	//lot légal : tout est appliqué d'un coup
+	GameManager.ImpulseReport report = testee.applyOrders(Arrays.asList(Order.move(surprise.getId()), Order.turn(hunter.getId(), MapObject.Orientation.E)));
+	Assert.assertEquals(new MapObject.HexCoordinates(9, 11, MapObject.Orientation.NE), surprise.getCoordinates());
+	Assert.assertEquals(new MapObject.HexCoordinates(10, 13, MapObject.Orientation.E), hunter.getCoordinates());
+	Assert.assertEquals(1, report.mustMoveShips.size());
+	Assert.assertTrue(report.mustMoveShips.contains(shadow.getId()));
+
+	//les vaisseaux ayant bougé ne peuvent plus être cités
+	try
+	{
+	    testee.applyOrders(Arrays.asList(Order.move(shadow.getId()), Order.move(hunter.getId())));
+	    Assert.fail();
+	}
+	catch (IllegalArgumentException e)
+	{
+	    Assert.assertEquals(new MapObject.HexCoordinates(10, 13, MapObject.Orientation.NE), shadow.getCoordinates());
+	}
+    }
+
+    /**
+     * partie journalisée reconstruite avant puis après son premier instantané
+     * (tous les 5 tours d'après session.properties)
+     */
+    @Test
+    public void restoreTest() throws Exception
+    {
+	Assert.assertNull(GameManager.restore("restoreTest"));
+
+	GameManager journaled = new GameManager("restoreTest", "scenar2");
+	journaled.startGame();
+	boolean batch = false;
+	while (journaled.getImpulseReport().currentTurn < 3)
+	{
+	    playImpulse(journaled, batch);
+	    batch = !batch;
+	}
+	assertSameGame(journaled, GameManager.restore("restoreTest"));
+
+	while (journaled.getImpulseReport().currentTurn < 8)
+	{
+	    playImpulse(journaled, batch);
+	    batch = !batch;
+	}
+	//impulsion entamée : seule une partie des vaisseaux a bougé
+	while (journaled.getImpulseReport().mustMoveShips.isEmpty())
+	{
+	    journaled.advanceImpulse();
+	}
+	journaled.moveShipStraight(journaled.getImpulseReport().mustMoveShips.get(0));
+	GameManager restored = GameManager.restore("restoreTest");
+	assertSameGame(journaled, restored);
+
+	//la partie reconstruite continue d'être journalisée
+	restored.advanceImpulse();
+	assertSameGame(restored, GameManager.restore("restoreTest"));
+
+	//une nouvelle partie de même identifiant efface l'ancien journal
+	new GameManager("restoreTest", "scenar2");
+	Assert.assertEquals(1, GameManager.restore("restoreTest").getImpulseReport().currentTurn);
+	SessionDao.getInstance().deleteGame("restoreTest");
+	Assert.assertNull(GameManager.restore("restoreTest"));
+    }
+
+    /**
+     * fait bouger tous les vaisseaux devant bouger puis passe à l'impulsion
+     * suivante
+     *
+     * @param p_game
+     * @param p_batch vrai pour passer les ordres en un seul lot
+     */
+    private static void playImpulse(GameManager p_game, boolean p_batch) throws SQLException
+    {
+	List<Integer> mustMove = p_game.getImpulseReport().mustMoveShips;
+	if (p_batch)
+	{
+	    List<Order> orders = new ArrayList<>();
+	    for (int id : mustMove)
+	    {
+		orders.add(Order.move(id));
+	    }
+	    p_game.applyOrders(orders);
+	}
+	else
+	{
+	    for (int id : mustMove)
+	    {
+		p_game.moveShipStraight(id);
+	    }
+	}
+	p_game.advanceImpulse();
+    }
+
+    /**
+     * compare deux parties du même scénario, les identifiants des vaisseaux
+     * étant traduits en rangs
+     *
+     * @param p_expected
+     * @param p_actual
+     */
+    private static void assertSameGame(GameManager p_expected, GameManager p_actual)
+    {
+	GameManager.ImpulseReport expected = p_expected.getImpulseReport();
+	GameManager.ImpulseReport actual = p_actual.getImpulseReport();
+	Assert.assertEquals(expected.currentTurn, actual.currentTurn);
+	Assert.assertEquals(expected.currentImpulse, actual.currentImpulse);
+	Assert.assertEquals(expected.currentPlayer, actual.currentPlayer);
+	Assert.assertEquals(toRanks(p_expected, expected.canActShips), toRanks(p_actual, actual.canActShips));
+	Assert.assertEquals(toRanks(p_expected, expected.mustMoveShips), toRanks(p_actual, actual.mustMoveShips));
+	for (Player player : Player.values())
+	{
+	    List<Ship> expectedShips = p_expected.getAllShips().get(player);
+	    List<Ship> actualShips = p_actual.getAllShips().get(player);
+	    for (int i = 0; i < expectedShips.size(); ++i)
+	    {
+		Assert.assertEquals(expectedShips.get(i).getCoordinates(), actualShips.get(i).getCoordinates());
+	    }
+	}
+    }
+
+    /**
+     *
+     * @param p_game
+     * @param p_ids
+     * @return les noms des vaisseaux, dans l'ordre des identifiants
+     */
+    private static List<String> toRanks(GameManager p_game, List<Integer> p_ids)
+    {
+	Map<Integer, String> names = new HashMap<>();
+	for (List<Ship> ships : p_game.getAllShips().values())
+	{
+	    for (Ship ship : ships)
+	    {
+		names.put(ship.getId(), ship.toString());
+	    }
+	}
+	List<String> result = new ArrayList<>();
+	for (int id : p_ids)
+	{
+	    result.add(names.get(id));
+	}
+	return result;
+    }
 }
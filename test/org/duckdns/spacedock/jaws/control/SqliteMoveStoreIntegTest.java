@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.duckdns.spacedock.jaws.model.HexGeometry;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.PackedHex;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class SqliteMoveStoreIntegTest
+{
+
+    private File database;
+
+    private ConnectionPool pool;
+
+    private SqliteMoveStore testee;
+
+    @Before
+    public void setUpForEach() throws IOException, SQLException
+    {
+	database = File.createTempFile("jaws-moves", ".db");
+	pool = new ConnectionPool("jdbc:sqlite:" + database.getAbsolutePath(), 2, 50, StorageProfile.SQLITE_DEFAULTS);
+	testee = new SqliteMoveStore(pool);
+    }
+
+    @After
+    public void cleanUpForEach()
+    {
+	testee.close();
+	pool.close();
+	database.delete();
+    }
+
+    private static MoveJournal.Entry entry(int p_turn, GameManager.Impulse p_impulse, int p_id, MapObject.HexCoordinates p_coord)
+    {
+	return new MoveJournal.Entry(new MoveJournal.Owner(), new int[]
+	{
+	    p_id
+	}, new long[]
+	{
+	    PackedHex.pack(p_coord)
+	}, p_turn, p_impulse, false);
+    }
+
+    @Test
+    public void writeTestNominal() throws SQLException
+    {
+	MapObject.HexCoordinates first = new MapObject.HexCoordinates(3, -4, MapObject.Orientation.SE);
+	MapObject.HexCoordinates second = new MapObject.HexCoordinates(4, -4, MapObject.Orientation.SE);
+	MapObject.HexCoordinates other = new MapObject.HexCoordinates(0, 0, MapObject.Orientation.W);
+	testee.write(Arrays.asList(entry(1, GameManager.Impulse.A, 7, first), entry(1, GameManager.Impulse.POWER, 8, other)));
+	testee.write(Arrays.asList(entry(1, GameManager.Impulse.B, 7, second)));
+
+	Assert.assertEquals(first, testee.load(7, 1, GameManager.Impulse.A));
+	Assert.assertEquals(second, testee.load(7, 1, GameManager.Impulse.B));
+	Assert.assertEquals(other, testee.load(8, 1, GameManager.Impulse.POWER));
+	Assert.assertNull(testee.load(7, 1, GameManager.Impulse.C));
+
+	List<String> replayed = new ArrayList<>();
+	testee.replay((run, id, turn, impulse, position) -> replayed.add(run + "/" + id + "/" + turn + "/" + impulse.name() + "/" + PackedHex.toCoordinates(position)));
+	Assert.assertEquals(Arrays.asList(testee.getRun() + "/7/1/A/" + first, testee.getRun() + "/8/1/POWER/" + other, testee.getRun() + "/7/1/B/" + second), replayed);
+    }
+
+    /**
+     * une position déjà enregistrée n'est pas écrasée : le lot qui la
+     * contient échoue en entier
+     */
+    @Test
+    public void writeTestDuplicate() throws SQLException
+    {
+	MapObject.HexCoordinates first = new MapObject.HexCoordinates(3, -4, MapObject.Orientation.SE);
+	MapObject.HexCoordinates second = new MapObject.HexCoordinates(4, -4, MapObject.Orientation.SE);
+	testee.write(Arrays.asList(entry(1, GameManager.Impulse.A, 7, first)));
+	try
+	{
+	    testee.write(Arrays.asList(entry(1, GameManager.Impulse.A, 8, second), entry(1, GameManager.Impulse.A, 7, second)));
+	    Assert.fail();
+	}
+	catch (SQLException e)
+	{
+	    //comportement attendu
+	}
+	Assert.assertEquals(first, testee.load(7, 1, GameManager.Impulse.A));
+	Assert.assertNull(testee.load(8, 1, GameManager.Impulse.A));
+    }
+
+    /**
+     * une nouvelle exécution réutilisant les mêmes identifiants n'écrase pas
+     * les positions de la précédente
+     */
+    @Test
+    public void runTest() throws SQLException
+    {
+	MapObject.HexCoordinates before = new MapObject.HexCoordinates(1, 1, MapObject.Orientation.NE);
+	MapObject.HexCoordinates after = new MapObject.HexCoordinates(2, 2, MapObject.Orientation.SW);
+	testee.write(Arrays.asList(entry(1, GameManager.Impulse.A, 7, before)));
+
+	SqliteMoveStore restarted = new SqliteMoveStore(pool);
+	Assert.assertTrue(restarted.getRun() > testee.getRun());
+	Assert.assertNull(restarted.load(7, 1, GameManager.Impulse.A));
+	restarted.write(Arrays.asList(entry(1, GameManager.Impulse.A, 7, after)));
+	Assert.assertEquals(after, restarted.load(7, 1, GameManager.Impulse.A));
+	Assert.assertEquals(before, testee.load(7, 1, GameManager.Impulse.A));
+
+	List<String> replayed = new ArrayList<>();
+	restarted.replay((run, id, turn, impulse, position) -> replayed.add(run + "/" + PackedHex.toCoordinates(position)));
+	Assert.assertEquals(Arrays.asList(testee.getRun() + "/" + before, restarted.getRun() + "/" + after), replayed);
+    }
+
+    /**
+     * une table moves à l'ancien format (position en chaîne) est convertie
+     * en colonnes typées
+     */
+    @Test
+    public void migrateMovesTest() throws SQLException
+    {
+	try (ConnectionPool.Lease lease = pool.acquire();
+		Statement stmt = lease.get().createStatement())
+	{
+	    stmt.execute("DROP TABLE moves;");
+	    stmt.execute("CREATE TABLE moves (id integer,turn integer,impulse text,mvt text NOT NULL,PRIMARY KEY(id, turn, impulse));");
+	    stmt.execute("INSERT INTO moves VALUES (900002,1,\"A\",\"10-11:NE\");");
+	    stmt.execute("INSERT INTO moves VALUES (900002,1,\"Power Phase\",\"-1--2:SW\");");
+	    stmt.execute("INSERT INTO moves VALUES (900002,2,\"A\",\"n'importe quoi\");");
+	}
+	testee.migrateMoves();
+	Assert.assertEquals(Arrays.asList(SqliteMoveStore.LEGACY_RUN + "/900002/1/A/" + new MapObject.HexCoordinates(10, 11, MapObject.Orientation.NE), SqliteMoveStore.LEGACY_RUN + "/900002/1/POWER/" + new MapObject.HexCoordinates(-1, -2, MapObject.Orientation.SW)), replayAll());
+
+	testee.migrateMoves();//déjà migrée : sans effet
+	Assert.assertEquals(2, replayAll().size());
+    }
+
+    /**
+     * une table moves typée sans exécution est rattachée à LEGACY_RUN, dans
+     * l'ordre de ses écritures
+     */
+    @Test
+    public void migrateUnnumberedMovesTest() throws SQLException
+    {
+	try (ConnectionPool.Lease lease = pool.acquire();
+		Statement stmt = lease.get().createStatement())
+	{
+	    stmt.execute("DROP TABLE moves;");
+	    stmt.execute("CREATE TABLE moves (id integer,turn integer,impulse text,posL integer NOT NULL,posC integer NOT NULL,orientation integer NOT NULL,PRIMARY KEY(id, turn, impulse));");
+	    stmt.execute("INSERT INTO moves VALUES (5,1,\"B\",3,4,0);");
+	    stmt.execute("INSERT INTO moves VALUES (4,1,\"B\",-3,4,1);");
+	}
+	testee.migrateMoves();
+	Assert.assertEquals(Arrays.asList(SqliteMoveStore.LEGACY_RUN + "/5/1/B/" + new MapObject.HexCoordinates(3, 4, HexGeometry.orientation(0)), SqliteMoveStore.LEGACY_RUN + "/4/1/B/" + new MapObject.HexCoordinates(-3, 4, HexGeometry.orientation(1))), replayAll());
+
+	//la nouvelle exécution écrit à côté
+	testee.write(Arrays.asList(entry(1, GameManager.Impulse.B, 5, new MapObject.HexCoordinates(0, 0, MapObject.Orientation.NE))));
+	Assert.assertEquals(3, replayAll().size());
+    }
+
+    private List<String> replayAll() throws SQLException
+    {
+	List<String> result = new ArrayList<>();
+	testee.replay((run, id, turn, impulse, position) -> result.add(run + "/" + id + "/" + turn + "/" + impulse.name() + "/" + PackedHex.toCoordinates(position)));
+	return result;
+    }
+
+    @Test
+    public void parseLegacyMoveTest()
+    {
+	Assert.assertEquals(new MapObject.HexCoordinates(10, 11, MapObject.Orientation.NE), SqliteMoveStore.parseLegacyMove("10-11:NE"));
+	Assert.assertEquals(new MapObject.HexCoordinates(-1, -2, MapObject.Orientation.W), SqliteMoveStore.parseLegacyMove("-1--2:W"));
+	Assert.assertEquals(new MapObject.HexCoordinates(3, -2, MapObject.Orientation.E), SqliteMoveStore.parseLegacyMove("3--2:E"));
+	Assert.assertNull(SqliteMoveStore.parseLegacyMove("3-2"));
+	Assert.assertNull(SqliteMoveStore.parseLegacyMove("3-2:UP"));
+	Assert.assertNull(SqliteMoveStore.parseLegacyMove("-3:NE"));
+	Assert.assertNull(SqliteMoveStore.parseLegacyMove(null));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.control;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class StorageProfileIntegTest
+{
+
+    private File database;
+
+    private final StorageProfile wal = new StorageProfile(StorageProfile.JournalMode.WAL, StorageProfile.Synchronous.NORMAL, -4000, 1 << 20, 0);
+
+    @Before
+    public void setUpForEach() throws IOException
+    {
+	database = File.createTempFile("jaws-profile", ".db");
+    }
+
+    @After
+    public void cleanUpForEach()
+    {
+	database.delete();
+	new File(database.getPath() + "-wal").delete();
+	new File(database.getPath() + "-shm").delete();
+    }
+
+    private Connection open(StorageProfile p_profile) throws SQLException
+    {
+	Connection result = DriverManager.getConnection("jdbc:sqlite:" + database.getAbsolutePath());
+	p_profile.apply(result);
+	return result;
+    }
+
+    private static String pragma(Connection p_conn, String p_name) throws SQLException
+    {
+	try (Statement stmt = p_conn.createStatement();
+		ResultSet rs = stmt.executeQuery("PRAGMA " + p_name + ";"))
+	{
+	    rs.next();
+	    return rs.getString(1);
+	}
+    }
+
+    @Test
+    public void applyTestNominal() throws SQLException
+    {
+	try (Connection conn = open(wal))
+	{
+	    Assert.assertEquals("wal", pragma(conn, "journal_mode"));
+	    Assert.assertEquals("1", pragma(conn, "synchronous"));
+	    Assert.assertEquals("-4000", pragma(conn, "cache_size"));
+	    Assert.assertEquals("0", pragma(conn, "busy_timeout"));
+	}
+	try (Connection conn = open(StorageProfile.SQLITE_DEFAULTS))
+	{
+	    Assert.assertEquals("delete", pragma(conn, "journal_mode"));
+	    Assert.assertEquals("2", pragma(conn, "synchronous"));
+	}
+    }
+
+    /**
+     * en WAL, une lecture en cours ne bloque pas l'écriture, même sans
+     * attente sur verrou
+     */
+    @Test
+    public void readerDoesNotBlockWriterTest() throws SQLException
+    {
+	try (Connection writer = open(wal);
+		Connection reader = open(wal))
+	{
+	    try (Statement stmt = writer.createStatement())
+	    {
+		stmt.execute("CREATE TABLE t (v integer);");
+		stmt.execute("INSERT INTO t VALUES (1);");
+	    }
+	    reader.setAutoCommit(false);
+	    try (Statement read = reader.createStatement();
+		    ResultSet rs = read.executeQuery("SELECT count(*) FROM t;"))
+	    {//transaction de lecture ouverte
+		rs.next();
+		Assert.assertEquals(1, rs.getInt(1));
+
+		try (Statement stmt = writer.createStatement())
+		{
+		    stmt.execute("INSERT INTO t VALUES (2);");
+		}
+	    }
+	    reader.commit();
+	    try (Statement read = reader.createStatement();
+		    ResultSet rs = read.executeQuery("SELECT count(*) FROM t;"))
+	    {
+		rs.next();
+		Assert.assertEquals(2, rs.getInt(1));
+	    }
+	}
+    }
+
+    @Test
+    public void constructorTestErreur()
+    {
+	try
+	{
+	    new StorageProfile(StorageProfile.JournalMode.WAL, StorageProfile.Synchronous.NORMAL, -2000, -1, 0);
+	    Assert.fail();
+	}
+	catch (IllegalArgumentException e)
+	{
+	    Assert.assertEquals("paramétre aberrant:réglages de stockage invalides: WAL NORMAL mmap=-1 busy=0", e.getMessage());
+	}
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.model;
+
+import java.io.FileNotFoundException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class FleetStoreUnitTest
+{
+
+    /**
+     * un vaisseau rangé dans le stockage se comporte exactement comme un
+     * vaisseau autonome
+     */
+    @Test
+    public void shipViewTestNominal() throws FileNotFoundException
+    {
+	FleetStore store = new FleetStore(1);
+	MapObject.HexCoordinates start = new MapObject.HexCoordinates(10, 11, MapObject.Orientation.NE);
+	Ship autonomous = new Ship("Talon FF", "Surprise", start);
+	Ship stored = new Ship(store, "Talon FF", "Surprise", start);
+
+	Assert.assertEquals(1, store.size());
+	Assert.assertEquals(autonomous, stored);
+	Assert.assertEquals(autonomous.hashCode(), stored.hashCode());
+	Assert.assertEquals(autonomous.getPowerCurve(), stored.getPowerCurve());
+
+	for (Ship ship : new Ship[]
+	{
+	    autonomous, stored
+	})
+	{
+	    ship.moveStraight();
+	    ship.turn(MapObject.Orientation.SE);//virage illégal : ignoré
+	    ship.turn(MapObject.Orientation.E);
+	    ship.turn(MapObject.Orientation.SE);
+	    ship.moveStraight();
+	}
+	Assert.assertEquals(new MapObject.HexCoordinates(11, 14, MapObject.Orientation.SE), stored.getCoordinates());
+	Assert.assertEquals(autonomous.getCoordinates(), stored.getCoordinates());
+	Assert.assertEquals(autonomous.canTurn(MapObject.Orientation.SW), stored.canTurn(MapObject.Orientation.SW));
+
+	stored.restoreCoordinates(start);
+	Assert.assertEquals(start, stored.getCoordinates());
+    }
+
+    /**
+     * le stockage s'agrandit au-delà de sa capacité initiale sans rien perdre
+     */
+    @Test
+    public void growthTest() throws FileNotFoundException
+    {
+	FleetStore store = new FleetStore(2);
+	Ship[] ships = new Ship[10];
+	for (int i = 0; i < ships.length; ++i)
+	{
+	    ships[i] = new Ship(store, "Terran DD", "DD" + i, new MapObject.HexCoordinates(i, -i, MapObject.Orientation.W));
+	}
+	Assert.assertEquals(10, store.size());
+	for (int i = 0; i < ships.length; ++i)
+	{
+	    ships[i].moveStraight();
+	    Assert.assertEquals(new MapObject.HexCoordinates(i, -i - 1, MapObject.Orientation.W), ships[i].getCoordinates());
+	    Assert.assertEquals(new Ship.PowerCurve(2, 3, 1), ships[i].getPowerCurve());
+	}
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.model;
+
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class HexGeometryUnitTest
+{
+
+    @Test
+    public void rotateTest()
+    {
+	Assert.assertEquals(MapObject.Orientation.E, MapObject.Orientation.NE.next());
+	Assert.assertEquals(MapObject.Orientation.NE, MapObject.Orientation.NW.next());
+	Assert.assertEquals(MapObject.Orientation.NW, MapObject.Orientation.NE.previous());
+	Assert.assertEquals(MapObject.Orientation.SE, HexGeometry.rotate(MapObject.Orientation.NW, 3));
+	Assert.assertEquals(MapObject.Orientation.SE, HexGeometry.rotate(MapObject.Orientation.NW, -3));
+	Assert.assertEquals(MapObject.Orientation.W, HexGeometry.rotate(MapObject.Orientation.W, 12));
+
+	for (MapObject.Orientation current : MapObject.Orientation.values())
+	{
+	    for (MapObject.Orientation target : MapObject.Orientation.values())
+	    {
+		Assert.assertEquals(target == current.next() || target == current.previous(), HexGeometry.canTurn(current, target));
+	    }
+	}
+    }
+
+    @Test
+    public void bearingTest()
+    {
+	long origin = PackedHex.pack(5, -7, MapObject.Orientation.SE);
+	Assert.assertNull(HexGeometry.bearing(origin, origin));
+	Assert.assertEquals(-1, HexGeometry.relativeBearing(origin, origin));
+
+	//sur une direction, de près comme au delà de la table
+	for (MapObject.Orientation direction : MapObject.Orientation.values())
+	{
+	    for (int k = 1; k <= 40; ++k)
+	    {
+		long target = PackedHex.pack(5 + k * HexGeometry.deltaL(direction), -7 + k * HexGeometry.deltaC(direction), MapObject.Orientation.NE);
+		Assert.assertEquals(direction, HexGeometry.bearing(origin, target));
+		Assert.assertEquals((direction.ordinal() - MapObject.Orientation.SE.ordinal() + 6) % 6, HexGeometry.relativeBearing(origin, target));
+	    }
+	}
+
+	//sur la limite entre deux secteurs : le second dans le sens horaire
+	Assert.assertEquals(MapObject.Orientation.E, HexGeometry.bearing(PackedHex.pack(0, 0, MapObject.Orientation.NE), PackedHex.pack(-1, 1, MapObject.Orientation.NE)));
+	Assert.assertEquals(MapObject.Orientation.NE, HexGeometry.bearing(PackedHex.pack(0, 0, MapObject.Orientation.NE), PackedHex.pack(-2, -1, MapObject.Orientation.NE)));
+
+	//un sixième de tour horaire de l'écart, (L, C) -> (C, C - L), décale le relèvement d'un cran ; la table et le calcul à la volée concordent
+	long zero = PackedHex.pack(0, 0, MapObject.Orientation.NE);
+	for (int deltaL = -20; deltaL <= 20; ++deltaL)
+	{
+	    for (int deltaC = -20; deltaC <= 20; ++deltaC)
+	    {
+		if (deltaL != 0 || deltaC != 0)
+		{
+		    MapObject.Orientation bearing = HexGeometry.bearing(zero, PackedHex.pack(deltaL, deltaC, MapObject.Orientation.NE));
+		    Assert.assertEquals(bearing.next(), HexGeometry.bearing(zero, PackedHex.pack(deltaC, deltaC - deltaL, MapObject.Orientation.NE)));
+		    Assert.assertEquals(bearing, HexGeometry.bearing(zero, PackedHex.pack(3 * deltaL, 3 * deltaC, MapObject.Orientation.NE)));
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void traceLineTestNominal()
+    {
+	long[] buffer = new long[64];
+	long from = PackedHex.pack(2, 3, MapObject.Orientation.W);
+
+	//ligne droite le long d'une direction
+	int count = HexGeometry.traceLine(from, PackedHex.pack(2 + 4, 3 + 4, MapObject.Orientation.NE), buffer);
+	Assert.assertEquals(5, count);
+	for (int i = 0; i < count; ++i)
+	{
+	    Assert.assertEquals(PackedHex.pack(2 + i, 3 + i, MapObject.Orientation.W), buffer[i]);
+	}
+
+	Assert.assertEquals(1, HexGeometry.traceLine(from, from, buffer));
+	Assert.assertEquals(from, buffer[0]);
+
+	Random random = new Random(20);
+	for (int n = 0; n < 1000; ++n)
+	{
+	    long to = PackedHex.pack(random.nextInt(41) - 20, random.nextInt(41) - 20, MapObject.Orientation.NE);
+	    count = HexGeometry.traceLine(from, to, buffer);
+	    Assert.assertEquals(PackedHex.distance(from, to) + 1, count);
+	    Assert.assertEquals(from, buffer[0]);
+	    Assert.assertTrue(PackedHex.sameCell(to, buffer[count - 1]));
+	    for (int i = 1; i < count; ++i)
+	    {//hexagones contigus, chacun un cran plus loin du départ
+		Assert.assertEquals(1, PackedHex.distance(buffer[i - 1], buffer[i]));
+		Assert.assertEquals(i, PackedHex.distance(from, buffer[i]));
+	    }
+	}
+    }
+
+    @Test
+    public void traceLineTestErreur()
+    {
+	try
+	{
+	    HexGeometry.traceLine(PackedHex.pack(0, 0, MapObject.Orientation.NE), PackedHex.pack(0, 5, MapObject.Orientation.NE), new long[5]);
+	    Assert.fail();
+	}
+	catch (IllegalArgumentException e)
+	{
+	    Assert.assertEquals("paramétre aberrant:tampon trop petit: 5<6", e.getMessage());
+	}
+    }
+}
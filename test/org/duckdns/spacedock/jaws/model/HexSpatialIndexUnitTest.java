@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.model;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class HexSpatialIndexUnitTest
+{
+
+    /**
+     * occupation suivie à chaque mouvement, virage et restauration
+     */
+    @Test
+    public void occupancyTestNominal() throws FileNotFoundException
+    {
+	HexSpatialIndex testee = new HexSpatialIndex();
+	Ship surprise = new Ship("Talon FF", "Surprise", new MapObject.HexCoordinates(10, 11, MapObject.Orientation.NE));
+	Ship hunter = new Ship(new FleetStore(1), "Talon DD", "Hunter", new MapObject.HexCoordinates(10, 12, MapObject.Orientation.NE));
+	testee.add(surprise);
+	testee.add(hunter);
+	Assert.assertEquals(2, testee.size());
+	Assert.assertTrue(testee.isOccupied(10, 11));
+	Assert.assertSame(hunter, testee.getObjectsAt(10, 12).get(0));
+
+	surprise.moveStraight();
+	Assert.assertFalse(testee.isOccupied(10, 11));
+	Assert.assertSame(surprise, testee.getObjectsAt(9, 11).get(0));
+
+	hunter.turn(MapObject.Orientation.NW);
+	Assert.assertFalse(testee.isOccupied(10, 12));
+	Assert.assertSame(hunter, testee.getObjectsAt(9, 11).get(1));//deux vaisseaux sur le même hexagone
+
+	hunter.restoreCoordinates(new MapObject.HexCoordinates(0, 0, MapObject.Orientation.E));
+	Assert.assertEquals(1, testee.getObjectsAt(9, 11).size());
+	Assert.assertTrue(testee.isOccupied(0, 0));
+
+	testee.remove(hunter);
+	Assert.assertFalse(testee.isOccupied(0, 0));
+	Assert.assertEquals(1, testee.size());
+	hunter.moveStraight();//plus indexé : sans effet sur l'index
+	Assert.assertFalse(testee.isOccupied(0, 1));
+    }
+
+    @Test
+    public void occupancyTestErreur() throws FileNotFoundException
+    {
+	HexSpatialIndex testee = new HexSpatialIndex();
+	Ship surprise = new Ship("Talon FF", "Surprise", new MapObject.HexCoordinates(10, 11, MapObject.Orientation.NE));
+	testee.add(surprise);
+	try
+	{
+	    new HexSpatialIndex().add(surprise);
+	    Assert.fail();
+	}
+	catch (IllegalStateException e)
+	{
+	    Assert.assertEquals(1, testee.size());
+	}
+    }
+
+    /**
+     * les recherches dans un rayon donnent le même résultat qu'un parcours
+     * complet avec getDistancePROVISOIRE, que l'index visite le disque (petit
+     * rayon) ou filtre les hexagones occupés (grand rayon)
+     */
+    @Test
+    public void rangeTest() throws FileNotFoundException
+    {
+	Random random = new Random(17);
+	HexSpatialIndex testee = new HexSpatialIndex();
+	List<Ship> ships = new ArrayList<>();
+	for (int i = 0; i < 200; ++i)
+	{
+	    Ship ship = new Ship("Terran DD", "DD" + i, new MapObject.HexCoordinates(random.nextInt(40) - 20, random.nextInt(40) - 20, MapObject.Orientation.values()[random.nextInt(6)]));
+	    ships.add(ship);
+	    testee.add(ship);
+	}
+	for (Ship ship : ships)
+	{//quelques mouvements pour éprouver la mise à jour
+	    ship.moveStraight();
+	}
+
+	for (int radius : new int[]
+	{
+	    0, 1, 3, 8, 30
+	})
+	{
+	    for (int i = 0; i < 20; ++i)
+	    {
+		MapObject.HexCoordinates center = new MapObject.HexCoordinates(random.nextInt(50) - 25, random.nextInt(50) - 25);
+		Set<MapObject> expected = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Ship ship : ships)
+		{
+		    if (MapObject.getDistancePROVISOIRE(center, ship.getCoordinates()) <= radius)
+		    {
+			expected.add(ship);
+		    }
+		}
+		List<MapObject> actual = testee.getObjectsInRange(center, radius);
+		Assert.assertEquals(expected.size(), actual.size());
+		Assert.assertTrue(expected.containsAll(actual));
+	    }
+	}
+	Assert.assertTrue(testee.getObjectsInRange(ships.get(0).getCoordinates(), -1).isEmpty());
+    }
+}
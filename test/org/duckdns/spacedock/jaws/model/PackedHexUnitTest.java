@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.model;
+
+import java.io.FileNotFoundException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class PackedHexUnitTest
+{
+
+    @Test
+    public void packTestNominal()
+    {
+	int[] values =
+	{
+	    0, 1, -1, 42, -42, PackedHex.MIN_COORDINATE, PackedHex.MAX_COORDINATE
+	};
+	for (int posL : values)
+	{
+	    for (int posC : values)
+	    {
+		for (MapObject.Orientation orientation : MapObject.Orientation.values())
+		{
+		    long packed = PackedHex.pack(posL, posC, orientation);
+		    Assert.assertEquals(posL, PackedHex.posL(packed));
+		    Assert.assertEquals(posC, PackedHex.posC(packed));
+		    Assert.assertEquals(orientation, PackedHex.orientation(packed));
+		    Assert.assertEquals(new MapObject.HexCoordinates(posL, posC, orientation), PackedHex.toCoordinates(packed));
+		}
+	    }
+	}
+
+	long packed = PackedHex.pack(-3, 7, MapObject.Orientation.SW);
+	long turned = PackedHex.withOrientation(packed, MapObject.Orientation.E);
+	Assert.assertEquals(MapObject.Orientation.E, PackedHex.orientation(turned));
+	Assert.assertTrue(PackedHex.sameCell(packed, turned));
+	Assert.assertFalse(PackedHex.sameCell(packed, PackedHex.stepStraight(packed)));
+    }
+
+    @Test
+    public void packTestErreur()
+    {
+	try
+	{
+	    PackedHex.pack(PackedHex.MAX_COORDINATE + 1, 0, MapObject.Orientation.NE);
+	    Assert.fail();
+	}
+	catch (IllegalArgumentException e)
+	{
+	    Assert.assertEquals("paramétre aberrant:coordonnées hors des limites représentables: 536870912-0", e.getMessage());
+	}
+    }
+
+    /**
+     * pas et distance comparés aux calculs sur les objets coordonnées, de
+     * part et d'autre de l'origine
+     */
+    @Test
+    public void stepAndDistanceTest() throws FileNotFoundException
+    {
+	Random random = new Random(19);
+	Ship reference = new Ship("Talon FF", "Surprise", new MapObject.HexCoordinates(0, 0, MapObject.Orientation.NE));
+	for (int i = 0; i < 1000; ++i)
+	{
+	    MapObject.HexCoordinates start = new MapObject.HexCoordinates(random.nextInt(20) - 10, random.nextInt(20) - 10, MapObject.Orientation.values()[random.nextInt(6)]);
+	    MapObject.HexCoordinates other = new MapObject.HexCoordinates(random.nextInt(20) - 10, random.nextInt(20) - 10);
+	    Assert.assertEquals(MapObject.getDistancePROVISOIRE(start, other), PackedHex.distance(PackedHex.pack(start), PackedHex.pack(other)));
+
+	    reference.restoreCoordinates(start);
+	    reference.moveStraight();
+	    Assert.assertEquals(reference.getCoordinates(), PackedHex.toCoordinates(PackedHex.stepStraight(PackedHex.pack(start))));
+
+	    MapObject.Orientation target = random.nextBoolean() ? start.orientation.next() : start.orientation.previous();
+	    reference.restoreCoordinates(start);
+	    reference.turn(target);
+	    Assert.assertEquals(reference.getCoordinates(), PackedHex.toCoordinates(PackedHex.step(PackedHex.pack(start), target)));
+	}
+    }
+
+    /**
+     * mouvements et virages n'allouent plus rien, que le vaisseau soit
+     * autonome ou rangé dans un FleetStore
+     */
+    @Test
+    public void moveAllocationTest() throws FileNotFoundException
+    {
+	java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+	if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported())
+	{
+	    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) bean;
+	    Ship[] ships =
+	    {
+		new Ship("Talon FF", "Surprise", new MapObject.HexCoordinates(0, 0, MapObject.Orientation.NE)),
+		new Ship(new FleetStore(1), "Talon FF", "Hunter", new MapObject.HexCoordinates(0, 0, MapObject.Orientation.NE))
+	    };
+	    for (Ship ship : ships)
+	    {
+		play(ship, 1000);//chargement des classes et compilation
+		long threadId = Thread.currentThread().getId();
+		long before = allocations.getThreadAllocatedBytes(threadId);
+		play(ship, 10000);
+		long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+		Assert.assertTrue("allocated=" + allocated, allocated < 10000);//un objet coordonnées par pas dépasserait 200ko
+	    }
+	}
+    }
+
+    /**
+     * alterne mouvements tout droit et virages
+     */
+    private static void play(Ship p_ship, int p_steps)
+    {
+	for (int i = 0; i < p_steps; ++i)
+	{
+	    if (i % 3 == 0)
+	    {
+		p_ship.turn(p_ship.getOrientation().next());
+	    }
+	    else
+	    {
+		p_ship.moveStraight();
+	    }
+	}
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.model;
+
+import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class ReachabilityUnitTest
+{
+
+    @Test
+    public void fromTestNominal()
+    {
+	Reachability.Result testee = Reachability.from(new MapObject.HexCoordinates(10, 11, MapObject.Orientation.NE), 1, 2);
+	Assert.assertEquals(3, testee.size());
+
+	int straight = testee.indexOf(new MapObject.HexCoordinates(9, 11, MapObject.Orientation.NE));
+	Assert.assertEquals(0, testee.getTurns(straight));
+	Assert.assertEquals(1, testee.getPath(straight).size());
+	Assert.assertEquals(MapObject.Orientation.NE, testee.getPath(straight).get(0));
+
+	int right = testee.indexOf(new MapObject.HexCoordinates(10, 12, MapObject.Orientation.E));
+	Assert.assertEquals(1, testee.getTurns(right));
+	Assert.assertEquals(MapObject.Orientation.E, testee.getPath(right).get(0));
+	Assert.assertEquals(new MapObject.HexCoordinates(10, 12, MapObject.Orientation.E), testee.getEnd(right));
+
+	Assert.assertTrue(testee.indexOf(new MapObject.HexCoordinates(9, 10, MapObject.Orientation.NW)) >= 0);
+	Assert.assertEquals(-1, testee.indexOf(new MapObject.HexCoordinates(9, 11, MapObject.Orientation.E)));
+
+	//vitesse nulle : seule la position de départ
+	testee = Reachability.from(new MapObject.HexCoordinates(10, 11, MapObject.Orientation.SW), 0, 0);
+	Assert.assertEquals(1, testee.size());
+	Assert.assertEquals(new MapObject.HexCoordinates(10, 11, MapObject.Orientation.SW), testee.getEnd(0));
+	Assert.assertTrue(testee.getPath(0).isEmpty());
+    }
+
+    /**
+     * comparaison avec l'énumération exhaustive des suites d'ordres jouées
+     * par un vrai vaisseau
+     */
+    @Test
+    public void fromTestExhaustif() throws FileNotFoundException
+    {
+	Ship ship = new Ship("Talon FF", "Surprise", new MapObject.HexCoordinates(0, 0, MapObject.Orientation.NE));
+	for (MapObject.Orientation orientation : MapObject.Orientation.values())
+	{
+	    for (int speed = 0; speed <= 5; ++speed)
+	    {
+		for (int radius = 0; radius <= 2; ++radius)
+		{
+		    MapObject.HexCoordinates start = new MapObject.HexCoordinates(20, 30, orientation);
+		    Map<MapObject.HexCoordinates, Integer> expected = new HashMap<>();
+		    explore(ship, start, speed, radius, 0, 0, expected);
+
+		    Reachability.Result testee = Reachability.from(start, speed, radius);
+		    Assert.assertEquals(expected.size(), testee.size());
+		    for (int i = 0; i < testee.size(); ++i)
+		    {
+			MapObject.HexCoordinates end = testee.getEnd(i);
+			Assert.assertEquals(expected.get(end), Integer.valueOf(testee.getTurns(i)));
+			Assert.assertEquals(i, testee.indexOf(end));
+
+			//le chemin rendu est jouable et mène bien à la position annoncée
+			ship.restoreCoordinates(start);
+			List<MapObject.Orientation> path = testee.getPath(i);
+			Assert.assertEquals(speed, path.size());
+			int turns = 0;
+			for (MapObject.Orientation step : path)
+			{
+			    if (step == ship.getCoordinates().orientation)
+			    {
+				ship.moveStraight();
+			    }
+			    else
+			    {
+				Assert.assertTrue(ship.canTurn(step));
+				ship.turn(step);
+				++turns;
+			    }
+			}
+			Assert.assertEquals(end, ship.getCoordinates());
+			Assert.assertEquals(testee.getTurns(i), turns);
+		    }
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void forShipTest() throws FileNotFoundException
+    {
+	Ship surprise = new Ship("Talon FF", "Surprise", new MapObject.HexCoordinates(10, 11, MapObject.Orientation.E));
+	Ship.PowerCurve curve = surprise.getPowerCurve();
+	Reachability.Result testee = Reachability.forShip(surprise);
+	Reachability.Result expected = Reachability.from(new MapObject.HexCoordinates(10, 11, MapObject.Orientation.E), curve.speed, curve.turnRadius);
+	Assert.assertEquals(expected.size(), testee.size());
+	for (int i = 0; i < testee.size(); ++i)
+	{
+	    Assert.assertEquals(expected.getEnd(i), testee.getEnd(i));
+	    Assert.assertEquals(expected.getPath(i), testee.getPath(i));
+	}
+
+	//même table partagée, simplement translatée
+	surprise.restoreCoordinates(new MapObject.HexCoordinates(-5, 3, MapObject.Orientation.E));
+	testee = Reachability.forShip(surprise);
+	for (int i = 0; i < testee.size(); ++i)
+	{
+	    Assert.assertEquals(expected.getEnd(i).posL - 15, testee.getEnd(i).posL);
+	    Assert.assertEquals(expected.getEnd(i).posC - 8, testee.getEnd(i).posC);
+	}
+    }
+
+    @Test
+    public void fromTestErreur()
+    {
+	try
+	{
+	    Reachability.from(new MapObject.HexCoordinates(0, 0, MapObject.Orientation.NE), -1, 0);
+	    Assert.fail();
+	}
+	catch (IllegalArgumentException e)
+	{
+	    Assert.assertEquals("paramétre aberrant:vitesse ou rayon de virage invalide: speed=-1 turnRadius=0", e.getMessage());
+	}
+    }
+
+    /**
+     * énumère toutes les suites d'ordres en jouant un vrai vaisseau et note
+     * le moins de virages pour chaque position finale
+     *
+     * @param p_ship
+     * @param p_from
+     * @param p_steps pas restant à jouer
+     * @param p_radius
+     * @param p_cooldown pas tout droit encore dus avant un virage
+     * @param p_turns virages déjà faits
+     * @param p_best
+     */
+    private static void explore(Ship p_ship, MapObject.HexCoordinates p_from, int p_steps, int p_radius, int p_cooldown, int p_turns, Map<MapObject.HexCoordinates, Integer> p_best)
+    {
+	if (p_steps == 0)
+	{
+	    p_best.merge(p_from, p_turns, Math::min);
+	}
+	else
+	{
+	    p_ship.restoreCoordinates(p_from);
+	    p_ship.moveStraight();
+	    explore(p_ship, p_ship.getCoordinates(), p_steps - 1, p_radius, Math.max(0, p_cooldown - 1), p_turns, p_best);
+	    if (p_cooldown == 0)
+	    {
+		for (MapObject.Orientation target : MapObject.Orientation.values())
+		{
+		    p_ship.restoreCoordinates(p_from);
+		    if (p_ship.canTurn(target))
+		    {
+			p_ship.turn(target);
+			explore(p_ship, p_ship.getCoordinates(), p_steps - 1, p_radius, p_radius, p_turns + 1, p_best);
+		    }
+		}
+	    }
+	}
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.web;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class ConditionalGetUnitTest
+{
+
+    private final String etagTest = "\"board-1a2b-42\"";
+
+    @Test
+    public void matchesTestNominal()
+    {
+	Assert.assertTrue(ConditionalGet.matches("\"board-1a2b-42\"", etagTest));
+	Assert.assertTrue(ConditionalGet.matches("W/\"board-1a2b-42\"", etagTest));
+	Assert.assertTrue(ConditionalGet.matches("\"board-1a2b-41\", \"board-1a2b-42\"", etagTest));
+	Assert.assertTrue(ConditionalGet.matches("*", etagTest));
+    }
+
+    @Test
+    public void matchesTestLimite()
+    {
+	//pas d'en-tête : le client n'a rien en cache
+	Assert.assertFalse(ConditionalGet.matches(null, etagTest));
+	Assert.assertFalse(ConditionalGet.matches("", etagTest));
+
+	//version différente, représentation différente, guillemets manquants
+	Assert.assertFalse(ConditionalGet.matches("\"board-1a2b-41\"", etagTest));
+	Assert.assertFalse(ConditionalGet.matches("\"html-1a2b-42\"", etagTest));
+	Assert.assertFalse(ConditionalGet.matches("board-1a2b-42", etagTest));
+    }
+}
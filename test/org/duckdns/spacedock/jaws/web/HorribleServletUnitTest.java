@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.web;
+
+import java.util.concurrent.CompletableFuture;
+import javax.servlet.ServletException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class HorribleServletUnitTest
+{
+
+    @Test
+    public void awaitTestNominal() throws ServletException
+    {
+	Assert.assertEquals("fait", HorribleServlet.await(CompletableFuture.completedFuture("fait"), 10));
+    }
+
+    /**
+     * une commande n'aboutissant pas à temps rend la main au lieu de bloquer
+     * le thread de requête
+     */
+    @Test
+    public void awaitTestTimeout() throws ServletException
+    {
+	try
+	{
+	    HorribleServlet.await(new CompletableFuture<>(), 10);
+	    Assert.fail();
+	}
+	catch (HorribleServlet.GameBusyException e)
+	{
+	    //comportement attendu
+	}
+    }
+}
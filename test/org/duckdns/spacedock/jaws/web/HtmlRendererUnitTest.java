@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.web;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import org.duckdns.spacedock.jaws.control.GameManager;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.Ship;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class HtmlRendererUnitTest
+{
+
+    /**
+     * flux de sortie ne conservant rien : on ne mesure que le rendu
+     */
+    private static final Writer NULL_WRITER = new Writer()
+    {
+	@Override
+	public void write(char[] cbuf, int off, int len)
+	{
+	}
+
+	@Override
+	public void flush()
+	{
+	}
+
+	@Override
+	public void close()
+	{
+	}
+    };
+
+    /**
+     * construit une flotte de p_count vaisseaux par joueur, dont la moitié
+     * doit bouger
+     *
+     * @param p_count
+     * @param p_mustMove rempli avec les id des vaisseaux devant bouger
+     * @return
+     */
+    private static Map<GameManager.Player, List<Ship>> makeFleet(int p_count, List<Integer> p_mustMove) throws FileNotFoundException
+    {
+	Map<GameManager.Player, List<Ship>> result = new EnumMap<>(GameManager.Player.class);
+	List<Ship> talon = new ArrayList<>();
+	List<Ship> terran = new ArrayList<>();
+	for (int i = 0; i < p_count; ++i)
+	{
+	    Ship ship = new Ship("Talon DD", "T" + i, new MapObject.HexCoordinates(i, i, MapObject.Orientation.NE));
+	    talon.add(ship);
+	    if (i % 2 == 0)
+	    {
+		p_mustMove.add(ship.getId());
+	    }
+	    terran.add(new Ship("Terran CL", "H" + i, new MapObject.HexCoordinates(i, -i, MapObject.Orientation.SW)));
+	}
+	result.put(GameManager.Player.TALON, talon);
+	result.put(GameManager.Player.TERRAN, terran);
+	return result;
+    }
+
+    @Test
+    public void renderTestNominal() throws IOException
+    {
+	List<Integer> mustMove = new ArrayList<>();
+	Map<GameManager.Player, List<Ship>> fleet = makeFleet(2, mustMove);
+	GameManager.ImpulseReport report = new GameManager.ImpulseReport("TALON", Arrays.asList(), mustMove, "B", 3);
+	Ship moving = fleet.get(GameManager.Player.TALON).get(0);
+	Ship notMoving = fleet.get(GameManager.Player.TALON).get(1);
+
+	StringWriter out = new StringWriter();
+	HtmlRenderer.render(out, "titre", "partie1", report, fleet);
+	String page = out.toString();
+
+	Assert.assertTrue(page.startsWith("<h1>titre</h1>"));
+	Assert.assertTrue(page.contains("<h2>Tour 3</h2>"));
+	Assert.assertTrue(page.contains("<h2>Impulsion B</h2>"));
+	Assert.assertTrue(page.contains("<h2>Joueur : TALON</h2>"));
+	Assert.assertTrue(page.contains("name=\"game\" value=\"partie1\""));
+
+	String toMove = page.substring(page.indexOf("devant bouger"));
+	Assert.assertTrue(page.contains(moving.getId() + " Talon DD T0 0-0:NE<br />"));
+	Assert.assertTrue(toMove.contains(moving.getId() + " Talon DD T0<br />"));
+	Assert.assertFalse(toMove.contains(notMoving.getId() + " Talon DD T1<br />"));
+	Assert.assertTrue(page.endsWith("</body>\n"));
+    }
+
+    /**
+     * le temps de rendu doit croître linéairement avec le nombre de
+     * vaisseaux : décupler la flotte ne doit pas multiplier le temps par bien
+     * plus que dix (un rendu quadratique le multiplierait par cent)
+     */
+    @Test
+    public void renderTestLinearite() throws IOException
+    {
+	List<Integer> smallMustMove = new ArrayList<>();
+	Map<GameManager.Player, List<Ship>> smallFleet = makeFleet(500, smallMustMove);
+	GameManager.ImpulseReport smallReport = new GameManager.ImpulseReport("TALON", Arrays.asList(), smallMustMove, "B", 1);
+
+	List<Integer> bigMustMove = new ArrayList<>();
+	Map<GameManager.Player, List<Ship>> bigFleet = makeFleet(5000, bigMustMove);
+	GameManager.ImpulseReport bigReport = new GameManager.ImpulseReport("TALON", Arrays.asList(), bigMustMove, "B", 1);
+
+	//chauffe du JIT
+	for (int i = 0; i < 50; ++i)
+	{
+	    HtmlRenderer.render(NULL_WRITER, "titre", "partie1", smallReport, smallFleet);
+	    HtmlRenderer.render(NULL_WRITER, "titre", "partie1", bigReport, bigFleet);
+	}
+
+	long smallTime = bestRenderTime(smallReport, smallFleet);
+	long bigTime = bestRenderTime(bigReport, bigFleet);
+
+	Assert.assertTrue("rendu non linéaire : " + smallTime + "ns pour 1000 vaisseaux, " + bigTime + "ns pour 10000", bigTime < smallTime * 30);
+    }
+
+    /**
+     *
+     * @param p_report
+     * @param p_fleet
+     * @return le meilleur temps de rendu observé sur plusieurs essais, en ns
+     */
+    private static long bestRenderTime(GameManager.ImpulseReport p_report, Map<GameManager.Player, List<Ship>> p_fleet) throws IOException
+    {
+	long result = Long.MAX_VALUE;
+	for (int i = 0; i < 20; ++i)
+	{
+	    long start = System.nanoTime();
+	    HtmlRenderer.render(NULL_WRITER, "titre", "partie1", p_report, p_fleet);
+	    result = Math.min(result, System.nanoTime() - start);
+	}
+	return result;
+    }
+}
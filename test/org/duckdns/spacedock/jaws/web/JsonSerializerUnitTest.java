@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2019 ykonoclast
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.duckdns.spacedock.jaws.web;
+
+import java.io.FileNotFoundException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+import org.duckdns.spacedock.jaws.control.GameManager;
+import org.duckdns.spacedock.jaws.model.MapObject;
+import org.duckdns.spacedock.jaws.model.Reachability;
+import org.duckdns.spacedock.jaws.model.Ship;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author ykonoclast
+ */
+public class JsonSerializerUnitTest
+{
+
+    private final GameManager.ImpulseReport reportTest = new GameManager.ImpulseReport("TALON", Arrays.asList(3), Arrays.asList(1, 3), "B", 2);
+
+    @Test
+    public void writeReportTest()
+    {
+	StringWriter out = new StringWriter();
+	try (JsonGenerator gen = JsonSerializer.createGenerator(out))
+	{
+	    JsonSerializer.writeReport(gen, reportTest);
+	}
+
+	JsonObject actual = Json.createReader(new StringReader(out.toString())).readObject();
+	Assert.assertEquals(2, actual.getInt("currentTurn"));
+	Assert.assertEquals("B", actual.getString("currentImpulse"));
+	Assert.assertEquals("TALON", actual.getString("currentPlayer"));
+	Assert.assertEquals(1, actual.getJsonArray("canActShips").size());
+	Assert.assertEquals(3, actual.getJsonArray("canActShips").getInt(0));
+	Assert.assertEquals(2, actual.getJsonArray("mustMoveShips").size());
+	Assert.assertEquals(1, actual.getJsonArray("mustMoveShips").getInt(0));
+    }
+
+    @Test
+    public void writeBoardTest() throws FileNotFoundException
+    {
+	Map<GameManager.Player, List<Ship>> ships = new EnumMap<>(GameManager.Player.class);
+	List<Ship> talon = new ArrayList<>();
+	Ship surprise = new Ship("Talon FF", "Surprise", new MapObject.HexCoordinates(10, 11, MapObject.Orientation.NE));
+	talon.add(surprise);
+	ships.put(GameManager.Player.TALON, talon);
+	ships.put(GameManager.Player.TERRAN, new ArrayList<>());
+
+	StringWriter out = new StringWriter();
+	try (JsonGenerator gen = JsonSerializer.createGenerator(out))
+	{
+	    JsonSerializer.writeBoard(gen, reportTest, ships);
+	}
+
+	JsonObject actual = Json.createReader(new StringReader(out.toString())).readObject();
+	Assert.assertEquals("B", actual.getJsonObject("report").getString("currentImpulse"));
+	JsonArray talonArray = actual.getJsonObject("ships").getJsonArray("TALON");
+	Assert.assertEquals(1, talonArray.size());
+	JsonObject ship = talonArray.getJsonObject(0);
+	Assert.assertEquals(surprise.getId(), ship.getInt("id"));
+	Assert.assertEquals("Talon FF Surprise", ship.getString("name"));
+	Assert.assertEquals(10, ship.getInt("posL"));
+	Assert.assertEquals(11, ship.getInt("posC"));
+	Assert.assertEquals("NE", ship.getString("orientation"));
+	Assert.assertEquals(0, actual.getJsonObject("ships").getJsonArray("TERRAN").size());
+    }
+
+    @Test
+    public void writeReachTest()
+    {
+	StringWriter out = new StringWriter();
+	try (JsonGenerator gen = JsonSerializer.createGenerator(out))
+	{
+	    JsonSerializer.writeReach(gen, 7, Reachability.from(new MapObject.HexCoordinates(10, 11, MapObject.Orientation.NE), 1, 0));
+	}
+
+	JsonObject actual = Json.createReader(new StringReader(out.toString())).readObject();
+	Assert.assertEquals(7, actual.getInt("id"));
+	JsonArray ends = actual.getJsonArray("ends");
+	Assert.assertEquals(3, ends.size());
+	boolean straightFound = false;
+	for (int i = 0; i < ends.size(); ++i)
+	{
+	    JsonObject end = ends.getJsonObject(i);
+	    if ("NE".equals(end.getString("orientation")))
+	    {
+		straightFound = true;
+		Assert.assertEquals(9, end.getInt("posL"));
+		Assert.assertEquals(11, end.getInt("posC"));
+		Assert.assertEquals(0, end.getInt("turns"));
+		Assert.assertEquals("NE", end.getJsonArray("path").getString(0));
+	    }
+	}
+	Assert.assertTrue(straightFound);
+    }
+}